@@ -1,16 +1,8 @@
 package com.dsetools;
 
-import com.datastax.driver.core.*;
-import com.datastax.driver.core.exceptions.NoHostAvailableException;
-import com.datastax.driver.dse.DseCluster;
 import org.apache.commons.cli.*;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
-import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.TrueFileFilter;
-import org.json.simple.JSONArray;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.JSONObject;
 
 import java.io.*;
 import java.net.*;
@@ -20,114 +12,357 @@ import java.time.Duration;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 class NFSObjDownloadRunnable implements  Runnable {
     private int threadID;
-    private boolean fileSizeChk;
-    private String downloadHomeDir;
-    private String[] opscObjNames;
-    private long[] opscObjSizes;
-    private String[] keyspaceNames;
-    private String[] tableNames;
-    private String[] sstableVersions;
-    private boolean noTargetDirStruct;
+    private NFSObjRestoreUnit restoreUnit;
+    private NFSObjRestoreContext restoreContext;
 
     private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     NFSObjDownloadRunnable(int tID,
-                           boolean file_size_chk,
-                           String download_dir,
-                           String[] object_names,
-                           long[] object_sizes,
-                           String[] ks_names,
-                           String[] tbl_names,
-                           String[] sstable_versions,
-                           boolean no_dir_struct ) {
-        assert (tID > 0);
+                           NFSObjRestoreUnit restore_unit,
+                           NFSObjRestoreContext restore_context) {
+        assert (tID >= 0);
 
         this.threadID = tID;
-        this.fileSizeChk = file_size_chk;
-        this.downloadHomeDir = download_dir;
-        this.opscObjNames = object_names;
-        this.opscObjSizes = object_sizes;
-        this.keyspaceNames = ks_names;
-        this.tableNames = tbl_names;
-        this.sstableVersions = sstable_versions;
-        this.noTargetDirStruct = no_dir_struct;
-
-        System.out.format("  Creating thread with ID %d (%d).\n", threadID, opscObjNames.length);
+        this.restoreUnit = restore_unit;
+        this.restoreContext = restore_context;
+
+        if (restoreContext.isVerbose()) {
+            System.out.format("  Creating thread with ID %d (%d files, %d bytes).\n",
+                threadID, restoreUnit.getItems().size(), restoreUnit.getTotalBytes());
+        }
     }
 
     @Override
     public void run() {
+        boolean unitRestored = false;
+
+        // Always report the SSTable set as done, so that the completion tracking never waits forever
+        try {
+            unitRestored = downloadUnit();
+        }
+        finally {
+            if (restoreContext.getTableCompletion() != null) {
+                restoreContext.getTableCompletion().unitDone(restoreUnit, unitRestored);
+            }
+
+            restoreContext.getProgress().recordUnitDone(restoreUnit.getHostId());
+        }
+    }
+
+    /**
+     * @return whether all files of the SSTable set are restored (and in place)
+     */
+    private boolean downloadUnit() {
 
         LocalDateTime startTime = LocalDateTime.now();
 
-        System.out.println("   - Starting thread " + threadID + " at: " + startTime.format(formatter));
+        boolean verbose = restoreContext.isVerbose();
+        NFSObjRestoreProgress progress = restoreContext.getProgress();
+
+        if (verbose) {
+            System.out.println("   - Starting thread " + threadID + " at: " + startTime.format(formatter));
+        }
 
         int downloadedOpscObjNum = 0;
+        int skippedOpscObjNum = 0;
         int failedOpscObjNum = 0;
+        long downloadedBytes = 0;
+
+        NFSObjCopyEngine copyEngine = restoreContext.getCopyEngine();
+        NFSObjRangeCopier rangeCopier = restoreContext.getRangeCopier();
+        NFSObjRestoreJournal restoreJournal = restoreContext.getRestoreJournal();
+        NFSObjChecksumVerifier checksumVerifier = restoreContext.getChecksumVerifier();
+        NFSObjConcurrencyController concurrencyController = restoreContext.getConcurrencyController();
+        NFSObjDurabilityPolicy durabilityPolicy = restoreContext.getDurabilityPolicy();
+        NFSObjDifferentialRestore differentialRestore = restoreContext.getDifferentialRestore();
+        NFSObjSstableCache sstableCache = restoreContext.getSstableCache();
+        NFSObjLivePlacement livePlacement = restoreContext.getLivePlacement();
+        NFSObjSetPublisher setPublisher = restoreContext.getSetPublisher();
+
+        // Copied files of this SSTable set that are journaled as completed when the set is synced
+        List<NFSObjDurabilityPolicy.Completion> unitCompletions = new ArrayList<>();
+
+        // Files of this SSTable set restored under their temporary names, renamed once the whole set is restored
+        List<NFSObjDurabilityPolicy.Completion> restoredFiles = new ArrayList<>();
+
+        // Live placement: the generation of the SSTable set must still be free when its files are written
+        if (livePlacement != null) {
+            try {
+                livePlacement.checkGeneration(restoreUnit, restoreJournal);
+            }
+            catch (IOException ioe) {
+                System.out.format("     [Thread %d] SSTable set \"%s\" can't be restored into its live data directory (%s)\n",
+                    threadID, restoreUnit.getUnitKey(), ioe.getMessage());
+
+                for ( NFSObjRestoreItem item : restoreUnit.getItems() ) {
+                    progress.recordFailed(restoreUnit.getHostId(), item.getSize());
+                }
+                return false;
+            }
+        }
+
+        List<NFSObjRestoreItem> items = restoreUnit.getItems();
+
+        for (int itemIdx = 0; itemIdx < items.size(); itemIdx++) {
+            NFSObjRestoreItem item = items.get(itemIdx);
 
-        for ( int i = 0; i < opscObjNames.length; i++ ) {
             try {
-                int sstblVersionStartPos = opscObjNames[i].indexOf(sstableVersions[i]);
-                String realSStableName = opscObjNames[i].substring(sstblVersionStartPos);
+                File finalFile = item.getLocalFile();
+                File nfsSrcFile = new File(item.getNfsObjName());
+
+                long srcSize = item.getSize();
+                long srcMtime = nfsSrcFile.lastModified();
 
-                String tmp = opscObjNames[i].substring(0, sstblVersionStartPos -1 );
-                int lastPathSeperatorPos = tmp.lastIndexOf('/');
+                // Completely restored from the same backup file by an earlier run
+                if ( restoreJournal.isCompleted(finalFile, srcSize, srcMtime) ) {
+                    skippedOpscObjNum++;
+                    restoreContext.getSkippedFiles().incrementAndGet();
+                    progress.recordSkipped(restoreUnit.getHostId(), srcSize);
 
-                String parentPathStr = tmp.substring(0, lastPathSeperatorPos);
-                parentPathStr = parentPathStr.substring(parentPathStr.indexOf(DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR));
+                    if (verbose) {
+                        System.out.format("     [Thread %d] \"%s\" already restored by an earlier run, skipped\n", threadID, item);
+                    }
+                    continue;
+                }
+
+                // Differential restore: the local copy is already the same as the backup file
+                if ( (differentialRestore != null) &&
+                     differentialRestore.checkUnchanged(item, restoreUnit, srcSize, srcMtime, restoreJournal) ) {
+                    skippedOpscObjNum++;
+                    restoreContext.getSkippedFiles().incrementAndGet();
+                    progress.recordSkipped(restoreUnit.getHostId(), srcSize);
+
+                    if (verbose) {
+                        System.out.format("     [Thread %d] \"%s\" unchanged in the local target, skipped\n", threadID, item);
+                    }
+                    continue;
+                }
 
-                File localFile = new File(downloadHomeDir + "/" +
-                     ( noTargetDirStruct ? "" :
-                        (parentPathStr + "/" + keyspaceNames[i] + "/" + tableNames[i] + "/") ) +
-                     realSStableName );
+                // The file is restored under a temporary name, and only renamed to its final name with its SSTable set
+                File localFile = NFSObjSetPublisher.getTempFile(finalFile);
+                NFSObjRestoreItem tempItem = item.withLocalFile(localFile);
 
+                // Restored by an earlier run that didn't get to publish the SSTable set
+                if ( restoreJournal.isCompleted(localFile, srcSize, srcMtime) ) {
+                    NFSObjDurabilityPolicy.Completion completion = new NFSObjDurabilityPolicy.Completion(
+                        localFile, srcSize, srcMtime, restoreJournal.getChecksum(localFile));
 
-                File nfsSrcFile = new File(opscObjNames[i]);
+                    completion.resumed();
+                    restoredFiles.add(completion);
 
-                FileUtils.copyFile(nfsSrcFile, localFile);
+                    skippedOpscObjNum++;
+                    restoreContext.getSkippedFiles().incrementAndGet();
+                    setPublisher.recordResumed();
+                    progress.recordSkipped(restoreUnit.getHostId(), srcSize);
 
-                downloadedOpscObjNum++;
+                    if (verbose) {
+                        System.out.format("     [Thread %d] \"%s\" already restored by an earlier run (not published yet), skipped\n",
+                            threadID, item);
+                    }
+                    continue;
+                }
 
-                System.out.format("     [Thread %d] download of \"%s\" completed \n", threadID,
-                    opscObjNames[i] + " [keyspace: " + keyspaceNames[i] + "; table: " + tableNames[i] + "]");
-                if (fileSizeChk) {
-                    System.out.format("        >>> %d of %d bytes transferred.\n",
-                        localFile.length(),
-                        opscObjSizes[i]);
+                // Only files missing from the local SSTable cache are copied from NFS (journaled as started
+                // either way, so that a rerun knows the file as written by this restore)
+                if (sstableCache != null) {
+                    restoreJournal.recordStarted(localFile, srcSize, srcMtime);
+                }
+
+                if ( (sstableCache != null) && sstableCache.restore(tempItem, srcSize, srcMtime) ) {
+                    NFSObjDurabilityPolicy.Completion completion =
+                        new NFSObjDurabilityPolicy.Completion(localFile, srcSize, srcMtime, null);
+
+                    durabilityPolicy.fileCompleted(completion, unitCompletions, restoreJournal);
+                    restoredFiles.add(completion);
+
+                    downloadedOpscObjNum++;
+                    progress.recordDownloaded(restoreUnit.getHostId(), srcSize, 0);
+
+                    if (verbose) {
+                        System.out.format("     [Thread %d] \"%s\" restored from the local SSTable cache\n", threadID, item);
+                    }
+                    continue;
+                }
+
+                // Checksum computed while the file is copied, verified against the reference checksum afterwards
+                NFSObjChecksumVerifier.Reference checksumRef = null;
+                NFSObjChecksum checksum = null;
+                if (checksumVerifier != null) {
+                    checksumRef = checksumVerifier.getReference(item, restoreUnit);
+                    checksum = NFSObjChecksum.create(checksumRef.algorithm);
+                }
+
+                // With adaptive concurrency, only as many files as the controller allows are copied at a time
+                if (concurrencyController != null) {
+                    concurrencyController.acquire();
+                }
+
+                long fileBytes = 0;
+                long fileStartNanos = System.nanoTime();
+
+                try {
+                    // Large files (e.g. big Data.db files) are copied as byte ranges by multiple range workers
+                    if ( rangeCopier.shouldSplit(srcSize) ) {
+                        restoreJournal.recordStarted(localFile, srcSize, srcMtime);
+
+                        fileBytes = rangeCopier.copy(nfsSrcFile, localFile, restoreJournal, srcMtime, checksum);
+                    }
+                    else {
+                        // Continue a copy that an earlier run didn't finish
+                        long resumeOffset = restoreJournal.getResumeOffset(localFile, srcSize, srcMtime);
+                        if (resumeOffset > 0) {
+                            restoreContext.getResumedFiles().incrementAndGet();
+
+                            System.out.format("     [Thread %d] continue download of \"%s\" from byte offset %d\n",
+                                threadID, item, resumeOffset);
+                        }
+
+                        restoreJournal.recordStarted(localFile, srcSize, srcMtime);
+
+                        fileBytes = copyEngine.copy(nfsSrcFile, localFile, resumeOffset, checksum);
+                    }
+                }
+                finally {
+                    if (concurrencyController != null) {
+                        concurrencyController.release();
+                        concurrencyController.recordFile(fileBytes, System.nanoTime() - fileStartNanos);
+                    }
+                }
+
+                downloadedBytes += fileBytes;
+
+                // A corrupted copy is removed, so that a rerun copies the file again
+                if ( (checksum != null) && !checksumVerifier.verify(localFile, checksumRef, checksum) ) {
+                    localFile.delete();
+                    throw new IOException("Checksum mismatch for \"" + localFile.getAbsolutePath() + "\"");
+                }
+
+                if (sstableCache != null) {
+                    sstableCache.add(tempItem, srcSize);
+                }
+
+                // Journaled as completed once synced, according to the fsync policy
+                NFSObjDurabilityPolicy.Completion completion =
+                    new NFSObjDurabilityPolicy.Completion(localFile, srcSize, srcMtime,
+                        (checksum == null) ? null : checksum.toString());
+
+                durabilityPolicy.fileCompleted(completion, unitCompletions, restoreJournal);
+                restoredFiles.add(completion);
+
+                downloadedOpscObjNum++;
+                progress.recordDownloaded(restoreUnit.getHostId(), srcSize, fileBytes);
+
+                if (verbose) {
+                    System.out.format("     [Thread %d] download of \"%s\" completed \n", threadID, item);
+                    if (restoreContext.isFileSizeChk()) {
+                        System.out.format("        >>> %d of %d bytes transferred.\n",
+                            localFile.length(),
+                            item.getSize());
+                    }
                 }
             }
             catch ( IOException ioe) {
-                System.out.format("     [Thread %d] download of \"%s\" encounters IO Exception\n", threadID,
-                    opscObjNames[i] + "[keyspace: " + keyspaceNames[i] + "; table: " + tableNames[i] + "]");
+                System.out.format("     [Thread %d] download of \"%s\" encounters IO Exception (%s)\n",
+                    threadID, item, ioe.getMessage());
                 failedOpscObjNum++;
+                progress.recordFailed(restoreUnit.getHostId(), item.getSize());
+            }
+            catch ( InterruptedException ie ) {
+                // Cancelled (download timeout) while waiting for a copy permit: this and the remaining
+                // files of the SSTable set are not copied
+                Thread.currentThread().interrupt();
+
+                System.out.format("     [Thread %d] download of SSTable set \"%s\" cancelled, %d files not copied\n",
+                    threadID, restoreUnit.getUnitKey(), items.size() - itemIdx);
+
+                for ( NFSObjRestoreItem remainingItem : items.subList(itemIdx, items.size()) ) {
+                    failedOpscObjNum++;
+                    progress.recordFailed(restoreUnit.getHostId(), remainingItem.getSize());
+                }
+                break;
             }
             catch ( Exception ex ) {
                 ex.printStackTrace();
-                System.out.format("     [Thread %d] download of \"%s\" failed - unkown error\n", threadID,
-                    opscObjNames[i] + "[keyspace: " + keyspaceNames[i] + "; table: " + tableNames[i] + "]");
-                ex.printStackTrace();
+                System.out.format("     [Thread %d] download of \"%s\" failed - unkown error\n", threadID, item);
                 failedOpscObjNum++;
+                progress.recordFailed(restoreUnit.getHostId(), item.getSize());
             }
         }
 
-        LocalDateTime endTime = LocalDateTime.now();
+        boolean unitSynced = true;
+
+        try {
+            durabilityPolicy.unitCompleted(unitCompletions, restoreJournal);
+        }
+        catch (IOException ioe) {
+            // Not journaled as completed: a rerun continues (and verifies) these files
+            System.out.format("     [Thread %d] fsync of %d downloaded files encounters IO Exception (%s)\n",
+                threadID, unitCompletions.size(), ioe.getMessage());
+            progress.recordFailedAfterDownload(restoreUnit.getHostId(), unitCompletions.size());
+            unitSynced = false;
+        }
 
-        Duration duration = Duration.between(startTime, endTime);
+        boolean unitRestored = (failedOpscObjNum == 0) && unitSynced;
 
-        System.out.format("   - Existing Thread %d at %s (duration: %d seconds): %d of %d OpsCenter SSTable backup files downloaded, %d failed.\n",
-            threadID,
-            endTime.format(formatter),
-            duration.getSeconds(),
-            downloadedOpscObjNum,
-            opscObjNames.length,
-            failedOpscObjNum
-        );
+        // The SSTable set only becomes visible under its final names once all of its files are restored
+        if (unitRestored) {
+            try {
+                setPublisher.publish(restoreUnit, restoredFiles,
+                    (livePlacement != null) && livePlacement.isWrittenDirectly(restoreUnit),
+                    durabilityPolicy, restoreJournal, verbose);
+            }
+            catch (IOException ioe) {
+                System.out.format("     [Thread %d] renaming SSTable set \"%s\" to its final names encounters IO Exception (%s)\n",
+                    threadID, restoreUnit.getUnitKey(), ioe.getMessage());
+                progress.recordFailedAfterDownload(restoreUnit.getHostId(), restoreUnit.getItems().size());
+                unitRestored = false;
+            }
+        }
+
+        // Live placement: a staged SSTable set only goes into the live data directory once all of its files are restored
+        if ( (livePlacement != null) && unitRestored ) {
+            try {
+                livePlacement.publish(restoreUnit, restoreJournal, durabilityPolicy, verbose);
+            }
+            catch (IOException ioe) {
+                System.out.format("     [Thread %d] linking SSTable set \"%s\" into its live data directory encounters IO Exception (%s)\n",
+                    threadID, restoreUnit.getUnitKey(), ioe.getMessage());
+                progress.recordFailedAfterDownload(restoreUnit.getHostId(), restoreUnit.getItems().size());
+                unitRestored = false;
+            }
+        }
+
+        if (verbose) {
+            LocalDateTime endTime = LocalDateTime.now();
+
+            Duration duration = Duration.between(startTime, endTime);
+
+            System.out.format("   - Existing Thread %d at %s (duration: %d seconds): %d of %d OpsCenter SSTable backup files downloaded, %d skipped, %d failed " +
+                    "(%d bytes, %.2f MB/s with \"%s\" copy engine).\n",
+                threadID,
+                endTime.format(formatter),
+                duration.getSeconds(),
+                downloadedOpscObjNum,
+                restoreUnit.getItems().size(),
+                skippedOpscObjNum,
+                failedOpscObjNum,
+                downloadedBytes,
+                (duration.toMillis() == 0) ? 0.0d : (downloadedBytes * 1000.0d / duration.toMillis() / (1024 * 1024)),
+                copyEngine.getName()
+            );
+        }
+
+        return unitRestored;
     }
 }
 
@@ -138,71 +373,136 @@ public class DseOpscNFSRestore {
     private static Properties CONFIGPROP = null;
     private static boolean debugOpt = false;
 
+    // Local backup catalog (null: backup.json files are looked up and parsed on NFS every time)
+    private static volatile NFSObjBackupCatalog backupCatalog = null;
+
+    // Sizes of the NFS backup files, resolved in bulk and cached for the run
+    private static NFSObjFileSizeResolver fileSizeResolver = null;
+
+    // Differential restore against the existing local target ("-dif"; null: every planned file is copied)
+    private static NFSObjDifferentialRestore differentialRestore = null;
+
+    // Restore into the live data directories of the tables ("-pl live"), instead of the local download home directory
+    private static boolean livePlacementOpt = false;
+
+    // Restore only the SSTable sets that overlap the given token ranges ("-tr"; null: all SSTable sets)
+    private static NFSObjTokenRangeFilter tokenRangeFilter = null;
+
 
     /**
-     * Get the full file path of the "backup.json" file that corresponds
-     * to the specified DSE Host ID and OpsCenter backup time
+     * Get the time index of the OpsCenter backups of the specified DSE Host ID, from the local
+     * backup catalog when it is enabled, otherwise from the backup directory names on NFS
      *
      * @param hostId
-     * @param opscBckupTimeGmt
      * @return
+     * @throws IOException
      */
-    static Path getMyBackupJson(String hostId,
-                                ZonedDateTime opscBckupTimeGmt)
+    static NFSObjBackupTimeIndex getBackupTimeIndex(String hostId) throws IOException
     {
-        DateTimeFormatter opscObjTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss-z");
-        String opscBckupTimeGmtStr = opscBckupTimeGmt.format(opscObjTimeFormatter);
-
-        String nodeHomeDirString =
-            CONFIGPROP.get(DseOpscNFSRestoreUtils.CFG_KEY_OPSC_NFS_BKUP_HOMEDIR) + "/" +
-            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR + "/" +
-            hostId;
+        NFSObjBackupCatalog catalog = backupCatalog;
 
-        Path nodeHomeDirPath = Paths.get(nodeHomeDirString);
+        if (catalog != null) {
+            try {
+                return catalog.getTimeIndex(hostId);
+            }
+            catch (IOException ioe) {
+                System.out.println("  WARN: Failed to update the local backup catalog (" + ioe.getMessage() +
+                    "); reading " + DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE + " files from NFS instead.");
+                backupCatalog = null;
+            }
+        }
 
-        IOFileFilter fileFilter = FileFilterUtils.nameFileFilter(DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE);
-        IOFileFilter dirFilter = FileFilterUtils.prefixFileFilter(DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_OPSC_MARKER_STR);
+        // <nfs_backup_home_dir>/snapshots/<host_id>
+        return NFSObjBackupTimeIndex.load(getNodeHomeDirPath(hostId));
+    }
 
-        Collection<File> opscBkupJsonFiles =
-            FileUtils.listFiles(nodeHomeDirPath.toFile(), fileFilter, dirFilter);
+    static Path getNodeHomeDirPath(String hostId) {
+        return Paths.get(CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_OPSC_NFS_BKUP_HOMEDIR),
+            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR,
+            hostId);
+    }
 
-        Path myBackupJsonFilePath = null;
+    /**
+     * Pass the SSTable entries of the backup of a host selected by the backup time that match
+     * the keyspace/table to the consumer, in backup.json order. The entries are read from the
+     * local backup catalog when it is enabled, otherwise from the backup.json file on NFS.
+     *
+     * @param hostId
+     * @param opscBckupTime     exact or nearest-before backup time
+     * @param keyspaceName
+     * @param tableName
+     * @param out           where to report which backup is used
+     * @param consumer
+     * @return total number of SSTable entries of the backup (matching or not); -1 if the host
+     *         has no backup at the specified backup time
+     * @throws IOException
+     */
+    static long readBackupRecords(String hostId,
+                                  NFSObjBackupTimeSpec opscBckupTime,
+                                  String keyspaceName,
+                                  String tableName,
+                                  PrintStream out,
+                                  Consumer<NFSObjBackupRecord> consumer) throws IOException
+    {
+        NFSObjBackupTimeIndex timeIndex = getBackupTimeIndex(hostId);
+        String backupDirName = opscBckupTime.resolve(timeIndex);
 
         if (debugOpt) {
-            System.out.println("     [DEBUG] getMyBackupJson() START ");
-            System.out.println("     [DEBUG]    opscBckupTimeGmtStr: " + opscBckupTimeGmtStr );
+            out.println("     [DEBUG] readBackupRecords() " + timeIndex.getBackupNum() + " backups, " +
+                "backup time (" + opscBckupTime + "): " + backupDirName);
+        }
+
+        if (backupDirName == null) {
+            return -1;
         }
 
-        for ( File file: opscBkupJsonFiles ) {
-            String absFilePath = file.getAbsolutePath();
+        if (opscBckupTime.getMode() == NFSObjBackupTimeSpec.Mode.BEFORE) {
+            out.println("  Using backup " + backupDirName + ".");
+        }
 
-            // <nfs_backup_home_dir>/snapshots/<host_id>/opscenter_<schedule_time_uuid_string>_yyyy-MM-dd-HH-mm-ss-UTC/backup.json
-            // <nfs_backup_home_dir>/snapshots/<host_id>/opscenter_adhoc_yyyy-MM-dd-HH-mm-ss-UTC/backup.json
-            int startOfTimeStampPos =
-                absFilePath.length()
-                - DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE.length()  // "backup.json"
-                - 1     // "/"
-                - 23;   // "yyyy-MM-dd-HH-mm-ss-UTC"
+        // Read the catalog that the index came from (it may have been disabled in the meantime)
+        NFSObjBackupCatalog catalog = backupCatalog;
+        if (catalog != null) {
+            return catalog.readRecords(hostId, backupDirName, keyspaceName, tableName, consumer);
+        }
 
-            String backupTimeShortZeroSecondStr =
-                absFilePath.substring(startOfTimeStampPos, startOfTimeStampPos + 16) + "-00-UTC";
+        Path myBackupJsonFilePath = getNodeHomeDirPath(hostId)
+            .resolve(backupDirName)
+            .resolve(DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE);
 
-            if (debugOpt) {
-                System.out.println("     [DEBUG]    absFilePath (backupTimeShortZeroSecondStr): " +
-                    absFilePath + "(" + backupTimeShortZeroSecondStr + ")");
-            }
+        return new NFSObjBackupJsonParser(keyspaceName, tableName).parse(myBackupJsonFilePath, consumer);
+    }
 
-            if (opscBckupTimeGmtStr.equalsIgnoreCase(backupTimeShortZeroSecondStr)) {
-                myBackupJsonFilePath = file.toPath();
-            }
+    /**
+     * List the OpsCenter backups of a host within a backup time range
+     *
+     * @param hostId
+     * @param opscBckupTime     backup time range
+     * @param indent
+     * @param out
+     * @return false if the backups of the host can't be listed
+     */
+    static boolean listBackupsForHost(String hostId, NFSObjBackupTimeSpec opscBckupTime, String indent, PrintStream out) {
+        assert (opscBckupTime.isRange());
+
+        NavigableMap<ZonedDateTime, String> backups;
+        try {
+            backups = opscBckupTime.resolveRange(getBackupTimeIndex(hostId));
+        }
+        catch (IOException ioe) {
+            out.println(indent + "ERROR: Failed to list OpsCenter backups of host (" + hostId + "): " + ioe.getMessage());
+            return false;
         }
 
-        if (debugOpt) {
-            System.out.println("     [DEBUG]    myBackupJsonFilePath: " + myBackupJsonFilePath);
-            System.out.println("     [DEBUG] getMyBackupJson() END ");
+        DateTimeFormatter obtFormatter = DateTimeFormatter.ofPattern(NFSObjBackupTimeSpec.OBT_TIME_FORMAT);
+
+        for (Map.Entry<ZonedDateTime, String> entry : backups.entrySet()) {
+            out.println(indent + "- " + entry.getKey().format(obtFormatter) + " [" + entry.getValue() + "]");
         }
 
-        return myBackupJsonFilePath;
+        out.format("%s%d backups (%s).\n", indent, backups.size(), opscBckupTime);
+
+        return true;
     }
 
     /**
@@ -270,71 +570,6 @@ public class DseOpscNFSRestore {
         return paths;
     }
 
-    /**
-     * Get mapping from "sstable_name" to "keyspace:table:sstable_unique_identifier:sstable_version"
-     *
-     * @param backupJsonFileName
-     * @return
-     */
-    static Map<String, String> getOpscUniquifierToKsTblMapping(String backupJsonFileName) {
-
-        LinkedHashMap<String, String> opscObjMaps = new LinkedHashMap<String, String>();
-
-        JSONParser jsonParser = new JSONParser();
-
-        try {
-            JSONObject jsonObject = (JSONObject) jsonParser.parse(new FileReader(backupJsonFileName));
-            JSONArray jsonItemArr = (JSONArray)jsonObject.get(DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR);
-
-            Iterator iterator = jsonItemArr.iterator();
-
-            while (iterator.hasNext()) {
-                String jsonItemContent = (String) ((JSONObject)iterator.next()).toJSONString();
-                jsonItemContent = jsonItemContent.substring(1, jsonItemContent.length() -1 );
-
-                String[] keyValuePairs = jsonItemContent.split(",");
-
-                String ssTableName = "";
-                String uniquifierStr = "";
-                String keyspaceName = "";
-                String tableName = "";
-                String ssTableVersion = "";
-
-                for ( String keyValuePair :  keyValuePairs ) {
-                    String key = keyValuePair.split(":")[0];
-                    String value = keyValuePair.split(":")[1];
-
-                    key = key.substring(1, key.length() - 1 );
-                    value = value.substring(1, value.length() - 1);
-
-                    if ( key.equalsIgnoreCase("uniquifier") ) {
-                        uniquifierStr = value;
-                    }
-                    else if ( key.equalsIgnoreCase("version") ) {
-                        ssTableVersion = value;
-                    }
-                    else if ( key.equalsIgnoreCase("keyspace") ) {
-                        keyspaceName = value;
-                    }
-                    else if ( key.equalsIgnoreCase("cf") ) {
-                        tableName = value;
-                    }
-                    else if ( key.equalsIgnoreCase("name") ) {
-                        ssTableName = value;
-                    }
-                }
-
-                opscObjMaps.put(ssTableName, keyspaceName + ":" + tableName + ":" + uniquifierStr + ":" + ssTableVersion);
-            }
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return opscObjMaps;
-    }
-
-
     /**
      * Get the local host IP (non 127.0.0.1)
      *
@@ -364,13 +599,13 @@ public class DseOpscNFSRestore {
     }
 
     /**
-     * Find my DSE host ID by checking with DSE cluster
+     * Find my DSE host ID by matching my IP with the listen/broadcast addresses of the DSE cluster hosts
      *
-     * @param dseClusterMetadata
+     * @param clusterTopology
      * @return
      */
-    static String findMyHostID(Metadata dseClusterMetadata) {
-        assert (dseClusterMetadata != null);
+    static String findMyHostID(NFSObjClusterTopology clusterTopology) {
+        assert (clusterTopology != null);
 
         String myHostId = null;
 
@@ -380,25 +615,12 @@ public class DseOpscNFSRestore {
             System.out.println("\nERROR: failed to get local host IP address!");
         }
         else {
-            boolean foundMatchingHost = false;
-            for (Host host : dseClusterMetadata.getAllHosts()) {
-                InetAddress listen_address = host.getListenAddress();
-                String listen_address_ip = (listen_address != null) ? listen_address.getHostAddress() : "";
+            NFSObjClusterTopology.HostInfo myHost = clusterTopology.findHostByAddress(localhostIp);
 
-                InetAddress broadcast_address = host.getBroadcastAddress();
-                String broadcast_address_ip = (broadcast_address != null) ? broadcast_address.getHostAddress() : "";
-
-                //System.out.println("listen_address: " + listen_address_ip);
-                //System.out.println("broadcast_address: " + broadcast_address_ip + "\n");
-
-                if (localhostIp.equals(listen_address_ip) || localhostIp.equals(broadcast_address_ip)) {
-                    myHostId = host.getHostId().toString();
-                    foundMatchingHost = true;
-                    break;
-                }
+            if (myHost != null) {
+                myHostId = myHost.hostId;
             }
-
-            if (!foundMatchingHost) {
+            else {
                 System.out.format("\nERROR: Failed to match my DSE host address by IP (NIC Name: %s; NIC IP: %s)!\n",
                         CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_IP_MATCHING_NIC),
                         localhostIp);
@@ -409,6 +631,41 @@ public class DseOpscNFSRestore {
     }
 
 
+    /**
+     * Create the local download home directory (and the download stripe directories) if it doesn't exist,
+     * or clear it if requested
+     *
+     * @param downloadHomeDir
+     * @param clearTargetDownDir
+     * @return false if it can't be created or cleared
+     */
+    static boolean prepareDownloadHomeDir(String downloadHomeDir, boolean clearTargetDownDir) {
+        List<String> downloadDirs = new ArrayList<>();
+        downloadDirs.add(downloadHomeDir);
+        downloadDirs.addAll(NFSObjDiskStriper.getStripeDirs(CONFIGPROP));
+
+        try {
+            for ( String downloadDir : downloadDirs ) {
+                File file = new File(downloadDir);
+
+                if ( Files.notExists(file.toPath()))  {
+                    FileUtils.forceMkdir(file);
+                }
+                else {
+                    if (clearTargetDownDir) {
+                        FileUtils.cleanDirectory(file);
+                    }
+                }
+            }
+        }
+        catch (IOException ioe) {
+            System.out.println("ERROR: Failed to create download home directory for OpsCenter backup objects!");
+            return false;
+        }
+
+        return true;
+    }
+
     /**
      * List (and download) Opsc backup objects for a specified host
      *
@@ -416,19 +673,22 @@ public class DseOpscNFSRestore {
      * @param hostId
      * @param download
      * @param threadNum
+     * @param concurrencyController
      * @param keyspaceName
      * @param tableName
-     * @param opscBckupTimeGmt
+     * @param opscBckupTime
      * @param clearTargetDownDir
      * @param noTargetDirStruct
+     * @return false if anything failed to download (or the download didn't complete)
      */
-    static void listDownloadNFSObjForHost(boolean fileSizeChk,
+    static boolean listDownloadNFSObjForHost(boolean fileSizeChk,
                                           String hostId,
                                           boolean download,
                                           int threadNum,
+                                          NFSObjConcurrencyController concurrencyController,
                                           String keyspaceName,
                                           String tableName,
-                                          ZonedDateTime opscBckupTimeGmt,
+                                          NFSObjBackupTimeSpec opscBckupTime,
                                           boolean clearTargetDownDir,
                                           boolean noTargetDirStruct )
     {
@@ -438,383 +698,926 @@ public class DseOpscNFSRestore {
             (download ? " and download" : "") +
             " OpsCenter NFS backup items for specified host (%s) ...\n", hostId);
 
+        // A backup time range only lists the backups of the host
+        if ( opscBckupTime.isRange() ) {
+            return listBackupsForHost(hostId, opscBckupTime, "  ", System.out);
+        }
+
         String downloadHomeDir = CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_LOCAL_DOWNLOAD_HOME);
 
         if (download) {
             assert (threadNum > 0);
 
             // If non-existing, create local home directory to hold download files
-            try {
-                File file = new File(downloadHomeDir);
+            if ( !prepareDownloadHomeDir(downloadHomeDir, clearTargetDownDir) ) {
+                return false;
+            }
+        }
 
-                if ( Files.notExists(file.toPath()))  {
-                    FileUtils.forceMkdir(file);
+        // Group the matching backup files by SSTable generation (one restore unit per SSTable, with all
+        // of its components - the number of components depends on the SSTable format)
+        NFSObjRestorePlanner restorePlanner = new NFSObjRestorePlanner();
+
+        if ( !planHostRestore(fileSizeChk, hostId, download, keyspaceName, tableName, opscBckupTime,
+                noTargetDirStruct ? downloadHomeDir : null, restorePlanner) ) {
+            return false;
+        }
+
+        if (fileSizeChk && debugOpt) {
+            fileSizeResolver.printStats();
+        }
+
+        boolean downloadSucceeded = true;
+
+        if (download && (restorePlanner.getUnitNum() > 0)) {
+            downloadSucceeded = downloadRestoreUnits(fileSizeChk, downloadHomeDir, threadNum, concurrencyController, restorePlanner);
+        }
+
+        System.out.println("\n");
+
+        return downloadSucceeded;
+    }
+
+    /**
+     * List (and download) Opsc backup objects for several hosts in one run: the backup files of all
+     * hosts are planned together and downloaded by one set of download threads, with one I/O throttle
+     * and one restore journal, each host into its own target directory:
+     *   &lt;local_download_home&gt;/snapshots/&lt;host_id&gt;/sstables/&lt;keyspace&gt;/&lt;table&gt;, or
+     *   &lt;local_download_home&gt;/&lt;host_id&gt; with "-nds"
+     *
+     * A host whose backup can't be found or read is reported, the other hosts are still restored.
+     *
+     * @param fileSizeChk
+     * @param hostIds
+     * @param download
+     * @param threadNum
+     * @param concurrencyController
+     * @param keyspaceName
+     * @param tableName
+     * @param opscBckupTime
+     * @param clearTargetDownDir
+     * @param noTargetDirStruct
+     * @return false if any host failed to list, or anything failed to download (or the download didn't complete)
+     */
+    static boolean listDownloadNFSObjForHosts(boolean fileSizeChk,
+                                              List<String> hostIds,
+                                              boolean download,
+                                              int threadNum,
+                                              NFSObjConcurrencyController concurrencyController,
+                                              String keyspaceName,
+                                              String tableName,
+                                              NFSObjBackupTimeSpec opscBckupTime,
+                                              boolean clearTargetDownDir,
+                                              boolean noTargetDirStruct)
+    {
+        assert ( (hostIds != null) && !hostIds.isEmpty() );
+
+        System.out.format("\nList" +
+            (download ? " and download" : "") +
+            " OpsCenter NFS backup items for %d specified hosts (%s) ...\n", hostIds.size(), String.join(", ", hostIds));
+
+        String downloadHomeDir = CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_LOCAL_DOWNLOAD_HOME);
+
+        if ( download && !opscBckupTime.isRange() ) {
+            assert (threadNum > 0);
+
+            if ( !prepareDownloadHomeDir(downloadHomeDir, clearTargetDownDir) ) {
+                return false;
+            }
+        }
+
+        NFSObjRestorePlanner restorePlanner = new NFSObjRestorePlanner();
+        List<String> failedHostIds = new ArrayList<>();
+
+        for ( String hostId : hostIds ) {
+            System.out.format("\n  Items for Host %s ...\n", hostId);
+
+            boolean hostSucceeded;
+
+            // A backup time range only lists the backups of each host
+            if ( opscBckupTime.isRange() ) {
+                hostSucceeded = listBackupsForHost(hostId, opscBckupTime, "    ", System.out);
+            }
+            else {
+                hostSucceeded = planHostRestore(fileSizeChk, hostId, download, keyspaceName, tableName, opscBckupTime,
+                    noTargetDirStruct ? (downloadHomeDir + "/" + hostId) : null, restorePlanner);
+            }
+
+            if (!hostSucceeded) {
+                failedHostIds.add(hostId);
+            }
+        }
+
+        if (fileSizeChk && debugOpt) {
+            fileSizeResolver.printStats();
+        }
+
+        if ( !failedHostIds.isEmpty() ) {
+            System.out.format("\nWARN: Failed to list OpsCenter backup items of %d of %d hosts (%s)%s.\n",
+                failedHostIds.size(),
+                hostIds.size(),
+                String.join(", ", failedHostIds),
+                (download && !opscBckupTime.isRange()) ? "; restoring the other hosts" : "");
+        }
+
+        boolean downloadSucceeded = failedHostIds.isEmpty();
+
+        if ( download && (restorePlanner.getUnitNum() > 0) ) {
+            if ( !downloadRestoreUnits(fileSizeChk, downloadHomeDir, threadNum, concurrencyController, restorePlanner) ) {
+                downloadSucceeded = false;
+            }
+        }
+
+        System.out.println("\n");
+
+        return downloadSucceeded;
+    }
+
+    /**
+     * List the Opsc backup objects of a host (at the specified backup time, matching the keyspace and
+     * table) and, for a download, add them to the restore plan
+     *
+     * @param fileSizeChk
+     * @param hostId
+     * @param download
+     * @param keyspaceName
+     * @param tableName
+     * @param opscBckupTime
+     * @param flatTargetDir     directory to download all files into ("-nds"), or null to keep the backup directory structure
+     * @param restorePlanner
+     * @return false if the backup of the host can't be found or read
+     */
+    static boolean planHostRestore(boolean fileSizeChk,
+                                   String hostId,
+                                   boolean download,
+                                   String keyspaceName,
+                                   String tableName,
+                                   NFSObjBackupTimeSpec opscBckupTime,
+                                   String flatTargetDir,
+                                   NFSObjRestorePlanner restorePlanner)
+    {
+        String downloadHomeDir = CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_LOCAL_DOWNLOAD_HOME);
+
+        String sstablePrefixString =
+            CONFIGPROP.get(DseOpscNFSRestoreUtils.CFG_KEY_OPSC_NFS_BKUP_HOMEDIR) + "/" +
+            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR + "/" +
+            hostId + "/" +
+            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR;
+
+        // <local_download_home>/snapshots/<host_id>/sstables
+        String localSstableHomeString = downloadHomeDir + "/" +
+            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR + "/" +
+            hostId + "/" +
+            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR;
+
+        // SSTable entries of the specified keyspace/table, listed (and planned) as they are read. File sizes
+        // are also needed to balance the download work by bytes. A download copies the actual files, so it
+        // doesn't rely on the sizes recorded in backup.json.
+        NFSObjFileSizeResolver.RecordWindow recordWindow = fileSizeResolver.newRecordWindow(sstablePrefixString,
+            fileSizeChk || download, !download, (backupRecord, opscObjName, opscObjSize) -> {
+                String ks = backupRecord.getKeyspaceName();
+                String tbl = backupRecord.getTableName();
+
+                System.out.println("  - " + opscObjName +
+                    ( !fileSizeChk ? "" : (" (size = " + opscObjSize + " bytes)") ) +
+                    " [keyspace: " + ks + "; table: " + tbl + "]");
+
+                if (download) {
+                    // <uniquifier>-mc-1-big-Data.db -> mc-1-big-Data.db
+                    String realSStableName = backupRecord.getSstableName();
+
+                    File localFile = new File(
+                        ( (flatTargetDir != null) ? flatTargetDir : (localSstableHomeString + "/" + ks + "/" + tbl) ) +
+                        "/" + realSStableName );
+
+                    restorePlanner.addItem(hostId, backupRecord.getObjName(),
+                        new NFSObjRestoreItem(opscObjName, ks, tbl, backupRecord.getSstableVersion(),
+                            realSStableName, opscObjSize, localFile));
                 }
-                else {
-                    if (clearTargetDownDir) {
-                        FileUtils.cleanDirectory(file);
-                    }
+            });
+        long numBackupJsonRecords;
+
+        try {
+            numBackupJsonRecords = readBackupRecords(hostId, opscBckupTime, keyspaceName, tableName, System.out, recordWindow);
+        }
+        catch (IOException ioe) {
+            System.out.println("ERROR: Failed to read " + DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE +
+                " file (" + ioe.getMessage() + ")!");
+
+            // What was planned before the error is not restored either
+            restorePlanner.removeHost(hostId);
+            return false;
+        }
+
+        if (numBackupJsonRecords < 0) {
+            System.out.format("ERROR: Failed to find %s file for host (%s) at backup time (%s)\n",
+                DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE,
+                hostId,
+                opscBckupTime);
+
+            return false;
+        }
+        else if (numBackupJsonRecords == 0) {
+            System.out.println("ERROR: Failed to get backup SSTable file list from " +
+                    DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE + " file!");
+            return false;
+        }
+
+        if ( !recordWindow.flush() ) {
+            System.out.println("ERROR: Interrupted while checking backup file sizes!");
+
+            restorePlanner.removeHost(hostId);
+            return false;
+        }
+
+        if (recordWindow.getRecordNum() == 0) {
+            System.out.println("  - Found no matching backup records for the specified conditions!.");
+        }
+
+        return true;
+    }
+
+    /**
+     * Download the planned restore units (of one or more hosts) with one set of download threads
+     * and one I/O throttle, copy engine, restore journal and progress tracking
+     *
+     * @param fileSizeChk
+     * @param downloadHomeDir
+     * @param threadNum
+     * @param concurrencyController
+     * @param restorePlanner
+     * @return false if anything failed to download (or the download didn't complete)
+     */
+    static boolean downloadRestoreUnits(boolean fileSizeChk,
+                                        String downloadHomeDir,
+                                        int threadNum,
+                                        NFSObjConcurrencyController concurrencyController,
+                                        NFSObjRestorePlanner restorePlanner)
+    {
+        boolean downloadSucceeded = true;
+
+        // One I/O throttle is shared by all download threads, so the read/write limits apply to the whole run
+        NFSObjIoThrottle ioThrottle = NFSObjIoThrottle.create(CONFIGPROP);
+
+        // Target file preallocation and when the restored files are fsynced
+        NFSObjDurabilityPolicy durabilityPolicy = NFSObjDurabilityPolicy.create(CONFIGPROP, Paths.get(downloadHomeDir));
+
+        // Keeps the restored files out of the page cache of the (running) DSE node, if configured
+        NFSObjCacheBypass cacheBypass = NFSObjCacheBypass.create(CONFIGPROP, durabilityPolicy);
+
+        // One copy engine instance is shared by all download threads so that its statistics cover the whole run
+        NFSObjCopyEngine copyEngine =
+            NFSObjCopyEngine.create(CONFIGPROP, ioThrottle, cacheBypass, durabilityPolicy);
+
+        NFSObjRangeCopier rangeCopier = new NFSObjRangeCopier(
+            DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+                DseOpscNFSRestoreUtils.CFG_KEY_RANGE_COPY_THRESHOLD_MB, 0) * 1024 * 1024,
+            DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+                DseOpscNFSRestoreUtils.CFG_KEY_RANGE_COPY_SIZE_MB, DseOpscNFSRestoreUtils.DEFAULT_RANGE_COPY_SIZE_MB) * 1024 * 1024,
+            ioThrottle,
+            cacheBypass,
+            durabilityPolicy,
+            concurrencyController);
+
+        // Restore journal - lets a rerun skip completed files and continue partially copied ones
+        NFSObjRestoreJournal restoreJournal;
+        try {
+            restoreJournal = NFSObjRestoreJournal.open(downloadHomeDir);
+        }
+        catch (IOException ioe) {
+            System.out.println("ERROR: Failed to open restore journal file under download home directory!");
+            return false;
+        }
+
+        // Checksum verification of the restored files (none by default)
+        String checksumAlgorithm =
+            CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_CHECKSUM_VERIFY, NFSObjChecksum.ALGO_NONE);
+
+        NFSObjChecksumVerifier checksumVerifier = null;
+        if ( !checksumAlgorithm.isEmpty() && !NFSObjChecksum.ALGO_NONE.equalsIgnoreCase(checksumAlgorithm) ) {
+            try {
+                checksumVerifier = new NFSObjChecksumVerifier(checksumAlgorithm);
+            }
+            catch (IllegalArgumentException iae) {
+                System.out.println("ERROR: " + iae.getMessage() + "!");
+                restoreJournal.close();
+                return false;
+            }
+        }
+
+        // Token range filter: only the SSTable sets that overlap the token ranges are restored
+        if (tokenRangeFilter != null) {
+            restorePlanner = tokenRangeFilter.filter(restorePlanner,
+                (int) DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+                    DseOpscNFSRestoreUtils.CFG_KEY_SIZE_CHECK_THREADS, DseOpscNFSRestoreUtils.DEFAULT_SIZE_CHECK_THREADS));
+        }
+
+        // Live placement: the planned SSTable sets get their live data directories and new generations
+        NFSObjLivePlacement livePlacement = null;
+        if (livePlacementOpt) {
+            try {
+                livePlacement = NFSObjLivePlacement.open(CONFIGPROP, downloadHomeDir);
+                restorePlanner = livePlacement.place(restorePlanner);
+            }
+            catch (IOException ioe) {
+                System.out.println("ERROR: Failed to place the SSTables in the live data directories (" + ioe.getMessage() + ")!");
+                restoreJournal.close();
+                return false;
+            }
+        }
+
+        // Several data disks: the SSTable sets are spread over them, with a worker queue per disk
+        NFSObjDiskStriper diskStriper = null;
+        if (livePlacement != null) {
+            diskStriper = livePlacement.getDiskStriper();
+        }
+        else {
+            try {
+                diskStriper = NFSObjDiskStriper.forDownload(CONFIGPROP, downloadHomeDir);
+                if (diskStriper != null) {
+                    restorePlanner = diskStriper.stripe(restorePlanner);
                 }
             }
             catch (IOException ioe) {
-                System.out.println("ERROR: Failed to create download home directory for OpsCenter backup objects!");
-                return;
+                System.out.println("ERROR: Failed to read the free space of the download stripe directories (" + ioe.getMessage() + ")!");
+                restoreJournal.close();
+                return false;
             }
         }
 
-        Map<String, String> opscUniquifierToKsTbls = new HashMap<String, String>();
+        // The restored files are also written under the live data directories or the download stripe directories
+        if (livePlacement != null) {
+            durabilityPolicy.addRootPaths(livePlacement.getDataDirs());
+        }
+        else if (diskStriper != null) {
+            durabilityPolicy.addRootPaths(diskStriper.getRoots());
+        }
+
+        // Local SSTable cache (none by default) - serves the files restored before, by this or another run
+        NFSObjSstableCache sstableCache = null;
+        try {
+            sstableCache = NFSObjSstableCache.open(CONFIGPROP);
+        }
+        catch (IOException ioe) {
+            System.out.println("WARN: Failed to open the local SSTable cache (" + ioe.getMessage() +
+                "), restoring without it.");
+        }
+
+        // Every SSTable set is restored under temporary names, and renamed to its final names once complete
+        NFSObjSetPublisher setPublisher = new NFSObjSetPublisher();
+
+        NFSObjRestoreProgress restoreProgress = new NFSObjRestoreProgress(
+            restorePlanner.getItemNum(), restorePlanner.getTotalBytes(), restorePlanner.getUnitNum());
+
+        // The SSTable sets of the tables listed in "table_priority" are restored first
+        List<String> tablePriority = NFSObjRestorePlanner.getTablePriority(CONFIGPROP);
+        List<NFSObjRestoreUnit> restoreUnits = restorePlanner.getUnitsByPriority(tablePriority);
+        for ( NFSObjRestoreUnit restoreUnit : restoreUnits ) {
+            restoreProgress.addUnit(restoreUnit.getHostId(), restoreUnit.getItems().size(), restoreUnit.getTotalBytes());
+        }
+
+        // Per-table completion hook (none by default) - brings every table online as soon as it is restored
+        NFSObjTableCompletion tableCompletion = NFSObjTableCompletion.create(CONFIGPROP);
+        if (tableCompletion != null) {
+            tableCompletion.addUnits(restoreUnits);
+
+            if ( tableCompletion.isJmx() && (livePlacement == null) ) {
+                System.out.println("WARN: The JMX table completion hook only loads the SSTables in the live data directories " +
+                    "of the tables; restore with \"-pl live\".");
+            }
+        }
+
+        NFSObjRestoreContext restoreContext =
+            new NFSObjRestoreContext(fileSizeChk, copyEngine, rangeCopier, restoreJournal, checksumVerifier,
+                concurrencyController, durabilityPolicy, differentialRestore, sstableCache, livePlacement, tableCompletion,
+                setPublisher, restoreProgress, debugOpt);
+
+        System.out.format("\n  %d SSTable backup files (%d bytes) in %d SSTable sets%s to download.\n",
+            restorePlanner.getItemNum(),
+            restorePlanner.getTotalBytes(),
+            restorePlanner.getUnitNum(),
+            (restorePlanner.getHostNum() > 1) ? String.format(" of %d hosts", restorePlanner.getHostNum()) : "");
+
+        if (tokenRangeFilter != null) {
+            tokenRangeFilter.printStats();
+        }
+        if (livePlacement != null) {
+            livePlacement.printPlan();
+        }
+        if (diskStriper != null) {
+            diskStriper.printPlan();
+        }
+        if ( !tablePriority.isEmpty() ) {
+            System.out.format("  Table priority: %s first.\n", String.join(", ", tablePriority));
+        }
+
+        // The read/write limits can be changed through the throttle control file while the restore runs
+        Path throttleControlFilePath = Paths.get(downloadHomeDir, DseOpscNFSRestoreUtils.IO_THROTTLE_CONTROL_FILE);
+        System.out.format("  I/O throttle: %s (change at runtime through \"%s\").\n",
+            ioThrottle.getLimitString(), throttleControlFilePath);
+        ioThrottle.startControlFileWatcher(throttleControlFilePath);
+
+        //
+        // Start multiple threads to process data ingestion concurrently.
+        //
+        // The work-stealing pool runs externally submitted tasks in submission order, so submitting the
+        // SSTable sets largest-first (within the table priority order) makes all threads finish close
+        // together. Byte ranges of large files are forked into the same pool and get picked up by idle
+        // threads.
+        //
+        // With "-d auto", the pool has as many threads as the upper bound, and the concurrency
+        // controller decides how many of them copy at a time.
+        //
+        // With disk striping, every disk has a pool of its own, which only writes to that disk. The
+        // thread budget is split over the pools (at least one thread per disk), so that striping doesn't
+        // multiply the number of download threads.
+        //
+        int queueNum = (diskStriper != null) ? diskStriper.getRootNum() : 1;
+        int threadBudget = (concurrencyController != null) ? concurrencyController.getMaxLimit() : threadNum;
+
+        List<ExecutorService> executors = new ArrayList<>();
+        for (int i = 0; i < queueNum; i++) {
+            int queueThreadNum = threadBudget / queueNum + ((i < threadBudget % queueNum) ? 1 : 0);
+            executors.add(Executors.newWorkStealingPool(Math.max(1, queueThreadNum)));
+        }
+
+        if (queueNum > threadBudget) {
+            System.out.format("   WARN: %d download threads for %d download directories, using one thread per directory.\n",
+                threadBudget, queueNum);
+        }
+
+        if (concurrencyController != null) {
+            concurrencyController.start(ioThrottle);
+        }
+
+        List<Future<?>> workerFutures = new ArrayList<>();
 
-        Path myBackupJsonFilePath = getMyBackupJson(hostId, opscBckupTimeGmt);
+        int threadId = 0;
+        for ( NFSObjRestoreUnit restoreUnit : restoreUnits ) {
+            Runnable worker = new NFSObjDownloadRunnable(threadId, restoreUnit, restoreContext);
 
-        if (myBackupJsonFilePath == null) {
-            DateTimeFormatter opscObjTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss-z");
-            String opscBckupTimeGmtStr = opscBckupTimeGmt.format(opscObjTimeFormatter);
+            threadId++;
 
-            System.out.format("ERROR: Failed to find %s file for host (%s) at backup time (%s)\n",
-                DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE,
-                hostId,
-                opscBckupTimeGmtStr);
+            int queueIndex = (diskStriper != null) ?
+                diskStriper.getQueueIndex(restoreUnit.getItems().get(0).getLocalFile().toPath()) : 0;
 
-            return;
+            workerFutures.add(executors.get(queueIndex).submit(worker));
         }
-        else {
-            opscUniquifierToKsTbls =
-                getOpscUniquifierToKsTblMapping(myBackupJsonFilePath.toFile().getAbsolutePath());
+
+        for ( ExecutorService executor : executors ) {
+            executor.shutdown();
         }
 
+        // Wait for the download tasks to complete (no busy-wait), with a progress line at every interval
+        long progressIntervalSec = DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+            DseOpscNFSRestoreUtils.CFG_KEY_PROGRESS_INTERVAL_SEC, DseOpscNFSRestoreUtils.DEFAULT_PROGRESS_INTERVAL_SEC);
+        long downloadTimeoutMin = DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+            DseOpscNFSRestoreUtils.CFG_KEY_DOWNLOAD_TIMEOUT_MIN, 0);
 
-        if ( opscUniquifierToKsTbls.isEmpty() ) {
-            System.out.println("ERROR: Failed to get backup SSTable file list from " +
-                    DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE + " file!");
-            return;
+        boolean downloadCompleted;
+        boolean downloadInterrupted = false;
+        try {
+            downloadCompleted = restoreProgress.awaitCompletion(
+                TimeUnit.SECONDS.toMillis(progressIntervalSec), TimeUnit.MINUTES.toMillis(downloadTimeoutMin));
+        }
+        catch (InterruptedException ie) {
+            downloadCompleted = false;
+            downloadInterrupted = true;
         }
 
+        if (!downloadCompleted) {
+            // The restore journal keeps what is done so far; a rerun (without "-cls") continues from there
+            if (downloadInterrupted) {
+                System.out.println("ERROR: Download was interrupted, cancelling the remaining downloads!");
+            }
+            else {
+                System.out.format("ERROR: Download did not complete within %d minutes, cancelling the remaining downloads!\n",
+                    downloadTimeoutMin);
+            }
 
-        // Download OpsCenter backup SSTables
-        int numSstableBkupItems = 0;
+            for ( ExecutorService executor : executors ) {
+                executor.shutdownNow();
+            }
 
-        //
-        // Start multiple threads to process data ingestion concurrently
-        //
-        ExecutorService executor = Executors.newFixedThreadPool(threadNum);
-
-        // For sstable download - we use mulitple threads per sstable set. One set includes the following files:
-        // > mc-<#>-big-CompresssionInfo.db
-        // > mc-<#>-big-Data.db
-        // > mc-<#>-big-Filter.db
-        // > mc-<#>-big-Index.db
-        // > mc-<#>-big-Statistics.db
-        // > mc-<#>-big-Summary.db
-        final int SSTABLE_SET_FILENUM = 6;
-
-        String[] opscSstableObjKeyNames = new String[SSTABLE_SET_FILENUM];
-        long[] opscSstableObjKeySizes = new long[SSTABLE_SET_FILENUM];
-        String[] opscSstableKSNames = new String[SSTABLE_SET_FILENUM];
-        String[] opscSstableTBLNames = new String[SSTABLE_SET_FILENUM];
-        String[] opscSstableVersions = new String[SSTABLE_SET_FILENUM];
-
-        int i = 0;
-        int threadId = 0;
+            try {
+                for ( ExecutorService executor : executors ) {
+                    executor.awaitTermination(DseOpscNFSRestoreUtils.DOWNLOAD_CANCEL_WAIT_SEC, TimeUnit.SECONDS);
+                }
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
 
-        String sstablePrefixString =
-            CONFIGPROP.get(DseOpscNFSRestoreUtils.CFG_KEY_OPSC_NFS_BKUP_HOMEDIR) + "/" +
-            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR + "/" +
-            hostId + "/" +
-            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR;
+            downloadSucceeded = false;
+        }
+        else {
+            // A download task that died unexpectedly (e.g. an Error) shows up in its future
+            for (Future<?> workerFuture : workerFutures) {
+                try {
+                    workerFuture.get();
+                }
+                catch (ExecutionException | InterruptedException e) {
+                    System.out.println("ERROR: A download thread failed unexpectedly (" + e.getCause() + ").");
+                    downloadSucceeded = false;
+                }
+            }
+        }
 
+        // The hooks of the last completed tables may still be running
+        if (tableCompletion != null) {
+            try {
+                tableCompletion.close();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
 
-        for ( String sstableObjName : opscUniquifierToKsTbls.keySet() )  {
+        // Fsync policy "end": one sync of all downloaded files (also after a timeout, for the files that made it)
+        try {
+            int syncedFileNum = durabilityPolicy.runCompleted(restoreJournal);
+            if (syncedFileNum > 0) {
+                System.out.format("  %d downloaded files synced to disk.\n", syncedFileNum);
+            }
+        }
+        catch (IOException ioe) {
+            System.out.println("ERROR: Failed to sync the downloaded files to disk (" + ioe.getMessage() + ")!");
+            downloadSucceeded = false;
+        }
 
-            String opscObjName = sstablePrefixString + "/" + sstableObjName;
+        restoreProgress.printProgress();
+        restoreProgress.printHostSummary();
 
-            String[] ksTblUniquifer = opscUniquifierToKsTbls.get(sstableObjName).split(":");
-            String ks = ksTblUniquifer[0];
-            String tbl = ksTblUniquifer[1];
-            String version = ksTblUniquifer[3];
+        if (restoreProgress.getFailedFiles() > 0) {
+            downloadSucceeded = false;
+        }
 
-            boolean filterKsTbl = keyspaceName.equalsIgnoreCase(ks);
-            if ((tableName != null) && !tableName.isEmpty()) {
-                filterKsTbl = filterKsTbl && tableName.equalsIgnoreCase(tbl);
+        // Only a complete restore tells which local SSTable files are no longer in the backup
+        if ( (differentialRestore != null) && differentialRestore.isPrune() && downloadSucceeded ) {
+            try {
+                differentialRestore.prune(restorePlanner, debugOpt);
             }
+            catch (IOException ioe) {
+                System.out.println("ERROR: Failed to remove the local SSTable files that are not in the backup (" +
+                    ioe.getMessage() + ")!");
+                downloadSucceeded = false;
+            }
+        }
 
-            if (filterKsTbl) {
-                numSstableBkupItems++;
-
-                long opscObjSize = 0;
-                if (fileSizeChk) {
-                    try {
-                        opscObjSize = Files.size(Paths.get(opscObjName));
-                    }
-                    catch (IOException ioe) {
-                        opscObjSize = -1;
-                    }
-                }
-
-                System.out.println("  - " + opscObjName +
-                    ( !fileSizeChk ? "" : (" (size = " + opscObjSize + " bytes)") ) +
-                    " [keyspace: " + ks + "; table: " + tbl + "]");
+        restoreJournal.close();
+        ioThrottle.stopControlFileWatcher();
+        if (sstableCache != null) {
+            try {
+                sstableCache.close();
+            }
+            catch (IOException ioe) {
+                System.out.println("WARN: Failed to write the local SSTable cache index (" + ioe.getMessage() + ").");
+            }
+        }
+        if (concurrencyController != null) {
+            concurrencyController.stop();
+        }
 
-                opscSstableObjKeyNames[i % SSTABLE_SET_FILENUM] = opscObjName;
-                opscSstableObjKeySizes[i % SSTABLE_SET_FILENUM] = opscObjSize;
-                opscSstableKSNames[i % SSTABLE_SET_FILENUM] = ks;
-                opscSstableTBLNames[i % SSTABLE_SET_FILENUM] = tbl;
-                opscSstableVersions[i % SSTABLE_SET_FILENUM] = version;
+        System.out.println();
+        if ( (restoreContext.getSkippedFiles().get() > 0) || (restoreContext.getResumedFiles().get() > 0) ) {
+            System.out.format("  Restore journal: %d files already restored by an earlier run or unchanged locally (skipped), %d files continued.\n",
+                restoreContext.getSkippedFiles().get(),
+                restoreContext.getResumedFiles().get());
+        }
+        if (differentialRestore != null) {
+            differentialRestore.printStats();
+        }
+        if (sstableCache != null) {
+            sstableCache.printStats();
+        }
+        if ( (livePlacement != null) && (livePlacement.getLinkedSets() > 0) ) {
+            livePlacement.printStats();
+        }
+        if (setPublisher.getPublishedSets() > 0) {
+            setPublisher.printStats();
+        }
+        if (tableCompletion != null) {
+            tableCompletion.printStats();
+        }
+        copyEngine.printStats();
 
-                if (download) {
-                    if ((i > 0) && ((i + 1) % SSTABLE_SET_FILENUM == 0)) {
-                        Runnable worker = new NFSObjDownloadRunnable(
-                            threadId,
-                            fileSizeChk,
-                            downloadHomeDir,
-                            opscSstableObjKeyNames,
-                            opscSstableObjKeySizes,
-                            opscSstableKSNames,
-                            opscSstableTBLNames,
-                            opscSstableVersions,
-                            noTargetDirStruct);
-
-                        threadId++;
-
-                        opscSstableObjKeyNames = new String[SSTABLE_SET_FILENUM];
-                        opscSstableObjKeySizes = new long[SSTABLE_SET_FILENUM];
-                        opscSstableKSNames = new String[SSTABLE_SET_FILENUM];
-                        opscSstableTBLNames = new String[SSTABLE_SET_FILENUM];
-                        opscSstableVersions = new String[SSTABLE_SET_FILENUM];
-
-                        executor.execute(worker);
-                    }
+        if (rangeCopier.getCopiedFiles() > 0) {
+            rangeCopier.printStats();
+        }
 
-                    i++;
-                }
-            }
+        if (checksumVerifier != null) {
+            checksumVerifier.printStats();
         }
 
-        if ( download && ( threadId  < (numSstableBkupItems / SSTABLE_SET_FILENUM) ) ) {
-            Runnable worker = new NFSObjDownloadRunnable(
-                threadId,
-                fileSizeChk,
-                downloadHomeDir,
-                opscSstableObjKeyNames,
-                opscSstableObjKeySizes,
-                opscSstableKSNames,
-                opscSstableTBLNames,
-                opscSstableVersions,
-                noTargetDirStruct);
+        ioThrottle.printStats();
 
-            executor.execute(worker);
+        if ( cacheBypass.isEnabled() ) {
+            cacheBypass.printStats();
         }
 
-        executor.shutdown();
-
-        while (!executor.isTerminated()) {
+        if ( durabilityPolicy.isPreallocate() ||
+             !NFSObjDurabilityPolicy.FSYNC_NONE.equals(durabilityPolicy.getFsyncPolicy()) ) {
+            durabilityPolicy.printStats();
         }
 
-        if (numSstableBkupItems == 0) {
-            System.out.println("  - Found no matching backup records for the specified conditions!.");
+        if (concurrencyController != null) {
+            concurrencyController.printStats();
         }
 
-        System.out.println("\n");
+        return downloadSucceeded;
     }
 
     /**
      * List (and download) Opsc backup objects for myself - the host that runs this program
      *
-     * @param dseClusterMetadata
+     * @param clusterTopology
      * @param fileSizeChk
      * @param download
      * @param threadNum
+     * @param concurrencyController
      * @param hostIDStr
      * @param keyspaceName
      * @param tableName
-     * @param opscBckupTimeGmt
+     * @param opscBckupTime
      * @param clearTargetDownDir
      * @param noTargetDirStruct
+     * @return false if anything failed to download (or the download didn't complete)
      */
-    static void listDownloadNFSObjForMe(Metadata dseClusterMetadata,
+    static boolean listDownloadNFSObjForMe(NFSObjClusterTopology clusterTopology,
                                         boolean fileSizeChk,
                                         boolean download,
                                         int threadNum,
+                                        NFSObjConcurrencyController concurrencyController,
                                         String hostIDStr,
                                         String keyspaceName,
                                         String tableName,
-                                        ZonedDateTime opscBckupTimeGmt,
+                                        NFSObjBackupTimeSpec opscBckupTime,
                                         boolean clearTargetDownDir,
                                         boolean noTargetDirStruct) {
         String myHostId = hostIDStr;
 
         // When not providing DSE host ID explicitly, find it by checking with DSE cluster
         if ( (hostIDStr == null) || (hostIDStr.isEmpty()) ) {
-            myHostId = findMyHostID(dseClusterMetadata);
+            myHostId = findMyHostID(clusterTopology);
         }
 
         if ( myHostId != null && !myHostId.isEmpty() ) {
-            listDownloadNFSObjForHost(
+            return listDownloadNFSObjForHost(
                 fileSizeChk,
                 myHostId,
                 download,
                 threadNum,
+                concurrencyController,
                 keyspaceName,
                 tableName,
-                opscBckupTimeGmt,
+                opscBckupTime,
                 clearTargetDownDir,
                 noTargetDirStruct
             );
         }
+
+        return false;
     }
 
     /**
      * List Opsc backup objects for all DSE cluster hosts
      *
-     * @param dseClusterMetadata
+     * @param clusterTopology
      * @param fileSizeChk
      * @param keyspaceName
      * @param tableName
-     * @param opscBckupTimeGmt
+     * @param opscBckupTime
+     * @param jsonReportFile    null: no JSON report
      */
-    static void listNFSObjtForCluster(Metadata dseClusterMetadata,
+    static void listNFSObjtForCluster(NFSObjClusterTopology clusterTopology,
                                       boolean fileSizeChk,
                                       String keyspaceName,
                                       String tableName,
-                                      ZonedDateTime opscBckupTimeGmt) {
+                                      NFSObjBackupTimeSpec opscBckupTime,
+                                      String jsonReportFile) {
 
         System.out.format("\nList OpsCenter NFS backup items for DSE cluster (%s) [%s] ...\n",
-                dseClusterMetadata.getClusterName(),
+                clusterTopology.getClusterName(),
                 ((tableName == null) || (tableName.isEmpty())) ?
                         "Keyspace - " + keyspaceName :
                         "Table - " + keyspaceName + ":" + tableName
         );
 
-        listNFSObjForDC(dseClusterMetadata, fileSizeChk, "", keyspaceName, tableName, opscBckupTimeGmt);
+        listNFSObjForDC(clusterTopology, fileSizeChk, "", keyspaceName, tableName, opscBckupTime, jsonReportFile);
     }
 
     /**
      * List Opsc backup objects for all hosts in a specified DC
      *
-     * @param dseClusterMetadata
+     * The hosts are scanned in parallel ("scan_threads" configuration file parameter), but their
+     * items are printed host by host, ordered by DC, rack and host ID, followed by a summary of
+     * the files and bytes per host, DC, keyspace and table.
+     *
+     * @param clusterTopology
      * @param fileSizeChk
      * @param keyspaceName
      * @param dcName
      * @param tableName
-     * @param opscBckupTimeGmt
+     * @param opscBckupTime
+     * @param jsonReportFile    null: no JSON report
      */
-    static void listNFSObjForDC(Metadata dseClusterMetadata,
+    static void listNFSObjForDC(NFSObjClusterTopology clusterTopology,
                                 boolean fileSizeChk,
                                 String dcName,
                                 String keyspaceName,
                                 String tableName,
-                                ZonedDateTime opscBckupTimeGmt) {
+                                NFSObjBackupTimeSpec opscBckupTime,
+                                String jsonReportFile) {
         assert (CONFIGPROP != null);
         assert ( (keyspaceName != null) && !keyspaceName.isEmpty() );
-        assert (opscBckupTimeGmt != null);
-
-        Set<Host> hosts = dseClusterMetadata.getAllHosts();
+        assert (opscBckupTime != null);
 
         boolean dcOnly = ( (dcName != null) && !dcName.isEmpty() );
         if ( dcOnly ) {
             System.out.format("\nList OpsCenter NFS backup items for specified DC (%s) of DSE cluster (%s) [%s] ...\n",
                 dcName,
-                dseClusterMetadata.getClusterName(),
+                clusterTopology.getClusterName(),
                 ((tableName == null) || (tableName.isEmpty())) ?
                         "Keyspace - " + keyspaceName :
                         "Table - " + keyspaceName + ":" + tableName
             );
         }
 
-        for ( Host host : hosts ) {
-            int numSstableBkupItems = 0;
+        // If not displaying for whole cluster (dcName == null),
+        // then only displaying the specified DC
+        List<NFSObjClusterTopology.HostInfo> hosts = new ArrayList<>();
+        for ( NFSObjClusterTopology.HostInfo host : clusterTopology.getHosts() ) {
+            if ( !dcOnly || (dcName.equalsIgnoreCase(host.dcName)) ) {
+                hosts.add(host);
+            }
+        }
 
-            String dc_name = host.getDatacenter();
-            String rack_name = host.getRack();
-            String host_id = host.getHostId().toString();
+        hosts.sort(Comparator
+            .comparing((NFSObjClusterTopology.HostInfo host) -> String.valueOf(host.dcName))
+            .thenComparing(host -> String.valueOf(host.rackName))
+            .thenComparing(host -> host.hostId));
 
-            // If not displaying for whole cluster (dcName == null),
-            // then only displaying the specified DC
-            if ( !dcOnly || (dc_name.equalsIgnoreCase(dcName)) ) {
-                System.out.format("  Items for Host %s (rack: %s, DC: %s) ...\n",
-                    host_id, rack_name, dc_name, dseClusterMetadata.getClusterName());
+        if (hosts.isEmpty()) {
+            System.out.println("  No DSE host to list.");
+            return;
+        }
 
+        int scanThreadNum = (int) Math.min(hosts.size(),
+            DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+                DseOpscNFSRestoreUtils.CFG_KEY_SCAN_THREADS, DseOpscNFSRestoreUtils.DEFAULT_SCAN_THREADS));
 
-                // First. get the backup.json file corresponds to the specified host and backup time
+        ExecutorService scanExecutor = Executors.newFixedThreadPool(scanThreadNum);
+        List<Future<NFSObjListingReport.HostScan>> scanFutures = new ArrayList<>();
 
-                Map<String, String> opscUniquifierToKsTbls = new HashMap<>();
+        for ( NFSObjClusterTopology.HostInfo host : hosts ) {
+            scanFutures.add(scanExecutor.submit(() ->
+                scanHost(host, fileSizeChk, keyspaceName, tableName, opscBckupTime)));
+        }
 
-                Path myBackupJsonFilePath = getMyBackupJson(host_id, opscBckupTimeGmt);
+        NFSObjListingReport listingReport = new NFSObjListingReport(fileSizeChk);
 
-                if (myBackupJsonFilePath == null) {
-                    DateTimeFormatter opscObjTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss-z");
-                    String opscBckupTimeGmtStr = opscBckupTimeGmt.format(opscObjTimeFormatter);
+        try {
+            // Host by host, in host order, as soon as the host (and the ones before it) are scanned
+            for ( Future<NFSObjListingReport.HostScan> scanFuture : scanFutures ) {
+                NFSObjListingReport.HostScan hostScan = scanFuture.get();
 
-                    System.out.format("    ERROR: Failed to find %s file for host (%s) at backup time (%s)\n",
-                        DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE,
-                        host_id,
-                        opscBckupTimeGmtStr);
+                System.out.print(hostScan.getOutput());
+                System.out.println();
 
-                    continue;
-                }
-                else {
-                    opscUniquifierToKsTbls =
-                        getOpscUniquifierToKsTblMapping(myBackupJsonFilePath.toFile().getAbsolutePath());
-                }
+                listingReport.addHost(hostScan);
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            System.out.println("ERROR: Listing interrupted!");
+            return;
+        }
+        catch (ExecutionException ee) {
+            System.out.println("ERROR: Failed to list OpsCenter backup items (" + ee.getCause() + ")!");
+            return;
+        }
+        finally {
+            scanExecutor.shutdownNow();
+        }
 
+        // A backup time range only lists the backups of each host
+        if ( opscBckupTime.isRange() ) {
+            return;
+        }
 
-                if ( opscUniquifierToKsTbls.isEmpty() ) {
-                    System.out.println("    ERROR: Failed to get backup SSTable file list from " +
-                        DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE + " file!");
+        listingReport.print();
 
-                    continue;
-                }
+        if (fileSizeChk && debugOpt) {
+            fileSizeResolver.printStats();
+        }
+
+        if (jsonReportFile != null) {
+            try {
+                listingReport.writeJson(Paths.get(jsonReportFile), clusterTopology.getClusterName(), opscBckupTime);
+                System.out.println("  JSON report written to \"" + jsonReportFile + "\".");
+            }
+            catch (IOException ioe) {
+                System.out.println("ERROR: Failed to write JSON report file \"" + jsonReportFile + "\" (" + ioe.getMessage() + ")!");
+            }
+        }
+    }
+
+    /**
+     * List the Opsc backup objects of one host (run by a scan thread); the output is kept
+     * with the scan result, to be printed in host order
+     *
+     * @param host
+     * @param fileSizeChk
+     * @param keyspaceName
+     * @param tableName
+     * @param opscBckupTime
+     * @return
+     */
+    static NFSObjListingReport.HostScan scanHost(NFSObjClusterTopology.HostInfo host,
+                                                 boolean fileSizeChk,
+                                                 String keyspaceName,
+                                                 String tableName,
+                                                 NFSObjBackupTimeSpec opscBckupTime) {
+        String dc_name = host.dcName;
+        String rack_name = host.rackName;
+        String host_id = host.hostId;
+
+        NFSObjListingReport.HostScan hostScan = new NFSObjListingReport.HostScan(host_id, dc_name, rack_name);
+        PrintStream out = hostScan.out;
+
+        out.format("  Items for Host %s (rack: %s, DC: %s) ...\n",
+            host_id, rack_name, dc_name);
+
+        // A backup time range only lists the backups of each host
+        if ( opscBckupTime.isRange() ) {
+            if ( !listBackupsForHost(host_id, opscBckupTime, "    ", out) ) {
+                hostScan.status = NFSObjListingReport.STATUS_FAILED;
+            }
+            return hostScan;
+        }
 
+        // Check SSTables records of the backup (at the specified backup time) matching the keyspace and table
 
-                // Second, check SSTables records matching the backup time, keyspace, and table
+        String sstablePrefixString =
+            CONFIGPROP.get(DseOpscNFSRestoreUtils.CFG_KEY_OPSC_NFS_BKUP_HOMEDIR) + "/" +
+            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR + "/" +
+            host_id + "/" +
+            DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR;
 
-                String sstablePrefixString =
-                    CONFIGPROP.get(DseOpscNFSRestoreUtils.CFG_KEY_OPSC_NFS_BKUP_HOMEDIR) + "/" +
-                    DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR + "/" +
-                    host_id + "/" +
-                    DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR;
+        // Listed as they are read from backup.json
+        NFSObjFileSizeResolver.RecordWindow recordWindow = fileSizeResolver.newRecordWindow(sstablePrefixString,
+            fileSizeChk, true, (backupRecord, opscObjName, opscObjSize) -> {
+                hostScan.addFile(backupRecord.getKeyspaceName(), backupRecord.getTableName(), opscObjSize);
 
+                out.println("  - " + opscObjName +
+                    ( !fileSizeChk ? "" : (" (size = " + opscObjSize + " bytes)") ) +
+                    " [keyspace: " + backupRecord.getKeyspaceName() + "; table: " + backupRecord.getTableName() + "]");
+            });
+        long numBackupJsonRecords;
 
-                for ( String sstableObjName : opscUniquifierToKsTbls.keySet() )  {
+        try {
+            numBackupJsonRecords = readBackupRecords(host_id, opscBckupTime, keyspaceName, tableName, out, recordWindow);
+        }
+        catch (IOException ioe) {
+            out.println("    ERROR: Failed to read " + DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE +
+                " file (" + ioe.getMessage() + ")!");
+
+            // What was listed before the error doesn't count in the totals
+            hostScan.tableTotals.clear();
+            hostScan.status = NFSObjListingReport.STATUS_FAILED;
+            return hostScan;
+        }
 
-                    String opscObjName = sstablePrefixString + "/" + sstableObjName;
+        if (numBackupJsonRecords < 0) {
+            out.format("    ERROR: Failed to find %s file for host (%s) at backup time (%s)\n",
+                DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE,
+                host_id,
+                opscBckupTime);
 
-                    if (opscUniquifierToKsTbls.containsKey(sstableObjName)) {
-                        String[] ksTblUniquifer = opscUniquifierToKsTbls.get(sstableObjName).split(":");
-                        String ks = ksTblUniquifer[0];
-                        String tbl = ksTblUniquifer[1];
+            hostScan.status = NFSObjListingReport.STATUS_NO_BACKUP;
+            return hostScan;
+        }
+        else if (numBackupJsonRecords == 0) {
+            out.println("    ERROR: Failed to get backup SSTable file list from " +
+                DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE + " file!");
 
-                        boolean filterKsTbl = keyspaceName.equalsIgnoreCase(ks);
-                        if ((tableName != null) && !tableName.isEmpty()) {
-                            filterKsTbl = filterKsTbl && tableName.equalsIgnoreCase(tbl);
-                        }
+            hostScan.status = NFSObjListingReport.STATUS_FAILED;
+            return hostScan;
+        }
 
-                        if (filterKsTbl) {
-                            numSstableBkupItems++;
-
-                            long opscObjSize = 0;
-                            if (fileSizeChk) {
-                                try {
-                                    opscObjSize = Files.size(Paths.get(opscObjName));
-                                }
-                                catch (IOException ioe) {
-                                    opscObjSize = -1;
-                                }
-                            }
-
-                            System.out.println("  - " + opscObjName +
-                                ( !fileSizeChk ? "" : (" (size = " + opscObjSize + " bytes)") ) +
-                                " [keyspace: " + ks + "; table: " + tbl + "]");
-                        }
-                    }
-                }
+        if ( !recordWindow.flush() ) {
+            out.println("    ERROR: Interrupted while checking backup file sizes!");
 
-                if (numSstableBkupItems == 0) {
-                    System.out.println("  - Found no matching backup records for the specified conditions!.");
-                }
-            }
+            hostScan.tableTotals.clear();
+            hostScan.status = NFSObjListingReport.STATUS_FAILED;
+            return hostScan;
+        }
 
-            System.out.println();
+        if (recordWindow.getRecordNum() == 0) {
+            out.println("  - Found no matching backup records for the specified conditions!.");
         }
+
+        return hostScan;
     }
 
 
@@ -833,12 +1636,13 @@ public class DseOpscNFSRestore {
             DseOpscNFSRestoreUtils.CMD_OPTION_LIST_SHORT,
             DseOpscNFSRestoreUtils.CMD_OPTION_LIST_LONG,
             true,
-            "List OpsCenter backup items (all | DC:\"<dc_name>\" | me[:\"<host_id_string>\"]).");
+            "List OpsCenter backup items (all | DC:\"<dc_name>\" | me[:\"<host_id_string>\"] | hosts:\"<host_id>[,<host_id>...]\").");
         Option downloadOption = new Option(
             DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_SHORT,
             DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_LONG,
             true,
-            "Download OpsCenter bakcup items to local directory (only applies to \"list me\" case");
+            "Download OpsCenter bakcup items to local directory (only applies to \"list me\" case) " +
+                "with <thread_num> concurrent downloads, or \"auto[:<min>-<max>]\" for adaptive concurrency");
         Option fileOption = new Option(
             DseOpscNFSRestoreUtils.CMD_OPTION_CFG_SHORT,
             DseOpscNFSRestoreUtils.CMD_OPTION_CFG_LONG,
@@ -869,6 +1673,26 @@ public class DseOpscNFSRestore {
             DseOpscNFSRestoreUtils.CMD_OPTION_NODIR_LONG,
             true,
             "Don't maintain keyspace/table backup data directory structure");
+        Option differentialOption = new Option(
+            DseOpscNFSRestoreUtils.CMD_OPTION_DIFFERENTIAL_SHORT,
+            DseOpscNFSRestoreUtils.CMD_OPTION_DIFFERENTIAL_LONG,
+            true,
+            "Copy only the files missing or changed in the existing download directory (\"prune\": also remove files not in the backup)");
+        Option placementOption = new Option(
+            DseOpscNFSRestoreUtils.CMD_OPTION_PLACEMENT_SHORT,
+            DseOpscNFSRestoreUtils.CMD_OPTION_PLACEMENT_LONG,
+            true,
+            "Where to restore the SSTables: the download directory (\"download\", default) or the live data directories of the tables (\"live\")");
+        Option tokenRangesOption = new Option(
+            DseOpscNFSRestoreUtils.CMD_OPTION_TOKEN_RANGES_SHORT,
+            DseOpscNFSRestoreUtils.CMD_OPTION_TOKEN_RANGES_LONG,
+            true,
+            "Restore only the SSTables that overlap these token ranges (comma-separated <start>:<end>, as (start, end])");
+        Option jsonReportOption = new Option(
+            DseOpscNFSRestoreUtils.CMD_OPTION_JSON_REPORT_SHORT,
+            DseOpscNFSRestoreUtils.CMD_OPTION_JSON_REPORT_LONG,
+            true,
+            "Write the listing summary (\"all\" and \"DC\" list cases) to a JSON file");
         Option userOption = new Option(
             DseOpscNFSRestoreUtils.CMD_OPTION_USER_SHORT,
             DseOpscNFSRestoreUtils.CMD_OPTION_USER_LONG,
@@ -894,6 +1718,10 @@ public class DseOpscNFSRestore {
         options.addOption(opscBkupTimeOption);
         options.addOption(clsTargetDirOption);
         options.addOption(noDirStructOption);
+        options.addOption(differentialOption);
+        options.addOption(placementOption);
+        options.addOption(tokenRangesOption);
+        options.addOption(jsonReportOption);
         options.addOption(userOption);
         options.addOption(passwdOption);
         options.addOption(debugOption);
@@ -966,13 +1794,15 @@ public class DseOpscNFSRestore {
             usageAndExit(20);
         }
 
-        // "-l" option (ALL | DC:"<DC_Name>" | me[:"<C*_node_host_id>" is a must!
+        // "-l" option (ALL | DC:"<DC_Name>" | me[:"<C*_node_host_id>" | hosts:"<C*_node_host_id>,...") is a must!
         boolean listCluster = false;
         boolean listDC = false;
         boolean listMe = false;
+        boolean listHosts = false;
 
         String dcNameToList = "";
         String myHostID = "";
+        List<String> hostIDsToList = new ArrayList<>();
 
         String lOptVal = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_LIST_SHORT);
         if ( (lOptVal == null) || lOptVal.isEmpty() ) {
@@ -980,7 +1810,8 @@ public class DseOpscNFSRestore {
                 DseOpscNFSRestoreUtils.CMD_OPTION_LIST_SHORT + "\" option -- " +
                 DseOpscNFSRestoreUtils.CMD_OPTION_LIST_ALL + " | " +
                 DseOpscNFSRestoreUtils.CMD_OPTION_LIST_DC + ":\"<DC_Name>\" | " +
-                DseOpscNFSRestoreUtils.CMD_OPTION_LIST_ME + "[:\"<host_id>\"].\n");
+                DseOpscNFSRestoreUtils.CMD_OPTION_LIST_ME + "[:\"<host_id>\"] | " +
+                DseOpscNFSRestoreUtils.CMD_OPTION_LIST_HOSTS + ":\"<host_id>[,<host_id>...]\".\n");
             usageAndExit(30);
         }
 
@@ -1015,24 +1846,81 @@ public class DseOpscNFSRestore {
                 myHostID = lOptVal.split(":")[1];
             }
         }
+        else if ( lOptVal.toUpperCase().startsWith(DseOpscNFSRestoreUtils.CMD_OPTION_LIST_HOSTS) ) {
+            listHosts = true;
+
+            int separatorPos = lOptVal.indexOf(':');
+            if (separatorPos > 0) {
+                for ( String hostIdStr : lOptVal.substring(separatorPos + 1).split(",") ) {
+                    String hostId = hostIdStr.trim();
+                    if ( !hostId.isEmpty() && !hostIDsToList.contains(hostId) ) {
+                        hostIDsToList.add(hostId);
+                    }
+                }
+            }
+
+            if (hostIDsToList.isEmpty()) {
+                System.out.println("\nERROR: Please specify proper value for \"-" +
+                    DseOpscNFSRestoreUtils.CMD_OPTION_LIST_SHORT + " " + DseOpscNFSRestoreUtils.CMD_OPTION_LIST_HOSTS +
+                    "\" option -- " + DseOpscNFSRestoreUtils.CMD_OPTION_LIST_HOSTS + ":\"<host_id>[,<host_id>...]\".\n");
+                usageAndExit(55);
+            }
+        }
         else {
             System.out.println("\nERROR: Please specify proper value for \"-" +
                 DseOpscNFSRestoreUtils.CMD_OPTION_LIST_SHORT + "\" option -- " +
                 DseOpscNFSRestoreUtils.CMD_OPTION_LIST_ALL + " | " +
                 DseOpscNFSRestoreUtils.CMD_OPTION_LIST_DC + ":\"<DC_Name>\" | " +
-                DseOpscNFSRestoreUtils.CMD_OPTION_LIST_ME + "[:\"<host_id>\"].\n");
+                DseOpscNFSRestoreUtils.CMD_OPTION_LIST_ME + "[:\"<host_id>\"] | " +
+                DseOpscNFSRestoreUtils.CMD_OPTION_LIST_HOSTS + ":\"<host_id>[,<host_id>...]\".\n");
             usageAndExit(60);
         }
 
-        // Download option ONLY works for "-l me" option! If "-d" option value is not specified, use the default value
+        // Download option ONLY works for "-l me", "-l hosts:..." and "-l DC:..." options!
+        // If "-d" option value is not specified, use the default value
         boolean downloadOpscObj = false;
         int downloadOpscObjThreadNum = DseOpscNFSRestoreUtils.DOWNLOAD_THREAD_POOL_SIZE;
+        NFSObjConcurrencyController concurrencyController = null;
 
         if ( cmd.hasOption(DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_SHORT) ) {
             downloadOpscObj = true;
 
             String dOptVal = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_SHORT);
-            if ( (dOptVal != null) && (!dOptVal.isEmpty()) ) {
+
+            // "-d auto[:<min>-<max>]": adaptive download concurrency
+            if ( (dOptVal != null) && dOptVal.toLowerCase().startsWith(DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_AUTO) ) {
+                int minConcurrency = DseOpscNFSRestoreUtils.AUTO_CONCURRENCY_MIN;
+                int maxConcurrency = DseOpscNFSRestoreUtils.AUTO_CONCURRENCY_MAX;
+
+                String boundsStr = dOptVal.substring(DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_AUTO.length());
+                if ( !boundsStr.isEmpty() ) {
+                    String[] bounds = boundsStr.startsWith(":") ? boundsStr.substring(1).split("-") : new String[0];
+
+                    try {
+                        if (bounds.length != 2) {
+                            throw new NumberFormatException();
+                        }
+
+                        minConcurrency = Integer.parseInt(bounds[0].trim());
+                        maxConcurrency = Integer.parseInt(bounds[1].trim());
+
+                        if ( (minConcurrency < 1) || (minConcurrency > maxConcurrency) ) {
+                            throw new NumberFormatException();
+                        }
+                    }
+                    catch (NumberFormatException nfe) {
+                        System.out.println("\nERROR: Incorrect \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_SHORT +
+                            "\" option value -- must be a positive integer, or \"" + DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_AUTO +
+                            "[:<min>-<max>]\" with 1 <= min <= max.\n");
+                        usageAndExit(65);
+                    }
+                }
+
+                concurrencyController = new NFSObjConcurrencyController(
+                    minConcurrency, maxConcurrency, DseOpscNFSRestoreUtils.DOWNLOAD_THREAD_POOL_SIZE);
+                downloadOpscObjThreadNum = maxConcurrency;
+            }
+            else if ( (dOptVal != null) && (!dOptVal.isEmpty()) ) {
                 try {
                     downloadOpscObjThreadNum = Integer.parseInt(dOptVal);
                 }
@@ -1056,7 +1944,8 @@ public class DseOpscNFSRestore {
         String tableName = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_TABLE_SHORT);
 
         // "-obt" option is a must
-        // OpsCenter Backup Date Time String (Can get  from OpsCenter Backup Service Window)
+        // OpsCenter Backup Date Time String (Can get  from OpsCenter Backup Service Window):
+        //   "M/d/yyyy h:mm a", "before:M/d/yyyy h:mm a", or "M/d/yyyy h:mm a,M/d/yyyy h:mm a" (list backups only)
         String obtOptOptValue = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_BACKUPTIME_SHORT);
 
         if ( (obtOptOptValue == null) || (obtOptOptValue.isEmpty()) ) {
@@ -1065,13 +1954,9 @@ public class DseOpscNFSRestore {
             usageAndExit(80);
         }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("M/d/yyyy h:mm a");
-        ZonedDateTime opscBackupTime_gmt = null;
+        NFSObjBackupTimeSpec opscBackupTime_gmt = null;
         try {
-            LocalDateTime ldt = LocalDateTime.parse(obtOptOptValue, formatter);
-
-            ZoneId gmtZoneId = ZoneId.of("UTC");
-            opscBackupTime_gmt = ldt.atZone(gmtZoneId);
+            opscBackupTime_gmt = NFSObjBackupTimeSpec.parse(obtOptOptValue);
         }
         catch (DateTimeParseException dte) {
             dte.printStackTrace();
@@ -1081,6 +1966,13 @@ public class DseOpscNFSRestore {
             usageAndExit(90);
         }
 
+        // A backup time range only lists the backups, there is no single backup to download
+        if ( opscBackupTime_gmt.isRange() && downloadOpscObj ) {
+            System.out.println("\nERROR: A backup time range for \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_BACKUPTIME_SHORT +
+                "\" option can't be used with \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_DOWNLOAD_SHORT + "\" option.");
+            usageAndExit(95);
+        }
+
         // "-cls" option is optional
         boolean clearTargetDownDir = false;
         String clsOptOptValue = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_CLSDOWNDIR_SHORT);
@@ -1111,6 +2003,96 @@ public class DseOpscNFSRestore {
             }
         }
 
+        // "-dif" option is optional: true | false | prune. ONLY works with "-d" option.
+        String difOptOptValue = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_DIFFERENTIAL_SHORT);
+
+        if ( (difOptOptValue != null) && (!difOptOptValue.isEmpty()) ) {
+            boolean prune = NFSObjDifferentialRestore.DIF_OPTION_PRUNE.equalsIgnoreCase(difOptOptValue);
+
+            if ( prune || Boolean.parseBoolean(difOptOptValue) ) {
+                if (clearTargetDownDir) {
+                    // Nothing is left in the download directory to compare with
+                    System.out.println("\nWARN: \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_DIFFERENTIAL_SHORT +
+                        "\" option has no effect with \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_CLSDOWNDIR_SHORT +
+                        " true\" option, ignoring it.");
+                }
+                else {
+                    differentialRestore = new NFSObjDifferentialRestore(prune);
+                }
+            }
+            else if ( !"false".equalsIgnoreCase(difOptOptValue) ) {
+                System.out.println("\nERROR: Incorrect \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_DIFFERENTIAL_SHORT +
+                    "\" option value -- must be \"true\", \"false\" or \"" + NFSObjDifferentialRestore.DIF_OPTION_PRUNE + "\".\n");
+                usageAndExit(97);
+            }
+        }
+
+        // "-pl" option is optional: download (default) | live. ONLY works with "-d" option.
+        String plOptOptValue = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_PLACEMENT_SHORT);
+
+        if ( (plOptOptValue != null) && (!plOptOptValue.isEmpty()) ) {
+            if ( NFSObjLivePlacement.PLACEMENT_LIVE.equalsIgnoreCase(plOptOptValue) ) {
+                livePlacementOpt = true;
+            }
+            else if ( !NFSObjLivePlacement.PLACEMENT_DOWNLOAD.equalsIgnoreCase(plOptOptValue) ) {
+                System.out.println("\nERROR: Incorrect \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_PLACEMENT_SHORT +
+                    "\" option value -- must be \"" + NFSObjLivePlacement.PLACEMENT_DOWNLOAD + "\" or \"" +
+                    NFSObjLivePlacement.PLACEMENT_LIVE + "\".\n");
+                usageAndExit(98);
+            }
+        }
+
+        if (livePlacementOpt) {
+            // Would remove the live SSTables of the restored tables
+            if ( (differentialRestore != null) && differentialRestore.isPrune() ) {
+                System.out.println("\nERROR: \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_DIFFERENTIAL_SHORT + " " +
+                    NFSObjDifferentialRestore.DIF_OPTION_PRUNE + "\" option can't be used with \"-" +
+                    DseOpscNFSRestoreUtils.CMD_OPTION_PLACEMENT_SHORT + " " + NFSObjLivePlacement.PLACEMENT_LIVE + "\" option.\n");
+                usageAndExit(99);
+            }
+
+            // Would load the SSTables of several nodes into the live data directories of this one
+            if ( downloadOpscObj && (listDC || (listHosts && (hostIDsToList.size() > 1))) ) {
+                System.out.println("\nERROR: \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_PLACEMENT_SHORT + " " +
+                    NFSObjLivePlacement.PLACEMENT_LIVE + "\" option can't be used with \"-" +
+                    DseOpscNFSRestoreUtils.CMD_OPTION_LIST_SHORT + " " + DseOpscNFSRestoreUtils.CMD_OPTION_LIST_DC +
+                    ":...\" option, nor with more than one host in \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_LIST_SHORT + " " +
+                    DseOpscNFSRestoreUtils.CMD_OPTION_LIST_HOSTS + ":...\" option.\n");
+                usageAndExit(93);
+            }
+
+            // The staging area keeps the backup directory structure
+            noTargetDirStruct = false;
+        }
+
+        // "-tr" option is optional. ONLY works with "-d" option.
+        String trOptValue = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_TOKEN_RANGES_SHORT);
+
+        if ( (trOptValue != null) && (!trOptValue.isEmpty()) ) {
+            try {
+                tokenRangeFilter = NFSObjTokenRangeFilter.parse(trOptValue);
+            }
+            catch (IllegalArgumentException iae) {
+                System.out.println("\nERROR: Incorrect \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_TOKEN_RANGES_SHORT +
+                    "\" option value (" + iae.getMessage() + ") -- must be comma-separated <start>:<end> token ranges.\n");
+                usageAndExit(96);
+            }
+
+            // Would remove the local SSTables outside of the token ranges
+            if ( (differentialRestore != null) && differentialRestore.isPrune() ) {
+                System.out.println("\nERROR: \"-" + DseOpscNFSRestoreUtils.CMD_OPTION_DIFFERENTIAL_SHORT + " " +
+                    NFSObjDifferentialRestore.DIF_OPTION_PRUNE + "\" option can't be used with \"-" +
+                    DseOpscNFSRestoreUtils.CMD_OPTION_TOKEN_RANGES_SHORT + "\" option.\n");
+                usageAndExit(94);
+            }
+        }
+
+        // "-jr" option is optional. ONLY works for "-l all" and "-l DC:..." options.
+        String jsonReportFile = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_JSON_REPORT_SHORT);
+        if ( (jsonReportFile != null) && jsonReportFile.isEmpty() ) {
+            jsonReportFile = null;
+        }
+
         // "-u" and "-p" option is optional.
         String userName = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_USER_SHORT);
         String passWord = cmd.getOptionValue(DseOpscNFSRestoreUtils.CMD_OPTION_PWD_SHORT);
@@ -1228,6 +2210,41 @@ public class DseOpscNFSRestore {
             usageAndExit(120);
         }
 
+        /**
+         * Local backup catalog (enabled by default). It must not be under the local download home
+         * directory, which is cleaned by the "-cls" option. If it can't be used, fall back to
+         * looking up and parsing the backup.json files on NFS.
+         */
+        String catalogHome = CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_CATALOG_HOME);
+        if ( (catalogHome == null) || catalogHome.isEmpty() ) {
+            catalogHome = System.getProperty("user.home") + "/" + DseOpscNFSRestoreUtils.DEFAULT_CATALOG_HOME_DIR;
+        }
+
+        Path catalogHomePath = Paths.get(catalogHome).toAbsolutePath().normalize();
+
+        String backupCatalogStr = CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_BACKUP_CATALOG);
+        if ( (backupCatalogStr == null) || backupCatalogStr.isEmpty() || Boolean.parseBoolean(backupCatalogStr) ) {
+            if ( catalogHomePath.startsWith(localDownloadHomePath.toAbsolutePath().normalize()) ) {
+                System.out.println("\nWARN: [Config File] Specified backup catalog home directory is under the local download directory; " +
+                    "backup catalog disabled.");
+            }
+            else {
+                try {
+                    Files.createDirectories(catalogHomePath);
+                    backupCatalog = new NFSObjBackupCatalog(catalogHomePath,
+                        CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_OPSC_NFS_BKUP_HOMEDIR));
+                }
+                catch (IOException ioe) {
+                    System.out.println("\nWARN: Failed to create backup catalog home directory \"" + catalogHomePath +
+                        "\" (" + ioe.getMessage() + "); backup catalog disabled.");
+                }
+            }
+        }
+
+        // Backup file sizes (file size check, download planning) are looked up in parallel batches
+        fileSizeResolver = new NFSObjFileSizeResolver((int) DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+            DseOpscNFSRestoreUtils.CFG_KEY_SIZE_CHECK_THREADS, DseOpscNFSRestoreUtils.DEFAULT_SIZE_CHECK_THREADS));
+
 
         // Testing purpose
         /*
@@ -1240,75 +2257,139 @@ public class DseOpscNFSRestore {
 
 
         /**
-         * Get Dse cluster metadata
+         * Get Dse cluster topology - from the local topology cache when it is recent enough, otherwise
+         * from the DSE cluster (the DSE Java driver is only started then, and closed right after)
          */
-        QueryOptions queryOptions = new QueryOptions();
-        queryOptions.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
-
+        NFSObjClusterTopology clusterTopology = null;
 
-        // dseCluster.connect();    /* NO NEED for acutal connection */
-        Metadata dseClusterMetadata = null;
-
-        // Do NOT check cluster metadata for "-l me:<dse_host_id>" option
+        // Do NOT check cluster metadata for "-l me:<dse_host_id>" and "-l hosts:..." options
         boolean checkDseMetadata = listCluster || listDC || (listMe && ((myHostID == null) || myHostID.isEmpty()) );
         if (checkDseMetadata) {
+            long topologyCacheTtlMin = DseOpscNFSRestoreUtils.getConfigNumber(CONFIGPROP,
+                DseOpscNFSRestoreUtils.CFG_KEY_TOPOLOGY_CACHE_TTL_MIN, DseOpscNFSRestoreUtils.DEFAULT_TOPOLOGY_CACHE_TTL_MIN);
 
-            try {
-                DseCluster.Builder clusterBuilder = DseCluster.builder()
-                    .addContactPoint(CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_CONTACT_POINT))
-                    .withQueryOptions(queryOptions);
+            Path topologyCacheFilePath = null;
+            if (topologyCacheTtlMin > 0) {
+                topologyCacheFilePath = catalogHomePath.resolve(NFSObjClusterTopology.CACHE_FILE);
+
+                clusterTopology = NFSObjClusterTopology.loadCache(topologyCacheFilePath,
+                    CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_CONTACT_POINT),
+                    TimeUnit.MINUTES.toMillis(topologyCacheTtlMin));
+            }
 
+            // A host or DC that is not in the cached topology may have been added since it was cached
+            if (clusterTopology != null) {
+                String localhostIp = listMe ?
+                    getLocalIP(CONFIGPROP.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_IP_MATCHING_NIC)) : null;
 
-                if (useSsl) {
-                    clusterBuilder.withSSL();
+                if ( (listMe && (localhostIp != null) && (clusterTopology.findHostByAddress(localhostIp) == null)) ||
+                     (listDC && !clusterTopology.hasDC(dcNameToList)) ) {
+                    System.out.println("\nWARN: " + (listMe ? "My DSE host" : "Specified DC") +
+                        " is not in the cached cluster topology; getting it from the DSE cluster.");
+                    clusterTopology = null;
                 }
+                else {
+                    System.out.format("\nUsing cached topology of DSE cluster (%s): %d hosts, fetched %d minutes ago.\n",
+                        clusterTopology.getClusterName(),
+                        clusterTopology.getHosts().size(),
+                        TimeUnit.MILLISECONDS.toMinutes(clusterTopology.getAgeMillis()));
+                }
+            }
 
-                if (userAuth) {
-                    AuthProvider authProvider = new PlainTextAuthProvider(userName, passWord);
-                    clusterBuilder.withAuthProvider(authProvider);
+            if (clusterTopology == null) {
+                try {
+                    clusterTopology = NFSObjClusterTopologyFetcher.fetch(CONFIGPROP, useSsl, userAuth, userName, passWord);
+                }
+                catch (IOException ioe) {
+                    System.out.println("\nERROR: Failed to check DSE cluster metadata. " +
+                            "Please check DSE cluster status and/or connection requirements (e.g. SSL/TLS, username/password)!");
+                    usageAndExit(120);
+                }
+                catch (Exception e) {
+                    System.out.println("\nERROR: Unknown error when checking DSE cluster metadata!");
+                    e.printStackTrace();
+                    usageAndExit(125);
                 }
 
-                DseCluster dseCluster = clusterBuilder.build();
-                dseClusterMetadata = dseCluster.getMetadata();
-            }
-            catch (NoHostAvailableException nhae) {
-                System.out.println("\nERROR: Failed to check DSE cluster metadata. " +
-                        "Please check DSE cluster status and/or connection requirements (e.g. SSL/TLS, username/password)!");
-                usageAndExit(120);
-            }
-            catch (Exception e) {
-                System.out.println("\nERROR: Unknown error when checking DSE cluster metadata!");
-                e.printStackTrace();
-                usageAndExit(125);
+                if (topologyCacheFilePath != null) {
+                    try {
+                        clusterTopology.saveCache(topologyCacheFilePath);
+                    }
+                    catch (IOException ioe) {
+                        System.out.println("\nWARN: Failed to write cluster topology cache file \"" + topologyCacheFilePath +
+                            "\" (" + ioe.getMessage() + ").");
+                    }
+                }
             }
         }
 
+        boolean listSucceeded = true;
+
         // List OpsCenter backup SSTables for all Dse Cluster hosts
         if ( listCluster ) {
             listNFSObjtForCluster(
-                dseClusterMetadata,
+                clusterTopology,
                 fileSizeChk,
                 keyspaceName,
                 tableName,
-                opscBackupTime_gmt);
+                opscBackupTime_gmt,
+                jsonReportFile);
+        }
+        // Download OpsCenter backup SSTables for all hosts in a specified DC of the Dse cluster, in one run
+        else if ( listDC && downloadOpscObj ) {
+            List<NFSObjClusterTopology.HostInfo> dcHosts = new ArrayList<>();
+            for ( NFSObjClusterTopology.HostInfo host : clusterTopology.getHosts() ) {
+                if ( dcNameToList.equalsIgnoreCase(host.dcName) ) {
+                    dcHosts.add(host);
+                }
+            }
+
+            dcHosts.sort(Comparator
+                .comparing((NFSObjClusterTopology.HostInfo host) -> String.valueOf(host.rackName))
+                .thenComparing(host -> host.hostId));
+
+            List<String> dcHostIds = new ArrayList<>();
+            for ( NFSObjClusterTopology.HostInfo host : dcHosts ) {
+                dcHostIds.add(host.hostId);
+            }
+
+            if (dcHostIds.isEmpty()) {
+                System.out.format("\nERROR: No DSE host found in specified DC (%s)!\n", dcNameToList);
+                listSucceeded = false;
+            }
+            else {
+                listSucceeded = listDownloadNFSObjForHosts(
+                    fileSizeChk,
+                    dcHostIds,
+                    true,
+                    downloadOpscObjThreadNum,
+                    concurrencyController,
+                    keyspaceName,
+                    tableName,
+                    opscBackupTime_gmt,
+                    clearTargetDownDir,
+                    noTargetDirStruct);
+            }
         }
         // List OpsCenter backup SSTables for all hosts in a specified DC of the Dse cluster
         else if ( listDC ) {
             listNFSObjForDC(
-                dseClusterMetadata,
+                clusterTopology,
                 fileSizeChk,
                 dcNameToList,
                 keyspaceName,
                 tableName,
-                opscBackupTime_gmt);
+                opscBackupTime_gmt,
+                jsonReportFile);
         }
         // List (and download) OpsCenter backup SSTables for myself (the host that runs this program)
         else if ( listMe ) {
-            listDownloadNFSObjForMe(
-                dseClusterMetadata,
+            listSucceeded = listDownloadNFSObjForMe(
+                clusterTopology,
                 fileSizeChk,
                 downloadOpscObj,
                 downloadOpscObjThreadNum,
+                concurrencyController,
                 myHostID,
                 keyspaceName,
                 tableName,
@@ -1316,7 +2397,22 @@ public class DseOpscNFSRestore {
                 clearTargetDownDir,
                 noTargetDirStruct );
         }
+        // List (and download) OpsCenter backup SSTables for the specified hosts, in one run
+        else if ( listHosts ) {
+            listSucceeded = listDownloadNFSObjForHosts(
+                fileSizeChk,
+                hostIDsToList,
+                downloadOpscObj,
+                downloadOpscObjThreadNum,
+                concurrencyController,
+                keyspaceName,
+                tableName,
+                opscBackupTime_gmt,
+                clearTargetDownDir,
+                noTargetDirStruct);
+        }
 
-        System.exit(0);
+        // Non-zero exit code when any backup file failed to download, so that scripts can tell
+        System.exit(listSucceeded ? 0 : DseOpscNFSRestoreUtils.EXIT_CODE_DOWNLOAD_FAILED);
     }
 }
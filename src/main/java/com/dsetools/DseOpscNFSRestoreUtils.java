@@ -15,6 +15,37 @@ public class DseOpscNFSRestoreUtils {
     static String CFG_KEY_USE_SSL = "use_ssl";
     static String CFG_KEY_USER_AUTH = "user_auth";
     static String CFG_KEY_FILE_SIZE_CHK = "file_size_chk";
+    static String CFG_KEY_COPY_ENGINE = "copy_engine";
+    static String CFG_KEY_RANGE_COPY_THRESHOLD_MB = "range_copy_threshold_mb";
+    static String CFG_KEY_RANGE_COPY_SIZE_MB = "range_copy_size_mb";
+    static String CFG_KEY_ASYNC_BUFFER_SIZE_KB = "async_buffer_size_kb";
+    static String CFG_KEY_ASYNC_BUFFER_POOL_MB = "async_buffer_pool_mb";
+    static String CFG_KEY_ASYNC_QUEUE_DEPTH = "async_queue_depth";
+    static String CFG_KEY_CACHE_BYPASS = "cache_bypass";
+    static String CFG_KEY_CACHE_BYPASS_MIN_MB = "cache_bypass_min_mb";
+    static String CFG_KEY_PREALLOCATE = "preallocate";
+    static String CFG_KEY_PREALLOCATE_MIN_MB = "preallocate_min_mb";
+    static String CFG_KEY_FSYNC_POLICY = "fsync_policy";
+    static String CFG_KEY_CHECKSUM_VERIFY = "checksum_verify";
+    static String CFG_KEY_IO_READ_LIMIT_MBPS = "io_read_limit_mbps";
+    static String CFG_KEY_IO_WRITE_LIMIT_MBPS = "io_write_limit_mbps";
+    static String CFG_KEY_IO_BURST_MB = "io_burst_mb";
+    static String CFG_KEY_PROGRESS_INTERVAL_SEC = "progress_interval_sec";
+    static String CFG_KEY_DOWNLOAD_TIMEOUT_MIN = "download_timeout_min";
+    static String CFG_KEY_BACKUP_CATALOG = "backup_catalog";
+    static String CFG_KEY_CATALOG_HOME = "catalog_home";
+    static String CFG_KEY_SCAN_THREADS = "scan_threads";
+    static String CFG_KEY_SIZE_CHECK_THREADS = "size_check_threads";
+    static String CFG_KEY_TOPOLOGY_CACHE_TTL_MIN = "topology_cache_ttl_min";
+    static String CFG_KEY_SSTABLE_CACHE_DIR = "sstable_cache_dir";
+    static String CFG_KEY_SSTABLE_CACHE_MAX_MB = "sstable_cache_max_mb";
+    static String CFG_KEY_CASSANDRA_YAML = "cassandra_yaml";
+    static String CFG_KEY_DOWNLOAD_STRIPE_DIRS = "download_stripe_dirs";
+    static String CFG_KEY_TABLE_PRIORITY = "table_priority";
+    static String CFG_KEY_TABLE_COMPLETE_HOOK = "table_complete_hook";
+    static String CFG_KEY_TABLE_COMPLETE_HOOK_TIMEOUT_SEC = "table_complete_hook_timeout_sec";
+    static String CFG_KEY_JMX_USER = "jmx_user";
+    static String CFG_KEY_JMX_PASSWORD = "jmx_password";
 
     static String JAVA_SSL_TRUSTSTORE_PROP = "javax.net.ssl.trustStore";
     static String JAVA_SSL_TRUSTSTORE_PASS_PROP = "javax.net.ssl.trustStorePassword";
@@ -25,7 +56,40 @@ public class DseOpscNFSRestoreUtils {
     static String OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR = "sstables";
     static String OPSC_BKUP_METADATA_FILE = "backup.json";
 
+    // Restore journal file, under the local download home directory
+    static String RESTORE_JOURNAL_FILE = ".opscnfsrestore.journal";
+
+    // I/O throttle control file (runtime read/write limit changes), under the local download home directory
+    static String IO_THROTTLE_CONTROL_FILE = ".opscnfsrestore.throttle";
+
+    // Default local backup catalog home directory, under the user home directory
+    static String DEFAULT_CATALOG_HOME_DIR = ".opscnfsrestore";
+
+    // Live placement ("-pl live"): where the data file directories are configured, and the Cassandra default
+    static String DEFAULT_CASSANDRA_YAML = "/etc/dse/cassandra/cassandra.yaml";
+    static String DEFAULT_DATA_FILE_DIRECTORY = "/var/lib/cassandra/data";
+
     static int DOWNLOAD_THREAD_POOL_SIZE = 5;
+    static int AUTO_CONCURRENCY_MIN = 1;
+    static int AUTO_CONCURRENCY_MAX = 32;
+    static long DEFAULT_RANGE_COPY_SIZE_MB = 256;
+    static long DEFAULT_ASYNC_BUFFER_SIZE_KB = 1024;
+    static long DEFAULT_ASYNC_BUFFER_POOL_MB = 64;
+    static long DEFAULT_ASYNC_QUEUE_DEPTH = 4;
+    static long DEFAULT_CACHE_BYPASS_MIN_MB = 16;
+    static long DEFAULT_PREALLOCATE_MIN_MB = 64;
+    static long DEFAULT_PROGRESS_INTERVAL_SEC = 10;
+    static long DEFAULT_SCAN_THREADS = 8;
+    static long DEFAULT_SIZE_CHECK_THREADS = 16;
+    static long DEFAULT_TOPOLOGY_CACHE_TTL_MIN = 60;
+    static long DEFAULT_SSTABLE_CACHE_MAX_MB = 102400;
+    static long DEFAULT_TABLE_COMPLETE_HOOK_TIMEOUT_SEC = 600;
+
+    // Seconds to wait for the download threads to stop after a download timeout
+    static long DOWNLOAD_CANCEL_WAIT_SEC = 30;
+
+    // Exit code when any backup file failed to download, or the download timed out
+    static int EXIT_CODE_DOWNLOAD_FAILED = 2;
 
     static String CMD_OPTION_HELP_SHORT = "h";
     static String CMD_OPTION_HELP_LONG = "help";
@@ -34,10 +98,12 @@ public class DseOpscNFSRestoreUtils {
     static String CMD_OPTION_LIST_ALL = "ALL";
     static String CMD_OPTION_LIST_DC = "DC";
     static String CMD_OPTION_LIST_ME = "ME";
+    static String CMD_OPTION_LIST_HOSTS = "HOSTS";
     static String CMD_OPTION_CFG_SHORT = "c";
     static String CMD_OPTION_CFG_LONG = "config";
     static String CMD_OPTION_DOWNLOAD_SHORT = "d";
     static String CMD_OPTION_DOWNLOAD_LONG = "download";
+    static String CMD_OPTION_DOWNLOAD_AUTO = "auto";
     static String CMD_OPTION_KEYSPACE_SHORT = "k";
     static String CMD_OPTION_KEYSPACE_LONG = "keyspace";
     static String CMD_OPTION_TABLE_SHORT = "t";
@@ -48,6 +114,14 @@ public class DseOpscNFSRestoreUtils {
     static String CMD_OPTION_CLSDOWNDIR_LONG = "clsDownDir";
     static String CMD_OPTION_NODIR_SHORT = "nds";
     static String CMD_OPTION_NODIR_LONG = "noDirStruct";
+    static String CMD_OPTION_DIFFERENTIAL_SHORT = "dif";
+    static String CMD_OPTION_DIFFERENTIAL_LONG = "differential";
+    static String CMD_OPTION_PLACEMENT_SHORT = "pl";
+    static String CMD_OPTION_PLACEMENT_LONG = "placement";
+    static String CMD_OPTION_TOKEN_RANGES_SHORT = "tr";
+    static String CMD_OPTION_TOKEN_RANGES_LONG = "tokenRanges";
+    static String CMD_OPTION_JSON_REPORT_SHORT = "jr";
+    static String CMD_OPTION_JSON_REPORT_LONG = "jsonReport";
     static String CMD_OPTION_USER_SHORT = "u";
     static String CMD_OPTION_USER_LONG = "user";
     static String CMD_OPTION_PWD_SHORT = "p";
@@ -73,6 +147,7 @@ public class DseOpscNFSRestoreUtils {
             String useSslStr = configProps.getProperty(CFG_KEY_USE_SSL);
             String userAuthStr = configProps.getProperty(CFG_KEY_USER_AUTH);
             String fileSizeMonStr = configProps.getProperty(CFG_KEY_FILE_SIZE_CHK);
+            String copyEngineStr = configProps.getProperty(CFG_KEY_COPY_ENGINE);
 
             // An active DSE contact point is not a must for all cases. Log a warning message if not specified.
             if ( (dseContactPoint == null) || dseContactPoint.isEmpty() ) {
@@ -128,6 +203,144 @@ public class DseOpscNFSRestoreUtils {
                     configProps = null;
                 }
             }
+
+            // When "copy_engine" is specified, it must be one of the supported copy engine names. Otherwise, error out.
+            if ( (copyEngineStr != null) && (!copyEngineStr.isEmpty()) ) {
+                if ( !NFSObjCopyEngine.isValidEngineName(copyEngineStr) ) {
+                    System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_COPY_ENGINE + "\" (" +
+                        NFSObjCopyEngine.ENGINE_FILEUTILS + " | " + NFSObjCopyEngine.ENGINE_FILECHANNEL + " | " +
+                        NFSObjCopyEngine.ENGINE_ASYNC + ").");
+                    configProps = null;
+                }
+            }
+
+            // When "cache_bypass" is specified, it must be one of the supported modes. Otherwise, error out.
+            String cacheBypassStr = (configProps == null) ? null : configProps.getProperty(CFG_KEY_CACHE_BYPASS);
+            if ( (cacheBypassStr != null) && (!cacheBypassStr.isEmpty()) ) {
+                if ( !NFSObjCacheBypass.isValidMode(cacheBypassStr) ) {
+                    System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_CACHE_BYPASS + "\" (" +
+                        NFSObjCacheBypass.MODE_NONE + " | " + NFSObjCacheBypass.MODE_DIRECT + " | " +
+                        NFSObjCacheBypass.MODE_DROPBEHIND + ").");
+                    configProps = null;
+                }
+            }
+
+            // When "cache_bypass_min_mb" is specified, it must be a non-negative integer.
+            if ( (configProps != null) && !isValidConfigNumber(configProps, CFG_KEY_CACHE_BYPASS_MIN_MB, 0) ) {
+                configProps = null;
+            }
+
+            // When "preallocate" is specified, it must be true or false. Otherwise, error out.
+            String preallocateStr = (configProps == null) ? null : configProps.getProperty(CFG_KEY_PREALLOCATE);
+            if ( (preallocateStr != null) && (!preallocateStr.isEmpty()) ) {
+                if ( !preallocateStr.equalsIgnoreCase("true") && !preallocateStr.equalsIgnoreCase("false") ) {
+                    System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_PREALLOCATE + "\".");
+                    configProps = null;
+                }
+            }
+
+            // When "preallocate_min_mb" is specified, it must be a non-negative integer.
+            if ( (configProps != null) && !isValidConfigNumber(configProps, CFG_KEY_PREALLOCATE_MIN_MB, 0) ) {
+                configProps = null;
+            }
+
+            // When "backup_catalog" is specified, it must be true or false. Otherwise, error out.
+            String backupCatalogStr = (configProps == null) ? null : configProps.getProperty(CFG_KEY_BACKUP_CATALOG);
+            if ( (backupCatalogStr != null) && (!backupCatalogStr.isEmpty()) ) {
+                if ( !backupCatalogStr.equalsIgnoreCase("true") && !backupCatalogStr.equalsIgnoreCase("false") ) {
+                    System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_BACKUP_CATALOG + "\".");
+                    configProps = null;
+                }
+            }
+
+            // When "fsync_policy" is specified, it must be one of the supported policies. Otherwise, error out.
+            String fsyncPolicyStr = (configProps == null) ? null : configProps.getProperty(CFG_KEY_FSYNC_POLICY);
+            if ( (fsyncPolicyStr != null) && (!fsyncPolicyStr.isEmpty()) ) {
+                if ( !NFSObjDurabilityPolicy.isValidFsyncPolicy(fsyncPolicyStr) ) {
+                    System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_FSYNC_POLICY + "\" (" +
+                        NFSObjDurabilityPolicy.FSYNC_NONE + " | " + NFSObjDurabilityPolicy.FSYNC_FILE + " | " +
+                        NFSObjDurabilityPolicy.FSYNC_SET + " | " + NFSObjDurabilityPolicy.FSYNC_END + ").");
+                    configProps = null;
+                }
+            }
+
+            // When "range_copy_threshold_mb" and "range_copy_size_mb" are specified, they must be non-negative integers.
+            if ( !isValidConfigNumber(configProps, CFG_KEY_RANGE_COPY_THRESHOLD_MB, 0) ||
+                 !isValidConfigNumber(configProps, CFG_KEY_RANGE_COPY_SIZE_MB, 1) ) {
+                configProps = null;
+            }
+
+            // When the async copy engine parameters are specified, they must be positive integers
+            // (the buffer size is capped so that it fits an int).
+            if ( (configProps != null) &&
+                 ( !isValidConfigNumber(configProps, CFG_KEY_ASYNC_BUFFER_SIZE_KB, 4) ||
+                   !isValidConfigNumber(configProps, CFG_KEY_ASYNC_BUFFER_POOL_MB, 1) ||
+                   !isValidConfigNumber(configProps, CFG_KEY_ASYNC_QUEUE_DEPTH, 1) ) ) {
+                configProps = null;
+            }
+            else if ( (configProps != null) &&
+                      (getConfigNumber(configProps, CFG_KEY_ASYNC_BUFFER_SIZE_KB, DEFAULT_ASYNC_BUFFER_SIZE_KB) > 1024 * 1024) ) {
+                System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_ASYNC_BUFFER_SIZE_KB +
+                    "\" (must be no more than 1048576).");
+                configProps = null;
+            }
+
+            // When the I/O throttle parameters are specified, they must be non-negative integers.
+            if ( (configProps != null) &&
+                 ( !isValidConfigNumber(configProps, CFG_KEY_IO_READ_LIMIT_MBPS, 0) ||
+                   !isValidConfigNumber(configProps, CFG_KEY_IO_WRITE_LIMIT_MBPS, 0) ||
+                   !isValidConfigNumber(configProps, CFG_KEY_IO_BURST_MB, 0) ) ) {
+                configProps = null;
+            }
+
+            // When "progress_interval_sec" and "download_timeout_min" are specified, they must be valid integers.
+            if ( (configProps != null) &&
+                 ( !isValidConfigNumber(configProps, CFG_KEY_PROGRESS_INTERVAL_SEC, 1) ||
+                   !isValidConfigNumber(configProps, CFG_KEY_DOWNLOAD_TIMEOUT_MIN, 0) ) ) {
+                configProps = null;
+            }
+
+            // When "scan_threads" and "size_check_threads" are specified, they must be positive integers.
+            if ( (configProps != null) &&
+                 ( !isValidConfigNumber(configProps, CFG_KEY_SCAN_THREADS, 1) ||
+                   !isValidConfigNumber(configProps, CFG_KEY_SIZE_CHECK_THREADS, 1) ) ) {
+                configProps = null;
+            }
+
+            // When "topology_cache_ttl_min" is specified, it must be a non-negative integer (0: no topology cache).
+            if ( (configProps != null) && !isValidConfigNumber(configProps, CFG_KEY_TOPOLOGY_CACHE_TTL_MIN, 0) ) {
+                configProps = null;
+            }
+
+            // When "sstable_cache_max_mb" is specified, it must be a positive integer.
+            if ( (configProps != null) && !isValidConfigNumber(configProps, CFG_KEY_SSTABLE_CACHE_MAX_MB, 1) ) {
+                configProps = null;
+            }
+
+            // When "table_complete_hook" is a JMX hook, it must be "jmx", "jmx:local" or "jmx:<host>:<port>".
+            // Otherwise, error out.
+            String tableCompleteHookStr = (configProps == null) ? null : configProps.getProperty(CFG_KEY_TABLE_COMPLETE_HOOK);
+            if ( (tableCompleteHookStr != null) && !NFSObjTableCompletion.isValidHook(tableCompleteHookStr) ) {
+                System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_TABLE_COMPLETE_HOOK + "\" (" +
+                    "<shell_command> | jmx | jmx:local | jmx:<host>:<port>).");
+                configProps = null;
+            }
+
+            // When "table_complete_hook_timeout_sec" is specified, it must be a non-negative integer (0: no timeout).
+            if ( (configProps != null) && !isValidConfigNumber(configProps, CFG_KEY_TABLE_COMPLETE_HOOK_TIMEOUT_SEC, 0) ) {
+                configProps = null;
+            }
+
+            // When "checksum_verify" is specified, it must be one of the supported checksum algorithms. Otherwise, error out.
+            String checksumVerifyStr = (configProps == null) ? null : configProps.getProperty(CFG_KEY_CHECKSUM_VERIFY);
+            if ( (checksumVerifyStr != null) && (!checksumVerifyStr.isEmpty()) ) {
+                if ( !NFSObjChecksum.isValidAlgorithm(checksumVerifyStr) ) {
+                    System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + CFG_KEY_CHECKSUM_VERIFY + "\" (" +
+                        NFSObjChecksum.ALGO_NONE + " | " + NFSObjChecksum.ALGO_CRC32 + " | " +
+                        NFSObjChecksum.ALGO_CRC32C + " | " + NFSObjChecksum.ALGO_ADLER32 + ").");
+                    configProps = null;
+                }
+            }
         }
         catch (IOException ioe) {
             System.out.format("ERROR: failed to read/process configuration file (%s)\n.", configFilePath);
@@ -136,4 +349,54 @@ public class DseOpscNFSRestoreUtils {
 
         return configProps;
     }
+
+    /**
+     * Check whether a (numeric) configuration file parameter, when specified, has a valid value
+     * that is no less than the specified minimum value
+     *
+     * @param configProps
+     * @param cfgKey
+     * @param minValue
+     * @return
+     */
+    static boolean isValidConfigNumber(Properties configProps, String cfgKey, long minValue) {
+        if (configProps == null) {
+            return false;
+        }
+
+        String cfgValueStr = configProps.getProperty(cfgKey);
+
+        if ( (cfgValueStr != null) && (!cfgValueStr.isEmpty()) ) {
+            try {
+                if (Long.parseLong(cfgValueStr.trim()) < minValue) {
+                    throw new NumberFormatException();
+                }
+            }
+            catch (NumberFormatException nfe) {
+                System.out.println("ERROR: Incorrect value for configuration file parameter  \"" + cfgKey +
+                    "\" (must be an integer no less than " + minValue + ").");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the value of a (numeric) configuration file parameter; use the default value if not specified
+     *
+     * @param configProps
+     * @param cfgKey
+     * @param defaultValue
+     * @return
+     */
+    static long getConfigNumber(Properties configProps, String cfgKey, long defaultValue) {
+        String cfgValueStr = configProps.getProperty(cfgKey);
+
+        if ( (cfgValueStr == null) || cfgValueStr.isEmpty() ) {
+            return defaultValue;
+        }
+
+        return Long.parseLong(cfgValueStr.trim());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,240 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+
+/**
+ * Copy engine based on AsynchronousFileChannel, with direct buffers from a bounded, shared pool.
+ *
+ * Each file copy keeps up to "queueDepth" chunks in flight: reads of the following chunks from
+ * the NFS backup location are outstanding while the earlier chunks are being written locally,
+ * so the NFS read latency overlaps with the local writes instead of adding up with them.
+ * Chunks are checksummed and written in file order as their reads complete.
+ *
+ * A copy that already has chunks in flight never waits for another buffer (it continues with the
+ * buffers it has), so copies can't block each other when the pool runs dry.
+ */
+class NFSObjAsyncCopyEngine extends NFSObjCopyEngine {
+
+    /**
+     * One chunk of a file copy, from its read to its write
+     */
+    private static class Chunk {
+        final ByteBuffer buffer;
+        final long position;
+        final int length;
+        Future<Integer> future;
+
+        Chunk(ByteBuffer buffer, long position, int length) {
+            this.buffer = buffer;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    private final NFSObjDirectBufferPool bufferPool;
+    private final int queueDepth;
+
+    /**
+     * @param io_throttle
+     * @param cache_bypass
+     * @param durability_policy
+     * @param buffer_pool   direct buffer pool shared by all copies
+     * @param queue_depth   max. number of chunks in flight per file
+     */
+    NFSObjAsyncCopyEngine(NFSObjIoThrottle io_throttle,
+                          NFSObjCacheBypass cache_bypass,
+                          NFSObjDurabilityPolicy durability_policy,
+                          NFSObjDirectBufferPool buffer_pool,
+                          int queue_depth) {
+        super(io_throttle, cache_bypass, durability_policy);
+
+        assert (queue_depth > 0);
+
+        this.bufferPool = buffer_pool;
+        this.queueDepth = queue_depth;
+    }
+
+    @Override
+    String getName() {
+        return ENGINE_ASYNC;
+    }
+
+    @Override
+    protected long doCopy(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum) throws IOException {
+        Path srcPath = srcFile.toPath();
+        Path dstPath = dstFile.toPath();
+
+        long copied;
+
+        try ( AsynchronousFileChannel srcChannel = AsynchronousFileChannel.open(srcPath, StandardOpenOption.READ);
+              AsynchronousFileChannel dstChannel = AsynchronousFileChannel.open(dstPath, StandardOpenOption.WRITE) ) {
+
+            copied = pipeline(srcChannel, dstChannel, startOffset, srcChannel.size(), checksum);
+        }
+
+        // Keep the same behavior as FileUtils.copyFile() - preserve the file date
+        Files.setLastModifiedTime(dstPath, Files.getLastModifiedTime(srcPath));
+
+        return copied;
+    }
+
+    private long pipeline(AsynchronousFileChannel srcChannel,
+                          AsynchronousFileChannel dstChannel,
+                          long start,
+                          long end,
+                          NFSObjChecksum checksum) throws IOException {
+        ArrayDeque<Chunk> readingChunks = new ArrayDeque<>();
+        ArrayDeque<Chunk> writingChunks = new ArrayDeque<>();
+
+        long nextPosition = start;
+        long copied = 0;
+        boolean completed = false;
+
+        try {
+            while ( (nextPosition < end) || !readingChunks.isEmpty() || !writingChunks.isEmpty() ) {
+
+                // Keep the pipeline full: issue reads of the following chunks
+                while ( (nextPosition < end) && (readingChunks.size() + writingChunks.size() < queueDepth) ) {
+                    boolean idle = readingChunks.isEmpty() && writingChunks.isEmpty();
+
+                    ByteBuffer buffer = idle ? bufferPool.acquire() : bufferPool.tryAcquire();
+                    if (buffer == null) {
+                        break;
+                    }
+
+                    int length = (int) Math.min(buffer.capacity(), end - nextPosition);
+                    buffer.limit(length);
+
+                    Chunk chunk = new Chunk(buffer, nextPosition, length);
+                    readingChunks.addLast(chunk);
+                    nextPosition += length;
+
+                    ioThrottle.acquireRead(length);
+                    chunk.future = srcChannel.read(buffer, chunk.position);
+                }
+
+                Chunk readChunk = readingChunks.peekFirst();
+                Chunk writeChunk = writingChunks.peekFirst();
+
+                // Handle whatever is done first; otherwise wait for the oldest read (NFS latency dominates)
+                if ( (readChunk != null) && (readChunk.future.isDone() || !isDone(writeChunk)) ) {
+                    completeRead(srcChannel, readChunk);
+
+                    readingChunks.pollFirst();
+                    readChunk.future = null;
+                    writingChunks.addLast(readChunk);
+
+                    readChunk.buffer.flip();
+                    if (checksum != null) {
+                        checksum.updateRemaining(readChunk.buffer);
+                    }
+
+                    ioThrottle.acquireWrite(readChunk.length);
+                    readChunk.future = dstChannel.write(readChunk.buffer, readChunk.position);
+                }
+                else if (writeChunk != null) {
+                    await(writeChunk.future);
+
+                    // A partial write: write the rest of the chunk
+                    if ( writeChunk.buffer.hasRemaining() ) {
+                        writeChunk.future = dstChannel.write(writeChunk.buffer,
+                            writeChunk.position + writeChunk.buffer.position());
+                        continue;
+                    }
+
+                    writingChunks.pollFirst();
+                    bufferPool.release(writeChunk.buffer);
+                    copied += writeChunk.length;
+                }
+            }
+
+            completed = true;
+        }
+        finally {
+            if (!completed) {
+                releaseAll(readingChunks);
+                releaseAll(writingChunks);
+            }
+        }
+
+        return copied;
+    }
+
+    private static boolean isDone(Chunk chunk) {
+        return (chunk != null) && chunk.future.isDone();
+    }
+
+    /**
+     * Wait for the read of a chunk and read the rest of it if the read returned less than the chunk
+     */
+    private static void completeRead(AsynchronousFileChannel srcChannel, Chunk chunk) throws IOException {
+        int read = await(chunk.future);
+
+        while (true) {
+            if (read < 0) {
+                throw new IOException("Unexpected end of source file at offset " + (chunk.position + chunk.buffer.position()));
+            }
+
+            if (chunk.buffer.position() >= chunk.length) {
+                break;
+            }
+
+            read = await(srcChannel.read(chunk.buffer, chunk.position + chunk.buffer.position()));
+        }
+    }
+
+    private static int await(Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ee) {
+            throw (ee.getCause() instanceof IOException) ? (IOException) ee.getCause() : new IOException(ee.getCause());
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an asynchronous read/write");
+        }
+    }
+
+    /**
+     * After a failure: wait for the outstanding I/O of the chunks (the buffers are still in use
+     * by the channel until then) and give the buffers back to the pool
+     */
+    private void releaseAll(ArrayDeque<Chunk> chunks) {
+        for (Chunk chunk : chunks) {
+            if (chunk.future != null) {
+                try {
+                    chunk.future.get();
+                }
+                catch (ExecutionException ee) {
+                    // The copy failed already; just make sure the I/O is over
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            bufferPool.release(chunk.buffer);
+        }
+
+        chunks.clear();
+    }
+
+    @Override
+    void printStats() {
+        super.printStats();
+
+        System.out.format("    (%d chunks in flight per file, %s)\n", queueDepth, bufferPool.getUsageString());
+    }
+}
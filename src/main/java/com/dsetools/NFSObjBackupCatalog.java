@@ -0,0 +1,379 @@
+package com.dsetools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+
+/**
+ * Persistent local catalog of the OpsCenter backups in the NFS backup location.
+ *
+ * Walking "snapshots/&lt;host_id&gt;/opscenter_*" on NFS and parsing every backup.json again on
+ * each run can take minutes for hosts with years of scheduled backups. The catalog keeps, per
+ * host, the list of backups and the SSTable entries of each backup.json in local files under
+ * the catalog home directory (by default ~/.opscnfsrestore - not under the local download home
+ * directory, which "-cls" cleans):
+ *   &lt;catalog_home&gt;/&lt;host_id&gt;/catalog.tsv               - the backups of the host
+ *   &lt;catalog_home&gt;/&lt;host_id&gt;/backups/&lt;backup_dir&gt;.tsv   - the SSTable entries of one backup
+ *
+ * catalog.tsv has one tab-separated record per line:
+ *   H  &lt;host_dir_mtime&gt;  &lt;indexed_at&gt;
+ *   B  &lt;backup_json_mtime&gt;  &lt;backup_json_size&gt;  &lt;sstable_entry_num&gt;  &lt;backup_dir&gt;
+ * (backup_json_mtime is -1 for a backup directory without backup.json yet, e.g. a running backup).
+ * A backup's entry file has one line per SSTable component:
+ *   &lt;keyspace&gt;  &lt;table&gt;  &lt;version&gt;  &lt;size&gt;  &lt;uniquifier&gt;  &lt;name&gt;
+ *
+ * The catalog of a host is refreshed incrementally (once per run) before it is used: the backup
+ * directories of the host are only listed again when the mtime of the host directory changed
+ * (a backup directory was added or removed), only new backups are parsed, and backups that didn't
+ * have their backup.json yet are checked again. OpsCenter backup directories don't change once
+ * their backup.json is written.
+ */
+class NFSObjBackupCatalog {
+
+    static final String CATALOG_FILE = "catalog.tsv";
+    static final String BACKUPS_DIR = "backups";
+    static final String BACKUP_FILE_SUFFIX = ".tsv";
+
+    static final String RECORD_HOST = "H";
+    static final String RECORD_BACKUP = "B";
+
+    // A host directory modified this close to the last listing may have changed during the listing
+    static final long MTIME_RACE_WINDOW_MILLIS = 2000;
+
+    /**
+     * One OpsCenter backup (one "opscenter_*" directory) of a host
+     */
+    private static class BackupEntry {
+        final String dirName;
+        long backupJsonMtime = -1;
+        long backupJsonSize = -1;
+        long recordNum = 0;
+
+        BackupEntry(String dir_name) {
+            this.dirName = dir_name;
+        }
+
+        boolean hasBackupJson() {
+            return backupJsonMtime >= 0;
+        }
+    }
+
+    /**
+     * Catalog of one host
+     */
+    private static class HostCatalog {
+        long hostDirMtime = -1;
+        long indexedAt = 0;
+        final TreeMap<String, BackupEntry> backups = new TreeMap<>();
+    }
+
+    private final Path catalogHomePath;
+    private final String nfsBackupHome;
+
+    // Hosts already refreshed by this run. Hosts can be scanned in parallel: each host is refreshed under its own lock.
+    private final ConcurrentHashMap<String, HostCatalog> hostCatalogs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> hostLocks = new ConcurrentHashMap<>();
+
+    /**
+     * @param catalog_home_path
+     * @param nfs_backup_home
+     */
+    NFSObjBackupCatalog(Path catalog_home_path, String nfs_backup_home) {
+        this.catalogHomePath = catalog_home_path;
+        this.nfsBackupHome = nfs_backup_home;
+    }
+
+    Path getCatalogHomePath() {
+        return catalogHomePath;
+    }
+
+    /**
+     * Time index of the (complete) backups of a host, from the (refreshed) catalog
+     *
+     * @param hostId
+     * @return
+     * @throws IOException
+     */
+    NFSObjBackupTimeIndex getTimeIndex(String hostId) throws IOException {
+        List<String> backupDirNames = new ArrayList<>();
+
+        for ( BackupEntry backupEntry : getHostCatalog(hostId).backups.values() ) {
+            if ( backupEntry.hasBackupJson() ) {
+                backupDirNames.add(backupEntry.dirName);
+            }
+        }
+
+        return new NFSObjBackupTimeIndex(backupDirNames, dirName -> true);
+    }
+
+    /**
+     * Pass the SSTable entries of a backup that match the keyspace/table to the consumer, in backup.json order
+     *
+     * @param hostId
+     * @param backupDirName
+     * @param keyspaceName
+     * @param tableName     null or empty: all tables of the keyspace
+     * @param consumer
+     * @return total number of SSTable entries of the backup (matching or not)
+     * @throws IOException
+     */
+    long readRecords(String hostId,
+                     String backupDirName,
+                     String keyspaceName,
+                     String tableName,
+                     Consumer<NFSObjBackupRecord> consumer) throws IOException {
+        Map<String, String> internedNames = new HashMap<>();
+        long recordNum = 0;
+
+        try ( BufferedReader reader = Files.newBufferedReader(getBackupFilePath(hostId, backupDirName), StandardCharsets.UTF_8) ) {
+            String line;
+
+            while ( (line = reader.readLine()) != null ) {
+                String[] fields = line.split("\t", 6);
+                if (fields.length != 6) {
+                    throw new IOException("Corrupted backup catalog entry for \"" + backupDirName + "\": " + line);
+                }
+
+                recordNum++;
+
+                if ( !keyspaceName.equalsIgnoreCase(fields[0]) ) {
+                    continue;
+                }
+                if ( (tableName != null) && !tableName.isEmpty() && !tableName.equalsIgnoreCase(fields[1]) ) {
+                    continue;
+                }
+
+                consumer.accept(new NFSObjBackupRecord(fields[5],
+                    intern(internedNames, fields[0]),
+                    intern(internedNames, fields[1]),
+                    fields[4],
+                    intern(internedNames, fields[2]),
+                    Long.parseLong(fields[3])));
+            }
+        }
+        catch (NumberFormatException nfe) {
+            throw new IOException("Corrupted backup catalog entry for \"" + backupDirName + "\"", nfe);
+        }
+
+        return recordNum;
+    }
+
+    private static String intern(Map<String, String> internedNames, String name) {
+        String internedName = internedNames.putIfAbsent(name, name);
+        return (internedName != null) ? internedName : name;
+    }
+
+    /**
+     * The (refreshed) catalog of a host
+     */
+    private HostCatalog getHostCatalog(String hostId) throws IOException {
+        synchronized (hostLocks.computeIfAbsent(hostId, h -> new Object())) {
+            HostCatalog hostCatalog = hostCatalogs.get(hostId);
+
+            if (hostCatalog == null) {
+                hostCatalog = load(hostId);
+                refresh(hostId, hostCatalog);
+                hostCatalogs.put(hostId, hostCatalog);
+            }
+
+            return hostCatalog;
+        }
+    }
+
+    private HostCatalog load(String hostId) {
+        HostCatalog hostCatalog = new HostCatalog();
+        Path catalogFilePath = getHostCatalogPath(hostId).resolve(CATALOG_FILE);
+
+        if ( Files.notExists(catalogFilePath) ) {
+            return hostCatalog;
+        }
+
+        try ( BufferedReader reader = Files.newBufferedReader(catalogFilePath, StandardCharsets.UTF_8) ) {
+            String line;
+
+            while ( (line = reader.readLine()) != null ) {
+                String[] fields = line.split("\t");
+
+                if ( RECORD_HOST.equals(fields[0]) && (fields.length == 3) ) {
+                    hostCatalog.hostDirMtime = Long.parseLong(fields[1]);
+                    hostCatalog.indexedAt = Long.parseLong(fields[2]);
+                }
+                else if ( RECORD_BACKUP.equals(fields[0]) && (fields.length == 5) ) {
+                    BackupEntry backupEntry = new BackupEntry(fields[4]);
+                    backupEntry.backupJsonMtime = Long.parseLong(fields[1]);
+                    backupEntry.backupJsonSize = Long.parseLong(fields[2]);
+                    backupEntry.recordNum = Long.parseLong(fields[3]);
+
+                    hostCatalog.backups.put(backupEntry.dirName, backupEntry);
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            // Rebuild an unreadable catalog from scratch
+            System.out.println("   WARN: Backup catalog file \"" + catalogFilePath + "\" is corrupted, rebuilding it.");
+            return new HostCatalog();
+        }
+
+        return hostCatalog;
+    }
+
+    private void refresh(String hostId, HostCatalog hostCatalog) throws IOException {
+        long startMillis = System.currentTimeMillis();
+
+        // <nfs_backup_home_dir>/snapshots/<host_id>
+        Path hostDirPath = Paths.get(nfsBackupHome, DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_BASESTR, hostId);
+        if ( !Files.isDirectory(hostDirPath) ) {
+            return;
+        }
+
+        long hostDirMtime = Files.getLastModifiedTime(hostDirPath).toMillis();
+
+        boolean listBackupDirs = (hostCatalog.hostDirMtime != hostDirMtime) ||
+            (hostCatalog.hostDirMtime + MTIME_RACE_WINDOW_MILLIS >= hostCatalog.indexedAt);
+
+        List<String> removedDirNames = new ArrayList<>();
+
+        if (listBackupDirs) {
+            Set<String> backupDirNames = new HashSet<>(NFSObjBackupTimeIndex.listBackupDirNames(hostDirPath));
+
+            for (String dirName : hostCatalog.backups.keySet()) {
+                if ( !backupDirNames.contains(dirName) ) {
+                    removedDirNames.add(dirName);
+                }
+            }
+
+            for (String dirName : removedDirNames) {
+                hostCatalog.backups.remove(dirName);
+                Files.deleteIfExists(getBackupFilePath(hostId, dirName));
+            }
+
+            for (String dirName : backupDirNames) {
+                hostCatalog.backups.putIfAbsent(dirName, new BackupEntry(dirName));
+            }
+
+            hostCatalog.hostDirMtime = hostDirMtime;
+            hostCatalog.indexedAt = startMillis;
+        }
+
+        // New backups, and backups that didn't have their backup.json yet (or lost their entry file)
+        int indexedBackupNum = 0;
+
+        for (BackupEntry backupEntry : hostCatalog.backups.values()) {
+            if ( backupEntry.hasBackupJson() && Files.exists(getBackupFilePath(hostId, backupEntry.dirName)) ) {
+                continue;
+            }
+
+            Path backupJsonPath = hostDirPath.resolve(backupEntry.dirName).resolve(DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE);
+            if ( !Files.isRegularFile(backupJsonPath) ) {
+                backupEntry.backupJsonMtime = -1;
+                continue;
+            }
+
+            indexBackup(hostId, backupEntry, backupJsonPath);
+            indexedBackupNum++;
+        }
+
+        if ( listBackupDirs || (indexedBackupNum > 0) ) {
+            save(hostId, hostCatalog);
+        }
+
+        if ( (indexedBackupNum > 0) || !removedDirNames.isEmpty() ) {
+            System.out.format("  Backup catalog of host %s updated: %d backups indexed, %d removed, %d backups in total (%d ms).\n",
+                hostId, indexedBackupNum, removedDirNames.size(), hostCatalog.backups.size(),
+                System.currentTimeMillis() - startMillis);
+        }
+    }
+
+    /**
+     * Parse the backup.json of a backup into its (local) entry file
+     */
+    private void indexBackup(String hostId, BackupEntry backupEntry, Path backupJsonPath) throws IOException {
+        long backupJsonMtime = Files.getLastModifiedTime(backupJsonPath).toMillis();
+        long backupJsonSize = Files.size(backupJsonPath);
+
+        Path backupFilePath = getBackupFilePath(hostId, backupEntry.dirName);
+        Files.createDirectories(backupFilePath.getParent());
+
+        Path tmpFilePath = Paths.get(backupFilePath + ".tmp");
+        long recordNum;
+
+        try ( BufferedWriter writer = Files.newBufferedWriter(tmpFilePath, StandardCharsets.UTF_8) ) {
+            IOException[] writeException = new IOException[1];
+
+            recordNum = new NFSObjBackupJsonParser(null, null).parse(backupJsonPath, backupRecord -> {
+                if (writeException[0] != null) {
+                    return;
+                }
+
+                try {
+                    writer.write(backupRecord.getKeyspaceName() + "\t" +
+                        backupRecord.getTableName() + "\t" +
+                        backupRecord.getSstableVersion() + "\t" +
+                        backupRecord.getSize() + "\t" +
+                        backupRecord.getUniquifier() + "\t" +
+                        backupRecord.getObjName());
+                    writer.newLine();
+                }
+                catch (IOException ioe) {
+                    writeException[0] = ioe;
+                }
+            });
+
+            if (writeException[0] != null) {
+                throw writeException[0];
+            }
+        }
+
+        Files.move(tmpFilePath, backupFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        backupEntry.backupJsonMtime = backupJsonMtime;
+        backupEntry.backupJsonSize = backupJsonSize;
+        backupEntry.recordNum = recordNum;
+    }
+
+    private void save(String hostId, HostCatalog hostCatalog) throws IOException {
+        Path catalogFilePath = getHostCatalogPath(hostId).resolve(CATALOG_FILE);
+        Path tmpFilePath = Paths.get(catalogFilePath + ".tmp");
+
+        Files.createDirectories(catalogFilePath.getParent());
+
+        try ( BufferedWriter writer = Files.newBufferedWriter(tmpFilePath, StandardCharsets.UTF_8) ) {
+            writer.write(RECORD_HOST + "\t" + hostCatalog.hostDirMtime + "\t" + hostCatalog.indexedAt);
+            writer.newLine();
+
+            for (BackupEntry backupEntry : hostCatalog.backups.values()) {
+                writer.write(RECORD_BACKUP + "\t" +
+                    backupEntry.backupJsonMtime + "\t" +
+                    backupEntry.backupJsonSize + "\t" +
+                    backupEntry.recordNum + "\t" +
+                    backupEntry.dirName);
+                writer.newLine();
+            }
+        }
+
+        Files.move(tmpFilePath, catalogFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path getHostCatalogPath(String hostId) {
+        return catalogHomePath.resolve(hostId);
+    }
+
+    private Path getBackupFilePath(String hostId, String dirName) {
+        return getHostCatalogPath(hostId).resolve(BACKUPS_DIR).resolve(dirName + BACKUP_FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,250 @@
+package com.dsetools;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+
+/**
+ * Streaming parser of an OpsCenter backup.json file:
+ *   {"sstables": [{"uniquifier": ..., "keyspace": ..., "cf": ..., "name": ..., "version": ...}, ...], ...}
+ *
+ * The file is parsed token by token (json-simple ContentHandler), so no JSON object tree is
+ * built, and every SSTable entry that matches the keyspace/table filter is handed to the caller
+ * as a typed record as soon as it is parsed. The memory use doesn't depend on the file size.
+ * Keyspace, table and version names repeat in every entry and are shared (interned per parser).
+ *
+ * Unknown keys (and nested values) in an entry are ignored. "size" is read when it is there,
+ * as a number or as a string.
+ */
+class NFSObjBackupJsonParser implements ContentHandler {
+
+    static final String KEY_UNIQUIFIER = "uniquifier";
+    static final String KEY_KEYSPACE = "keyspace";
+    static final String KEY_TABLE = "cf";
+    static final String KEY_NAME = "name";
+    static final String KEY_VERSION = "version";
+    static final String KEY_SIZE = "size";
+
+    private final String keyspaceFilter;
+    private final String tableFilter;
+
+    private final Map<String, String> internedNames = new HashMap<>();
+
+    private Consumer<NFSObjBackupRecord> recordConsumer;
+
+    // Object/array nesting depth, and the depth of the "sstables" array (0: not in it)
+    private int depth;
+    private int sstableArrayDepth;
+    private String topLevelKey;
+
+    // SSTable entry being parsed
+    private boolean inRecord;
+    private String currentKey;
+    private String objName;
+    private String keyspaceName;
+    private String tableName;
+    private String uniquifier;
+    private String sstableVersion;
+    private long size;
+
+    private long recordNum;
+
+    /**
+     * @param keyspace_filter   keyspace of the records to emit (null: all)
+     * @param table_filter      table of the records to emit (null or empty: all tables of the keyspace)
+     */
+    NFSObjBackupJsonParser(String keyspace_filter, String table_filter) {
+        this.keyspaceFilter = keyspace_filter;
+        this.tableFilter = table_filter;
+    }
+
+    /**
+     * Parse a backup.json file and pass every matching SSTable entry to the consumer, in file order
+     *
+     * @param backupJsonPath
+     * @param consumer
+     * @return total number of SSTable entries in the file (matching or not)
+     * @throws IOException  if the file can't be read or is not valid JSON
+     */
+    long parse(Path backupJsonPath, Consumer<NFSObjBackupRecord> consumer) throws IOException {
+        this.recordConsumer = consumer;
+        this.recordNum = 0;
+
+        try ( BufferedReader reader = Files.newBufferedReader(backupJsonPath, StandardCharsets.UTF_8) ) {
+            new JSONParser().parse(reader, this);
+        }
+        catch (ParseException pe) {
+            throw new IOException("Invalid JSON in \"" + backupJsonPath + "\" (" + pe + ")", pe);
+        }
+
+        return recordNum;
+    }
+
+    @Override
+    public void startJSON() {
+        depth = 0;
+        sstableArrayDepth = 0;
+        topLevelKey = null;
+        inRecord = false;
+    }
+
+    @Override
+    public void endJSON() {
+    }
+
+    @Override
+    public boolean startObject() {
+        depth++;
+
+        if ( (sstableArrayDepth > 0) && (depth == sstableArrayDepth + 1) ) {
+            inRecord = true;
+            currentKey = null;
+            objName = null;
+            keyspaceName = null;
+            tableName = null;
+            uniquifier = null;
+            sstableVersion = null;
+            size = -1;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean endObject() {
+        if ( inRecord && (depth == sstableArrayDepth + 1) ) {
+            inRecord = false;
+            endRecord();
+        }
+
+        depth--;
+
+        return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+        if (depth == 1) {
+            topLevelKey = key;
+        }
+        else if ( inRecord && (depth == sstableArrayDepth + 1) ) {
+            currentKey = key;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+        if ( inRecord && (depth == sstableArrayDepth + 1) ) {
+            currentKey = null;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean startArray() {
+        depth++;
+
+        if ( (depth == 2) && DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_SSTABLES_MARKER_STR.equals(topLevelKey) ) {
+            sstableArrayDepth = depth;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean endArray() {
+        if (depth == sstableArrayDepth) {
+            sstableArrayDepth = 0;
+        }
+
+        depth--;
+
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+        // Only the direct (primitive) values of an SSTable entry
+        if ( !inRecord || (currentKey == null) || (depth != sstableArrayDepth + 1) || (value == null) ) {
+            return true;
+        }
+
+        if ( KEY_SIZE.equalsIgnoreCase(currentKey) ) {
+            size = toSize(value);
+            return true;
+        }
+
+        String valueStr = value.toString();
+
+        if ( KEY_NAME.equalsIgnoreCase(currentKey) ) {
+            objName = valueStr;
+        }
+        else if ( KEY_KEYSPACE.equalsIgnoreCase(currentKey) ) {
+            keyspaceName = intern(valueStr);
+        }
+        else if ( KEY_TABLE.equalsIgnoreCase(currentKey) ) {
+            tableName = intern(valueStr);
+        }
+        else if ( KEY_UNIQUIFIER.equalsIgnoreCase(currentKey) ) {
+            uniquifier = valueStr;
+        }
+        else if ( KEY_VERSION.equalsIgnoreCase(currentKey) ) {
+            sstableVersion = intern(valueStr);
+        }
+
+        return true;
+    }
+
+    private static long toSize(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        try {
+            return Long.parseLong(value.toString().trim());
+        }
+        catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    private String intern(String name) {
+        String internedName = internedNames.putIfAbsent(name, name);
+        return (internedName != null) ? internedName : name;
+    }
+
+    private void endRecord() {
+        recordNum++;
+
+        // An entry without a name can't be mapped to a backup file
+        if ( (objName == null) || (keyspaceName == null) || (tableName == null) ) {
+            return;
+        }
+
+        if ( (keyspaceFilter != null) && !keyspaceFilter.equalsIgnoreCase(keyspaceName) ) {
+            return;
+        }
+
+        if ( (tableFilter != null) && !tableFilter.isEmpty() && !tableFilter.equalsIgnoreCase(tableName) ) {
+            return;
+        }
+
+        recordConsumer.accept(new NFSObjBackupRecord(objName, keyspaceName, tableName,
+            (uniquifier == null) ? "" : uniquifier,
+            (sstableVersion == null) ? "" : sstableVersion,
+            size));
+    }
+}
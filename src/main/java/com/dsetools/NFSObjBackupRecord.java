@@ -0,0 +1,74 @@
+package com.dsetools;
+
+
+/**
+ * One SSTable component entry of an OpsCenter backup.json file, e.g.
+ *   {"uniquifier": "3a69...", "keyspace": "testks", "cf": "songs",
+ *    "name": "3a69...-mc-1-big-Data.db", "version": "mc", "size": 6000000}
+ */
+class NFSObjBackupRecord {
+
+    private final String objName;
+    private final String keyspaceName;
+    private final String tableName;
+    private final String uniquifier;
+    private final String sstableVersion;
+    private final long size;
+
+    /**
+     * @param obj_name          backup file name under the NFS "sstables" directory (uniquifier prefixed)
+     * @param ks_name
+     * @param tbl_name
+     * @param uniquifier_str
+     * @param sstable_version
+     * @param size              file size in bytes as recorded in backup.json (-1 if not recorded)
+     */
+    NFSObjBackupRecord(String obj_name,
+                       String ks_name,
+                       String tbl_name,
+                       String uniquifier_str,
+                       String sstable_version,
+                       long size) {
+        this.objName = obj_name;
+        this.keyspaceName = ks_name;
+        this.tableName = tbl_name;
+        this.uniquifier = uniquifier_str;
+        this.sstableVersion = sstable_version;
+        this.size = size;
+    }
+
+    String getObjName() {
+        return objName;
+    }
+
+    String getKeyspaceName() {
+        return keyspaceName;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    String getUniquifier() {
+        return uniquifier;
+    }
+
+    String getSstableVersion() {
+        return sstableVersion;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Real SSTable file name, without the OpsCenter uniquifier prefix
+     * (e.g. &lt;uniquifier&gt;-mc-1-big-Data.db -> mc-1-big-Data.db)
+     *
+     * @return
+     */
+    String getSstableName() {
+        int sstblVersionStartPos = objName.indexOf("-" + sstableVersion + "-") + 1;
+        return objName.substring(sstblVersionStartPos);
+    }
+}
@@ -0,0 +1,187 @@
+package com.dsetools;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+
+/**
+ * Time index of the OpsCenter backups of one host:
+ *   &lt;nfs_backup_home_dir&gt;/snapshots/&lt;host_id&gt;/opscenter_&lt;schedule_time_uuid_string&gt;_yyyy-MM-dd-HH-mm-ss-UTC
+ *   &lt;nfs_backup_home_dir&gt;/snapshots/&lt;host_id&gt;/opscenter_adhoc_yyyy-MM-dd-HH-mm-ss-UTC
+ *
+ * Only the backup directory names of the host are listed (no recursive walk of the backup files),
+ * and the backup times are parsed from the names into a sorted map, so a lookup costs
+ * O(log(number of backups)) instead of a listing of every file of every backup.
+ *
+ * A backup is only found once its backup.json file is written (an OpsCenter backup that is still
+ * running has no backup.json yet). For an index built from the NFS directory names, this is checked
+ * for the candidate backups of a lookup only.
+ */
+class NFSObjBackupTimeIndex {
+
+    // "yyyy-MM-dd-HH-mm-ss-UTC" suffix of a backup directory name
+    static final int BACKUP_TIME_SUFFIX_LENGTH = 23;
+
+    private static final DateTimeFormatter backupDirTimeFormatter =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss-'UTC'").withZone(ZoneId.of("UTC"));
+
+    // Backup time -> backup directory name
+    private final TreeMap<ZonedDateTime, String> backups = new TreeMap<>();
+
+    // Whether a backup (directory name) has its backup.json file
+    private final Predicate<String> backupComplete;
+
+    /**
+     * @param backup_dir_names
+     * @param backup_complete
+     */
+    NFSObjBackupTimeIndex(Collection<String> backup_dir_names, Predicate<String> backup_complete) {
+        this.backupComplete = backup_complete;
+
+        // Of two backups with the same time (second precision), the last directory name wins
+        List<String> sortedDirNames = new ArrayList<>(backup_dir_names);
+        Collections.sort(sortedDirNames);
+
+        for (String dirName : sortedDirNames) {
+            ZonedDateTime backupTime = parseBackupTime(dirName);
+            if (backupTime != null) {
+                backups.put(backupTime, dirName);
+            }
+        }
+    }
+
+    /**
+     * Build the time index of a host from the backup directory names on NFS
+     *
+     * @param hostDirPath   &lt;nfs_backup_home_dir&gt;/snapshots/&lt;host_id&gt;
+     * @return empty index if the host directory doesn't exist
+     * @throws IOException
+     */
+    static NFSObjBackupTimeIndex load(Path hostDirPath) throws IOException {
+        return new NFSObjBackupTimeIndex(listBackupDirNames(hostDirPath),
+            dirName -> Files.isRegularFile(hostDirPath.resolve(dirName).resolve(DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE)));
+    }
+
+    /**
+     * Names of the backup ("opscenter_*") directories of a host, without walking into them
+     *
+     * @param hostDirPath
+     * @return empty list if the host directory doesn't exist
+     * @throws IOException
+     */
+    static List<String> listBackupDirNames(Path hostDirPath) throws IOException {
+        List<String> backupDirNames = new ArrayList<>();
+
+        if ( !Files.isDirectory(hostDirPath) ) {
+            return backupDirNames;
+        }
+
+        try ( DirectoryStream<Path> dirStream = Files.newDirectoryStream(hostDirPath,
+                  DseOpscNFSRestoreUtils.OPSC_NFS_OBJKEY_OPSC_MARKER_STR + "*") ) {
+            for (Path backupDirPath : dirStream) {
+                if ( Files.isDirectory(backupDirPath) ) {
+                    backupDirNames.add(backupDirPath.getFileName().toString());
+                }
+            }
+        }
+
+        return backupDirNames;
+    }
+
+    /**
+     * Backup time of a backup directory name
+     *
+     * @param dirName
+     * @return null if the directory name doesn't end with a backup time
+     */
+    static ZonedDateTime parseBackupTime(String dirName) {
+        if (dirName.length() < BACKUP_TIME_SUFFIX_LENGTH) {
+            return null;
+        }
+
+        try {
+            return ZonedDateTime.parse(dirName.substring(dirName.length() - BACKUP_TIME_SUFFIX_LENGTH), backupDirTimeFormatter);
+        }
+        catch (DateTimeParseException dte) {
+            return null;
+        }
+    }
+
+    int getBackupNum() {
+        return backups.size();
+    }
+
+    /**
+     * The (latest) complete backup within the minute of the specified time, which is how OpsCenter
+     * displays backup times
+     *
+     * @param backupTime
+     * @return backup directory name; null if there is none
+     */
+    String findExactMinute(ZonedDateTime backupTime) {
+        ZonedDateTime minuteStart = backupTime.truncatedTo(ChronoUnit.MINUTES);
+
+        return findLatest(backups.subMap(minuteStart, true, minuteStart.plusMinutes(1), false));
+    }
+
+    /**
+     * The latest complete backup at or before the specified time (minute precision)
+     *
+     * @param backupTime
+     * @return backup directory name; null if there is none
+     */
+    String findNearestBefore(ZonedDateTime backupTime) {
+        ZonedDateTime minuteEnd = backupTime.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+
+        return findLatest(backups.headMap(minuteEnd, false));
+    }
+
+    /**
+     * The complete backups between two times (minute precision, both inclusive), in time order
+     *
+     * @param fromTime
+     * @param toTime
+     * @return backup time -> backup directory name
+     */
+    NavigableMap<ZonedDateTime, String> findRange(ZonedDateTime fromTime, ZonedDateTime toTime) {
+        TreeMap<ZonedDateTime, String> rangeBackups = new TreeMap<>();
+
+        ZonedDateTime fromMinute = fromTime.truncatedTo(ChronoUnit.MINUTES);
+        ZonedDateTime toMinuteEnd = toTime.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+
+        if ( fromMinute.isBefore(toMinuteEnd) ) {
+            for (Map.Entry<ZonedDateTime, String> entry : backups.subMap(fromMinute, true, toMinuteEnd, false).entrySet()) {
+                if ( backupComplete.test(entry.getValue()) ) {
+                    rangeBackups.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return rangeBackups;
+    }
+
+    private String findLatest(NavigableMap<ZonedDateTime, String> candidates) {
+        for (String dirName : candidates.descendingMap().values()) {
+            if ( backupComplete.test(dirName) ) {
+                return dirName;
+            }
+        }
+
+        return null;
+    }
+}
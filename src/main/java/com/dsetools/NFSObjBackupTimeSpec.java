@@ -0,0 +1,109 @@
+package com.dsetools;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.NavigableMap;
+
+
+/**
+ * Which backup(s) the "-obt" option value selects (OpsCenter backup times are in UTC, minute precision):
+ *   "M/d/yyyy h:mm a"                        - the backup at exactly that minute (as shown by OpsCenter)
+ *   "before:M/d/yyyy h:mm a"                 - the latest backup at or before that minute
+ *   "M/d/yyyy h:mm a,M/d/yyyy h:mm a"        - all backups between the two minutes (listing only)
+ */
+class NFSObjBackupTimeSpec {
+
+    static final String OBT_TIME_FORMAT = "M/d/yyyy h:mm a";
+    static final String OBT_BEFORE_PREFIX = "before:";
+    static final String OBT_RANGE_SEPARATOR = ",";
+
+    enum Mode { EXACT, BEFORE, RANGE }
+
+    private static final DateTimeFormatter obtFormatter = DateTimeFormatter.ofPattern(OBT_TIME_FORMAT);
+    private static final DateTimeFormatter opscObjTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss-z");
+
+    private final Mode mode;
+    private final ZonedDateTime fromTime;
+    private final ZonedDateTime toTime;
+
+    private NFSObjBackupTimeSpec(Mode mode, ZonedDateTime from_time, ZonedDateTime to_time) {
+        this.mode = mode;
+        this.fromTime = from_time;
+        this.toTime = to_time;
+    }
+
+    /**
+     * Parse an "-obt" option value
+     *
+     * @param obtOptValue
+     * @return
+     * @throws DateTimeParseException   if a time is not in "M/d/yyyy h:mm a" format
+     */
+    static NFSObjBackupTimeSpec parse(String obtOptValue) {
+        String value = obtOptValue.trim();
+
+        if ( value.regionMatches(true, 0, OBT_BEFORE_PREFIX, 0, OBT_BEFORE_PREFIX.length()) ) {
+            ZonedDateTime time = parseTime(value.substring(OBT_BEFORE_PREFIX.length()));
+            return new NFSObjBackupTimeSpec(Mode.BEFORE, time, time);
+        }
+
+        int separatorPos = value.indexOf(OBT_RANGE_SEPARATOR);
+        if (separatorPos >= 0) {
+            return new NFSObjBackupTimeSpec(Mode.RANGE,
+                parseTime(value.substring(0, separatorPos)),
+                parseTime(value.substring(separatorPos + 1)));
+        }
+
+        ZonedDateTime time = parseTime(value);
+        return new NFSObjBackupTimeSpec(Mode.EXACT, time, time);
+    }
+
+    private static ZonedDateTime parseTime(String timeStr) {
+        return LocalDateTime.parse(timeStr.trim(), obtFormatter).atZone(ZoneId.of("UTC"));
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    boolean isRange() {
+        return mode == Mode.RANGE;
+    }
+
+    /**
+     * The backup selected by an exact or nearest-before time
+     *
+     * @param timeIndex
+     * @return backup directory name; null if there is none
+     */
+    String resolve(NFSObjBackupTimeIndex timeIndex) {
+        assert (mode != Mode.RANGE);
+
+        return (mode == Mode.BEFORE) ? timeIndex.findNearestBefore(fromTime) : timeIndex.findExactMinute(fromTime);
+    }
+
+    /**
+     * The backups selected by a time range
+     *
+     * @param timeIndex
+     * @return backup time -> backup directory name, in time order
+     */
+    NavigableMap<ZonedDateTime, String> resolveRange(NFSObjBackupTimeIndex timeIndex) {
+        return timeIndex.findRange(fromTime, toTime);
+    }
+
+    @Override
+    public String toString() {
+        if (mode == Mode.BEFORE) {
+            return "at or before " + fromTime.format(opscObjTimeFormatter);
+        }
+        else if (mode == Mode.RANGE) {
+            return fromTime.format(opscObjTimeFormatter) + " to " + toTime.format(opscObjTimeFormatter);
+        }
+
+        return fromTime.format(opscObjTimeFormatter);
+    }
+}
@@ -0,0 +1,355 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Page-cache-friendly restore ("cache_bypass" configuration file parameter).
+ *
+ * Copying hundreds of GB through the page cache evicts the hot SSTable pages of the running
+ * DSE node. With cache bypass, restored files don't stay in the page cache:
+ *  - "direct"    : the target file is written with O_DIRECT (ExtendedOpenOption.DIRECT, JDK 10+)
+ *                  from aligned direct buffers. The unaligned tail of a file is written through
+ *                  the page cache and dropped afterwards. If the JVM or the filesystem of the
+ *                  target doesn't support O_DIRECT, "dropbehind" is used instead.
+ *  - "dropbehind": the file is copied by the configured copy engine, and its pages are dropped
+ *                  from the cache (after being flushed) when the file, or a byte range of a
+ *                  range copy, is done.
+ * In both modes, the pages of the source file on the NFS client side are dropped as well.
+ *
+ * Java has no posix_fadvise(), so the pages are dropped with GNU dd (coreutils 8.11+):
+ *   dd if=/dev/null of=<file> oflag=nocache conv=notrunc[,fdatasync] count=0
+ *   dd if=<file> iflag=nocache count=0
+ * If dd isn't usable, a warning is printed once and the pages are left in the cache.
+ *
+ * Every drop forks two dd processes (a few ms), so it is only done for files (or byte ranges) of at
+ * least "cache_bypass_min_mb" (default 16 MB): small files don't take much of the page cache. The
+ * target file is only flushed ("fdatasync") by dd when an fsync policy is configured, which syncs the
+ * file anyway; otherwise, the dirty pages are written back asynchronously and left to the OS, and only
+ * the clean pages are dropped.
+ */
+class NFSObjCacheBypass {
+
+    static final String MODE_NONE = "none";
+    static final String MODE_DIRECT = "direct";
+    static final String MODE_DROPBEHIND = "dropbehind";
+
+    // Alignment of O_DIRECT buffers, offsets and lengths when the filesystem block size is unknown
+    static final int DEFAULT_DIRECT_ALIGNMENT = 4096;
+
+    private static final String DD_COMMAND = "dd";
+    private static final File DEV_NULL = new File("/dev/null");
+
+    private final String mode;
+    private final long dropBehindMinBytes;
+    private final boolean dataSync;
+
+    // ExtendedOpenOption.DIRECT and ByteBuffer.alignedSlice() (null if the JVM doesn't have them)
+    private final OpenOption directOption;
+    private final Method alignedSliceMethod;
+
+    // Per target filesystem: O_DIRECT alignment, or 0 if O_DIRECT was rejected
+    private final ConcurrentHashMap<FileStore, Integer> directAlignments = new ConcurrentHashMap<>();
+
+    private volatile boolean dropBehindUsable = true;
+
+    private final AtomicLong directFiles = new AtomicLong();
+    private final AtomicLong directBytes = new AtomicLong();
+    private final AtomicLong droppedFiles = new AtomicLong();
+
+    private NFSObjCacheBypass(String mode, long drop_behind_min_bytes, boolean data_sync) {
+        this.mode = mode;
+        this.dropBehindMinBytes = drop_behind_min_bytes;
+        this.dataSync = data_sync;
+
+        OpenOption option = null;
+        Method method = null;
+
+        if ( MODE_DIRECT.equals(mode) ) {
+            try {
+                Class<?> extendedOptionClass = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+                option = (OpenOption) extendedOptionClass.getField("DIRECT").get(null);
+                method = ByteBuffer.class.getMethod("alignedSlice", int.class);
+            }
+            catch (ReflectiveOperationException | ClassCastException e) {
+                System.out.println("   WARN: O_DIRECT is not supported by this JVM, falling back to \"" +
+                    MODE_DROPBEHIND + "\" cache bypass.");
+                option = null;
+                method = null;
+            }
+        }
+
+        this.directOption = option;
+        this.alignedSliceMethod = method;
+    }
+
+    /**
+     * Create the cache bypass that corresponds to the "cache_bypass" configuration file parameter value.
+     * When not specified, files are copied through the page cache as usual.
+     *
+     * @param configProps
+     * @param durabilityPolicy  whether the restored files are synced anyway
+     * @return
+     */
+    static NFSObjCacheBypass create(Properties configProps, NFSObjDurabilityPolicy durabilityPolicy) {
+        String modeStr = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_CACHE_BYPASS);
+
+        long dropBehindMinBytes = DseOpscNFSRestoreUtils.getConfigNumber(configProps,
+            DseOpscNFSRestoreUtils.CFG_KEY_CACHE_BYPASS_MIN_MB, DseOpscNFSRestoreUtils.DEFAULT_CACHE_BYPASS_MIN_MB) * 1024 * 1024;
+        boolean dataSync = !NFSObjDurabilityPolicy.FSYNC_NONE.equals(durabilityPolicy.getFsyncPolicy());
+
+        if ( MODE_DIRECT.equalsIgnoreCase(modeStr) ) {
+            return new NFSObjCacheBypass(MODE_DIRECT, dropBehindMinBytes, dataSync);
+        }
+        else if ( MODE_DROPBEHIND.equalsIgnoreCase(modeStr) ) {
+            return new NFSObjCacheBypass(MODE_DROPBEHIND, dropBehindMinBytes, dataSync);
+        }
+
+        return new NFSObjCacheBypass(MODE_NONE, dropBehindMinBytes, dataSync);
+    }
+
+    static boolean isValidMode(String modeStr) {
+        return MODE_NONE.equalsIgnoreCase(modeStr) ||
+               MODE_DIRECT.equalsIgnoreCase(modeStr) ||
+               MODE_DROPBEHIND.equalsIgnoreCase(modeStr);
+    }
+
+    boolean isEnabled() {
+        return !MODE_NONE.equals(mode);
+    }
+
+    /**
+     * O_DIRECT alignment for a target file
+     *
+     * @param dstPath   target file (its parent directory must exist)
+     * @return 0 if the target file can't be written with O_DIRECT
+     */
+    int getDirectAlignment(Path dstPath) {
+        if (directOption == null) {
+            return 0;
+        }
+
+        try {
+            FileStore fileStore = Files.getFileStore(dstPath.getParent());
+            Integer alignment = directAlignments.get(fileStore);
+
+            if (alignment == null) {
+                alignment = Math.max(DEFAULT_DIRECT_ALIGNMENT, getBlockSize(fileStore));
+                directAlignments.putIfAbsent(fileStore, alignment);
+            }
+
+            return alignment;
+        }
+        catch (IOException ioe) {
+            return 0;
+        }
+    }
+
+    private static int getBlockSize(FileStore fileStore) {
+        // FileStore.getBlockSize() is JDK 10+, like O_DIRECT itself
+        try {
+            return (int) (long) (Long) FileStore.class.getMethod("getBlockSize").invoke(fileStore);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return DEFAULT_DIRECT_ALIGNMENT;
+        }
+    }
+
+    /**
+     * Copy the byte range [position, end) of the source file to the same position of an existing
+     * target file, writing the target with O_DIRECT
+     *
+     * @param srcPath
+     * @param dstPath
+     * @param position      must be a multiple of the O_DIRECT alignment of the target
+     * @param end
+     * @param checksum      null if no checksum is needed
+     * @param ioThrottle
+     * @return number of bytes copied; -1 if the filesystem rejected O_DIRECT (nothing copied)
+     * @throws IOException
+     */
+    long transferDirect(Path srcPath,
+                        Path dstPath,
+                        long position,
+                        long end,
+                        NFSObjChecksum checksum,
+                        NFSObjIoThrottle ioThrottle) throws IOException {
+        int alignment = getDirectAlignment(dstPath);
+        assert ( (alignment > 0) && (position % alignment == 0) );
+
+        FileChannel dstChannel;
+        try {
+            dstChannel = FileChannel.open(dstPath, StandardOpenOption.WRITE, directOption);
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            // E.g. EINVAL from tmpfs: don't try again on this filesystem
+            FileStore fileStore = Files.getFileStore(dstPath.getParent());
+            Integer previousAlignment = directAlignments.put(fileStore, 0);
+            if ( (previousAlignment == null) || (previousAlignment != 0) ) {
+                System.out.format("   WARN: O_DIRECT is not supported by filesystem \"%s\" (%s), falling back to \"%s\" cache bypass.\n",
+                    fileStore, e.getMessage(), MODE_DROPBEHIND);
+            }
+            return -1;
+        }
+
+        long start = position;
+        long alignedEnd = end - (end % alignment);
+
+        try ( FileChannel srcChannel = FileChannel.open(srcPath, StandardOpenOption.READ) ) {
+            try {
+                ByteBuffer buffer = allocateAligned(NFSObjCopyEngine.COPY_BUFFER_SIZE, alignment);
+
+                while (position < alignedEnd) {
+                    int length = (int) Math.min(buffer.capacity(), alignedEnd - position);
+                    readFully(srcChannel, buffer, position, length);
+
+                    ioThrottle.acquireRead(length);
+                    if (checksum != null) {
+                        checksum.updateRemaining(buffer);
+                    }
+
+                    ioThrottle.acquireWrite(length);
+                    while (buffer.hasRemaining()) {
+                        dstChannel.write(buffer, position + buffer.position());
+                    }
+
+                    position += length;
+                }
+            }
+            finally {
+                dstChannel.close();
+            }
+
+            // The unaligned tail of the file can't be written with O_DIRECT
+            if (position < end) {
+                int length = (int) (end - position);
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                readFully(srcChannel, buffer, position, length);
+
+                ioThrottle.acquireRead(length);
+                if (checksum != null) {
+                    checksum.updateRemaining(buffer);
+                }
+
+                ioThrottle.acquireWrite(length);
+                try ( FileChannel tailChannel = FileChannel.open(dstPath, StandardOpenOption.WRITE) ) {
+                    while (buffer.hasRemaining()) {
+                        tailChannel.write(buffer, position + buffer.position());
+                    }
+                }
+
+                position = end;
+            }
+        }
+
+        directFiles.incrementAndGet();
+        directBytes.addAndGet(position - start);
+
+        return position - start;
+    }
+
+    /**
+     * Read "length" bytes at the specified position into the (cleared) buffer, and flip it
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of source file at offset " + (position + buffer.position()));
+            }
+        }
+
+        buffer.flip();
+    }
+
+    private ByteBuffer allocateAligned(int size, int alignment) throws IOException {
+        try {
+            ByteBuffer buffer = (ByteBuffer) alignedSliceMethod.invoke(ByteBuffer.allocateDirect(size + alignment), alignment);
+            buffer.limit(buffer.capacity() - (buffer.capacity() % alignment));
+            return buffer.slice();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IOException("Failed to allocate an aligned buffer", e);
+        }
+    }
+
+    /**
+     * Drop the pages of a copied file from the page cache: the (clean) pages of the target file and
+     * the pages of the source file on the NFS client side
+     *
+     * @param srcPath
+     * @param dstPath
+     * @param bytes     number of bytes copied (nothing is dropped below "cache_bypass_min_mb")
+     */
+    void dropBehind(Path srcPath, Path dstPath, long bytes) {
+        if ( !isEnabled() || !dropBehindUsable || (bytes < dropBehindMinBytes) ) {
+            return;
+        }
+
+        String conversions = dataSync ? "conv=notrunc,fdatasync" : "conv=notrunc";
+
+        if ( runDd("if=" + DEV_NULL.getPath(), "of=" + dstPath, "oflag=nocache", conversions, "count=0") &&
+             runDd("if=" + srcPath, "iflag=nocache", "count=0") ) {
+            droppedFiles.incrementAndGet();
+        }
+    }
+
+    private boolean runDd(String... operands) {
+        String[] command = new String[operands.length + 1];
+        command[0] = DD_COMMAND;
+        System.arraycopy(operands, 0, command, 1, operands.length);
+
+        String errorStr;
+
+        try {
+            Process process = new ProcessBuilder(command)
+                .redirectOutput(DEV_NULL)
+                .redirectError(DEV_NULL)
+                .start();
+
+            int exitCode = process.waitFor();
+            if (exitCode == 0) {
+                return true;
+            }
+
+            errorStr = "exit code " + exitCode;
+        }
+        catch (IOException ioe) {
+            errorStr = ioe.getMessage();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (dropBehindUsable) {
+            dropBehindUsable = false;
+            System.out.format("   WARN: Failed to drop restored files from the page cache with \"%s\" (%s); cache drop-behind disabled.\n",
+                String.join(" ", command), errorStr);
+        }
+
+        return false;
+    }
+
+    void printStats() {
+        System.out.format("  Cache bypass \"%s\": %d files or byte ranges (%d bytes) written with O_DIRECT, %d dropped from the page cache.\n",
+            mode,
+            directFiles.get(),
+            directBytes.get(),
+            droppedFiles.get());
+    }
+}
@@ -0,0 +1,283 @@
+package com.dsetools;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+
+/**
+ * Checksum of a restored file, computed while the file is copied.
+ *
+ * Besides the usual byte-wise updates, the checksum of a following block of bytes can be
+ * appended by value (see {@link #appendValue(long, long)}), using the zlib "combine" algorithms.
+ * This lets byte ranges that are copied in parallel (or by an earlier run) be checksummed
+ * separately and still produce the checksum of the whole file.
+ *
+ * Supported algorithms:
+ *  - crc32   (same as the SSTable Digest.crc32 component)
+ *  - adler32 (same as the SSTable Digest.adler32 component of older SSTable formats)
+ *  - crc32c  (requires Java 9 or above)
+ */
+class NFSObjChecksum implements Checksum {
+
+    static final String ALGO_NONE = "none";
+    static final String ALGO_CRC32 = "crc32";
+    static final String ALGO_CRC32C = "crc32c";
+    static final String ALGO_ADLER32 = "adler32";
+
+    private static final long CRC32_POLY = 0xEDB88320L;
+    private static final long CRC32C_POLY = 0x82F63B78L;
+    private static final int ADLER32_BASE = 65521;
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    private final String algorithm;
+    private final Checksum running;
+    private long runningLength = 0;
+
+    // Checksum (and length) of the bytes before the running checksum
+    private long value = 0;
+    private long valueLength = 0;
+
+    // Copy buffer for updates from direct buffers
+    private byte[] scratch;
+
+    private NFSObjChecksum(String algorithm, Checksum running) {
+        this.algorithm = algorithm;
+        this.running = running;
+    }
+
+    /**
+     * Create a checksum of the specified algorithm
+     *
+     * @param algorithm
+     * @return
+     * @throws IllegalArgumentException if the algorithm is not supported by this JVM
+     */
+    static NFSObjChecksum create(String algorithm) {
+        if (ALGO_CRC32.equalsIgnoreCase(algorithm)) {
+            return new NFSObjChecksum(ALGO_CRC32, new CRC32());
+        }
+        else if (ALGO_ADLER32.equalsIgnoreCase(algorithm)) {
+            return new NFSObjChecksum(ALGO_ADLER32, new Adler32());
+        }
+        else if (ALGO_CRC32C.equalsIgnoreCase(algorithm)) {
+            // java.util.zip.CRC32C only exists since Java 9
+            try {
+                Checksum crc32c = (Checksum) Class.forName("java.util.zip.CRC32C").newInstance();
+                return new NFSObjChecksum(ALGO_CRC32C, crc32c);
+            }
+            catch (ReflectiveOperationException roe) {
+                throw new IllegalArgumentException("Checksum algorithm \"" + ALGO_CRC32C + "\" requires Java 9 or above");
+            }
+        }
+
+        throw new IllegalArgumentException("Unsupported checksum algorithm \"" + algorithm + "\"");
+    }
+
+    static boolean isValidAlgorithm(String algorithm) {
+        return ALGO_NONE.equalsIgnoreCase(algorithm) ||
+               ALGO_CRC32.equalsIgnoreCase(algorithm) ||
+               ALGO_CRC32C.equalsIgnoreCase(algorithm) ||
+               ALGO_ADLER32.equalsIgnoreCase(algorithm);
+    }
+
+    String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public void update(int b) {
+        running.update(b);
+        runningLength++;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        running.update(b, off, len);
+        runningLength += len;
+    }
+
+    /**
+     * Update with the remaining bytes of a (e.g. direct) buffer, without changing the buffer's position
+     *
+     * @param buffer
+     */
+    void updateRemaining(ByteBuffer buffer) {
+        if ( buffer.hasArray() ) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+
+        // java.util.zip checksums only take byte arrays in Java 8
+        ByteBuffer source = buffer.duplicate();
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+
+        while ( source.hasRemaining() ) {
+            int length = Math.min(scratch.length, source.remaining());
+            source.get(scratch, 0, length);
+            update(scratch, 0, length);
+        }
+    }
+
+    /**
+     * Append the checksum of the next "length" bytes, as if these bytes were passed to update()
+     *
+     * @param blockValue    checksum (same algorithm) of the block of bytes
+     * @param blockLength
+     */
+    void appendValue(long blockValue, long blockLength) {
+        fold();
+
+        value = (valueLength == 0) ? blockValue : combine(value, blockValue, blockLength);
+        valueLength += blockLength;
+    }
+
+    private void fold() {
+        if (runningLength > 0) {
+            value = (valueLength == 0) ? running.getValue() : combine(value, running.getValue(), runningLength);
+            valueLength += runningLength;
+
+            running.reset();
+            runningLength = 0;
+        }
+    }
+
+    @Override
+    public long getValue() {
+        fold();
+
+        // No data at all: the initial value of the algorithm (e.g. 1 for adler32)
+        return (valueLength == 0) ? running.getValue() : value;
+    }
+
+    @Override
+    public void reset() {
+        running.reset();
+        runningLength = 0;
+        value = 0;
+        valueLength = 0;
+    }
+
+    /**
+     * Checksum string as recorded in the restore journal, e.g. "crc32:3526437563"
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return algorithm + ":" + getValue();
+    }
+
+    /**
+     * Parse the value of a checksum string (as returned by toString()) of the specified algorithm
+     *
+     * @param checksumStr
+     * @param algorithm
+     * @return null if the checksum string is not of the specified algorithm
+     */
+    static Long parseValue(String checksumStr, String algorithm) {
+        if ( (checksumStr == null) || !checksumStr.startsWith(algorithm + ":") ) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(checksumStr.substring(algorithm.length() + 1));
+        }
+        catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    private long combine(long value1, long value2, long length2) {
+        if (ALGO_ADLER32.equals(algorithm)) {
+            return adler32Combine(value1, value2, length2);
+        }
+
+        return crc32Combine(ALGO_CRC32C.equals(algorithm) ? CRC32C_POLY : CRC32_POLY, value1, value2, length2);
+    }
+
+    /**
+     * CRC of the concatenation of two blocks from the CRCs of the two blocks (zlib crc32_combine),
+     * for a reflected 32-bit CRC polynomial
+     */
+    private static long crc32Combine(long poly, long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        long[] even = new long[32];     // even-power-of-two zeros operator
+        long[] odd = new long[32];      // odd-power-of-two zeros operator
+
+        // Operator for one zero bit
+        odd[0] = poly;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        gf2MatrixSquare(even, odd);     // two zero bits
+        gf2MatrixSquare(odd, even);     // four zero bits
+
+        // Apply length2 zero bytes to crc1 (the first squaring puts the operator for one zero byte in even)
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+
+            if (length2 == 0) {
+                break;
+            }
+
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+
+        return (crc1 ^ crc2) & 0xFFFFFFFFL;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+        }
+
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+    /**
+     * Adler-32 of the concatenation of two blocks from the Adler-32s of the two blocks (zlib adler32_combine)
+     */
+    private static long adler32Combine(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER32_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER32_BASE;
+
+        sum1 += (adler2 & 0xFFFF) + ADLER32_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER32_BASE - rem;
+
+        if (sum1 >= ADLER32_BASE) sum1 -= ADLER32_BASE;
+        if (sum1 >= ADLER32_BASE) sum1 -= ADLER32_BASE;
+        if (sum2 >= ((long) ADLER32_BASE << 1)) sum2 -= ((long) ADLER32_BASE << 1);
+        if (sum2 >= ADLER32_BASE) sum2 -= ADLER32_BASE;
+
+        return sum1 | (sum2 << 16);
+    }
+}
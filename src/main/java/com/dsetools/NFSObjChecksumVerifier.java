@@ -0,0 +1,166 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Verifies restored files against a reference checksum.
+ *
+ * The checksum of a restored file is computed while the file is copied (no second read).
+ * The reference checksum is, in this order:
+ *  1) for a Data.db file - the SSTable's own Digest.crc32 (or Digest.adler32) component
+ *  2) a checksum sidecar file next to the backup file: &lt;backup_file&gt;.&lt;algorithm&gt;
+ *     (e.g. "...-mc-1-big-Index.db.crc32c"), holding the checksum value as a decimal number
+ * Files without any reference checksum still get a checksum (of the configured algorithm)
+ * computed and recorded in the restore journal, but are counted as "unverified".
+ */
+class NFSObjChecksumVerifier {
+
+    static final String DATA_COMPONENT = "Data.db";
+    static final String DIGEST_CRC32_COMPONENT = "Digest.crc32";
+    static final String DIGEST_ADLER32_COMPONENT = "Digest.adler32";
+
+    /**
+     * Checksum algorithm and reference value to verify one restored file with
+     */
+    static class Reference {
+        final String algorithm;
+        final Long expectedValue;
+        final String referenceName;
+
+        Reference(String algorithm, Long expectedValue, String referenceName) {
+            this.algorithm = algorithm;
+            this.expectedValue = expectedValue;
+            this.referenceName = referenceName;
+        }
+    }
+
+    private final String defaultAlgorithm;
+
+    private final AtomicLong verifiedFiles = new AtomicLong();
+    private final AtomicLong mismatchedFiles = new AtomicLong();
+    private final AtomicLong unverifiedFiles = new AtomicLong();
+
+    /**
+     * @param default_algorithm     algorithm for files without an SSTable Digest component
+     */
+    NFSObjChecksumVerifier(String default_algorithm) {
+        this.defaultAlgorithm = default_algorithm.toLowerCase();
+
+        // Fail early if the algorithm is not supported by this JVM
+        NFSObjChecksum.create(defaultAlgorithm);
+    }
+
+    /**
+     * Find the reference checksum of a to-be-restored file
+     *
+     * @param item
+     * @param unit  the SSTable set the file belongs to
+     * @return
+     */
+    Reference getReference(NFSObjRestoreItem item, NFSObjRestoreUnit unit) {
+
+        // The SSTable Digest component holds the checksum of the Data.db file
+        if ( DATA_COMPONENT.equals(item.getComponentName()) ) {
+            for ( NFSObjRestoreItem setItem : unit.getItems() ) {
+                String component = setItem.getComponentName();
+
+                String digestAlgorithm =
+                    DIGEST_CRC32_COMPONENT.equals(component) ? NFSObjChecksum.ALGO_CRC32 :
+                    DIGEST_ADLER32_COMPONENT.equals(component) ? NFSObjChecksum.ALGO_ADLER32 : null;
+
+                if (digestAlgorithm != null) {
+                    Long digestValue = readChecksumFile(Paths.get(setItem.getNfsObjName()));
+                    if (digestValue != null) {
+                        return new Reference(digestAlgorithm, digestValue, component);
+                    }
+                }
+            }
+        }
+
+        Path sidecarPath = Paths.get(item.getNfsObjName() + "." + defaultAlgorithm);
+        if ( Files.isRegularFile(sidecarPath) ) {
+            Long sidecarValue = readChecksumFile(sidecarPath);
+            if (sidecarValue != null) {
+                return new Reference(defaultAlgorithm, sidecarValue, sidecarPath.getFileName().toString());
+            }
+        }
+
+        return new Reference(defaultAlgorithm, null, null);
+    }
+
+    /**
+     * Read a checksum value from a Digest component or a sidecar file (decimal, or hex with "0x" prefix)
+     *
+     * @param checksumFilePath
+     * @return null if the file can't be read or has no valid checksum value
+     */
+    private static Long readChecksumFile(Path checksumFilePath) {
+        try {
+            String valueStr = new String(Files.readAllBytes(checksumFilePath), StandardCharsets.US_ASCII).trim();
+
+            // A sidecar in "sha1sum" style has the checksum value as the first token
+            int spacePos = valueStr.indexOf(' ');
+            if (spacePos > 0) {
+                valueStr = valueStr.substring(0, spacePos);
+            }
+
+            if ( valueStr.startsWith("0x") || valueStr.startsWith("0X") ) {
+                return Long.parseLong(valueStr.substring(2), 16);
+            }
+
+            return Long.parseLong(valueStr);
+        }
+        catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check the checksum computed while copying a file against its reference checksum
+     *
+     * @param localFile
+     * @param reference
+     * @param checksum
+     * @return false if the checksums don't match
+     */
+    boolean verify(File localFile, Reference reference, NFSObjChecksum checksum) {
+        if (reference.expectedValue == null) {
+            unverifiedFiles.incrementAndGet();
+            return true;
+        }
+
+        if (reference.expectedValue == checksum.getValue()) {
+            verifiedFiles.incrementAndGet();
+            return true;
+        }
+
+        mismatchedFiles.incrementAndGet();
+
+        System.out.format("     ERROR: checksum mismatch for \"%s\" (%s: %d, expected by %s: %d)\n",
+            localFile.getAbsolutePath(),
+            reference.algorithm,
+            checksum.getValue(),
+            reference.referenceName,
+            reference.expectedValue);
+
+        return false;
+    }
+
+    long getMismatchedFiles() {
+        return mismatchedFiles.get();
+    }
+
+    void printStats() {
+        System.out.format("  Checksum verification: %d files verified, %d mismatched, %d without reference checksum (unverified).\n",
+            verifiedFiles.get(),
+            mismatchedFiles.get(),
+            unverifiedFiles.get());
+    }
+}
@@ -0,0 +1,226 @@
+package com.dsetools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The DSE cluster topology this utility needs: the cluster name and, per host, its host ID,
+ * DC, rack, listen and broadcast addresses.
+ *
+ * Getting it from the DSE cluster means starting the DSE Java driver and waiting for its
+ * metadata discovery, which takes seconds on a large cluster. So a fetched topology is cached
+ * in a local file under the catalog home directory, and used by later runs until it is older
+ * than "topology_cache_ttl_min":
+ *   &lt;catalog_home&gt;/topology.tsv
+ *
+ * topology.tsv has one tab-separated record per line:
+ *   C  &lt;fetched_at&gt;  &lt;contact_point&gt;  &lt;cluster_name&gt;
+ *   N  &lt;host_id&gt;  &lt;dc&gt;  &lt;rack&gt;  &lt;listen_address&gt;  &lt;broadcast_address&gt;
+ * A cached topology fetched through another contact point (another cluster) is not used.
+ */
+class NFSObjClusterTopology {
+
+    static final String CACHE_FILE = "topology.tsv";
+
+    static final String RECORD_CLUSTER = "C";
+    static final String RECORD_HOST = "N";
+
+    /**
+     * One DSE host of the cluster
+     */
+    static class HostInfo {
+        final String hostId;
+        final String dcName;
+        final String rackName;
+        final String listenAddress;
+        final String broadcastAddress;
+
+        /**
+         * @param host_id
+         * @param dc_name
+         * @param rack_name
+         * @param listen_address        IP address ("" if unknown)
+         * @param broadcast_address     IP address ("" if unknown)
+         */
+        HostInfo(String host_id, String dc_name, String rack_name, String listen_address, String broadcast_address) {
+            this.hostId = host_id;
+            this.dcName = dc_name;
+            this.rackName = rack_name;
+            this.listenAddress = listen_address;
+            this.broadcastAddress = broadcast_address;
+        }
+    }
+
+    private final String contactPoint;
+    private final String clusterName;
+    private final long fetchedAt;
+    private final List<HostInfo> hosts;
+
+    // Whether this topology was read from the cache file (rather than fetched from the cluster by this run)
+    private final boolean cached;
+
+    /**
+     * @param contact_point
+     * @param cluster_name
+     * @param fetched_at        when the topology was fetched from the cluster (epoch milliseconds)
+     * @param host_infos
+     * @param from_cache
+     */
+    NFSObjClusterTopology(String contact_point,
+                          String cluster_name,
+                          long fetched_at,
+                          List<HostInfo> host_infos,
+                          boolean from_cache) {
+        this.contactPoint = contact_point;
+        this.clusterName = cluster_name;
+        this.fetchedAt = fetched_at;
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(host_infos));
+        this.cached = from_cache;
+    }
+
+    /**
+     * Read the cached topology, if it is recent enough
+     *
+     * @param cacheFilePath
+     * @param contactPoint      the configured contact point; a topology cached for another one is not used
+     * @param ttlMillis
+     * @return null if there is no (usable) cached topology
+     */
+    static NFSObjClusterTopology loadCache(Path cacheFilePath, String contactPoint, long ttlMillis) {
+        if ( Files.notExists(cacheFilePath) ) {
+            return null;
+        }
+
+        String cachedContactPoint = null;
+        String cachedClusterName = null;
+        long cachedFetchedAt = -1;
+        List<HostInfo> cachedHosts = new ArrayList<>();
+
+        try ( BufferedReader reader = Files.newBufferedReader(cacheFilePath, StandardCharsets.UTF_8) ) {
+            String line;
+
+            while ( (line = reader.readLine()) != null ) {
+                String[] fields = line.split("\t", -1);
+
+                if ( RECORD_CLUSTER.equals(fields[0]) && (fields.length == 4) ) {
+                    cachedFetchedAt = Long.parseLong(fields[1]);
+                    cachedContactPoint = fields[2];
+                    cachedClusterName = fields[3];
+                }
+                else if ( RECORD_HOST.equals(fields[0]) && (fields.length == 6) ) {
+                    cachedHosts.add(new HostInfo(fields[1], emptyToNull(fields[2]), emptyToNull(fields[3]), fields[4], fields[5]));
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            // Fetched again from the cluster, and rewritten
+            System.out.println("\nWARN: Cluster topology cache file \"" + cacheFilePath + "\" is corrupted, ignoring it.");
+            return null;
+        }
+
+        long ageMillis = System.currentTimeMillis() - cachedFetchedAt;
+
+        if ( (cachedFetchedAt < 0) || cachedHosts.isEmpty() ||
+             !String.valueOf(contactPoint).equals(cachedContactPoint) ||
+             (ageMillis < 0) || (ageMillis >= ttlMillis) ) {
+            return null;
+        }
+
+        return new NFSObjClusterTopology(cachedContactPoint, cachedClusterName, cachedFetchedAt, cachedHosts, true);
+    }
+
+    /**
+     * Write the topology to the cache file
+     *
+     * @param cacheFilePath
+     * @throws IOException
+     */
+    void saveCache(Path cacheFilePath) throws IOException {
+        Path tmpFilePath = Paths.get(cacheFilePath + ".tmp");
+
+        Files.createDirectories(cacheFilePath.getParent());
+
+        try ( BufferedWriter writer = Files.newBufferedWriter(tmpFilePath, StandardCharsets.UTF_8) ) {
+            writer.write(RECORD_CLUSTER + "\t" + fetchedAt + "\t" + contactPoint + "\t" + nullToEmpty(clusterName));
+            writer.newLine();
+
+            for (HostInfo host : hosts) {
+                writer.write(RECORD_HOST + "\t" +
+                    host.hostId + "\t" +
+                    nullToEmpty(host.dcName) + "\t" +
+                    nullToEmpty(host.rackName) + "\t" +
+                    host.listenAddress + "\t" +
+                    host.broadcastAddress);
+                writer.newLine();
+            }
+        }
+
+        Files.move(tmpFilePath, cacheFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String emptyToNull(String str) {
+        return str.isEmpty() ? null : str;
+    }
+
+    private static String nullToEmpty(String str) {
+        return (str == null) ? "" : str;
+    }
+
+    String getClusterName() {
+        return clusterName;
+    }
+
+    List<HostInfo> getHosts() {
+        return hosts;
+    }
+
+    boolean isCached() {
+        return cached;
+    }
+
+    long getAgeMillis() {
+        return System.currentTimeMillis() - fetchedAt;
+    }
+
+    /**
+     * The host with the specified listen or broadcast address
+     *
+     * @param ipAddress
+     * @return null if there is none
+     */
+    HostInfo findHostByAddress(String ipAddress) {
+        for (HostInfo host : hosts) {
+            if ( ipAddress.equals(host.listenAddress) || ipAddress.equals(host.broadcastAddress) ) {
+                return host;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether any host is in the specified DC
+     *
+     * @param dcName
+     * @return
+     */
+    boolean hasDC(String dcName) {
+        for (HostInfo host : hosts) {
+            if ( (host.dcName != null) && host.dcName.equalsIgnoreCase(dcName) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,80 @@
+package com.dsetools;
+
+import com.datastax.driver.core.*;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.dse.DseCluster;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * Fetches the cluster topology from the DSE cluster with the DSE Java driver.
+ *
+ * This is the only class that uses the driver, so the driver is only loaded and started when
+ * the topology isn't cached (or the cached one is stale). The cluster is closed as soon as
+ * the topology is read.
+ */
+class NFSObjClusterTopologyFetcher {
+
+    /**
+     * @param configProps
+     * @param useSsl
+     * @param userAuth
+     * @param userName
+     * @param passWord
+     * @return
+     * @throws IOException  if no DSE host can be reached
+     */
+    static NFSObjClusterTopology fetch(Properties configProps,
+                                       boolean useSsl,
+                                       boolean userAuth,
+                                       String userName,
+                                       String passWord) throws IOException {
+        String contactPoint = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_CONTACT_POINT);
+
+        QueryOptions queryOptions = new QueryOptions();
+        queryOptions.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        // dseCluster.connect();    /* NO NEED for acutal connection */
+        DseCluster.Builder clusterBuilder = DseCluster.builder()
+            .addContactPoint(contactPoint)
+            .withQueryOptions(queryOptions);
+
+        if (useSsl) {
+            clusterBuilder.withSSL();
+        }
+
+        if (userAuth) {
+            AuthProvider authProvider = new PlainTextAuthProvider(userName, passWord);
+            clusterBuilder.withAuthProvider(authProvider);
+        }
+
+        try ( DseCluster dseCluster = clusterBuilder.build() ) {
+            Metadata dseClusterMetadata = dseCluster.getMetadata();
+
+            List<NFSObjClusterTopology.HostInfo> hosts = new ArrayList<>();
+            for ( Host host : dseClusterMetadata.getAllHosts() ) {
+                hosts.add(new NFSObjClusterTopology.HostInfo(
+                    host.getHostId().toString(),
+                    host.getDatacenter(),
+                    host.getRack(),
+                    getIpAddress(host.getListenAddress()),
+                    getIpAddress(host.getBroadcastAddress())));
+            }
+
+            return new NFSObjClusterTopology(contactPoint, dseClusterMetadata.getClusterName(),
+                System.currentTimeMillis(), hosts, false);
+        }
+        catch (NoHostAvailableException nhae) {
+            throw new IOException(nhae.getMessage(), nhae);
+        }
+    }
+
+    private static String getIpAddress(InetAddress address) {
+        return (address != null) ? address.getHostAddress() : "";
+    }
+}
@@ -0,0 +1,289 @@
+package com.dsetools;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Adaptive download concurrency ("-d auto").
+ *
+ * The download thread pool is sized to the upper bound, but a download thread has to get a
+ * permit from this controller before it copies a file, so only "limit" files are copied at
+ * a time. Every sample interval, the controller compares the aggregated throughput and the
+ * per-file copy latency (normalized per MB, since backup files differ a lot in size) with
+ * the previous interval and adjusts the limit (AIMD). The throughput is that of the bytes
+ * transferred during the interval (counted chunk by chunk by the I/O throttle), so a large
+ * file adds to every interval it is copied in rather than to the one it completes in:
+ *  - throughput went up                          : limit + 1 (additive increase)
+ *  - throughput dropped, or latency blew up
+ *    without any throughput gain                 : limit * 3/4 (multiplicative decrease)
+ *  - otherwise (plateau)                         : keep the limit
+ * Every change is logged.
+ *
+ * A thread that already holds a permit (e.g. a thread that runs another SSTable set while it
+ * waits for the byte ranges of a large file) doesn't need a second one, so a small limit
+ * can never block the pool. The byte ranges of a large file that other pool threads steal
+ * count against the limit too: they only take a permit when one is free (see tryAcquire()).
+ */
+class NFSObjConcurrencyController {
+
+    static final long SAMPLE_INTERVAL_MILLIS = 5000;
+
+    // Throughput change (ratio) that counts as an improvement or a drop
+    static final double THROUGHPUT_GAIN_RATIO = 1.05;
+    static final double THROUGHPUT_DROP_RATIO = 0.90;
+
+    // Per-MB latency, compared with the best one seen so far, that counts as a latency collapse
+    static final double LATENCY_COLLAPSE_RATIO = 2.0;
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    private int limit;
+    private int activeNum = 0;
+
+    private final ThreadLocal<Integer> heldPermits = ThreadLocal.withInitial(() -> 0);
+
+    // Completed files of the current sample interval (latency signal)
+    private final AtomicLong sampleBytes = new AtomicLong();
+    private final AtomicLong sampleNanos = new AtomicLong();
+    private final AtomicLong sampleFiles = new AtomicLong();
+
+    // Transferred bytes (throughput signal), sampled from the I/O throttle
+    private NFSObjIoThrottle ioThrottle;
+    private long lastTransferredBytes = 0;
+    private long lastSampleNanos = 0;
+
+    private double lastThroughput = 0;
+    private double bestNanosPerMb = Double.MAX_VALUE;
+    private int changeNum = 0;
+
+    private ScheduledExecutorService sampler;
+
+    /**
+     * @param min_limit
+     * @param max_limit
+     * @param initial_limit
+     */
+    NFSObjConcurrencyController(int min_limit, int max_limit, int initial_limit) {
+        assert ( (min_limit > 0) && (min_limit <= max_limit) );
+
+        this.minLimit = min_limit;
+        this.maxLimit = max_limit;
+        this.limit = Math.max(min_limit, Math.min(max_limit, initial_limit));
+    }
+
+    int getMinLimit() {
+        return minLimit;
+    }
+
+    int getMaxLimit() {
+        return maxLimit;
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a permit to copy one file
+     *
+     * @throws InterruptedException
+     */
+    void acquire() throws InterruptedException {
+        int held = heldPermits.get();
+
+        if (held == 0) {
+            lock.lock();
+            try {
+                while (activeNum >= limit) {
+                    permitAvailable.await();
+                }
+                activeNum++;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        heldPermits.set(held + 1);
+    }
+
+    /**
+     * Take a permit only if one is free right away (e.g. for a byte range stolen from another
+     * thread's file, which the owning thread copies itself otherwise). Never blocks, so a
+     * thread can't wait here for a permit held by a thread that waits for it in turn.
+     *
+     * @return true if the caller holds a permit and has to release() it
+     */
+    boolean tryAcquire() {
+        int held = heldPermits.get();
+
+        if (held == 0) {
+            lock.lock();
+            try {
+                if (activeNum >= limit) {
+                    return false;
+                }
+                activeNum++;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        heldPermits.set(held + 1);
+        return true;
+    }
+
+    /**
+     * Give back a permit
+     */
+    void release() {
+        int held = heldPermits.get() - 1;
+        heldPermits.set(held);
+
+        if (held == 0) {
+            lock.lock();
+            try {
+                activeNum--;
+                permitAvailable.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Account the bytes and elapsed time of a completed file copy (per-file latency)
+     *
+     * @param bytes
+     * @param nanos
+     */
+    void recordFile(long bytes, long nanos) {
+        if (bytes > 0) {
+            sampleBytes.addAndGet(bytes);
+            sampleNanos.addAndGet(nanos);
+            sampleFiles.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param io_throttle   counts the bytes transferred by all copy paths
+     */
+    void start(NFSObjIoThrottle io_throttle) {
+        this.ioThrottle = io_throttle;
+        ioThrottle.enableTransferSampling();
+
+        lastTransferredBytes = ioThrottle.getTransferredBytes();
+        lastSampleNanos = System.nanoTime();
+
+        System.out.format("  Adaptive download concurrency: starting with %d active copy workers (min %d, max %d).\n",
+            getLimit(), minLimit, maxLimit);
+
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread samplerThread = new Thread(runnable, "concurrency-controller");
+            samplerThread.setDaemon(true);
+            return samplerThread;
+        });
+
+        sampler.scheduleAtFixedRate(this::adjust,
+            SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+
+    private void adjust() {
+        long transferredBytes = ioThrottle.getTransferredBytes();
+        long sampleEndNanos = System.nanoTime();
+
+        long bytes = transferredBytes - lastTransferredBytes;
+        long elapsedNanos = sampleEndNanos - lastSampleNanos;
+        lastTransferredBytes = transferredBytes;
+        lastSampleNanos = sampleEndNanos;
+
+        long fileBytes = sampleBytes.getAndSet(0);
+        long fileNanos = sampleNanos.getAndSet(0);
+        long files = sampleFiles.getAndSet(0);
+
+        // Nothing transferred (e.g. only skipped or cached files): no signal, keep the limit
+        if ( (bytes == 0) || (elapsedNanos <= 0) ) {
+            return;
+        }
+
+        double throughput = bytes * 1000000000.0d / elapsedNanos;
+
+        // Without a completed file, there is no latency signal for this interval
+        double nanosPerMb = 0;
+        if ( (files > 0) && (fileBytes > 0) ) {
+            nanosPerMb = fileNanos / (fileBytes / (1024.0d * 1024.0d));
+            bestNanosPerMb = Math.min(bestNanosPerMb, nanosPerMb);
+        }
+
+        int oldLimit = getLimit();
+        int newLimit = oldLimit;
+        String reason = null;
+
+        if ( (lastThroughput == 0) || (throughput > lastThroughput * THROUGHPUT_GAIN_RATIO) ) {
+            newLimit = Math.min(maxLimit, oldLimit + 1);
+            reason = String.format("throughput %.2f MB/s (was %.2f MB/s)",
+                throughput / (1024 * 1024), lastThroughput / (1024 * 1024));
+        }
+        else if (throughput < lastThroughput * THROUGHPUT_DROP_RATIO) {
+            newLimit = Math.max(minLimit, oldLimit * 3 / 4);
+            reason = String.format("throughput dropped from %.2f to %.2f MB/s",
+                lastThroughput / (1024 * 1024), throughput / (1024 * 1024));
+        }
+        else if ( (nanosPerMb > 0) && (nanosPerMb > bestNanosPerMb * LATENCY_COLLAPSE_RATIO) ) {
+            // More workers without more throughput only add queueing on the NFS server
+            newLimit = Math.max(minLimit, oldLimit * 3 / 4);
+            reason = String.format("per-file latency %.1f ms/MB, more than %.1fx the best seen (%.1f ms/MB), without throughput gain",
+                nanosPerMb / 1000000, LATENCY_COLLAPSE_RATIO, bestNanosPerMb / 1000000);
+        }
+
+        lastThroughput = throughput;
+
+        if (newLimit != oldLimit) {
+            lock.lock();
+            try {
+                limit = newLimit;
+                permitAvailable.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+
+            changeNum++;
+
+            System.out.format("   - [%s] Download concurrency %d -> %d: %s.\n",
+                LocalDateTime.now().format(formatter), oldLimit, newLimit, reason);
+        }
+    }
+
+    void printStats() {
+        System.out.format("  Adaptive download concurrency: %d active copy workers at the end (min %d, max %d), %d changes.\n",
+            getLimit(), minLimit, maxLimit, changeNum);
+    }
+}
@@ -0,0 +1,321 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Base class of the engines that copy one OpsCenter backup file from
+ * the NFS backup location to the local download directory.
+ *
+ * Every engine keeps its own counters (files, bytes and elapsed copy time)
+ * so that the throughput of each engine can be reported at the end of a run.
+ */
+abstract class NFSObjCopyEngine {
+
+    static final String ENGINE_FILEUTILS = "fileutils";
+    static final String ENGINE_FILECHANNEL = "filechannel";
+    static final String ENGINE_ASYNC = "async";
+
+    // Buffer size for copies through user space (with a checksum and/or an I/O throttle)
+    static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
+    protected final NFSObjIoThrottle ioThrottle;
+    protected final NFSObjCacheBypass cacheBypass;
+    protected final NFSObjDurabilityPolicy durabilityPolicy;
+
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong copyNanos = new AtomicLong();
+
+    /**
+     * @param io_throttle   read/write rate limiter shared by all engines of a restore run
+     * @param cache_bypass  page cache bypass shared by all engines of a restore run
+     * @param durability_policy target file preallocation and fsync policy of a restore run
+     */
+    protected NFSObjCopyEngine(NFSObjIoThrottle io_throttle,
+                               NFSObjCacheBypass cache_bypass,
+                               NFSObjDurabilityPolicy durability_policy) {
+        this.ioThrottle = io_throttle;
+        this.cacheBypass = cache_bypass;
+        this.durabilityPolicy = durability_policy;
+    }
+
+    /**
+     * Engine name as used by the "copy_engine" configuration file parameter
+     *
+     * @return
+     */
+    abstract String getName();
+
+    /**
+     * Copy the source file to the target file. The target file exists, with exactly
+     * "startOffset" bytes (see prepareTarget()).
+     *
+     * When the start offset is greater than 0, the target file already holds the first
+     * "startOffset" bytes of the source file (e.g. from an interrupted earlier run),
+     * and only the rest of the source file is copied.
+     *
+     * When a checksum is specified, every copied byte is also passed to the checksum,
+     * in the same pass as the copy.
+     *
+     * @param srcFile
+     * @param dstFile
+     * @param startOffset
+     * @param checksum      null if no checksum is needed
+     * @return number of bytes copied
+     * @throws IOException
+     */
+    protected abstract long doCopy(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum)
+        throws IOException;
+
+    /**
+     * Copy one file and account the transferred bytes and elapsed time to this engine
+     *
+     * @param srcFile
+     * @param dstFile
+     * @return number of bytes copied
+     * @throws IOException
+     */
+    long copy(File srcFile, File dstFile) throws IOException {
+        return copy(srcFile, dstFile, 0, null);
+    }
+
+    /**
+     * Copy one file, starting from the specified byte offset, and account the
+     * transferred bytes and elapsed time to this engine.
+     *
+     * With O_DIRECT cache bypass, the file is written by the direct I/O path instead of
+     * the engine (from the start offset rounded down to the O_DIRECT alignment).
+     *
+     * @param srcFile
+     * @param dstFile
+     * @param startOffset
+     * @param checksum      checksum of the whole file, computed while copying (null if not needed)
+     * @return number of bytes copied
+     * @throws IOException
+     */
+    long copy(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum) throws IOException {
+        long startNanos = System.nanoTime();
+
+        long bytes = -1;
+
+        if ( cacheBypass.isEnabled() ) {
+            bytes = copyDirect(srcFile, dstFile, startOffset, checksum);
+        }
+
+        if (bytes < 0) {
+            prepareTarget(srcFile.toPath(), dstFile.toPath(), startOffset);
+
+            // The bytes restored by an earlier run are only read locally, to complete the checksum
+            if ( (checksum != null) && (startOffset > 0) ) {
+                updateChecksum(dstFile.toPath(), 0, startOffset, checksum);
+            }
+
+            bytes = doCopy(srcFile, dstFile, startOffset, checksum);
+        }
+
+        cacheBypass.dropBehind(srcFile.toPath(), dstFile.toPath(), bytes);
+
+        recordCopy(bytes, System.nanoTime() - startNanos);
+
+        return bytes;
+    }
+
+    /**
+     * Copy one file with O_DIRECT writes, if the target filesystem supports them
+     *
+     * @param srcFile
+     * @param dstFile
+     * @param startOffset
+     * @param checksum
+     * @return number of bytes copied; -1 if O_DIRECT is not supported (nothing copied)
+     * @throws IOException
+     */
+    private long copyDirect(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum) throws IOException {
+        Path srcPath = srcFile.toPath();
+        Path dstPath = dstFile.toPath();
+
+        Path parentPath = dstPath.getParent();
+        if (parentPath != null) {
+            Files.createDirectories(parentPath);
+        }
+
+        int alignment = cacheBypass.getDirectAlignment(dstPath);
+        if (alignment == 0) {
+            return -1;
+        }
+
+        // O_DIRECT writes start at an aligned offset
+        startOffset -= startOffset % alignment;
+
+        prepareTarget(srcPath, dstPath, startOffset);
+
+        if ( (checksum != null) && (startOffset > 0) ) {
+            updateChecksum(dstPath, 0, startOffset, checksum);
+        }
+
+        long copied = cacheBypass.transferDirect(srcPath, dstPath, startOffset, Files.size(srcPath), checksum, ioThrottle);
+
+        if (copied < 0) {
+            if (checksum != null) {
+                checksum.reset();
+            }
+            return -1;
+        }
+
+        // Keep the same behavior as FileUtils.copyFile() - preserve the file date
+        Files.setLastModifiedTime(dstPath, Files.getLastModifiedTime(srcPath));
+
+        return copied;
+    }
+
+    /**
+     * Create the target file (and its parent directory), drop anything beyond the start offset
+     * (all of it for a fresh copy), and preallocate it for the source size if configured.
+     *
+     * For a fresh copy, an existing target file is removed rather than truncated: it may be a hard
+     * link to a local SSTable cache entry, which must not be overwritten.
+     *
+     * @param srcPath
+     * @param dstPath
+     * @param startOffset
+     * @throws IOException
+     */
+    protected void prepareTarget(Path srcPath, Path dstPath, long startOffset) throws IOException {
+        Path parentPath = dstPath.getParent();
+        if (parentPath != null) {
+            Files.createDirectories(parentPath);
+        }
+
+        if (startOffset == 0) {
+            Files.deleteIfExists(dstPath);
+        }
+
+        try ( FileChannel dstChannel = FileChannel.open(dstPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE) ) {
+            if (dstChannel.size() != startOffset) {
+                dstChannel.truncate(startOffset);
+            }
+        }
+
+        // After the truncation, which would release the preallocated blocks again
+        durabilityPolicy.preallocate(dstPath, Files.size(srcPath));
+    }
+
+    /**
+     * Pass a byte range of a (local) file to a checksum
+     *
+     * @param filePath
+     * @param position
+     * @param length
+     * @param checksum
+     * @throws IOException
+     */
+    static void updateChecksum(Path filePath, long position, long length, NFSObjChecksum checksum) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long end = position + length;
+
+        try ( FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ) ) {
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of file \"" + filePath + "\" at offset " + position);
+                }
+
+                checksum.update(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+    }
+
+    void recordCopy(long bytes, long nanos) {
+        copiedFiles.incrementAndGet();
+        copiedBytes.addAndGet(bytes);
+        copyNanos.addAndGet(nanos);
+    }
+
+    long getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    /**
+     * Throughput (bytes/sec) of this engine, based on the accumulated per-file copy time.
+     * NOTE: with multiple download threads, per-file copy times overlap, so this is the
+     *       average throughput of a single copy stream, not the aggregated throughput.
+     *
+     * @return
+     */
+    double getBytesPerSecond() {
+        long nanos = copyNanos.get();
+        return (nanos == 0) ? 0 : (copiedBytes.get() * 1000000000.0d / nanos);
+    }
+
+    /**
+     * Print the copy statistics of this engine
+     */
+    void printStats() {
+        System.out.format("  Copy engine \"%s\": %d files, %d bytes, %.2f MB/s per copy stream.\n",
+            getName(),
+            getCopiedFiles(),
+            getCopiedBytes(),
+            getBytesPerSecond() / (1024 * 1024));
+    }
+
+    /**
+     * Create the copy engine that corresponds to the "copy_engine" configuration file parameter value.
+     * When not specified, the commons-io based engine is used.
+     *
+     * @param configProps
+     * @param ioThrottle
+     * @param cacheBypass
+     * @param durabilityPolicy
+     * @return
+     */
+    static NFSObjCopyEngine create(Properties configProps,
+                                   NFSObjIoThrottle ioThrottle,
+                                   NFSObjCacheBypass cacheBypass,
+                                   NFSObjDurabilityPolicy durabilityPolicy) {
+        String engineName = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_COPY_ENGINE);
+
+        if ( ENGINE_FILECHANNEL.equalsIgnoreCase(engineName) ) {
+            return new NFSObjFileChannelCopyEngine(ioThrottle, cacheBypass, durabilityPolicy);
+        }
+        else if ( ENGINE_ASYNC.equalsIgnoreCase(engineName) ) {
+            long bufferSizeKb = DseOpscNFSRestoreUtils.getConfigNumber(configProps,
+                DseOpscNFSRestoreUtils.CFG_KEY_ASYNC_BUFFER_SIZE_KB, DseOpscNFSRestoreUtils.DEFAULT_ASYNC_BUFFER_SIZE_KB);
+            long bufferPoolMb = DseOpscNFSRestoreUtils.getConfigNumber(configProps,
+                DseOpscNFSRestoreUtils.CFG_KEY_ASYNC_BUFFER_POOL_MB, DseOpscNFSRestoreUtils.DEFAULT_ASYNC_BUFFER_POOL_MB);
+            long queueDepth = DseOpscNFSRestoreUtils.getConfigNumber(configProps,
+                DseOpscNFSRestoreUtils.CFG_KEY_ASYNC_QUEUE_DEPTH, DseOpscNFSRestoreUtils.DEFAULT_ASYNC_QUEUE_DEPTH);
+
+            int bufferSize = (int) (bufferSizeKb * 1024);
+            int bufferNum = (int) Math.max(1, bufferPoolMb * 1024 * 1024 / bufferSize);
+
+            return new NFSObjAsyncCopyEngine(ioThrottle, cacheBypass, durabilityPolicy,
+                new NFSObjDirectBufferPool(bufferSize, bufferNum),
+                (int) queueDepth);
+        }
+
+        return new NFSObjFileUtilsCopyEngine(ioThrottle, cacheBypass, durabilityPolicy);
+    }
+
+    static boolean isValidEngineName(String engineName) {
+        return ENGINE_FILEUTILS.equalsIgnoreCase(engineName) ||
+               ENGINE_FILECHANNEL.equalsIgnoreCase(engineName) ||
+               ENGINE_ASYNC.equalsIgnoreCase(engineName);
+    }
+}
@@ -0,0 +1,183 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+
+/**
+ * Differential restore ("-dif" option) against what is already in the local target directories.
+ *
+ * Consecutive OpsCenter backups share most of their SSTable files, so restoring again from the same
+ * backup, or from a later one, mostly finds the files already in place. A planned file whose local
+ * copy has the same name and size is not copied again when its content is also the same:
+ *  - if the backup has a reference checksum for it (the SSTable Digest component for a Data.db file,
+ *    or a checksum sidecar file), the local file is checksummed and compared against it;
+ *  - otherwise, its last modified time must be that of the backup file (a restored file keeps
+ *    the date of its backup file).
+ * Unchanged files are journaled as completed, so that a rerun skips them without any check.
+ *
+ * With pruning ("-dif prune"), SSTable files in the target directories of the plan that are not
+ * part of the plan (e.g. compacted away before the later backup) are removed after the download.
+ */
+class NFSObjDifferentialRestore {
+
+    static final String DIF_OPTION_PRUNE = "prune";
+
+    // SSTable component file names, e.g. "mc-1-big-Data.db", "nb-3gw7_0ltp_2kj5s2b6yvkwq7c7xq-big-TOC.txt",
+    // or "ks-tbl-ka-1-Data.db"
+    private static final Pattern SSTABLE_FILE_PATTERN =
+        Pattern.compile("^([^-]+-[^-]+-)?[a-z]{2}-[0-9a-z_]+(-[a-z]+)?-[A-Za-z0-9]+\\.(db|txt|crc32|adler32|sha1)$");
+
+    private final boolean prune;
+
+    // Finds the reference checksums (no verification statistics are recorded through it)
+    private final NFSObjChecksumVerifier referenceFinder;
+
+    private final AtomicLong unchangedFiles = new AtomicLong();
+    private final AtomicLong unchangedBytes = new AtomicLong();
+    private final AtomicLong changedFiles = new AtomicLong();
+    private final AtomicLong checksummedFiles = new AtomicLong();
+
+    private long prunedFiles = 0;
+    private long prunedBytes = 0;
+
+    /**
+     * @param prune_unplanned   whether to remove the SSTable files that are not part of the plan
+     */
+    NFSObjDifferentialRestore(boolean prune_unplanned) {
+        this.prune = prune_unplanned;
+        this.referenceFinder = new NFSObjChecksumVerifier(NFSObjChecksum.ALGO_CRC32);
+    }
+
+    boolean isPrune() {
+        return prune;
+    }
+
+    /**
+     * Check whether the local copy of a planned file is already the same as the backup file;
+     * if so, it is journaled as completed
+     *
+     * @param item
+     * @param unit          the SSTable set of the file
+     * @param srcSize
+     * @param srcMtime
+     * @param restoreJournal
+     * @return true if the file doesn't need to be copied
+     * @throws IOException
+     */
+    boolean checkUnchanged(NFSObjRestoreItem item,
+                           NFSObjRestoreUnit unit,
+                           long srcSize,
+                           long srcMtime,
+                           NFSObjRestoreJournal restoreJournal) throws IOException {
+        File localFile = item.getLocalFile();
+
+        if ( !localFile.isFile() ) {
+            return false;
+        }
+
+        if (localFile.length() != srcSize) {
+            changedFiles.incrementAndGet();
+            return false;
+        }
+
+        String checksumStr = null;
+        NFSObjChecksumVerifier.Reference reference = referenceFinder.getReference(item, unit);
+
+        if (reference.expectedValue != null) {
+            NFSObjChecksum checksum = NFSObjChecksum.create(reference.algorithm);
+            NFSObjCopyEngine.updateChecksum(localFile.toPath(), 0, srcSize, checksum);
+            checksummedFiles.incrementAndGet();
+
+            if (checksum.getValue() != reference.expectedValue) {
+                changedFiles.incrementAndGet();
+                return false;
+            }
+
+            checksumStr = checksum.toString();
+        }
+        else if (localFile.lastModified() != srcMtime) {
+            changedFiles.incrementAndGet();
+            return false;
+        }
+
+        restoreJournal.recordCompleted(localFile, srcSize, srcMtime, checksumStr);
+
+        unchangedFiles.incrementAndGet();
+        unchangedBytes.addAndGet(srcSize);
+
+        return true;
+    }
+
+    long getUnchangedFiles() {
+        return unchangedFiles.get();
+    }
+
+    /**
+     * Remove the SSTable files in the target directories of the plan that are not part of the plan
+     *
+     * @param restorePlanner
+     * @param verbose
+     * @throws IOException
+     */
+    void prune(NFSObjRestorePlanner restorePlanner, boolean verbose) throws IOException {
+        Set<Path> plannedFiles = new HashSet<>();
+        Set<Path> targetDirs = new HashSet<>();
+
+        for ( NFSObjRestoreUnit restoreUnit : restorePlanner.getUnitsLargestFirst() ) {
+            for ( NFSObjRestoreItem item : restoreUnit.getItems() ) {
+                Path localPath = item.getLocalFile().toPath().toAbsolutePath().normalize();
+
+                plannedFiles.add(localPath);
+                targetDirs.add(localPath.getParent());
+            }
+        }
+
+        for ( Path targetDir : targetDirs ) {
+            if ( !Files.isDirectory(targetDir) ) {
+                continue;
+            }
+
+            try ( DirectoryStream<Path> dirStream = Files.newDirectoryStream(targetDir) ) {
+                for ( Path localPath : dirStream ) {
+                    if ( plannedFiles.contains(localPath.toAbsolutePath().normalize()) ||
+                         !Files.isRegularFile(localPath) ||
+                         !SSTABLE_FILE_PATTERN.matcher(localPath.getFileName().toString()).matches() ) {
+                        continue;
+                    }
+
+                    long size = Files.size(localPath);
+                    Files.delete(localPath);
+
+                    prunedFiles++;
+                    prunedBytes += size;
+
+                    if (verbose) {
+                        System.out.format("   - \"%s\" is not in the backup, removed\n", localPath);
+                    }
+                }
+            }
+        }
+    }
+
+    void printStats() {
+        System.out.format("  Differential restore: %d files (%d bytes) unchanged (%d checksummed), %d changed files copied again",
+            unchangedFiles.get(),
+            unchangedBytes.get(),
+            checksummedFiles.get(),
+            changedFiles.get());
+
+        if (prune) {
+            System.out.format(", %d files (%d bytes) not in the backup removed", prunedFiles, prunedBytes);
+        }
+
+        System.out.println(".");
+    }
+}
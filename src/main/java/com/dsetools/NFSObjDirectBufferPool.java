@@ -0,0 +1,118 @@
+package com.dsetools;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Bounded pool of reusable direct (off-heap) byte buffers.
+ *
+ * At most "bufferNum" buffers are ever allocated, so the off-heap memory used by the copies is
+ * capped by the pool size (buffer size * buffer number), no matter how many download threads run.
+ * Buffers are allocated on first use and go back to the pool when a copy is done with them.
+ */
+class NFSObjDirectBufferPool {
+
+    private final int bufferSize;
+    private final int bufferNum;
+
+    private final LinkedBlockingQueue<ByteBuffer> freeBuffers = new LinkedBlockingQueue<>();
+    private final AtomicInteger allocatedNum = new AtomicInteger();
+    private final AtomicInteger inUseNum = new AtomicInteger();
+    private final AtomicInteger peakInUseNum = new AtomicInteger();
+
+    /**
+     * @param buffer_size   size (bytes) of each buffer
+     * @param buffer_num    max. number of buffers
+     */
+    NFSObjDirectBufferPool(int buffer_size, int buffer_num) {
+        assert ( (buffer_size > 0) && (buffer_num > 0) );
+
+        this.bufferSize = buffer_size;
+        this.bufferNum = buffer_num;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Take a buffer, waiting until one is free if all of them are in use
+     *
+     * @return
+     * @throws InterruptedIOException
+     */
+    ByteBuffer acquire() throws InterruptedIOException {
+        ByteBuffer buffer = tryAcquire();
+
+        if (buffer == null) {
+            try {
+                buffer = freeBuffers.take();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a copy buffer");
+            }
+
+            markInUse();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Take a buffer if one is free (or may still be allocated)
+     *
+     * @return null if all buffers are in use
+     */
+    ByteBuffer tryAcquire() {
+        ByteBuffer buffer = freeBuffers.poll();
+
+        if (buffer == null) {
+            int allocated = allocatedNum.get();
+
+            while (allocated < bufferNum) {
+                if (allocatedNum.compareAndSet(allocated, allocated + 1)) {
+                    buffer = ByteBuffer.allocateDirect(bufferSize);
+                    break;
+                }
+                allocated = allocatedNum.get();
+            }
+        }
+
+        if (buffer != null) {
+            markInUse();
+        }
+
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        inUseNum.decrementAndGet();
+
+        freeBuffers.offer(buffer);
+    }
+
+    private void markInUse() {
+        int inUse = inUseNum.incrementAndGet();
+
+        int peak = peakInUseNum.get();
+        while ( (inUse > peak) && !peakInUseNum.compareAndSet(peak, inUse) ) {
+            peak = peakInUseNum.get();
+        }
+    }
+
+    /**
+     * @return description of the pool size and its peak usage
+     */
+    String getUsageString() {
+        return String.format("buffer pool %d x %d KB (%d MB max), peak %d buffers in use",
+            bufferNum,
+            bufferSize / 1024,
+            (long) bufferNum * bufferSize / (1024 * 1024),
+            peakInUseNum.get());
+    }
+}
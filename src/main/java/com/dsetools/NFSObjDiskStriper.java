@@ -0,0 +1,261 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+
+/**
+ * Spreads the restored SSTable sets over several destination roots, one per data disk, instead of
+ * writing everything to one disk:
+ *  - without live placement, the local download home directory and the "download_stripe_dirs";
+ *  - with live placement ("-pl live"), the "data_file_directories" of cassandra.yaml.
+ *
+ * An SSTable set goes to the root with the most free space left once the bytes already assigned to
+ * it (planned, but not written yet) are written, so that the disks fill up evenly and all of them
+ * are written to at the same time. A set that an earlier run restored (or started to restore) under
+ * a root stays there, so that a rerun finds it again.
+ *
+ * Every root gets its own queue of download workers, with a share of the download threads (see
+ * downloadRestoreUnits()), so that all disks are written at the same time, and a slow disk doesn't
+ * hold up the others.
+ */
+class NFSObjDiskStriper {
+
+    private final List<Path> roots;
+    private final long[] freeBytes;
+    private final long[] assignedBytes;
+    private final int[] assignedSets;
+
+    // Directory -> root of the same filesystem (for files that aren't under any root, e.g. staged ones)
+    private final Map<Path, Integer> filesystemRoots = new HashMap<>();
+
+    /**
+     * @param dest_roots
+     * @throws IOException  if the free space of a root can't be read
+     */
+    NFSObjDiskStriper(List<Path> dest_roots) throws IOException {
+        this.roots = new ArrayList<>(dest_roots);
+        this.freeBytes = new long[roots.size()];
+        this.assignedBytes = new long[roots.size()];
+        this.assignedSets = new int[roots.size()];
+
+        for (int i = 0; i < roots.size(); i++) {
+            Files.createDirectories(roots.get(i));
+            freeBytes[i] = Files.getFileStore(roots.get(i)).getUsableSpace();
+        }
+    }
+
+    /**
+     * The configured download stripe directories (besides the local download home directory)
+     *
+     * @param configProps
+     * @return
+     */
+    static List<String> getStripeDirs(Properties configProps) {
+        List<String> stripeDirs = new ArrayList<>();
+
+        String stripeDirsStr = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_DOWNLOAD_STRIPE_DIRS);
+        if (stripeDirsStr != null) {
+            for ( String stripeDir : stripeDirsStr.split(",") ) {
+                if ( !stripeDir.trim().isEmpty() ) {
+                    stripeDirs.add(stripeDir.trim());
+                }
+            }
+        }
+
+        return stripeDirs;
+    }
+
+    /**
+     * Striper over the local download home directory and the download stripe directories
+     *
+     * @param configProps
+     * @param downloadHomeDir
+     * @return null if no download stripe directory is configured
+     * @throws IOException
+     */
+    static NFSObjDiskStriper forDownload(Properties configProps, String downloadHomeDir) throws IOException {
+        List<String> stripeDirs = getStripeDirs(configProps);
+        if ( stripeDirs.isEmpty() ) {
+            return null;
+        }
+
+        List<Path> roots = new ArrayList<>();
+        roots.add(Paths.get(downloadHomeDir).toAbsolutePath().normalize());
+        for ( String stripeDir : stripeDirs ) {
+            roots.add(Paths.get(stripeDir).toAbsolutePath().normalize());
+        }
+
+        return new NFSObjDiskStriper(roots);
+    }
+
+    List<Path> getRoots() {
+        return roots;
+    }
+
+    int getRootNum() {
+        return roots.size();
+    }
+
+    /**
+     * Pick the root for an SSTable set
+     *
+     * @param bytes     size of the SSTable set
+     * @return root index
+     */
+    synchronized int assign(long bytes) {
+        int bestIndex = 0;
+
+        for (int i = 1; i < roots.size(); i++) {
+            if ( (freeBytes[i] - assignedBytes[i]) > (freeBytes[bestIndex] - assignedBytes[bestIndex]) ) {
+                bestIndex = i;
+            }
+        }
+
+        assign(bestIndex, bytes);
+
+        return bestIndex;
+    }
+
+    /**
+     * Assign an SSTable set to a given root (e.g. where an earlier run restored it)
+     *
+     * @param rootIndex
+     * @param bytes
+     */
+    synchronized void assign(int rootIndex, long bytes) {
+        assignedBytes[rootIndex] += bytes;
+        assignedSets[rootIndex]++;
+    }
+
+    /**
+     * Index of the root a file is under
+     *
+     * @param filePath
+     * @return -1 if it isn't under any root
+     */
+    int getRootIndex(Path filePath) {
+        Path normalizedPath = filePath.toAbsolutePath().normalize();
+
+        for (int i = 0; i < roots.size(); i++) {
+            if ( normalizedPath.startsWith(roots.get(i)) ) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Index of the worker queue (disk) that writes a file: the root it is under or, if none, the root
+     * on the same filesystem (the first root if there is none either)
+     *
+     * @param filePath
+     * @return
+     */
+    synchronized int getQueueIndex(Path filePath) {
+        int rootIndex = getRootIndex(filePath);
+        if (rootIndex >= 0) {
+            return rootIndex;
+        }
+
+        Path dirPath = filePath.toAbsolutePath().normalize().getParent();
+
+        Integer filesystemRoot = filesystemRoots.get(dirPath);
+        if (filesystemRoot == null) {
+            filesystemRoot = 0;
+
+            try {
+                // The directory may not be created yet
+                Path existingPath = dirPath;
+                while ( (existingPath != null) && Files.notExists(existingPath) ) {
+                    existingPath = existingPath.getParent();
+                }
+
+                if (existingPath != null) {
+                    FileStore fileStore = Files.getFileStore(existingPath);
+
+                    for (int i = 0; i < roots.size(); i++) {
+                        if ( fileStore.equals(Files.getFileStore(roots.get(i))) ) {
+                            filesystemRoot = i;
+                            break;
+                        }
+                    }
+                }
+            }
+            catch (IOException ioe) {
+            }
+
+            filesystemRoots.put(dirPath, filesystemRoot);
+        }
+
+        return filesystemRoot;
+    }
+
+    /**
+     * Spread the planned SSTable sets (planned under the first root) over all roots. The files keep
+     * their paths relative to the root.
+     *
+     * @param restorePlanner
+     * @return the plan to download
+     */
+    NFSObjRestorePlanner stripe(NFSObjRestorePlanner restorePlanner) {
+        NFSObjRestorePlanner stripedPlanner = new NFSObjRestorePlanner();
+        Path homeRoot = roots.get(0);
+
+        for ( NFSObjRestoreUnit unit : restorePlanner.getUnitsLargestFirst() ) {
+            List<Path> relPaths = new ArrayList<>();
+            for ( NFSObjRestoreItem item : unit.getItems() ) {
+                relPaths.add(homeRoot.relativize(item.getLocalFile().toPath().toAbsolutePath().normalize()));
+            }
+
+            // Where an earlier run restored (some of) the set
+            int rootIndex = -1;
+            for (int i = 0; (i < roots.size()) && (rootIndex < 0); i++) {
+                for ( Path relPath : relPaths ) {
+                    if ( Files.exists(roots.get(i).resolve(relPath)) ) {
+                        rootIndex = i;
+                        break;
+                    }
+                }
+            }
+
+            if (rootIndex >= 0) {
+                assign(rootIndex, unit.getTotalBytes());
+            }
+            else {
+                rootIndex = assign(unit.getTotalBytes());
+            }
+
+            for (int i = 0; i < relPaths.size(); i++) {
+                NFSObjRestoreItem item = unit.getItems().get(i);
+
+                stripedPlanner.addItem(unit.getHostId(), new File(item.getNfsObjName()).getName(),
+                    item.withLocalFile(roots.get(rootIndex).resolve(relPaths.get(i)).toFile()));
+            }
+        }
+
+        return stripedPlanner;
+    }
+
+    synchronized void printPlan() {
+        System.out.format("  Disk striping over %d destination roots, one worker queue each:\n", roots.size());
+
+        for (int i = 0; i < roots.size(); i++) {
+            System.out.format("    %s: %d SSTable sets, %d bytes (%d MB free)\n",
+                roots.get(i),
+                assignedSets[i],
+                assignedBytes[i],
+                freeBytes[i] / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * How the restored files are laid out on the local disk and when they are made durable.
+ *
+ * Preallocation ("preallocate" configuration file parameter): before a file is copied, its blocks
+ * are reserved for the full source size in one extent request, instead of growing the file with
+ * every write (which fragments large files on XFS/ext4). Java has no fallocate(), so this runs
+ *   fallocate --keep-size -l <size> <file>
+ * (util-linux). With "--keep-size" the file length still grows with the copied data, so an
+ * interrupted copy can be continued from the local file length. The part file of a range copy is
+ * preallocated with its full length (falling back to a sparse RandomAccessFile.setLength()).
+ * Every preallocation forks a process, so only files of at least "preallocate_min_mb" (default 64 MB)
+ * are preallocated; small files hardly fragment anyway.
+ *
+ * Fsync policy ("fsync_policy" configuration file parameter):
+ *  - "none": flushing is left to the OS (default)
+ *  - "file": every file is fsynced (with its parent directory) as soon as it is copied
+ *  - "set" : the files of an SSTable set are fsynced together when the whole set is copied
+ *  - "end" : all restored files are fsynced once, at the end of the run
+ * The parent directories of the synced files, up to the target root that holds them (the local
+ * download home directory, a download stripe directory or a live data directory), are fsynced after
+ * the files, so that newly created files and directories survive a crash too.
+ * A file is only journaled as completed after it is synced; after a crash, a rerun continues
+ * the files that were copied but not synced yet.
+ */
+class NFSObjDurabilityPolicy {
+
+    static final String FSYNC_NONE = "none";
+    static final String FSYNC_FILE = "file";
+    static final String FSYNC_SET = "set";
+    static final String FSYNC_END = "end";
+
+    private static final String FALLOCATE_COMMAND = "fallocate";
+    private static final File DEV_NULL = new File("/dev/null");
+
+    /**
+     * A copied file whose completion is journaled once it is synced
+     */
+    static class Completion {
+        final File localFile;
+        final long srcSize;
+        final long srcMtime;
+        final String checksum;
+
+        // Final name of the file once its SSTable set is published (see NFSObjSetPublisher)
+        private volatile File publishedFile;
+
+        // Restored by an earlier run that didn't get to publish it
+        private volatile boolean resumed;
+
+        Completion(File localFile, long srcSize, long srcMtime, String checksum) {
+            this.localFile = localFile;
+            this.srcSize = srcSize;
+            this.srcMtime = srcMtime;
+            this.checksum = checksum;
+        }
+
+        void published(File finalFile) {
+            this.publishedFile = finalFile;
+        }
+
+        void resumed() {
+            this.resumed = true;
+        }
+
+        boolean isResumed() {
+            return resumed;
+        }
+
+        /**
+         * @return the file under its current name
+         */
+        File getFile() {
+            return (publishedFile != null) ? publishedFile : localFile;
+        }
+    }
+
+    private final String fsyncPolicy;
+    private final boolean preallocate;
+    private final long preallocateMinBytes;
+
+    // Target roots of the restored files: their parent directories are synced up to the root
+    private final List<Path> rootPaths = new CopyOnWriteArrayList<>();
+
+    private volatile boolean fallocateUsable = true;
+
+    // Files copied but not synced yet (fsync policy "end")
+    private final ConcurrentLinkedQueue<Completion> pendingCompletions = new ConcurrentLinkedQueue<>();
+
+    // Directories with new hard links that are not synced yet (fsync policy "end")
+    private final Set<Path> pendingDirPaths = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private final AtomicLong preallocatedFiles = new AtomicLong();
+    private final AtomicLong syncedFiles = new AtomicLong();
+    private final AtomicLong syncedDirs = new AtomicLong();
+    private final AtomicLong syncNanos = new AtomicLong();
+
+    private NFSObjDurabilityPolicy(String fsync_policy,
+                                   boolean preallocate,
+                                   long preallocate_min_bytes,
+                                   Path download_home_path) {
+        this.fsyncPolicy = fsync_policy;
+        this.preallocate = preallocate;
+        this.preallocateMinBytes = preallocate_min_bytes;
+        this.rootPaths.add(download_home_path);
+    }
+
+    /**
+     * Create the policy that corresponds to the "preallocate" and "fsync_policy" configuration file
+     * parameter values. When not specified, files are neither preallocated nor synced.
+     *
+     * @param configProps
+     * @param downloadHomePath
+     * @return
+     */
+    static NFSObjDurabilityPolicy create(Properties configProps, Path downloadHomePath) {
+        String fsyncPolicyStr = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_FSYNC_POLICY);
+        String fsyncPolicy = FSYNC_NONE;
+
+        for (String policy : new String[] { FSYNC_FILE, FSYNC_SET, FSYNC_END }) {
+            if ( policy.equalsIgnoreCase(fsyncPolicyStr) ) {
+                fsyncPolicy = policy;
+            }
+        }
+
+        boolean preallocate = Boolean.parseBoolean(configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_PREALLOCATE));
+        long preallocateMinBytes = DseOpscNFSRestoreUtils.getConfigNumber(configProps,
+            DseOpscNFSRestoreUtils.CFG_KEY_PREALLOCATE_MIN_MB, DseOpscNFSRestoreUtils.DEFAULT_PREALLOCATE_MIN_MB) * 1024 * 1024;
+
+        return new NFSObjDurabilityPolicy(fsyncPolicy, preallocate, preallocateMinBytes,
+            downloadHomePath.toAbsolutePath().normalize());
+    }
+
+    static boolean isValidFsyncPolicy(String fsyncPolicyStr) {
+        return FSYNC_NONE.equalsIgnoreCase(fsyncPolicyStr) ||
+               FSYNC_FILE.equalsIgnoreCase(fsyncPolicyStr) ||
+               FSYNC_SET.equalsIgnoreCase(fsyncPolicyStr) ||
+               FSYNC_END.equalsIgnoreCase(fsyncPolicyStr);
+    }
+
+    boolean isPreallocate() {
+        return preallocate;
+    }
+
+    String getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Add target roots besides the local download home directory (download stripe directories, live
+     * data directories)
+     *
+     * @param paths
+     */
+    void addRootPaths(Collection<Path> paths) {
+        for (Path path : paths) {
+            Path rootPath = path.toAbsolutePath().normalize();
+            if ( !rootPaths.contains(rootPath) ) {
+                rootPaths.add(rootPath);
+            }
+        }
+    }
+
+    /**
+     * @param filePath  absolute and normalized
+     * @return the deepest target root that holds the file, null if there is none
+     */
+    private Path getRootPath(Path filePath) {
+        Path containingRootPath = null;
+
+        for (Path rootPath : rootPaths) {
+            if ( filePath.startsWith(rootPath) &&
+                 ((containingRootPath == null) || rootPath.startsWith(containingRootPath)) ) {
+                containingRootPath = rootPath;
+            }
+        }
+
+        return containingRootPath;
+    }
+
+    private boolean isPreallocated(long size) {
+        return preallocate && (size > 0) && (size >= preallocateMinBytes);
+    }
+
+    /**
+     * Reserve the blocks of a target file for the full source size, without changing the file length
+     * (only for files of at least "preallocate_min_mb")
+     *
+     * @param dstPath
+     * @param size
+     */
+    void preallocate(Path dstPath, long size) {
+        if ( isPreallocated(size) && runFallocate("--keep-size", "-l", Long.toString(size), dstPath.toString()) ) {
+            preallocatedFiles.incrementAndGet();
+        }
+    }
+
+    /**
+     * Set the length of the part file of a range copy, with its blocks reserved if possible
+     *
+     * @param partPath
+     * @param size
+     * @throws IOException
+     */
+    void preallocatePart(Path partPath, long size) throws IOException {
+        if ( isPreallocated(size) && runFallocate("-l", Long.toString(size), partPath.toString()) ) {
+            preallocatedFiles.incrementAndGet();
+
+            // fallocate never shrinks a file: drop anything beyond the size (e.g. a stale part file)
+            if (Files.size(partPath) == size) {
+                return;
+            }
+        }
+
+        try ( RandomAccessFile raf = new RandomAccessFile(partPath.toFile(), "rw") ) {
+            raf.setLength(size);
+        }
+    }
+
+    private boolean runFallocate(String... arguments) {
+        if (!fallocateUsable) {
+            return false;
+        }
+
+        String[] command = new String[arguments.length + 1];
+        command[0] = FALLOCATE_COMMAND;
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+
+        String errorStr;
+
+        try {
+            Process process = new ProcessBuilder(command)
+                .redirectOutput(DEV_NULL)
+                .redirectError(DEV_NULL)
+                .start();
+
+            int exitCode = process.waitFor();
+            if (exitCode == 0) {
+                return true;
+            }
+
+            errorStr = "exit code " + exitCode;
+        }
+        catch (IOException ioe) {
+            errorStr = ioe.getMessage();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (fallocateUsable) {
+            fallocateUsable = false;
+            System.out.format("   WARN: Failed to preallocate restored files with \"%s\" (%s); preallocation disabled.\n",
+                String.join(" ", command), errorStr);
+        }
+
+        return false;
+    }
+
+    /**
+     * A file is copied (and verified): sync it now, or keep it for the sync of its SSTable set
+     * or of the whole run, and journal it as completed once it is synced
+     *
+     * @param completion
+     * @param unitCompletions   completions of the SSTable set that are not synced yet
+     * @param journal
+     * @throws IOException
+     */
+    void fileCompleted(Completion completion,
+                       List<Completion> unitCompletions,
+                       NFSObjRestoreJournal journal) throws IOException {
+        if ( FSYNC_FILE.equals(fsyncPolicy) ) {
+            syncAndRecord(Collections.singletonList(completion), journal);
+        }
+        else if ( FSYNC_SET.equals(fsyncPolicy) ) {
+            unitCompletions.add(completion);
+        }
+        else if ( FSYNC_END.equals(fsyncPolicy) ) {
+            pendingCompletions.add(completion);
+        }
+        else {
+            journal.recordCompleted(completion.getFile(), completion.srcSize, completion.srcMtime, completion.checksum);
+        }
+    }
+
+    /**
+     * An SSTable set is done: sync its copied files (fsync policy "set")
+     *
+     * @param unitCompletions
+     * @param journal
+     * @throws IOException
+     */
+    void unitCompleted(List<Completion> unitCompletions, NFSObjRestoreJournal journal) throws IOException {
+        if ( !unitCompletions.isEmpty() ) {
+            syncAndRecord(unitCompletions, journal);
+        }
+    }
+
+    /**
+     * The download is over: sync all copied files (fsync policy "end")
+     *
+     * @param journal
+     * @return number of files that were synced
+     * @throws IOException
+     */
+    int runCompleted(NFSObjRestoreJournal journal) throws IOException {
+        List<Completion> completions = new ArrayList<>(pendingCompletions);
+        pendingCompletions.clear();
+
+        if ( !completions.isEmpty() ) {
+            syncAndRecord(completions, journal);
+        }
+
+        List<Path> dirPaths;
+        synchronized (pendingDirPaths) {
+            dirPaths = new ArrayList<>(pendingDirPaths);
+            pendingDirPaths.clear();
+        }
+
+        if ( !dirPaths.isEmpty() ) {
+            long startNanos = System.nanoTime();
+
+            for (Path dirPath : dirPaths) {
+                sync(dirPath);
+                syncedDirs.incrementAndGet();
+            }
+
+            syncNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        return completions.size();
+    }
+
+    /**
+     * The files of an SSTable set were renamed to their final names: sync their directories, so that
+     * the renames survive a crash too (fsync policies "file" and "set"; with "end", they are synced
+     * at the end of the run under their final names)
+     *
+     * @param completions
+     * @throws IOException
+     */
+    void filesPublished(Collection<Completion> completions) throws IOException {
+        if ( !FSYNC_FILE.equals(fsyncPolicy) && !FSYNC_SET.equals(fsyncPolicy) ) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+
+        Set<Path> dirPaths = new LinkedHashSet<>();
+        for (Completion completion : completions) {
+            dirPaths.add(completion.getFile().toPath().toAbsolutePath().normalize().getParent());
+        }
+
+        for (Path dirPath : dirPaths) {
+            sync(dirPath);
+            syncedDirs.incrementAndGet();
+        }
+
+        syncNanos.addAndGet(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Hard links to restored files were created in a directory (live placement of a staged SSTable
+     * set): sync the directory now (fsync policies "file" and "set") or at the end of the run ("end")
+     *
+     * @param dirPath
+     * @throws IOException
+     */
+    void linksCreated(Path dirPath) throws IOException {
+        if ( FSYNC_END.equals(fsyncPolicy) ) {
+            pendingDirPaths.add(dirPath);
+        }
+        else if ( FSYNC_FILE.equals(fsyncPolicy) || FSYNC_SET.equals(fsyncPolicy) ) {
+            long startNanos = System.nanoTime();
+
+            sync(dirPath);
+            syncedDirs.incrementAndGet();
+
+            syncNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void syncAndRecord(Collection<Completion> completions, NFSObjRestoreJournal journal) throws IOException {
+        long startNanos = System.nanoTime();
+
+        Set<Path> dirPaths = new LinkedHashSet<>();
+
+        for (Completion completion : completions) {
+            Path filePath = completion.getFile().toPath().toAbsolutePath().normalize();
+            sync(filePath);
+            syncedFiles.incrementAndGet();
+
+            // Parent directories (deepest first), up to the target root (only the parent outside of the roots)
+            Path rootPath = getRootPath(filePath);
+            Path dirPath = filePath.getParent();
+            do {
+                dirPaths.add(dirPath);
+                dirPath = dirPath.getParent();
+            } while ( (rootPath != null) && (dirPath != null) && dirPath.startsWith(rootPath) );
+        }
+
+        for (Path dirPath : dirPaths) {
+            sync(dirPath);
+            syncedDirs.incrementAndGet();
+        }
+
+        syncNanos.addAndGet(System.nanoTime() - startNanos);
+
+        for (Completion completion : completions) {
+            journal.recordCompleted(completion.getFile(), completion.srcSize, completion.srcMtime, completion.checksum);
+        }
+    }
+
+    /**
+     * fsync a file or a directory (a directory can be opened for reading and forced on Linux)
+     *
+     * @param path
+     * @throws IOException
+     */
+    static void sync(Path path) throws IOException {
+        try ( FileChannel channel = FileChannel.open(path, StandardOpenOption.READ) ) {
+            channel.force(true);
+        }
+    }
+
+    void printStats() {
+        System.out.format("  Durability (fsync policy \"%s\"%s): %d files preallocated, %d files and %d directories synced in %d ms.\n",
+            fsyncPolicy,
+            preallocate ? ", preallocate" : "",
+            preallocatedFiles.get(),
+            syncedFiles.get(),
+            syncedDirs.get(),
+            TimeUnit.NANOSECONDS.toMillis(syncNanos.get()));
+    }
+}
@@ -0,0 +1,167 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Copy engine based on FileChannel.transferTo(), which lets the kernel do the copy
+ * (sendfile/copy_file_range, depending on the JVM and the OS) where it is able to.
+ *
+ * If the channel transfer is not supported for a file, the copy falls back to the
+ * commons-io based engine.
+ *
+ * NOTE: a kernel copy never passes the data through user space, so when a checksum
+ *       is needed, the data is copied through a user-space buffer instead (still
+ *       one pass - the file is not read twice).
+ */
+class NFSObjFileChannelCopyEngine extends NFSObjCopyEngine {
+
+    // Max. number of bytes handed to the kernel per transferTo() call
+    static final long TRANSFER_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    private final NFSObjCopyEngine fallbackEngine;
+
+    NFSObjFileChannelCopyEngine(NFSObjIoThrottle io_throttle,
+                                NFSObjCacheBypass cache_bypass,
+                                NFSObjDurabilityPolicy durability_policy) {
+        super(io_throttle, cache_bypass, durability_policy);
+
+        this.fallbackEngine = new NFSObjFileUtilsCopyEngine(io_throttle, cache_bypass, durability_policy);
+    }
+
+    @Override
+    String getName() {
+        return ENGINE_FILECHANNEL;
+    }
+
+    @Override
+    long copy(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum) throws IOException {
+        try {
+            return super.copy(srcFile, dstFile, startOffset, checksum);
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            // A real I/O problem (e.g. NFS failure) fails again in the fallback engine and gets reported from there
+            System.out.format("     WARN: channel transfer of \"%s\" failed (%s), falling back to \"%s\" copy engine.\n",
+                srcFile.getAbsolutePath(), e.getMessage(), fallbackEngine.getName());
+
+            // The checksum has to start over, the fallback engine copies from the start offset again
+            if (checksum != null) {
+                checksum.reset();
+            }
+
+            return fallbackEngine.copy(srcFile, dstFile, startOffset, checksum);
+        }
+    }
+
+    @Override
+    protected long doCopy(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum) throws IOException {
+        Path srcPath = srcFile.toPath();
+        Path dstPath = dstFile.toPath();
+
+        long copied;
+
+        try ( FileChannel srcChannel = FileChannel.open(srcPath, StandardOpenOption.READ);
+              FileChannel dstChannel = FileChannel.open(dstPath, StandardOpenOption.WRITE) ) {
+
+            long size = srcChannel.size();
+
+            copied = transfer(srcChannel, dstChannel, startOffset, size, checksum, ioThrottle);
+        }
+
+        // Keep the same behavior as FileUtils.copyFile() - preserve the file date
+        Files.setLastModifiedTime(dstPath, Files.getLastModifiedTime(srcPath));
+
+        return copied;
+    }
+
+    /**
+     * Copy the byte range [position, end) of the source channel to the same position of the target channel.
+     * Without a checksum, the kernel does the copy; with a checksum, the data goes through a user-space
+     * buffer and the checksum is updated in the same pass.
+     *
+     * While the I/O throttle has a limit, the data is copied in small chunks that each wait for their
+     * read and write budget, so that the throughput follows the budget instead of coming in bursts.
+     *
+     * @param srcChannel
+     * @param dstChannel
+     * @param position
+     * @param end
+     * @param checksum      null if no checksum is needed
+     * @param ioThrottle
+     * @return number of bytes copied
+     * @throws IOException
+     */
+    static long transfer(FileChannel srcChannel,
+                         FileChannel dstChannel,
+                         long position,
+                         long end,
+                         NFSObjChecksum checksum,
+                         NFSObjIoThrottle ioThrottle) throws IOException {
+        long start = position;
+
+        if (checksum == null) {
+            dstChannel.position(position);
+
+            while (position < end) {
+                long chunkSize = Math.min(end - position, TRANSFER_CHUNK_SIZE);
+
+                if ( ioThrottle.isLimited() ) {
+                    chunkSize = Math.min(chunkSize, COPY_BUFFER_SIZE);
+                }
+
+                // No-ops without limits, apart from counting the transferred bytes
+                ioThrottle.acquireRead(chunkSize);
+                ioThrottle.acquireWrite(chunkSize);
+
+                long transferred = srcChannel.transferTo(position, chunkSize, dstChannel);
+
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of source file at offset " + position);
+                }
+
+                position += transferred;
+            }
+        }
+        else {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+                int read = srcChannel.read(buffer, position);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of source file at offset " + position);
+                }
+
+                ioThrottle.acquireRead(read);
+
+                checksum.update(buffer.array(), 0, read);
+
+                ioThrottle.acquireWrite(read);
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += dstChannel.write(buffer, position);
+                }
+            }
+        }
+
+        return position - start;
+    }
+
+    @Override
+    void printStats() {
+        super.printStats();
+
+        if (fallbackEngine.getCopiedFiles() > 0) {
+            fallbackEngine.printStats();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.dsetools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+
+/**
+ * Resolves the sizes of NFS backup files for a whole listing at once, instead of one Files.size()
+ * (one NFS GETATTR round trip) per file while the listing is printed:
+ *  - a size recorded in backup.json is used as it is (listing only; a download always uses the
+ *    actual file size, which the copy relies on);
+ *  - a size resolved earlier in the run is taken from the cache (backup files don't change, and
+ *    the same SSTable files are shared by many backups);
+ *  - the remaining files are looked up in batches by a pool of "size_check_threads" workers, so
+ *    that many GETATTR requests are in flight at the same time.
+ *
+ * The backup.json entries of a listing are sized as they are parsed, one window of entries (one
+ * batch per worker) at a time, so a listing never holds more than a window of entries in memory.
+ */
+class NFSObjFileSizeResolver {
+
+    // Files looked up by one worker task
+    static final int LOOKUP_BATCH_SIZE = 64;
+
+    private final ExecutorService lookupExecutor;
+
+    // Entries sized together by a RecordWindow: one lookup batch per worker
+    private final int windowSize;
+
+    // NFS backup file path -> size, for the length of the run
+    private final ConcurrentHashMap<String, Long> sizeCache = new ConcurrentHashMap<>();
+
+    private final AtomicLong metadataSizes = new AtomicLong();
+    private final AtomicLong cachedSizes = new AtomicLong();
+    private final AtomicLong lookedUpSizes = new AtomicLong();
+    private final AtomicLong failedLookups = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+
+    /**
+     * @param thread_num    number of lookup workers
+     */
+    NFSObjFileSizeResolver(int thread_num) {
+        this.windowSize = LOOKUP_BATCH_SIZE * thread_num;
+        this.lookupExecutor = Executors.newFixedThreadPool(thread_num, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                // Never keeps the JVM alive
+                Thread thread = new Thread(runnable, "size-lookup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the sizes of a list of files
+     *
+     * @param filePaths
+     * @param metadataSizes     sizes recorded in backup.json (-1: not recorded), or null to look up every file
+     * @return sizes, in the order of the files (-1 if a file size can't be read)
+     * @throws InterruptedException
+     */
+    long[] getSizes(List<String> filePaths, long[] metadataSizes) throws InterruptedException {
+        long[] sizes = new long[filePaths.size()];
+        List<Integer> lookupIndexes = new ArrayList<>();
+
+        for (int i = 0; i < sizes.length; i++) {
+            if ( (metadataSizes != null) && (metadataSizes[i] >= 0) ) {
+                sizes[i] = metadataSizes[i];
+                this.metadataSizes.incrementAndGet();
+                continue;
+            }
+
+            Long cachedSize = sizeCache.get(filePaths.get(i));
+            if (cachedSize != null) {
+                sizes[i] = cachedSize;
+                cachedSizes.incrementAndGet();
+                continue;
+            }
+
+            lookupIndexes.add(i);
+        }
+
+        if ( lookupIndexes.isEmpty() ) {
+            return sizes;
+        }
+
+        long startNanos = System.nanoTime();
+        List<Future<?>> lookupFutures = new ArrayList<>();
+
+        for (int batchStart = 0; batchStart < lookupIndexes.size(); batchStart += LOOKUP_BATCH_SIZE) {
+            List<Integer> batchIndexes =
+                lookupIndexes.subList(batchStart, Math.min(batchStart + LOOKUP_BATCH_SIZE, lookupIndexes.size()));
+
+            // Each task writes its own entries of the result array
+            lookupFutures.add(lookupExecutor.submit(() -> {
+                for (int i : batchIndexes) {
+                    sizes[i] = lookup(filePaths.get(i));
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> lookupFuture : lookupFutures) {
+                lookupFuture.get();
+            }
+        }
+        catch (ExecutionException ee) {
+            // lookup() doesn't throw; anything else is a bug
+            throw new IllegalStateException(ee.getCause());
+        }
+        finally {
+            lookupNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        return sizes;
+    }
+
+    /**
+     * Receives the backup.json entries of a listing with their sizes, in backup.json order
+     */
+    interface SizedRecordConsumer {
+        void accept(NFSObjBackupRecord backupRecord, String filePath, long size);
+    }
+
+    /**
+     * Size the backup.json entries of a listing as the parser passes them on
+     *
+     * @param sstablePrefix         NFS directory of the backup files
+     * @param lookUpSizes           whether sizes are needed at all (otherwise, -1 is passed on as the size)
+     * @param useMetadataSizes      whether the sizes recorded in backup.json can be used
+     * @param consumer
+     * @return
+     */
+    RecordWindow newRecordWindow(String sstablePrefix,
+                                 boolean lookUpSizes,
+                                 boolean useMetadataSizes,
+                                 SizedRecordConsumer consumer) {
+        return new RecordWindow(sstablePrefix, lookUpSizes, useMetadataSizes, consumer);
+    }
+
+    /**
+     * Collects the entries streamed by the backup.json parser into windows, sizes each full window
+     * in one go and passes its entries on. flush() must be called once the parser is done.
+     */
+    class RecordWindow implements Consumer<NFSObjBackupRecord> {
+        private final String sstablePrefix;
+        private final boolean lookUpSizes;
+        private final boolean useMetadataSizes;
+        private final SizedRecordConsumer consumer;
+
+        private final List<NFSObjBackupRecord> backupRecords = new ArrayList<>();
+        private final List<String> filePaths = new ArrayList<>();
+
+        private long recordNum = 0;
+        private boolean interrupted = false;
+
+        private RecordWindow(String sstable_prefix,
+                             boolean look_up_sizes,
+                             boolean use_metadata_sizes,
+                             SizedRecordConsumer consumer) {
+            this.sstablePrefix = sstable_prefix;
+            this.lookUpSizes = look_up_sizes;
+            this.useMetadataSizes = use_metadata_sizes;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(NFSObjBackupRecord backupRecord) {
+            // The remaining entries of an interrupted listing are dropped
+            if (interrupted) {
+                return;
+            }
+
+            recordNum++;
+            String filePath = sstablePrefix + "/" + backupRecord.getObjName();
+
+            if (!lookUpSizes) {
+                consumer.accept(backupRecord, filePath, -1);
+                return;
+            }
+
+            backupRecords.add(backupRecord);
+            filePaths.add(filePath);
+
+            if (backupRecords.size() >= windowSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Size and pass on the entries of the current window
+         *
+         * @return false if the size lookups were interrupted (the interrupt status is kept)
+         */
+        boolean flush() {
+            if (interrupted) {
+                return false;
+            }
+
+            if ( backupRecords.isEmpty() ) {
+                return true;
+            }
+
+            long[] metadataSizes = null;
+            if (useMetadataSizes) {
+                metadataSizes = new long[backupRecords.size()];
+                for (int i = 0; i < metadataSizes.length; i++) {
+                    metadataSizes[i] = backupRecords.get(i).getSize();
+                }
+            }
+
+            try {
+                // A copy, as lookups still running after an interrupt read it
+                long[] sizes = getSizes(new ArrayList<>(filePaths), metadataSizes);
+
+                for (int i = 0; i < sizes.length; i++) {
+                    consumer.accept(backupRecords.get(i), filePaths.get(i), sizes[i]);
+                }
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            }
+
+            backupRecords.clear();
+            filePaths.clear();
+
+            return !interrupted;
+        }
+
+        /**
+         * @return number of entries passed to the window so far
+         */
+        long getRecordNum() {
+            return recordNum;
+        }
+    }
+
+    private long lookup(String filePath) {
+        try {
+            long size = Files.size(Paths.get(filePath));
+            sizeCache.put(filePath, size);
+            lookedUpSizes.incrementAndGet();
+            return size;
+        }
+        catch (IOException ioe) {
+            failedLookups.incrementAndGet();
+            return -1;
+        }
+    }
+
+    void shutdown() {
+        lookupExecutor.shutdownNow();
+    }
+
+    void printStats() {
+        System.out.format("  File sizes: %d from %s, %d cached, %d looked up (%d failed) in %d ms.\n",
+            metadataSizes.get(),
+            DseOpscNFSRestoreUtils.OPSC_BKUP_METADATA_FILE,
+            cachedSizes.get(),
+            lookedUpSizes.get(),
+            failedLookups.get(),
+            TimeUnit.NANOSECONDS.toMillis(lookupNanos.get()));
+    }
+}
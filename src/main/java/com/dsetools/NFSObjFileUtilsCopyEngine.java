@@ -0,0 +1,78 @@
+package com.dsetools;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CheckedInputStream;
+
+
+/**
+ * Copy engine based on commons-io FileUtils.copyFile() (data goes through user-space buffers).
+ */
+class NFSObjFileUtilsCopyEngine extends NFSObjCopyEngine {
+
+    NFSObjFileUtilsCopyEngine(NFSObjIoThrottle io_throttle,
+                              NFSObjCacheBypass cache_bypass,
+                              NFSObjDurabilityPolicy durability_policy) {
+        super(io_throttle, cache_bypass, durability_policy);
+    }
+
+    @Override
+    String getName() {
+        return ENGINE_FILEUTILS;
+    }
+
+    @Override
+    protected long doCopy(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum) throws IOException {
+        // FileUtils.copyFile() replaces the target file, which would lose its preallocated blocks
+        if ( (startOffset == 0) && (checksum == null) && !ioThrottle.isChunked() && !durabilityPolicy.isPreallocate() ) {
+            FileUtils.copyFile(srcFile, dstFile);
+
+            return dstFile.length();
+        }
+
+        // Continue an interrupted copy (append the rest of the source file to the target file),
+        // and/or compute the checksum and apply the I/O throttle while the data is streamed
+        long copied;
+
+        try ( FileInputStream fileInputStream = new FileInputStream(srcFile);
+              OutputStream outputStream = FileUtils.openOutputStream(dstFile, true) ) {
+
+            fileInputStream.getChannel().position(startOffset);
+
+            InputStream inputStream = (checksum == null) ?
+                fileInputStream : new CheckedInputStream(fileInputStream, checksum);
+
+            copied = copyStream(inputStream, outputStream);
+        }
+
+        dstFile.setLastModified(srcFile.lastModified());
+
+        return copied;
+    }
+
+    private long copyStream(InputStream inputStream, OutputStream outputStream) throws IOException {
+        if ( !ioThrottle.isChunked() ) {
+            return IOUtils.copyLarge(inputStream, outputStream);
+        }
+
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long copied = 0;
+        int read;
+
+        while ( (read = inputStream.read(buffer)) != -1 ) {
+            ioThrottle.acquireRead(read);
+            ioThrottle.acquireWrite(read);
+
+            outputStream.write(buffer, 0, read);
+            copied += read;
+        }
+
+        return copied;
+    }
+}
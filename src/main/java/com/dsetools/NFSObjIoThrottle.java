@@ -0,0 +1,288 @@
+package com.dsetools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Global I/O rate limiter shared by all download threads (and range workers) of a restore run.
+ *
+ * Reads from the NFS backup location and writes to the local download directory each have their
+ * own token bucket: a budget in MB/s, plus a burst size (MB) that may be consumed at full speed
+ * after an idle period. A limit of 0 means unlimited.
+ *
+ * The limits can be changed while the restore runs by creating/editing the throttle control file
+ * (".opscnfsrestore.throttle" under the local download home directory) with the same keys as the
+ * configuration file, e.g.
+ *   io_read_limit_mbps: 100
+ *   io_write_limit_mbps: 200
+ * The control file is checked every second; a key that is not in the control file keeps its value.
+ * A control file that already exists when the watcher starts (e.g. left by an earlier run) is only
+ * applied once it changes, so it doesn't silently override the configured limits.
+ *
+ * Every copy path takes its write tokens chunk by chunk, so the throttle also counts the bytes
+ * transferred so far (e.g. sampled by the adaptive concurrency controller while files are in flight).
+ */
+class NFSObjIoThrottle {
+
+    static final long CONTROL_FILE_POLL_MILLIS = 1000;
+
+    /**
+     * Token bucket with "debt": a caller takes its tokens right away and then sleeps until the bucket
+     * would have had them. Callers are served in arrival order and large requests don't starve.
+     */
+    static class TokenBucket {
+        private final String name;
+
+        private long bytesPerSec = 0;       // 0: unlimited
+        private long burstBytes = 0;
+        private double tokens = 0;
+        private long lastRefillNanos = System.nanoTime();
+
+        private final AtomicLong throttledNanos = new AtomicLong();
+
+        TokenBucket(String name) {
+            this.name = name;
+        }
+
+        synchronized void setLimit(long bytes_per_sec, long burst_bytes) {
+            this.bytesPerSec = bytes_per_sec;
+            this.burstBytes = Math.max(burst_bytes, 0);
+
+            // Start (over) with a full burst
+            this.tokens = this.burstBytes;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        synchronized long getBytesPerSec() {
+            return bytesPerSec;
+        }
+
+        synchronized long getBurstBytes() {
+            return burstBytes;
+        }
+
+        /**
+         * Take the tokens for the specified number of bytes, waiting as long as the budget requires
+         *
+         * @param bytes
+         * @throws InterruptedIOException
+         */
+        void acquire(long bytes) throws InterruptedIOException {
+            long waitNanos;
+
+            synchronized (this) {
+                if ( (bytesPerSec == 0) || (bytes <= 0) ) {
+                    return;
+                }
+
+                long nowNanos = System.nanoTime();
+                tokens = Math.min(burstBytes, tokens + (nowNanos - lastRefillNanos) * bytesPerSec / 1000000000.0d);
+                lastRefillNanos = nowNanos;
+
+                tokens -= bytes;
+                if (tokens >= 0) {
+                    return;
+                }
+
+                waitNanos = (long) (-tokens * 1000000000.0d / bytesPerSec);
+            }
+
+            throttledNanos.addAndGet(waitNanos);
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(name + " throttle wait interrupted");
+            }
+        }
+
+        long getThrottledMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+        }
+    }
+
+    private final TokenBucket readBucket = new TokenBucket("Read");
+    private final TokenBucket writeBucket = new TokenBucket("Write");
+
+    // Bytes written by all copy paths so far, counted per chunk
+    private final AtomicLong transferredBytes = new AtomicLong();
+
+    // Whether the transferred bytes are sampled: every copy then goes through acquireWrite(), even without limits
+    private volatile boolean transferSampling = false;
+
+    // Burst size (MB) from the configuration/control file; -1 if not specified
+    private long configuredBurstMb = -1;
+
+    private Path controlFilePath;
+    private long controlFileMtime = 0;
+    private ScheduledExecutorService controlFileWatcher;
+
+    /**
+     * Create a throttle with the read/write limits of the configuration file
+     *
+     * @param configProps
+     * @return
+     */
+    static NFSObjIoThrottle create(Properties configProps) {
+        NFSObjIoThrottle ioThrottle = new NFSObjIoThrottle();
+
+        ioThrottle.applyLimits(configProps);
+
+        return ioThrottle;
+    }
+
+    /**
+     * Apply the limits in the specified properties (configuration file or control file)
+     *
+     * @param limitProps
+     */
+    private synchronized void applyLimits(Properties limitProps) {
+        long readMbps = DseOpscNFSRestoreUtils.getConfigNumber(limitProps,
+            DseOpscNFSRestoreUtils.CFG_KEY_IO_READ_LIMIT_MBPS, readBucket.getBytesPerSec() / (1024 * 1024));
+        long writeMbps = DseOpscNFSRestoreUtils.getConfigNumber(limitProps,
+            DseOpscNFSRestoreUtils.CFG_KEY_IO_WRITE_LIMIT_MBPS, writeBucket.getBytesPerSec() / (1024 * 1024));
+
+        configuredBurstMb = DseOpscNFSRestoreUtils.getConfigNumber(limitProps,
+            DseOpscNFSRestoreUtils.CFG_KEY_IO_BURST_MB, configuredBurstMb);
+
+        // Default burst: one second worth of the (larger) budget
+        long burstMb = (configuredBurstMb >= 0) ? configuredBurstMb : Math.max(readMbps, writeMbps);
+
+        readBucket.setLimit(readMbps * 1024 * 1024, burstMb * 1024 * 1024);
+        writeBucket.setLimit(writeMbps * 1024 * 1024, burstMb * 1024 * 1024);
+    }
+
+    boolean isLimited() {
+        return (readBucket.getBytesPerSec() > 0) || (writeBucket.getBytesPerSec() > 0);
+    }
+
+    void acquireRead(long bytes) throws InterruptedIOException {
+        readBucket.acquire(bytes);
+    }
+
+    void acquireWrite(long bytes) throws InterruptedIOException {
+        writeBucket.acquire(bytes);
+        transferredBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Whether the copies have to take their tokens chunk by chunk (a limit is set, or the
+     * transferred bytes are sampled), rather than copy whole files in one call
+     *
+     * @return
+     */
+    boolean isChunked() {
+        return isLimited() || transferSampling;
+    }
+
+    void enableTransferSampling() {
+        transferSampling = true;
+    }
+
+    long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    /**
+     * Start watching the throttle control file for runtime limit changes
+     *
+     * @param control_file_path
+     */
+    synchronized void startControlFileWatcher(Path control_file_path) {
+        this.controlFilePath = control_file_path;
+
+        if ( Files.isRegularFile(controlFilePath) ) {
+            try {
+                controlFileMtime = Files.getLastModifiedTime(controlFilePath).toMillis();
+
+                System.out.println("   WARN: I/O throttle control file \"" + controlFilePath + "\" is from before this run, " +
+                    "ignored until it changes.");
+            }
+            catch (IOException ioe) {
+                // Gone in the meantime: picked up by the watcher if it shows up again
+            }
+        }
+
+        controlFileWatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread watcherThread = new Thread(runnable, "io-throttle-control");
+            watcherThread.setDaemon(true);
+            return watcherThread;
+        });
+
+        controlFileWatcher.scheduleWithFixedDelay(this::checkControlFile,
+            0, CONTROL_FILE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stopControlFileWatcher() {
+        if (controlFileWatcher != null) {
+            controlFileWatcher.shutdownNow();
+            controlFileWatcher = null;
+        }
+    }
+
+    private void checkControlFile() {
+        try {
+            if ( !Files.isRegularFile(controlFilePath) ) {
+                return;
+            }
+
+            long mtime = Files.getLastModifiedTime(controlFilePath).toMillis();
+            if (mtime == controlFileMtime) {
+                return;
+            }
+            controlFileMtime = mtime;
+
+            Properties limitProps = new Properties();
+            try ( InputStream inputStream = Files.newInputStream(controlFilePath) ) {
+                limitProps.load(inputStream);
+            }
+
+            if ( !DseOpscNFSRestoreUtils.isValidConfigNumber(limitProps, DseOpscNFSRestoreUtils.CFG_KEY_IO_READ_LIMIT_MBPS, 0) ||
+                 !DseOpscNFSRestoreUtils.isValidConfigNumber(limitProps, DseOpscNFSRestoreUtils.CFG_KEY_IO_WRITE_LIMIT_MBPS, 0) ||
+                 !DseOpscNFSRestoreUtils.isValidConfigNumber(limitProps, DseOpscNFSRestoreUtils.CFG_KEY_IO_BURST_MB, 0) ) {
+                System.out.println("   WARN: I/O throttle control file \"" + controlFilePath + "\" ignored.");
+                return;
+            }
+
+            applyLimits(limitProps);
+
+            System.out.println("   - I/O throttle changed by control file: " + getLimitString());
+        }
+        catch (IOException ioe) {
+            System.out.println("   WARN: Failed to read I/O throttle control file \"" + controlFilePath + "\".");
+        }
+    }
+
+    String getLimitString() {
+        return String.format("read %s, write %s, burst %d MB",
+            getRateString(readBucket),
+            getRateString(writeBucket),
+            Math.max(readBucket.getBurstBytes(), writeBucket.getBurstBytes()) / (1024 * 1024));
+    }
+
+    private static String getRateString(TokenBucket bucket) {
+        long bytesPerSec = bucket.getBytesPerSec();
+        return (bytesPerSec == 0) ? "unlimited" : ((bytesPerSec / (1024 * 1024)) + " MB/s");
+    }
+
+    /**
+     * Print the current limits and the time that copies were held back by them
+     */
+    void printStats() {
+        System.out.format("  I/O throttle (%s): reads held back %d ms, writes held back %d ms (summed over all threads).\n",
+            getLimitString(),
+            readBucket.getThrottledMillis(),
+            writeBucket.getThrottledMillis());
+    }
+}
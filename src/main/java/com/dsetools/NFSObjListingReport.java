@@ -0,0 +1,268 @@
+package com.dsetools;
+
+import org.json.simple.JSONValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Aggregated report of an OpsCenter backup listing of several hosts ("-l all", "-l DC:..."):
+ * number of backup files and bytes per host, per DC, per keyspace and per table.
+ *
+ * The hosts are scanned in parallel; each scan keeps its own output and totals (HostScan), and
+ * the scans are added to the report (and their output printed) in host order, so the listing
+ * and the report don't depend on which host finished first.
+ */
+class NFSObjListingReport {
+
+    static final String STATUS_OK = "ok";
+    static final String STATUS_NO_BACKUP = "no_backup";
+    static final String STATUS_FAILED = "failed";
+
+    /**
+     * Number of files and bytes (files without a known size are counted separately)
+     */
+    static class Totals {
+        long files;
+        long bytes;
+        long unknownSizeFiles;
+
+        void add(long size) {
+            files++;
+            if (size >= 0) {
+                bytes += size;
+            }
+            else {
+                unknownSizeFiles++;
+            }
+        }
+
+        void add(Totals totals) {
+            files += totals.files;
+            bytes += totals.bytes;
+            unknownSizeFiles += totals.unknownSizeFiles;
+        }
+    }
+
+    /**
+     * Listing of one host: its output (printed once the host is reported) and its totals per table
+     */
+    static class HostScan {
+        final String hostId;
+        final String dcName;
+        final String rackName;
+
+        final PrintStream out;
+        private final ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+
+        String status = STATUS_OK;
+
+        // keyspace -> table -> totals
+        final TreeMap<String, TreeMap<String, Totals>> tableTotals = new TreeMap<>();
+
+        HostScan(String host_id, String dc_name, String rack_name) {
+            this.hostId = host_id;
+            this.dcName = dc_name;
+            this.rackName = rack_name;
+
+            try {
+                this.out = new PrintStream(outBuffer, true, StandardCharsets.UTF_8.name());
+            }
+            catch (UnsupportedEncodingException uee) {
+                throw new IllegalStateException(uee);
+            }
+        }
+
+        void addFile(String keyspaceName, String tableName, long size) {
+            tableTotals.computeIfAbsent(keyspaceName, k -> new TreeMap<>())
+                .computeIfAbsent(tableName, t -> new Totals())
+                .add(size);
+        }
+
+        String getOutput() {
+            out.flush();
+            return new String(outBuffer.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private final boolean sizesKnown;
+
+    private final List<HostScan> hostScans = new ArrayList<>();
+    private final TreeMap<String, Totals> dcTotals = new TreeMap<>();
+    private final TreeMap<String, Integer> dcHostNums = new TreeMap<>();
+    private final TreeMap<String, Totals> keyspaceTotals = new TreeMap<>();
+    private final TreeMap<String, TreeMap<String, Totals>> tableTotals = new TreeMap<>();
+    private final Totals total = new Totals();
+
+    /**
+     * @param sizes_known   whether file sizes were checked ("file_size_chk")
+     */
+    NFSObjListingReport(boolean sizes_known) {
+        this.sizesKnown = sizes_known;
+    }
+
+    void addHost(HostScan hostScan) {
+        hostScans.add(hostScan);
+
+        String dcName = String.valueOf(hostScan.dcName);
+        Totals dcTotal = dcTotals.computeIfAbsent(dcName, d -> new Totals());
+        dcHostNums.merge(dcName, 1, Integer::sum);
+
+        for (Map.Entry<String, TreeMap<String, Totals>> ksEntry : hostScan.tableTotals.entrySet()) {
+            for (Map.Entry<String, Totals> tblEntry : ksEntry.getValue().entrySet()) {
+                Totals totals = tblEntry.getValue();
+
+                dcTotal.add(totals);
+                keyspaceTotals.computeIfAbsent(ksEntry.getKey(), k -> new Totals()).add(totals);
+                tableTotals.computeIfAbsent(ksEntry.getKey(), k -> new TreeMap<>())
+                    .computeIfAbsent(tblEntry.getKey(), t -> new Totals())
+                    .add(totals);
+                total.add(totals);
+            }
+        }
+    }
+
+    private static Totals getHostTotals(HostScan hostScan) {
+        Totals hostTotals = new Totals();
+
+        for (TreeMap<String, Totals> tables : hostScan.tableTotals.values()) {
+            for (Totals totals : tables.values()) {
+                hostTotals.add(totals);
+            }
+        }
+
+        return hostTotals;
+    }
+
+    private String formatTotals(Totals totals) {
+        if (!sizesKnown) {
+            return String.format("%d files", totals.files);
+        }
+
+        return String.format("%d files, %d bytes", totals.files, totals.bytes) +
+            ((totals.unknownSizeFiles > 0) ? String.format(" (%d files of unknown size)", totals.unknownSizeFiles) : "");
+    }
+
+    /**
+     * Print the human-readable report
+     */
+    void print() {
+        System.out.println("Backup listing summary" + (sizesKnown ? "" : " (file sizes not checked)") + ":");
+
+        System.out.println("  Per host:");
+        for (HostScan hostScan : hostScans) {
+            System.out.format("    %s (rack: %s, DC: %s): %s%s\n",
+                hostScan.hostId, hostScan.rackName, hostScan.dcName,
+                formatTotals(getHostTotals(hostScan)),
+                STATUS_OK.equals(hostScan.status) ? "" : " [" + hostScan.status + "]");
+        }
+
+        System.out.println("  Per DC:");
+        for (Map.Entry<String, Totals> entry : dcTotals.entrySet()) {
+            System.out.format("    %s (%d hosts): %s\n",
+                entry.getKey(), dcHostNums.get(entry.getKey()), formatTotals(entry.getValue()));
+        }
+
+        System.out.println("  Per keyspace:");
+        for (Map.Entry<String, Totals> entry : keyspaceTotals.entrySet()) {
+            System.out.format("    %s: %s\n", entry.getKey(), formatTotals(entry.getValue()));
+        }
+
+        System.out.println("  Per table:");
+        for (Map.Entry<String, TreeMap<String, Totals>> ksEntry : tableTotals.entrySet()) {
+            for (Map.Entry<String, Totals> tblEntry : ksEntry.getValue().entrySet()) {
+                System.out.format("    %s.%s: %s\n", ksEntry.getKey(), tblEntry.getKey(), formatTotals(tblEntry.getValue()));
+            }
+        }
+
+        System.out.format("  Total (%d hosts): %s\n", hostScans.size(), formatTotals(total));
+    }
+
+    /**
+     * Write the report as a JSON document
+     *
+     * @param jsonFilePath
+     * @param clusterName
+     * @param opscBckupTime
+     * @throws IOException
+     */
+    void writeJson(Path jsonFilePath, String clusterName, NFSObjBackupTimeSpec opscBckupTime) throws IOException {
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\n");
+        json.append("  \"cluster\": ").append(JSONValue.toJSONString(clusterName)).append(",\n");
+        json.append("  \"backup_time\": ").append(JSONValue.toJSONString(opscBckupTime.toString())).append(",\n");
+        json.append("  \"sizes_checked\": ").append(sizesKnown).append(",\n");
+        json.append("  \"total\": {").append(totalsJson(total)).append(", \"hosts\": ").append(hostScans.size()).append("},\n");
+
+        json.append("  \"hosts\": [");
+        String separator = "\n";
+        for (HostScan hostScan : hostScans) {
+            json.append(separator).append("    {")
+                .append("\"host_id\": ").append(JSONValue.toJSONString(hostScan.hostId))
+                .append(", \"dc\": ").append(JSONValue.toJSONString(hostScan.dcName))
+                .append(", \"rack\": ").append(JSONValue.toJSONString(hostScan.rackName))
+                .append(", \"status\": ").append(JSONValue.toJSONString(hostScan.status))
+                .append(", ").append(totalsJson(getHostTotals(hostScan)))
+                .append("}");
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"dcs\": [");
+        separator = "\n";
+        for (Map.Entry<String, Totals> entry : dcTotals.entrySet()) {
+            json.append(separator).append("    {")
+                .append("\"dc\": ").append(JSONValue.toJSONString(entry.getKey()))
+                .append(", \"hosts\": ").append(dcHostNums.get(entry.getKey()))
+                .append(", ").append(totalsJson(entry.getValue()))
+                .append("}");
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"keyspaces\": [");
+        separator = "\n";
+        for (Map.Entry<String, Totals> entry : keyspaceTotals.entrySet()) {
+            json.append(separator).append("    {")
+                .append("\"keyspace\": ").append(JSONValue.toJSONString(entry.getKey()))
+                .append(", ").append(totalsJson(entry.getValue()))
+                .append("}");
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"tables\": [");
+        separator = "\n";
+        for (Map.Entry<String, TreeMap<String, Totals>> ksEntry : tableTotals.entrySet()) {
+            for (Map.Entry<String, Totals> tblEntry : ksEntry.getValue().entrySet()) {
+                json.append(separator).append("    {")
+                    .append("\"keyspace\": ").append(JSONValue.toJSONString(ksEntry.getKey()))
+                    .append(", \"table\": ").append(JSONValue.toJSONString(tblEntry.getKey()))
+                    .append(", ").append(totalsJson(tblEntry.getValue()))
+                    .append("}");
+                separator = ",\n";
+            }
+        }
+        json.append("\n  ]\n");
+        json.append("}\n");
+
+        Files.write(jsonFilePath, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String totalsJson(Totals totals) {
+        return "\"files\": " + totals.files +
+            ", \"bytes\": " + (sizesKnown ? Long.toString(totals.bytes) : "null") +
+            ", \"unknown_size_files\": " + (sizesKnown ? totals.unknownSizeFiles : totals.files);
+    }
+}
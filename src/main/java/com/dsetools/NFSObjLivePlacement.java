@@ -0,0 +1,691 @@
+package com.dsetools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Live placement ("-pl live"): restore the SSTables straight into the live data directories of their
+ * tables, instead of the NFS backup layout under the local download home directory.
+ *
+ * The live data directory of a table is found under the "data_file_directories" of cassandra.yaml:
+ *   &lt;data_file_directory&gt;/&lt;keyspace&gt;/&lt;table&gt;-&lt;table_id&gt;   (or &lt;keyspace&gt;/&lt;table&gt; before Cassandra 2.1)
+ * The table must exist (its schema created) before the restore. With several data file directories
+ * (JBOD), the SSTable sets are spread over all of them (see NFSObjDiskStriper).
+ *
+ * Every restored SSTable set gets a new generation from a range reserved far above all generations
+ * that already exist for the table: a running node keeps allocating the generations right after the
+ * highest one on disk to its own flushes and compactions while the restore goes on. Generations that
+ * aren't numbers (UUID based, Cassandra 4.1+) are unique already and kept. Right before an SSTable
+ * set is written into (or linked into) the live data directory, the directory is scanned again, and
+ * the set fails if a file that this restore didn't write already has its generation: a live SSTable
+ * is never overwritten.
+ *
+ * How the files get into the live data directory depends on where it is:
+ *  - on the same filesystem as the local download home directory, the SSTable set is downloaded into
+ *    the download home directory as usual (the staging area) and hard linked into the live data
+ *    directory once it is completely restored;
+ *  - otherwise, the files are written directly into the live data directory.
+ * Either way, every file is written once.
+ *
+ * The new names are kept in a placement file under the download home directory, so that a rerun
+ * (e.g. after an interruption) restores every SSTable set under the same name again:
+ *   &lt;local_download_home&gt;/.opscnfsrestore.placement
+ * with one tab-separated record per SSTable set:  &lt;unit_key&gt;  &lt;live_data_directory&gt;  &lt;generation&gt;
+ */
+class NFSObjLivePlacement {
+
+    static final String PLACEMENT_DOWNLOAD = "download";
+    static final String PLACEMENT_LIVE = "live";
+
+    static final String PLACEMENT_FILE = ".opscnfsrestore.placement";
+
+    // "data_file_directories:" (then a list, in block or flow style)
+    private static final Pattern DATA_DIRS_KEY_PATTERN = Pattern.compile("^data_file_directories\\s*:\\s*(.*)$");
+    private static final Pattern YAML_LIST_ITEM_PATTERN = Pattern.compile("^\\s*-\\s*(.+)$");
+
+    // Live table directory: "<table>-<table_id>"
+    private static final Pattern TABLE_ID_DIR_PATTERN = Pattern.compile("^(.+)-([0-9a-f]{32})$");
+
+    // Generation of an SSTable component file, e.g. "mc-12-big-Data.db" or "ks-tbl-ka-12-Data.db"
+    private static final Pattern SSTABLE_GENERATION_PATTERN =
+        Pattern.compile("^(?:[^-]+-[^-]+-)?[a-z]{2}-([0-9a-z_]+)-.+$");
+
+    // Generations left to the node above its highest one, for what it flushes and compacts during the restore
+    static final long RESERVED_GENERATION_GAP = 1000000;
+
+    /**
+     * Where one SSTable set goes
+     */
+    static class Placement {
+        final Path liveDir;
+        final String generation;
+        // Staged and hard linked (true), or written directly into the live data directory (false)
+        final boolean staged;
+
+        Placement(Path live_dir, String generation_str, boolean staged_set) {
+            this.liveDir = live_dir;
+            this.generation = generation_str;
+            this.staged = staged_set;
+        }
+    }
+
+    private final List<Path> dataDirs;
+    private final Path stagingHome;
+    private final Path placementFilePath;
+
+    // Unit key -> live data directory and generation, from an earlier run
+    private final Map<String, String[]> savedPlacements = new HashMap<>();
+
+    // Unit key -> placement, for this run
+    private final Map<String, Placement> placements = new HashMap<>();
+
+    // "<keyspace>.<table>" -> live data directory
+    private final Map<String, Path> tableDirs = new HashMap<>();
+
+    // Live data directory -> whether it is on the filesystem of the staging area
+    private final Map<Path, Boolean> stagingFilesystems = new HashMap<>();
+
+    // Spreads the SSTable sets over the data file directories (null if there is only one)
+    private final NFSObjDiskStriper diskStriper;
+
+    private final AtomicLong linkedSets = new AtomicLong();
+    private final AtomicLong linkedFiles = new AtomicLong();
+
+    private NFSObjLivePlacement(List<Path> data_dirs, Path staging_home) throws IOException {
+        this.dataDirs = data_dirs;
+        this.diskStriper = (data_dirs.size() > 1) ? new NFSObjDiskStriper(data_dirs) : null;
+        this.stagingHome = staging_home;
+        this.placementFilePath = staging_home.resolve(PLACEMENT_FILE);
+    }
+
+    /**
+     * @param configProps
+     * @param downloadHomeDir   the staging area
+     * @return
+     * @throws IOException      if cassandra.yaml can't be read, or has no usable data directory
+     */
+    static NFSObjLivePlacement open(Properties configProps, String downloadHomeDir) throws IOException {
+        Path cassandraYamlPath = Paths.get(configProps.getProperty(
+            DseOpscNFSRestoreUtils.CFG_KEY_CASSANDRA_YAML, DseOpscNFSRestoreUtils.DEFAULT_CASSANDRA_YAML));
+
+        List<Path> dataDirs = readDataFileDirectories(cassandraYamlPath);
+
+        NFSObjLivePlacement livePlacement = new NFSObjLivePlacement(dataDirs, Paths.get(downloadHomeDir).toAbsolutePath());
+        livePlacement.loadPlacements();
+
+        return livePlacement;
+    }
+
+    /**
+     * Read "data_file_directories" from cassandra.yaml (the Cassandra default when it is not set)
+     *
+     * @param cassandraYamlPath
+     * @return
+     * @throws IOException
+     */
+    static List<Path> readDataFileDirectories(Path cassandraYamlPath) throws IOException {
+        List<String> dataDirStrs = new ArrayList<>();
+        boolean inDataDirs = false;
+
+        for ( String line : Files.readAllLines(cassandraYamlPath, StandardCharsets.UTF_8) ) {
+            String content = stripYamlComment(line);
+
+            if (!inDataDirs) {
+                Matcher keyMatcher = DATA_DIRS_KEY_PATTERN.matcher(content);
+                if ( !keyMatcher.matches() ) {
+                    continue;
+                }
+
+                String value = keyMatcher.group(1).trim();
+
+                // Flow style: data_file_directories: [/data1, /data2]
+                if ( value.startsWith("[") && value.endsWith("]") ) {
+                    for ( String dataDirStr : value.substring(1, value.length() - 1).split(",") ) {
+                        if ( !unquoteYaml(dataDirStr).isEmpty() ) {
+                            dataDirStrs.add(unquoteYaml(dataDirStr));
+                        }
+                    }
+                    break;
+                }
+
+                inDataDirs = true;
+                continue;
+            }
+
+            // Block style: the list items follow, up to the next key
+            if ( content.trim().isEmpty() ) {
+                continue;
+            }
+
+            Matcher itemMatcher = YAML_LIST_ITEM_PATTERN.matcher(content);
+            if ( !itemMatcher.matches() ) {
+                break;
+            }
+
+            dataDirStrs.add(unquoteYaml(itemMatcher.group(1)));
+        }
+
+        if ( dataDirStrs.isEmpty() ) {
+            dataDirStrs.add(DseOpscNFSRestoreUtils.DEFAULT_DATA_FILE_DIRECTORY);
+        }
+
+        List<Path> dataDirs = new ArrayList<>();
+        for ( String dataDirStr : dataDirStrs ) {
+            Path dataDir = Paths.get(dataDirStr).toAbsolutePath().normalize();
+
+            if ( !Files.isDirectory(dataDir) ) {
+                throw new IOException("data file directory \"" + dataDir + "\" of \"" + cassandraYamlPath + "\" doesn't exist");
+            }
+
+            dataDirs.add(dataDir);
+        }
+
+        return dataDirs;
+    }
+
+    private static String stripYamlComment(String line) {
+        int commentPos = line.startsWith("#") ? 0 : line.indexOf(" #");
+        return (commentPos >= 0) ? line.substring(0, commentPos) : line;
+    }
+
+    private static String unquoteYaml(String value) {
+        String trimmed = value.trim();
+
+        if ( (trimmed.length() >= 2) &&
+             ( (trimmed.startsWith("\"") && trimmed.endsWith("\"")) || (trimmed.startsWith("'") && trimmed.endsWith("'")) ) ) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+
+        return trimmed;
+    }
+
+    private void loadPlacements() throws IOException {
+        if ( Files.notExists(placementFilePath) ) {
+            return;
+        }
+
+        try ( BufferedReader reader = Files.newBufferedReader(placementFilePath, StandardCharsets.UTF_8) ) {
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 3) {
+                    savedPlacements.put(fields[0], new String[] { fields[1], fields[2] });
+                }
+            }
+        }
+    }
+
+    private void savePlacements() throws IOException {
+        Path tmpFilePath = Paths.get(placementFilePath + ".tmp");
+
+        List<String> unitKeys = new ArrayList<>(placements.keySet());
+        Collections.sort(unitKeys);
+
+        try ( BufferedWriter writer = Files.newBufferedWriter(tmpFilePath, StandardCharsets.UTF_8) ) {
+            for ( String unitKey : unitKeys ) {
+                Placement placement = placements.get(unitKey);
+
+                writer.write(unitKey + "\t" + placement.liveDir + "\t" + placement.generation);
+                writer.newLine();
+            }
+        }
+
+        Files.move(tmpFilePath, placementFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The live data directory of a table, in the first data file directory that has it
+     *
+     * @param keyspaceName
+     * @param tableName
+     * @return
+     * @throws IOException  if no data file directory has the table
+     */
+    Path getTableDir(String keyspaceName, String tableName) throws IOException {
+        String tableKey = keyspaceName + "." + tableName;
+
+        Path tableDir = tableDirs.get(tableKey);
+        if (tableDir != null) {
+            return tableDir;
+        }
+
+        for ( Path dataDir : dataDirs ) {
+            Path keyspaceDir = dataDir.resolve(keyspaceName);
+            if ( !Files.isDirectory(keyspaceDir) ) {
+                continue;
+            }
+
+            List<Path> candidateDirs = new ArrayList<>();
+
+            try ( DirectoryStream<Path> dirStream = Files.newDirectoryStream(keyspaceDir) ) {
+                for ( Path candidateDir : dirStream ) {
+                    String dirName = candidateDir.getFileName().toString();
+                    Matcher tableIdMatcher = TABLE_ID_DIR_PATTERN.matcher(dirName);
+
+                    if ( Files.isDirectory(candidateDir) &&
+                         ( dirName.equals(tableName) || (tableIdMatcher.matches() && tableIdMatcher.group(1).equals(tableName)) ) ) {
+                        candidateDirs.add(candidateDir);
+                    }
+                }
+            }
+
+            if ( candidateDirs.isEmpty() ) {
+                continue;
+            }
+
+            // A table that was dropped and created again leaves the directory of its old table ID behind
+            candidateDirs.sort(Comparator.comparingLong((Path dir) -> dir.toFile().lastModified()).reversed());
+
+            if (candidateDirs.size() > 1) {
+                System.out.format("WARN: Table %s has %d data directories under \"%s\"; restoring into the most recently modified one (%s).\n",
+                    tableKey, candidateDirs.size(), keyspaceDir, candidateDirs.get(0).getFileName());
+            }
+
+            tableDir = candidateDirs.get(0);
+            tableDirs.put(tableKey, tableDir);
+
+            return tableDir;
+        }
+
+        throw new IOException("no live data directory of table " + tableKey + " under the data file directories " +
+            dataDirs + " (the table must be created before it is restored)");
+    }
+
+    /**
+     * @param tableDir
+     * @return "&lt;keyspace&gt;/&lt;table_dir&gt;", the same under every data file directory
+     */
+    private static Path getKeyspaceRelDir(Path tableDir) {
+        return tableDir.getParent().getFileName().resolve(tableDir.getFileName());
+    }
+
+    /**
+     * Whether a directory is the directory of a table, in any of the data file directories
+     *
+     * @param dir
+     * @param tableDir
+     * @return
+     */
+    private boolean isLiveDirOf(Path dir, Path tableDir) {
+        return dir.endsWith(getKeyspaceRelDir(tableDir)) && dataDirs.contains(dir.getParent().getParent());
+    }
+
+    /**
+     * Highest numeric SSTable generation of a table, over all data file directories
+     *
+     * @param tableDir
+     * @return 0 if the table has no SSTable with a numeric generation
+     * @throws IOException
+     */
+    private long getMaxGeneration(Path tableDir) throws IOException {
+        Path keyspaceRelDir = getKeyspaceRelDir(tableDir);
+        long maxGeneration = 0;
+
+        for ( Path dataDir : dataDirs ) {
+            Path dir = dataDir.resolve(keyspaceRelDir);
+            if ( !Files.isDirectory(dir) ) {
+                continue;
+            }
+
+            try ( DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir) ) {
+                for ( Path filePath : dirStream ) {
+                    maxGeneration = Math.max(maxGeneration, getNumericGeneration(filePath.getFileName().toString()));
+                }
+            }
+        }
+
+        return maxGeneration;
+    }
+
+    /**
+     * @param sstableFileName
+     * @return 0 if the file isn't an SSTable component with a numeric generation
+     */
+    private static long getNumericGeneration(String sstableFileName) {
+        Matcher generationMatcher = SSTABLE_GENERATION_PATTERN.matcher(sstableFileName);
+
+        if ( generationMatcher.matches() ) {
+            try {
+                return Long.parseLong(generationMatcher.group(1));
+            }
+            catch (NumberFormatException nfe) {
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * SSTable file name with another generation, e.g. mc-1-big-Data.db -> mc-13-big-Data.db
+     *
+     * @param item
+     * @param generation
+     * @return
+     */
+    static String renameGeneration(NFSObjRestoreItem item, String generation) {
+        String sstableName = item.getSstableName();
+        String versionPrefix = item.getSstableVersion() + "-";
+
+        int generationStartPos = sstableName.startsWith(versionPrefix) ?
+            versionPrefix.length() : (sstableName.indexOf("-" + versionPrefix) + 1 + versionPrefix.length());
+        int generationEndPos = sstableName.indexOf('-', generationStartPos);
+
+        return sstableName.substring(0, generationStartPos) + generation + sstableName.substring(generationEndPos);
+    }
+
+    /**
+     * The generation of an SSTable set, as in its backup
+     *
+     * @param unit
+     * @return
+     */
+    private static String getBackupGeneration(NFSObjRestoreUnit unit) {
+        NFSObjRestoreItem item = unit.getItems().get(0);
+        Matcher generationMatcher = SSTABLE_GENERATION_PATTERN.matcher(item.getSstableName());
+
+        return generationMatcher.matches() ? generationMatcher.group(1) : null;
+    }
+
+    /**
+     * @param fileName  SSTable component file name, or its temporary name (see NFSObjSetPublisher)
+     * @return null if the file isn't an SSTable component
+     */
+    private static String getFileGeneration(String fileName) {
+        String sstableFileName = fileName;
+
+        if ( fileName.startsWith(NFSObjSetPublisher.TEMP_FILE_PREFIX) && fileName.endsWith(NFSObjSetPublisher.TEMP_FILE_SUFFIX) ) {
+            sstableFileName = fileName.substring(NFSObjSetPublisher.TEMP_FILE_PREFIX.length(),
+                fileName.length() - NFSObjSetPublisher.TEMP_FILE_SUFFIX.length());
+        }
+
+        Matcher generationMatcher = SSTABLE_GENERATION_PATTERN.matcher(sstableFileName);
+
+        return generationMatcher.matches() ? generationMatcher.group(1) : null;
+    }
+
+    /**
+     * Check, right before an SSTable set is written into or linked into its live data directory, that
+     * no other file has taken its generation since it was planned (e.g. an SSTable the node flushed or
+     * compacted in the meantime). The files of the set that this restore wrote, in this or an earlier
+     * run, are its own:
+     *  - a set written directly: the files that are journaled, and the final names that are links of
+     *    their temporary names (published by a run that didn't get to journal them);
+     *  - a staged set: the links of its staged files.
+     *
+     * @param unit
+     * @param restoreJournal
+     * @throws IOException  if a file that isn't part of the set has its generation
+     */
+    void checkGeneration(NFSObjRestoreUnit unit, NFSObjRestoreJournal restoreJournal) throws IOException {
+        Placement placement = placements.get(unit.getUnitKey());
+        if (placement == null) {
+            return;
+        }
+
+        // Live file name -> file of the set it may be a link of (staged set), or that it may be (set written directly)
+        Map<String, File> ownFiles = new HashMap<>();
+        for ( NFSObjRestoreItem item : unit.getItems() ) {
+            File liveFile = placement.liveDir.resolve(renameGeneration(item, placement.generation)).toFile();
+
+            ownFiles.put(liveFile.getName(), placement.staged ? item.getLocalFile() : liveFile);
+            if (!placement.staged) {
+                File tempFile = NFSObjSetPublisher.getTempFile(liveFile);
+                ownFiles.put(tempFile.getName(), tempFile);
+            }
+        }
+
+        try ( DirectoryStream<Path> dirStream = Files.newDirectoryStream(placement.liveDir) ) {
+            for ( Path filePath : dirStream ) {
+                String fileName = filePath.getFileName().toString();
+
+                if ( !placement.generation.equals(getFileGeneration(fileName)) ) {
+                    continue;
+                }
+
+                File ownFile = ownFiles.get(fileName);
+                boolean own;
+
+                if (ownFile == null) {
+                    own = false;
+                }
+                else if (placement.staged) {
+                    own = ownFile.exists() && Files.isSameFile(filePath, ownFile.toPath());
+                }
+                else {
+                    // (the temporary name of a temporary name never exists)
+                    File tempFile = NFSObjSetPublisher.getTempFile(ownFile);
+
+                    own = restoreJournal.isJournaled(ownFile) ||
+                          ( tempFile.exists() && Files.isSameFile(filePath, tempFile.toPath()) );
+                }
+
+                if (!own) {
+                    throw new IOException("generation " + placement.generation + " is already taken by \"" + filePath +
+                        "\", which this restore didn't write");
+                }
+            }
+        }
+    }
+
+    private boolean isOnStagingFilesystem(Path liveDir) throws IOException {
+        Boolean sameFilesystem = stagingFilesystems.get(liveDir);
+
+        if (sameFilesystem == null) {
+            FileStore stagingStore = Files.getFileStore(stagingHome);
+            sameFilesystem = stagingStore.equals(Files.getFileStore(liveDir));
+            stagingFilesystems.put(liveDir, sameFilesystem);
+        }
+
+        return sameFilesystem;
+    }
+
+    /**
+     * Place the planned SSTable sets in the live data directories of their tables: assign the new
+     * generations, and have the sets that can't be staged written directly into the live data directory
+     *
+     * @param restorePlanner
+     * @return the plan to download
+     * @throws IOException
+     */
+    NFSObjRestorePlanner place(NFSObjRestorePlanner restorePlanner) throws IOException {
+        List<NFSObjRestoreUnit> units = restorePlanner.getUnitsLargestFirst();
+
+        // The same SSTable sets are numbered in the same order on every run
+        units.sort(Comparator.comparing(NFSObjRestoreUnit::getUnitKey));
+
+        // Table directory (in the first data file directory) -> next generation of the table
+        Map<Path, Long> nextGenerations = new HashMap<>();
+        NFSObjRestorePlanner placedPlanner = new NFSObjRestorePlanner();
+
+        for ( NFSObjRestoreUnit unit : units ) {
+            Path tableDir = getTableDir(unit.getKeyspaceName(), unit.getTableName());
+
+            Path liveDir = null;
+            String generation = null;
+
+            String[] savedPlacement = savedPlacements.get(unit.getUnitKey());
+            if ( (savedPlacement != null) && isLiveDirOf(Paths.get(savedPlacement[0]), tableDir) ) {
+                liveDir = Paths.get(savedPlacement[0]);
+                generation = savedPlacement[1];
+
+                if (diskStriper != null) {
+                    diskStriper.assign(dataDirs.indexOf(liveDir.getParent().getParent()), unit.getTotalBytes());
+                }
+            }
+            else {
+                // With several data file directories, the SSTable sets are spread over them
+                liveDir = (diskStriper == null) ? tableDir :
+                    dataDirs.get(diskStriper.assign(unit.getTotalBytes())).resolve(getKeyspaceRelDir(tableDir));
+                Files.createDirectories(liveDir);
+
+                String backupGeneration = getBackupGeneration(unit);
+
+                if ( (backupGeneration != null) && (getNumericGeneration(unit.getItems().get(0).getSstableName()) == 0) ) {
+                    // Not a number: unique already
+                    generation = backupGeneration;
+                }
+                else {
+                    Long nextGeneration = nextGenerations.get(tableDir);
+                    if (nextGeneration == null) {
+                        nextGeneration = getMaxGeneration(tableDir) + RESERVED_GENERATION_GAP;
+
+                        // Above the ones a rerun keeps, too
+                        for ( String[] otherPlacement : savedPlacements.values() ) {
+                            if ( isLiveDirOf(Paths.get(otherPlacement[0]), tableDir) ) {
+                                try {
+                                    nextGeneration = Math.max(nextGeneration, Long.parseLong(otherPlacement[1]) + 1);
+                                }
+                                catch (NumberFormatException nfe) {
+                                }
+                            }
+                        }
+                    }
+
+                    generation = String.valueOf(nextGeneration);
+                    nextGenerations.put(tableDir, nextGeneration + 1);
+                }
+            }
+
+            boolean staged = isOnStagingFilesystem(liveDir);
+
+            placements.put(unit.getUnitKey(), new Placement(liveDir, generation, staged));
+
+            for ( NFSObjRestoreItem item : unit.getItems() ) {
+                String objName = new File(item.getNfsObjName()).getName();
+
+                placedPlanner.addItem(unit.getHostId(), objName, staged ? item :
+                    item.withLocalFile(liveDir.resolve(renameGeneration(item, generation)).toFile()));
+            }
+        }
+
+        savePlacements();
+
+        return placedPlanner;
+    }
+
+    /**
+     * A staged SSTable set is completely restored: hard link it into its live data directory
+     *
+     * @param unit
+     * @param restoreJournal
+     * @param durabilityPolicy
+     * @param verbose
+     * @throws IOException
+     */
+    void publish(NFSObjRestoreUnit unit,
+                 NFSObjRestoreJournal restoreJournal,
+                 NFSObjDurabilityPolicy durabilityPolicy,
+                 boolean verbose) throws IOException {
+        Placement placement = placements.get(unit.getUnitKey());
+        if ( (placement == null) || !placement.staged ) {
+            return;
+        }
+
+        // The node may have taken the generation while the set was downloaded
+        checkGeneration(unit, restoreJournal);
+
+        int linkedFileNum = 0;
+
+        // Linked in the same order as the set was published in the staging directory
+        for ( NFSObjRestoreItem item : NFSObjSetPublisher.getPublishOrder(unit.getItems()) ) {
+            Path stagedPath = item.getLocalFile().toPath();
+            Path livePath = placement.liveDir.resolve(renameGeneration(item, placement.generation));
+
+            try {
+                Files.createLink(livePath, stagedPath);
+            }
+            catch (FileAlreadyExistsException faee) {
+                // Linked by an earlier run
+                if ( !Files.isSameFile(livePath, stagedPath) ) {
+                    throw new IOException("\"" + livePath + "\" already exists");
+                }
+                continue;
+            }
+            catch (NoSuchFileException nsfe) {
+                throw new IOException("\"" + stagedPath + "\" is missing");
+            }
+
+            linkedFileNum++;
+
+            if (verbose) {
+                System.out.format("     \"%s\" linked into \"%s\"\n", stagedPath, livePath);
+            }
+        }
+
+        if (linkedFileNum > 0) {
+            durabilityPolicy.linksCreated(placement.liveDir);
+
+            linkedSets.incrementAndGet();
+            linkedFiles.addAndGet(linkedFileNum);
+        }
+    }
+
+    /**
+     * @param unit
+     * @return whether the SSTable set is written directly into its live data directory (not staged)
+     */
+    boolean isWrittenDirectly(NFSObjRestoreUnit unit) {
+        Placement placement = placements.get(unit.getUnitKey());
+
+        return (placement != null) && !placement.staged;
+    }
+
+    List<Path> getDataDirs() {
+        return dataDirs;
+    }
+
+    /**
+     * @return null if there is only one data file directory
+     */
+    NFSObjDiskStriper getDiskStriper() {
+        return diskStriper;
+    }
+
+    long getLinkedSets() {
+        return linkedSets.get();
+    }
+
+    void printPlan() {
+        int stagedSets = 0;
+        for ( Placement placement : placements.values() ) {
+            if (placement.staged) {
+                stagedSets++;
+            }
+        }
+
+        System.out.format("  Live placement: %d SSTable sets into the live data directories of %d tables " +
+                "(%d staged and hard linked, %d written directly), with new generations.\n",
+            placements.size(),
+            tableDirs.size(),
+            stagedSets,
+            placements.size() - stagedSets);
+    }
+
+    void printStats() {
+        System.out.format("  Live placement: %d staged SSTable sets (%d files) hard linked into the live data directories.\n",
+            linkedSets.get(),
+            linkedFiles.get());
+    }
+}
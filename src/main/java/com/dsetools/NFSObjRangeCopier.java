@@ -0,0 +1,330 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * Copies a large backup file (e.g. a multi-GB Data.db) as several byte ranges in parallel.
+ *
+ * The target file is preallocated to the source size under a temporary name
+ * (&lt;target&gt;.part). Each range is forked as a task into the fork/join (work-stealing)
+ * pool of the calling download thread, so idle download threads steal and copy ranges
+ * at their own offsets. The file is renamed to its final name only when every range is
+ * done. A file with a failed range never shows up under its final name.
+ *
+ * With adaptive concurrency, a range stolen by another thread counts against the limit:
+ * that thread takes a permit if one is free, otherwise it leaves the range to the thread
+ * that owns the file, which copies it itself while it joins the ranges.
+ *
+ * With a restore journal, every completed range is journaled, and a rerun only copies
+ * the ranges that are still missing in the part file.
+ *
+ * When a checksum of the whole file is needed, every range computes its own checksum
+ * while it is copied, and the range checksums are combined in file order at the end.
+ *
+ * With cache bypass, each range is written with O_DIRECT or dropped from the page cache
+ * when it is done, so a multi-GB file never sits in the cache as a whole.
+ */
+class NFSObjRangeCopier extends NFSObjCopyEngine {
+
+    static final String ENGINE_RANGE = "range";
+    static final String PART_FILE_SUFFIX = ".part";
+
+    private final long splitThreshold;
+    private final long rangeSize;
+
+    // Limits the stolen ranges with "-d auto" (null otherwise)
+    private final NFSObjConcurrencyController concurrencyController;
+
+    /**
+     * The copy of one byte range (run by a stealing thread, or by the thread that owns the file)
+     */
+    private interface RangeCopy {
+        long copy() throws IOException;
+    }
+
+    /**
+     * @param split_threshold   files larger than this (bytes) are copied as byte ranges; 0 disables range copy
+     * @param range_size        size (bytes) of each byte range
+     * @param io_throttle
+     * @param cache_bypass
+     * @param durability_policy
+     * @param concurrency_controller  adaptive concurrency controller (null if none)
+     */
+    NFSObjRangeCopier(long split_threshold,
+                      long range_size,
+                      NFSObjIoThrottle io_throttle,
+                      NFSObjCacheBypass cache_bypass,
+                      NFSObjDurabilityPolicy durability_policy,
+                      NFSObjConcurrencyController concurrency_controller) {
+        super(io_throttle, cache_bypass, durability_policy);
+
+        assert (range_size > 0);
+
+        this.splitThreshold = split_threshold;
+        this.rangeSize = range_size;
+        this.concurrencyController = concurrency_controller;
+    }
+
+    @Override
+    String getName() {
+        return ENGINE_RANGE;
+    }
+
+    /**
+     * Whether a file of the specified size should be copied as byte ranges
+     *
+     * @param fileSize
+     * @return
+     */
+    boolean shouldSplit(long fileSize) {
+        return (splitThreshold > 0) && (fileSize > splitThreshold) && (fileSize > rangeSize);
+    }
+
+    @Override
+    protected long doCopy(File srcFile, File dstFile, long startOffset, NFSObjChecksum checksum) throws IOException {
+        assert (startOffset == 0);
+
+        return copyRanges(srcFile, dstFile, null, srcFile.lastModified(), checksum);
+    }
+
+    /**
+     * Copy one file as byte ranges, skipping the ranges that the restore journal has
+     * recorded as done for the same backup file, and account the transferred bytes and
+     * elapsed time to this engine
+     *
+     * @param srcFile
+     * @param dstFile
+     * @param journal   restore journal (null if none)
+     * @param srcMtime  last modified time of the source file
+     * @param checksum  checksum of the whole file, computed while copying (null if not needed)
+     * @return number of bytes copied
+     * @throws IOException
+     */
+    long copy(File srcFile,
+              File dstFile,
+              NFSObjRestoreJournal journal,
+              long srcMtime,
+              NFSObjChecksum checksum) throws IOException {
+        long startNanos = System.nanoTime();
+
+        long bytes = copyRanges(srcFile, dstFile, journal, srcMtime, checksum);
+
+        recordCopy(bytes, System.nanoTime() - startNanos);
+
+        return bytes;
+    }
+
+    private long copyRanges(File srcFile,
+                            File dstFile,
+                            NFSObjRestoreJournal journal,
+                            long srcMtime,
+                            NFSObjChecksum checksum) throws IOException {
+        Path srcPath = srcFile.toPath();
+        Path dstPath = dstFile.toPath();
+        Path partPath = Paths.get(dstPath.toString() + PART_FILE_SUFFIX);
+
+        Path parentPath = dstPath.getParent();
+        if (parentPath != null) {
+            Files.createDirectories(parentPath);
+        }
+
+        long size = Files.size(srcPath);
+
+        // Ranges already copied by an interrupted earlier run (only valid if its part file is still there)
+        Map<Long, String> doneRanges = new HashMap<>();
+        if ( (journal != null) && Files.isRegularFile(partPath) && (Files.size(partPath) == size) ) {
+            doneRanges = journal.getDoneRanges(dstFile, size, srcMtime);
+        }
+
+        // Preallocate the target so that every range worker can write at its own offset
+        if (doneRanges.isEmpty()) {
+            durabilityPolicy.preallocatePart(partPath, size);
+        }
+
+        // When called from a fork/join worker, the range tasks are pushed onto that worker's queue, where
+        // idle workers of the same pool steal them (and the calling worker helps while joining).
+        // Otherwise they run in the common pool.
+        List<ForkJoinTask<Long>> rangeTasks = new ArrayList<>();
+        List<RangeCopy> rangeCopies = new ArrayList<>();
+        final Thread ownerThread = Thread.currentThread();
+
+        int rangeNum = (int) ((size + rangeSize - 1) / rangeSize);
+        final long[] rangeChecksumValues = new long[rangeNum];
+
+        for (int rangeIdx = 0; rangeIdx < rangeNum; rangeIdx++) {
+            final int idx = rangeIdx;
+            final long rangeStart = rangeIdx * rangeSize;
+            final long rangeLength = Math.min(rangeSize, size - rangeStart);
+
+            if (doneRanges.containsKey(rangeStart)) {
+                if (checksum != null) {
+                    Long journaledValue = NFSObjChecksum.parseValue(doneRanges.get(rangeStart), checksum.getAlgorithm());
+
+                    if (journaledValue != null) {
+                        rangeChecksumValues[idx] = journaledValue;
+                    }
+                    else {
+                        // No (or a different) checksum journaled for the range: read it back from the part file
+                        NFSObjChecksum rangeChecksum = NFSObjChecksum.create(checksum.getAlgorithm());
+                        updateChecksum(partPath, rangeStart, rangeLength, rangeChecksum);
+                        rangeChecksumValues[idx] = rangeChecksum.getValue();
+                    }
+                }
+
+                continue;
+            }
+
+            RangeCopy rangeCopy = () -> {
+                NFSObjChecksum rangeChecksum =
+                    (checksum == null) ? null : NFSObjChecksum.create(checksum.getAlgorithm());
+
+                long copiedBytes = copyRange(srcPath, partPath, rangeStart, rangeLength, rangeChecksum);
+
+                if (rangeChecksum != null) {
+                    rangeChecksumValues[idx] = rangeChecksum.getValue();
+                }
+
+                if (journal != null) {
+                    journal.recordRangeDone(dstFile, rangeStart, srcMtime,
+                        (rangeChecksum == null) ? null : rangeChecksum.toString());
+                }
+
+                return copiedBytes;
+            };
+
+            rangeCopies.add(rangeCopy);
+            rangeTasks.add(ForkJoinTask.adapt(() -> copyIfPermitted(rangeCopy, ownerThread)).fork());
+        }
+
+        long copied = 0;
+        IOException rangeException = null;
+
+        // Wait for every range, even after a failure, so that no worker is still writing to the file below
+        for (int taskIdx = 0; taskIdx < rangeTasks.size(); taskIdx++) {
+            try {
+                Long copiedBytes = rangeTasks.get(taskIdx).join();
+
+                // Left by a stealing thread without a free permit: copied by this thread
+                if (copiedBytes == null) {
+                    copiedBytes = rangeCopies.get(taskIdx).copy();
+                }
+
+                copied += copiedBytes;
+            }
+            catch (IOException ioe) {
+                if (rangeException == null) {
+                    rangeException = ioe;
+                }
+            }
+            catch (RuntimeException re) {
+                if (rangeException == null) {
+                    rangeException = (re.getCause() instanceof IOException) ?
+                        (IOException) re.getCause() : new IOException(re);
+                }
+            }
+        }
+
+        // Without a journal, a part file with missing ranges can't be continued later
+        if (rangeException != null) {
+            if (journal == null) {
+                Files.deleteIfExists(partPath);
+            }
+            throw rangeException;
+        }
+
+        // Range checksums (visible here after the joins above) combined in file order
+        if (checksum != null) {
+            for (int rangeIdx = 0; rangeIdx < rangeNum; rangeIdx++) {
+                long rangeStart = rangeIdx * rangeSize;
+                checksum.appendValue(rangeChecksumValues[rangeIdx], Math.min(rangeSize, size - rangeStart));
+            }
+        }
+
+        // All ranges are done: mark the file as complete
+        Files.move(partPath, dstPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.setLastModifiedTime(dstPath, Files.getLastModifiedTime(srcPath));
+
+        return copied;
+    }
+
+    /**
+     * Run a range task: right away in the thread that owns the file (or without adaptive concurrency),
+     * in a stealing thread only if it gets a permit
+     *
+     * @param rangeCopy
+     * @param ownerThread   the thread that forked the range tasks
+     * @return number of bytes copied; null if the range is left to the owning thread
+     * @throws IOException
+     */
+    private Long copyIfPermitted(RangeCopy rangeCopy, Thread ownerThread) throws IOException {
+        if ( (concurrencyController == null) || (Thread.currentThread() == ownerThread) ) {
+            return rangeCopy.copy();
+        }
+
+        if ( !concurrencyController.tryAcquire() ) {
+            return null;
+        }
+
+        try {
+            return rangeCopy.copy();
+        }
+        finally {
+            concurrencyController.release();
+        }
+    }
+
+    /**
+     * Copy one byte range of the source file into the same range of the (preallocated) target file
+     *
+     * @param srcPath
+     * @param dstPath
+     * @param rangeStart
+     * @param rangeLength
+     * @param rangeChecksum checksum of the range (null if not needed)
+     * @return number of bytes copied
+     * @throws IOException
+     */
+    private long copyRange(Path srcPath,
+                           Path dstPath,
+                           long rangeStart,
+                           long rangeLength,
+                           NFSObjChecksum rangeChecksum) throws IOException {
+        long copied = -1;
+
+        // Range starts are multiples of the range size (whole MBs), so they are O_DIRECT aligned
+        if ( cacheBypass.isEnabled() && (cacheBypass.getDirectAlignment(dstPath) > 0) ) {
+            copied = cacheBypass.transferDirect(srcPath, dstPath,
+                rangeStart, rangeStart + rangeLength, rangeChecksum, ioThrottle);
+        }
+
+        if (copied < 0) {
+            if (rangeChecksum != null) {
+                rangeChecksum.reset();
+            }
+
+            try ( FileChannel srcChannel = FileChannel.open(srcPath, StandardOpenOption.READ);
+                  FileChannel dstChannel = FileChannel.open(dstPath, StandardOpenOption.WRITE) ) {
+
+                copied = NFSObjFileChannelCopyEngine.transfer(srcChannel, dstChannel,
+                    rangeStart, rangeStart + rangeLength, rangeChecksum, ioThrottle);
+            }
+        }
+
+        cacheBypass.dropBehind(srcPath, dstPath, copied);
+
+        return copied;
+    }
+}
@@ -0,0 +1,145 @@
+package com.dsetools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings and shared components used by all download tasks of one restore run
+ */
+class NFSObjRestoreContext {
+
+    private final boolean fileSizeChk;
+    private final NFSObjCopyEngine copyEngine;
+    private final NFSObjRangeCopier rangeCopier;
+    private final NFSObjRestoreJournal restoreJournal;
+    private final NFSObjChecksumVerifier checksumVerifier;
+    private final NFSObjConcurrencyController concurrencyController;
+    private final NFSObjDurabilityPolicy durabilityPolicy;
+    private final NFSObjDifferentialRestore differentialRestore;
+    private final NFSObjSstableCache sstableCache;
+    private final NFSObjLivePlacement livePlacement;
+    private final NFSObjTableCompletion tableCompletion;
+    private final NFSObjSetPublisher setPublisher;
+    private final NFSObjRestoreProgress progress;
+    private final boolean verbose;
+
+    // Files skipped because an earlier run completely restored them, and files continued from a byte offset
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong resumedFiles = new AtomicLong();
+
+    NFSObjRestoreContext(boolean file_size_chk,
+                         NFSObjCopyEngine copy_engine,
+                         NFSObjRangeCopier range_copier,
+                         NFSObjRestoreJournal restore_journal,
+                         NFSObjChecksumVerifier checksum_verifier,
+                         NFSObjConcurrencyController concurrency_controller,
+                         NFSObjDurabilityPolicy durability_policy,
+                         NFSObjDifferentialRestore differential_restore,
+                         NFSObjSstableCache sstable_cache,
+                         NFSObjLivePlacement live_placement,
+                         NFSObjTableCompletion table_completion,
+                         NFSObjSetPublisher set_publisher,
+                         NFSObjRestoreProgress restore_progress,
+                         boolean verbose_output) {
+        this.fileSizeChk = file_size_chk;
+        this.copyEngine = copy_engine;
+        this.rangeCopier = range_copier;
+        this.restoreJournal = restore_journal;
+        this.checksumVerifier = checksum_verifier;
+        this.concurrencyController = concurrency_controller;
+        this.durabilityPolicy = durability_policy;
+        this.differentialRestore = differential_restore;
+        this.sstableCache = sstable_cache;
+        this.livePlacement = live_placement;
+        this.tableCompletion = table_completion;
+        this.setPublisher = set_publisher;
+        this.progress = restore_progress;
+        this.verbose = verbose_output;
+    }
+
+    boolean isFileSizeChk() {
+        return fileSizeChk;
+    }
+
+    NFSObjCopyEngine getCopyEngine() {
+        return copyEngine;
+    }
+
+    NFSObjRangeCopier getRangeCopier() {
+        return rangeCopier;
+    }
+
+    NFSObjRestoreJournal getRestoreJournal() {
+        return restoreJournal;
+    }
+
+    /**
+     * @return null if the restored files are not verified
+     */
+    NFSObjChecksumVerifier getChecksumVerifier() {
+        return checksumVerifier;
+    }
+
+    /**
+     * @return null if the download concurrency is fixed
+     */
+    NFSObjConcurrencyController getConcurrencyController() {
+        return concurrencyController;
+    }
+
+    NFSObjDurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    /**
+     * @return null if every planned file is copied (no differential restore)
+     */
+    NFSObjDifferentialRestore getDifferentialRestore() {
+        return differentialRestore;
+    }
+
+    /**
+     * @return null if no local SSTable cache is configured
+     */
+    NFSObjSstableCache getSstableCache() {
+        return sstableCache;
+    }
+
+    /**
+     * @return null if the files are restored into the local download home directory
+     */
+    NFSObjLivePlacement getLivePlacement() {
+        return livePlacement;
+    }
+
+    /**
+     * @return null if no table completion hook is configured
+     */
+    NFSObjTableCompletion getTableCompletion() {
+        return tableCompletion;
+    }
+
+    NFSObjSetPublisher getSetPublisher() {
+        return setPublisher;
+    }
+
+    NFSObjRestoreProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Whether to print per-thread and per-file messages (otherwise, only failures and periodic progress lines)
+     *
+     * @return
+     */
+    boolean isVerbose() {
+        return verbose;
+    }
+
+    AtomicLong getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    AtomicLong getResumedFiles() {
+        return resumedFiles;
+    }
+}
@@ -0,0 +1,110 @@
+package com.dsetools;
+
+import java.io.File;
+
+
+/**
+ * One OpsCenter backup file (one SSTable component) to be restored
+ */
+class NFSObjRestoreItem {
+
+    private final String nfsObjName;
+    private final String keyspaceName;
+    private final String tableName;
+    private final String sstableVersion;
+    private final String sstableName;
+    private final long size;
+    private final File localFile;
+
+    /**
+     * @param nfs_obj_name      full path of the backup file in the NFS backup location
+     * @param ks_name
+     * @param tbl_name
+     * @param sstable_version
+     * @param sstable_name      real SSTable file name (OpsCenter uniquifier prefix removed), e.g. mc-1-big-Data.db
+     * @param size              file size in bytes (-1 if unknown)
+     * @param local_file        target file in the local download directory
+     */
+    NFSObjRestoreItem(String nfs_obj_name,
+                      String ks_name,
+                      String tbl_name,
+                      String sstable_version,
+                      String sstable_name,
+                      long size,
+                      File local_file) {
+        this.nfsObjName = nfs_obj_name;
+        this.keyspaceName = ks_name;
+        this.tableName = tbl_name;
+        this.sstableVersion = sstable_version;
+        this.sstableName = sstable_name;
+        this.size = size;
+        this.localFile = local_file;
+    }
+
+    String getNfsObjName() {
+        return nfsObjName;
+    }
+
+    String getKeyspaceName() {
+        return keyspaceName;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    String getSstableVersion() {
+        return sstableVersion;
+    }
+
+    String getSstableName() {
+        return sstableName;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    File getLocalFile() {
+        return localFile;
+    }
+
+    /**
+     * SSTable component name, e.g. "Data.db" for mc-1-big-Data.db
+     *
+     * @return
+     */
+    String getComponentName() {
+        return sstableName.substring(sstableName.lastIndexOf('-') + 1);
+    }
+
+    /**
+     * The same backup file, restored to another local file
+     *
+     * @param local_file
+     * @return
+     */
+    NFSObjRestoreItem withLocalFile(File local_file) {
+        return new NFSObjRestoreItem(nfsObjName, keyspaceName, tableName, sstableVersion, sstableName, size, local_file);
+    }
+
+    /**
+     * OpsCenter uniquifier of the backup file, e.g. "3a6979cf..." for 3a6979cf...-mc-1-big-Data.db
+     *
+     * @return null if the backup file name has no uniquifier prefix
+     */
+    String getUniquifier() {
+        String objName = new File(nfsObjName).getName();
+
+        if ( (objName.length() <= sstableName.length() + 1) || !objName.endsWith("-" + sstableName) ) {
+            return null;
+        }
+
+        return objName.substring(0, objName.length() - sstableName.length() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return nfsObjName + " [keyspace: " + keyspaceName + "; table: " + tableName + "]";
+    }
+}
@@ -0,0 +1,335 @@
+package com.dsetools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * On-disk restore journal, kept under the local download home directory.
+ *
+ * The journal is an append-only text file with one tab-separated record per line:
+ *   S  &lt;size&gt;  &lt;src_mtime&gt;  &lt;local_file&gt;                    - copy of a file started
+ *   R  &lt;range_start&gt;  &lt;src_mtime&gt;  &lt;checksum&gt;  &lt;local_file&gt;  - one byte range of a range copy completed
+ *   C  &lt;size&gt;  &lt;src_mtime&gt;  &lt;checksum&gt;  &lt;local_file&gt;      - copy of a file completed
+ *   P  &lt;local_file&gt;                                        - file renamed to its final name (see recordPublished())
+ *
+ * "size" and "src_mtime" are the size and the last modified time (millis) of the NFS backup file.
+ * A record only applies to a rerun when both still match the backup file, so a file is never
+ * skipped or continued against a different backup file.
+ * "checksum" is "&lt;algorithm&gt;:&lt;value&gt;" of the file (or of the range), or "-" when not computed.
+ *
+ * On load, the journal is compacted to the latest state of each file.
+ */
+class NFSObjRestoreJournal {
+
+    static final String RECORD_STARTED = "S";
+    static final String RECORD_RANGE_DONE = "R";
+    static final String RECORD_COMPLETED = "C";
+    static final String RECORD_PUBLISHED = "P";
+    static final String NO_CHECKSUM = "-";
+
+    /**
+     * Latest journaled state of one local file
+     */
+    static class FileState {
+        final long size;
+        final long srcMtime;
+        boolean completed = false;
+        String checksum = NO_CHECKSUM;
+        // Start offset -> checksum of the completed byte ranges
+        final Map<Long, String> doneRanges = new HashMap<>();
+
+        FileState(long size, long srcMtime) {
+            this.size = size;
+            this.srcMtime = srcMtime;
+        }
+
+        boolean matches(long srcSize, long srcLastModified) {
+            return (size == srcSize) && (srcMtime == srcLastModified);
+        }
+    }
+
+    private final Path journalPath;
+    private final Map<String, FileState> fileStates = new HashMap<>();
+    private BufferedWriter journalWriter;
+
+    private NFSObjRestoreJournal(Path journal_path) {
+        this.journalPath = journal_path;
+    }
+
+    /**
+     * Open (and compact) the restore journal under the specified download home directory.
+     * The journal file is created if it doesn't exist yet.
+     *
+     * @param downloadHomeDir
+     * @return
+     * @throws IOException
+     */
+    static NFSObjRestoreJournal open(String downloadHomeDir) throws IOException {
+        NFSObjRestoreJournal journal =
+            new NFSObjRestoreJournal(Paths.get(downloadHomeDir, DseOpscNFSRestoreUtils.RESTORE_JOURNAL_FILE));
+
+        journal.load();
+        journal.compact();
+
+        journal.journalWriter = Files.newBufferedWriter(journal.journalPath, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        return journal;
+    }
+
+    private void load() throws IOException {
+        if ( Files.notExists(journalPath) ) {
+            return;
+        }
+
+        try ( BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8) ) {
+            String line;
+
+            while ( (line = reader.readLine()) != null ) {
+                String[] fields = line.split("\t");
+
+                try {
+                    if ( RECORD_STARTED.equals(fields[0]) && (fields.length == 4) ) {
+                        applyStarted(fields[3], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+                    }
+                    else if ( RECORD_RANGE_DONE.equals(fields[0]) && (fields.length == 5) ) {
+                        applyRangeDone(fields[4], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+                    }
+                    else if ( RECORD_COMPLETED.equals(fields[0]) && (fields.length == 5) ) {
+                        applyCompleted(fields[4], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+                    }
+                    else if ( RECORD_PUBLISHED.equals(fields[0]) && (fields.length == 2) ) {
+                        fileStates.remove(fields[1]);
+                    }
+                }
+                catch (NumberFormatException nfe) {
+                    // Ignore a corrupted (e.g. half-written) record
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the latest state of each file
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        Path tmpJournalPath = Paths.get(journalPath.toString() + ".tmp");
+
+        try ( BufferedWriter writer = Files.newBufferedWriter(tmpJournalPath, StandardCharsets.UTF_8) ) {
+            for ( Map.Entry<String, FileState> entry : fileStates.entrySet() ) {
+                FileState state = entry.getValue();
+
+                if (state.completed) {
+                    writeRecord(writer, RECORD_COMPLETED, state.size, state.srcMtime, state.checksum, entry.getKey());
+                }
+                else {
+                    writeRecord(writer, RECORD_STARTED, state.size, state.srcMtime, entry.getKey());
+                    for ( Map.Entry<Long, String> range : state.doneRanges.entrySet() ) {
+                        writeRecord(writer, RECORD_RANGE_DONE, range.getKey(), state.srcMtime, range.getValue(), entry.getKey());
+                    }
+                }
+            }
+        }
+
+        Files.move(tmpJournalPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void applyStarted(String localFile, long size, long srcMtime) {
+        FileState state = fileStates.get(localFile);
+
+        if ( (state == null) || !state.matches(size, srcMtime) ) {
+            state = new FileState(size, srcMtime);
+            fileStates.put(localFile, state);
+        }
+
+        state.completed = false;
+    }
+
+    private void applyRangeDone(String localFile, long rangeStart, long srcMtime, String checksum) {
+        FileState state = fileStates.get(localFile);
+
+        if ( (state != null) && (state.srcMtime == srcMtime) ) {
+            state.doneRanges.put(rangeStart, checksum);
+        }
+    }
+
+    private void applyCompleted(String localFile, long size, long srcMtime, String checksum) {
+        FileState state = new FileState(size, srcMtime);
+        state.completed = true;
+        state.checksum = checksum;
+
+        fileStates.put(localFile, state);
+    }
+
+    private static void writeRecord(BufferedWriter writer, Object... fields) throws IOException {
+        StringBuilder record = new StringBuilder();
+
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                record.append('\t');
+            }
+            record.append(fields[i]);
+        }
+
+        writer.write(record.toString());
+        writer.newLine();
+    }
+
+    private synchronized void appendRecord(Object... fields) throws IOException {
+        writeRecord(journalWriter, fields);
+
+        // Flush every record: the journal must survive a JVM that gets killed halfway
+        journalWriter.flush();
+    }
+
+    private static String toChecksumField(String checksum) {
+        return ( (checksum == null) || checksum.isEmpty() ) ? NO_CHECKSUM : checksum;
+    }
+
+    private static String getKey(File localFile) {
+        return localFile.getAbsolutePath();
+    }
+
+
+    /**
+     * Whether the local file was completely restored from the same backup file by an earlier run
+     *
+     * @param localFile
+     * @param srcSize
+     * @param srcMtime
+     * @return
+     */
+    synchronized boolean isCompleted(File localFile, long srcSize, long srcMtime) {
+        FileState state = fileStates.get(getKey(localFile));
+
+        return (state != null) && state.completed && state.matches(srcSize, srcMtime) &&
+               localFile.isFile() && (localFile.length() == srcSize);
+    }
+
+    /**
+     * Whether the journal has any record of the local file, i.e. whether this restore (in this or an
+     * earlier run) started to write it
+     *
+     * @param localFile
+     * @return
+     */
+    synchronized boolean isJournaled(File localFile) {
+        return fileStates.containsKey(getKey(localFile));
+    }
+
+    /**
+     * Checksum recorded for a completed local file (null if none)
+     *
+     * @param localFile
+     * @return
+     */
+    synchronized String getChecksum(File localFile) {
+        FileState state = fileStates.get(getKey(localFile));
+
+        return ( (state == null) || !state.completed || NO_CHECKSUM.equals(state.checksum) ) ? null : state.checksum;
+    }
+
+    /**
+     * Byte offset from which an earlier, interrupted sequential copy of the same backup file can be continued
+     *
+     * @param localFile
+     * @param srcSize
+     * @param srcMtime
+     * @return 0 if the copy has to start from the beginning
+     */
+    synchronized long getResumeOffset(File localFile, long srcSize, long srcMtime) {
+        FileState state = fileStates.get(getKey(localFile));
+
+        if ( (state == null) || state.completed || !state.matches(srcSize, srcMtime) || !localFile.isFile() ) {
+            return 0;
+        }
+
+        return Math.min(localFile.length(), srcSize);
+    }
+
+    /**
+     * Byte ranges that an earlier, interrupted range copy of the same backup file completed
+     *
+     * @param localFile
+     * @param srcSize
+     * @param srcMtime
+     * @return start offset -> checksum ("-" if none) of each completed range
+     */
+    synchronized Map<Long, String> getDoneRanges(File localFile, long srcSize, long srcMtime) {
+        FileState state = fileStates.get(getKey(localFile));
+
+        if ( (state == null) || state.completed || !state.matches(srcSize, srcMtime) ) {
+            return new HashMap<>();
+        }
+
+        return new HashMap<>(state.doneRanges);
+    }
+
+    synchronized void recordStarted(File localFile, long srcSize, long srcMtime) throws IOException {
+        applyStarted(getKey(localFile), srcSize, srcMtime);
+        appendRecord(RECORD_STARTED, srcSize, srcMtime, getKey(localFile));
+    }
+
+    synchronized void recordRangeDone(File localFile, long rangeStart, long srcMtime, String checksum) throws IOException {
+        String checksumStr = toChecksumField(checksum);
+
+        applyRangeDone(getKey(localFile), rangeStart, srcMtime, checksumStr);
+        appendRecord(RECORD_RANGE_DONE, rangeStart, srcMtime, checksumStr, getKey(localFile));
+    }
+
+    synchronized void recordCompleted(File localFile, long srcSize, long srcMtime, String checksum) throws IOException {
+        String checksumStr = toChecksumField(checksum);
+
+        applyCompleted(getKey(localFile), srcSize, srcMtime, checksumStr);
+        appendRecord(RECORD_COMPLETED, srcSize, srcMtime, checksumStr, getKey(localFile));
+    }
+
+    /**
+     * A completed file was renamed to its final name (see NFSObjSetPublisher): its completion now
+     * applies to the final name. If it isn't journaled as completed yet (fsync policy "end"), it is
+     * journaled as started under its final name, and as completed once synced; a rerun after a crash
+     * in between knows the final name as written by this restore, and copies it again.
+     *
+     * @param tempFile
+     * @param publishedFile
+     * @throws IOException
+     */
+    synchronized void recordPublished(File tempFile, File publishedFile) throws IOException {
+        FileState state = fileStates.remove(getKey(tempFile));
+        if (state == null) {
+            return;
+        }
+
+        if (state.completed) {
+            recordCompleted(publishedFile, state.size, state.srcMtime, state.checksum);
+        }
+        else {
+            recordStarted(publishedFile, state.size, state.srcMtime);
+        }
+
+        // Only dropped once the final name is journaled, so that a crash in between loses neither
+        appendRecord(RECORD_PUBLISHED, getKey(tempFile));
+    }
+
+    synchronized void close() {
+        try {
+            journalWriter.close();
+        }
+        catch (IOException ioe) {
+            System.out.println("WARN: Failed to close restore journal file \"" + journalPath + "\".");
+        }
+    }
+}
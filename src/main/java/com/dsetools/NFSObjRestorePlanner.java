@@ -0,0 +1,163 @@
+package com.dsetools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+
+/**
+ * Groups the to-be-restored backup files by their SSTable generation and
+ * orders the resulting restore units for scheduling.
+ *
+ * The backup files of several hosts can be planned together, so that one scheduler (and one
+ * I/O budget) restores all of them.
+ */
+class NFSObjRestorePlanner {
+
+    private final Map<String, NFSObjRestoreUnit> restoreUnits = new LinkedHashMap<>();
+    private final Set<String> hostIds = new LinkedHashSet<>();
+
+    private int itemNum = 0;
+    private long totalBytes = 0;
+
+    /**
+     * Add a backup file to the restore unit of its SSTable generation
+     *
+     * @param hostId                DSE host the backup file belongs to
+     * @param opscSstableObjName    OpsCenter backup file name (with uniquifier), as in backup.json
+     * @param item
+     */
+    void addItem(String hostId, String opscSstableObjName, NFSObjRestoreItem item) {
+        String unitKey =
+            NFSObjRestoreUnit.getUnitKey(hostId, item.getKeyspaceName(), item.getTableName(), opscSstableObjName);
+
+        NFSObjRestoreUnit unit = restoreUnits.get(unitKey);
+        if (unit == null) {
+            unit = new NFSObjRestoreUnit(unitKey, hostId, item.getKeyspaceName(), item.getTableName());
+            restoreUnits.put(unitKey, unit);
+        }
+
+        unit.addItem(item);
+        hostIds.add(hostId);
+
+        itemNum++;
+        totalBytes += Math.max(item.getSize(), 0);
+    }
+
+    /**
+     * Drop the backup files of a host (e.g. its backup.json failed to read halfway through)
+     *
+     * @param hostId
+     */
+    void removeHost(String hostId) {
+        Iterator<NFSObjRestoreUnit> unitIterator = restoreUnits.values().iterator();
+
+        while ( unitIterator.hasNext() ) {
+            NFSObjRestoreUnit unit = unitIterator.next();
+
+            if ( unit.getHostId().equals(hostId) ) {
+                for ( NFSObjRestoreItem item : unit.getItems() ) {
+                    itemNum--;
+                    totalBytes -= Math.max(item.getSize(), 0);
+                }
+                unitIterator.remove();
+            }
+        }
+
+        hostIds.remove(hostId);
+    }
+
+    int getItemNum() {
+        return itemNum;
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    int getUnitNum() {
+        return restoreUnits.size();
+    }
+
+    /**
+     * Number of hosts with at least one backup file to restore
+     *
+     * @return
+     */
+    int getHostNum() {
+        return hostIds.size();
+    }
+
+    /**
+     * Restore units, largest (in bytes) first. Scheduling the largest units first makes
+     * all download threads finish close together instead of one thread copying the tail.
+     *
+     * @return
+     */
+    List<NFSObjRestoreUnit> getUnitsLargestFirst() {
+        List<NFSObjRestoreUnit> units = new ArrayList<>(restoreUnits.values());
+
+        units.sort(Comparator.comparingLong(NFSObjRestoreUnit::getTotalBytes).reversed());
+
+        return units;
+    }
+
+    /**
+     * Restore units in the table priority order ("table_priority"): the units of the listed tables
+     * first, in the listed order, then those of all other tables. Within a table (and among the other
+     * tables), the units stay largest first.
+     *
+     * @param tablePriority     "&lt;keyspace&gt;.&lt;table&gt;" or "&lt;keyspace&gt;.*" entries, highest priority first
+     * @return
+     */
+    List<NFSObjRestoreUnit> getUnitsByPriority(List<String> tablePriority) {
+        List<NFSObjRestoreUnit> units = getUnitsLargestFirst();
+
+        if ( !tablePriority.isEmpty() ) {
+            // A stable sort, which keeps the largest first order within the same priority
+            units.sort(Comparator.comparingInt(unit -> getTablePriority(tablePriority, unit)));
+        }
+
+        return units;
+    }
+
+    private static int getTablePriority(List<String> tablePriority, NFSObjRestoreUnit unit) {
+        for (int i = 0; i < tablePriority.size(); i++) {
+            String entry = tablePriority.get(i);
+
+            if ( entry.equalsIgnoreCase(unit.getKeyspaceName() + "." + unit.getTableName()) ||
+                 entry.equalsIgnoreCase(unit.getKeyspaceName() + ".*") ) {
+                return i;
+            }
+        }
+
+        return tablePriority.size();
+    }
+
+    /**
+     * The configured table priority order
+     *
+     * @param configProps
+     * @return empty if none is configured
+     */
+    static List<String> getTablePriority(Properties configProps) {
+        List<String> tablePriority = new ArrayList<>();
+
+        String tablePriorityStr = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_TABLE_PRIORITY);
+        if (tablePriorityStr != null) {
+            for ( String entry : tablePriorityStr.split(",") ) {
+                if ( !entry.trim().isEmpty() ) {
+                    tablePriority.add(entry.trim());
+                }
+            }
+        }
+
+        return tablePriority;
+    }
+}
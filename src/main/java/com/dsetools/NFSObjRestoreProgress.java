@@ -0,0 +1,249 @@
+package com.dsetools;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Completion tracking of one restore run.
+ *
+ * Every download task reports each of its files (downloaded, skipped or failed) and counts down
+ * a latch when its SSTable set is done. The main thread waits on the latch, waking up at the
+ * progress interval to print a progress line (files, bytes, MB/s, ETA), instead of spinning on
+ * the executor until it terminates.
+ *
+ * When several hosts are restored in one run, the files and bytes are also tracked per host: a
+ * line is printed when all SSTable sets of a host are done, and a per-host summary at the end.
+ */
+class NFSObjRestoreProgress {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final long totalFiles;
+    private final long totalBytes;
+    private final CountDownLatch unitLatch;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong doneFiles = new AtomicLong();
+    private final AtomicLong doneBytes = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+
+    /**
+     * Files and bytes of one host
+     */
+    private static class HostProgress {
+        long totalFiles;
+        long totalBytes;
+        int unitNum;
+
+        final AtomicLong doneFiles = new AtomicLong();
+        final AtomicLong doneBytes = new AtomicLong();
+        final AtomicLong skippedFiles = new AtomicLong();
+        final AtomicLong failedFiles = new AtomicLong();
+        final AtomicInteger remainingUnits = new AtomicInteger();
+    }
+
+    // Host ID -> progress; filled (by addUnit) before the download tasks start, read-only afterwards
+    private final Map<String, HostProgress> hostProgresses = new LinkedHashMap<>();
+    private final AtomicInteger doneHosts = new AtomicInteger();
+
+    /**
+     * @param total_files
+     * @param total_bytes
+     * @param unit_num      number of download tasks (SSTable sets)
+     */
+    NFSObjRestoreProgress(long total_files, long total_bytes, int unit_num) {
+        this.totalFiles = total_files;
+        this.totalBytes = total_bytes;
+        this.unitLatch = new CountDownLatch(unit_num);
+    }
+
+    /**
+     * Register an SSTable set of a host (before the download tasks start)
+     *
+     * @param hostId
+     * @param fileNum
+     * @param bytes
+     */
+    void addUnit(String hostId, int fileNum, long bytes) {
+        HostProgress hostProgress = hostProgresses.computeIfAbsent(hostId, h -> new HostProgress());
+
+        hostProgress.totalFiles += fileNum;
+        hostProgress.totalBytes += bytes;
+        hostProgress.unitNum++;
+        hostProgress.remainingUnits.incrementAndGet();
+    }
+
+    void recordDownloaded(String hostId, long fileSize, long copied_bytes) {
+        doneFiles.incrementAndGet();
+        doneBytes.addAndGet(fileSize);
+        copiedBytes.addAndGet(copied_bytes);
+
+        HostProgress hostProgress = hostProgresses.get(hostId);
+        if (hostProgress != null) {
+            hostProgress.doneFiles.incrementAndGet();
+            hostProgress.doneBytes.addAndGet(fileSize);
+        }
+    }
+
+    void recordSkipped(String hostId, long fileSize) {
+        doneFiles.incrementAndGet();
+        doneBytes.addAndGet(fileSize);
+        skippedFiles.incrementAndGet();
+
+        HostProgress hostProgress = hostProgresses.get(hostId);
+        if (hostProgress != null) {
+            hostProgress.doneFiles.incrementAndGet();
+            hostProgress.doneBytes.addAndGet(fileSize);
+            hostProgress.skippedFiles.incrementAndGet();
+        }
+    }
+
+    void recordFailed(String hostId, long fileSize) {
+        doneFiles.incrementAndGet();
+        doneBytes.addAndGet(fileSize);
+        failedFiles.incrementAndGet();
+
+        HostProgress hostProgress = hostProgresses.get(hostId);
+        if (hostProgress != null) {
+            hostProgress.doneFiles.incrementAndGet();
+            hostProgress.doneBytes.addAndGet(fileSize);
+            hostProgress.failedFiles.incrementAndGet();
+        }
+    }
+
+    /**
+     * Downloaded files (already recorded) that failed afterwards: to be synced to disk, or to be
+     * linked into the live data directory
+     *
+     * @param hostId
+     * @param fileNum
+     */
+    void recordFailedAfterDownload(String hostId, int fileNum) {
+        failedFiles.addAndGet(fileNum);
+
+        HostProgress hostProgress = hostProgresses.get(hostId);
+        if (hostProgress != null) {
+            hostProgress.failedFiles.addAndGet(fileNum);
+        }
+    }
+
+    /**
+     * A download task is done (successfully or not) with its SSTable set
+     *
+     * @param hostId
+     */
+    void recordUnitDone(String hostId) {
+        HostProgress hostProgress = hostProgresses.get(hostId);
+
+        // The last SSTable set of a host (only reported when several hosts are restored)
+        if ( (hostProgress != null) && (hostProgress.remainingUnits.decrementAndGet() == 0) ) {
+            doneHosts.incrementAndGet();
+
+            if (hostProgresses.size() > 1) {
+                System.out.format("   - [%s] Host %s done: %d files (%d skipped, %d failed), %d bytes.\n",
+                    LocalDateTime.now().format(formatter),
+                    hostId,
+                    hostProgress.doneFiles.get(),
+                    hostProgress.skippedFiles.get(),
+                    hostProgress.failedFiles.get(),
+                    hostProgress.doneBytes.get());
+            }
+        }
+
+        unitLatch.countDown();
+    }
+
+    long getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    /**
+     * Wait until every download task is done, printing a progress line at every progress interval
+     *
+     * @param progressIntervalMillis
+     * @param timeoutMillis     0: no timeout
+     * @return false if the timeout expired first
+     * @throws InterruptedException
+     */
+    boolean awaitCompletion(long progressIntervalMillis, long timeoutMillis) throws InterruptedException {
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        while (true) {
+            long waitMillis = progressIntervalMillis;
+
+            if (timeoutMillis > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                waitMillis = Math.min(waitMillis, remainingMillis);
+            }
+
+            if ( unitLatch.await(waitMillis, TimeUnit.MILLISECONDS) ) {
+                return true;
+            }
+
+            printProgress();
+        }
+    }
+
+    void printProgress() {
+        double elapsedSec = (System.nanoTime() - startNanos) / 1000000000.0d;
+        double bytesPerSec = (elapsedSec == 0) ? 0 : (copiedBytes.get() / elapsedSec);
+
+        // ETA based on the copy rate so far (files that are skipped take no time)
+        String etaStr = "-";
+        long remainingBytes = totalBytes - doneBytes.get();
+        if (bytesPerSec > 0) {
+            long etaSec = (long) (remainingBytes / bytesPerSec);
+            etaStr = String.format("%d:%02d:%02d", etaSec / 3600, (etaSec / 60) % 60, etaSec % 60);
+        }
+
+        System.out.format("   - [%s] Progress: %s%d of %d files (%d skipped, %d failed), %d of %d bytes (%.1f%%), %.2f MB/s, ETA %s\n",
+            LocalDateTime.now().format(formatter),
+            (hostProgresses.size() > 1) ? String.format("%d of %d hosts, ", doneHosts.get(), hostProgresses.size()) : "",
+            doneFiles.get(),
+            totalFiles,
+            skippedFiles.get(),
+            failedFiles.get(),
+            doneBytes.get(),
+            totalBytes,
+            (totalBytes == 0) ? 100.0d : (doneBytes.get() * 100.0d / totalBytes),
+            bytesPerSec / (1024 * 1024),
+            etaStr);
+    }
+
+    /**
+     * Print the files and bytes restored per host (when several hosts are restored)
+     */
+    void printHostSummary() {
+        if (hostProgresses.size() <= 1) {
+            return;
+        }
+
+        System.out.println("  Per host:");
+        for (Map.Entry<String, HostProgress> entry : hostProgresses.entrySet()) {
+            HostProgress hostProgress = entry.getValue();
+
+            System.out.format("    %s: %d of %d files (%d skipped, %d failed), %d of %d bytes in %d SSTable sets%s\n",
+                entry.getKey(),
+                hostProgress.doneFiles.get(),
+                hostProgress.totalFiles,
+                hostProgress.skippedFiles.get(),
+                hostProgress.failedFiles.get(),
+                hostProgress.doneBytes.get(),
+                hostProgress.totalBytes,
+                hostProgress.unitNum,
+                (hostProgress.remainingUnits.get() > 0) ? " [not completed]" : "");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.dsetools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * One unit of restore work: all components of one SSTable generation
+ * (e.g. mc-1-big-Data.db, mc-1-big-Index.db, ..., mc-1-big-TOC.txt) of a table of a host.
+ *
+ * The number of components is whatever the backup has for this SSTable,
+ * which differs between SSTable formats.
+ */
+class NFSObjRestoreUnit {
+
+    private final String unitKey;
+    private final String hostId;
+    private final String keyspaceName;
+    private final String tableName;
+    private final List<NFSObjRestoreItem> items = new ArrayList<>();
+    private long totalBytes = 0;
+
+    NFSObjRestoreUnit(String unit_key, String host_id, String ks_name, String tbl_name) {
+        this.unitKey = unit_key;
+        this.hostId = host_id;
+        this.keyspaceName = ks_name;
+        this.tableName = tbl_name;
+    }
+
+    /**
+     * The key that identifies the SSTable generation of a backup file: host, keyspace, table and the
+     * OpsCenter backup file name without the trailing component name,
+     * e.g. "&lt;host_id&gt;:testks:songs:a2d0b957a3e915d9f891268f691a7e36-mc-1-big" for
+     * "a2d0b957a3e915d9f891268f691a7e36-mc-1-big-Data.db"
+     *
+     * @param hostId
+     * @param ksName
+     * @param tblName
+     * @param opscSstableObjName
+     * @return
+     */
+    static String getUnitKey(String hostId, String ksName, String tblName, String opscSstableObjName) {
+        int componentSeparatorPos = opscSstableObjName.lastIndexOf('-');
+
+        String sstableGeneration = (componentSeparatorPos > 0) ?
+            opscSstableObjName.substring(0, componentSeparatorPos) : opscSstableObjName;
+
+        return hostId + ":" + ksName + ":" + tblName + ":" + sstableGeneration;
+    }
+
+    void addItem(NFSObjRestoreItem item) {
+        items.add(item);
+        totalBytes += Math.max(item.getSize(), 0);
+    }
+
+    String getUnitKey() {
+        return unitKey;
+    }
+
+    String getHostId() {
+        return hostId;
+    }
+
+    String getKeyspaceName() {
+        return keyspaceName;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    List<NFSObjRestoreItem> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+}
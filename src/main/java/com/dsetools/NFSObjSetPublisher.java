@@ -0,0 +1,183 @@
+package com.dsetools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Atomic publish of the restored SSTable sets.
+ *
+ * Every component of an SSTable set is restored under a temporary name in its target directory,
+ * ".&lt;sstable_file_name&gt;.tmp", which Cassandra (and the differential prune) don't take for an
+ * SSTable file. Only when all components of the set are restored (and verified, and synced with
+ * the "file" and "set" fsync policies) are they renamed to their final names, Data.db and TOC.txt
+ * last. A "nodetool refresh" (or any other reader) that runs while the restore goes on therefore
+ * never sees a partially written component, nor an SSTable set without all of its components.
+ *
+ * A component that an earlier run restored under its temporary name, but didn't get to publish,
+ * is published as it is by a rerun.
+ *
+ * A component is published by hard linking its final name to it (the temporary name is removed
+ * once the final name is journaled),
+ * which never replaces an existing file: with "-pl live", the final names are in the live data
+ * directory of the table, where an existing file may be a live SSTable of the node. An existing
+ * file is only replaced when this restore wrote it: a component resumed from an earlier run, a
+ * file journaled under its final name, or any file outside of the live data directories (e.g. a
+ * changed local copy that the differential restore replaces).
+ */
+class NFSObjSetPublisher {
+
+    static final String TEMP_FILE_PREFIX = ".";
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final String DATA_COMPONENT = "Data.db";
+    private static final String TOC_COMPONENT = "TOC.txt";
+
+    private final AtomicLong publishedSets = new AtomicLong();
+    private final AtomicLong publishedFiles = new AtomicLong();
+    private final AtomicLong resumedFiles = new AtomicLong();
+
+    /**
+     * Temporary name under which a component is restored until its SSTable set is published
+     *
+     * @param localFile     final name
+     * @return
+     */
+    static File getTempFile(File localFile) {
+        return new File(localFile.getParentFile(), TEMP_FILE_PREFIX + localFile.getName() + TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * The components of an SSTable set in the order they are made visible: Data.db and TOC.txt last,
+     * so that an SSTable set that has them has all of its other components too
+     *
+     * @param items
+     * @return
+     */
+    static List<NFSObjRestoreItem> getPublishOrder(List<NFSObjRestoreItem> items) {
+        List<NFSObjRestoreItem> orderedItems = new ArrayList<>(items);
+
+        orderedItems.sort((item1, item2) -> Integer.compare(getPublishRank(item1), getPublishRank(item2)));
+
+        return orderedItems;
+    }
+
+    private static int getPublishRank(NFSObjRestoreItem item) {
+        String componentName = item.getComponentName();
+
+        if ( TOC_COMPONENT.equals(componentName) ) {
+            return 2;
+        }
+        else if ( DATA_COMPONENT.equals(componentName) ) {
+            return 1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * A component was found restored under its temporary name by an earlier run
+     */
+    void recordResumed() {
+        resumedFiles.incrementAndGet();
+    }
+
+    /**
+     * Rename the restored components of an SSTable set to their final names
+     *
+     * @param unit
+     * @param restoredFiles     the components restored under their temporary names (the other ones are
+     *                          already in place under their final names)
+     * @param liveTarget        whether the final names are in a live data directory
+     * @param durabilityPolicy
+     * @param restoreJournal
+     * @param verbose
+     * @throws IOException      also if a final name is taken by a file that this restore didn't write
+     */
+    void publish(NFSObjRestoreUnit unit,
+                 List<NFSObjDurabilityPolicy.Completion> restoredFiles,
+                 boolean liveTarget,
+                 NFSObjDurabilityPolicy durabilityPolicy,
+                 NFSObjRestoreJournal restoreJournal,
+                 boolean verbose) throws IOException {
+        if ( restoredFiles.isEmpty() ) {
+            return;
+        }
+
+        Map<File, NFSObjDurabilityPolicy.Completion> restoredFileMap = new HashMap<>();
+        for ( NFSObjDurabilityPolicy.Completion completion : restoredFiles ) {
+            restoredFileMap.put(completion.localFile.getAbsoluteFile(), completion);
+        }
+
+        List<NFSObjDurabilityPolicy.Completion> publishedCompletions = new ArrayList<>();
+
+        for ( NFSObjRestoreItem item : getPublishOrder(unit.getItems()) ) {
+            File localFile = item.getLocalFile().getAbsoluteFile();
+
+            NFSObjDurabilityPolicy.Completion completion = restoredFileMap.get(getTempFile(localFile));
+            if (completion == null) {
+                continue;
+            }
+
+            Path tempPath = completion.localFile.toPath();
+            Path finalPath = localFile.toPath();
+
+            try {
+                Files.createLink(finalPath, tempPath);
+            }
+            catch (FileAlreadyExistsException faee) {
+                // Linked by an earlier run that didn't get to journal it
+                if ( !Files.isSameFile(finalPath, tempPath) ) {
+                    if ( liveTarget && !completion.isResumed() && !restoreJournal.isJournaled(localFile) ) {
+                        throw new IOException("\"" + localFile + "\" already exists, and was not written by this restore");
+                    }
+
+                    Files.move(tempPath, finalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+
+            completion.published(localFile);
+            publishedCompletions.add(completion);
+
+            if (verbose) {
+                System.out.format("     \"%s\" published\n", localFile);
+            }
+        }
+
+        // The renames are made durable as well, before they are journaled
+        durabilityPolicy.filesPublished(publishedCompletions);
+
+        for ( NFSObjDurabilityPolicy.Completion completion : publishedCompletions ) {
+            restoreJournal.recordPublished(completion.localFile, completion.getFile());
+        }
+
+        // Only once the final names are journaled: until then, a rerun finds the temporary names and publishes them again
+        for ( NFSObjDurabilityPolicy.Completion completion : publishedCompletions ) {
+            Files.deleteIfExists(completion.localFile.toPath());
+        }
+
+        publishedSets.incrementAndGet();
+        publishedFiles.addAndGet(publishedCompletions.size());
+    }
+
+    long getPublishedSets() {
+        return publishedSets.get();
+    }
+
+    void printStats() {
+        System.out.format("  Atomic publish: %d SSTable sets (%d files) renamed from their temporary names once complete, " +
+                "%d files restored under their temporary names by an earlier run.\n",
+            publishedSets.get(),
+            publishedFiles.get(),
+            resumedFiles.get());
+    }
+}
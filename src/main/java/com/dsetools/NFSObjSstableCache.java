@@ -0,0 +1,398 @@
+package com.dsetools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Local cache of restored SSTable files, shared by all runs that restore from the same NFS backup location
+ * ("sstable_cache_dir").
+ *
+ * An OpsCenter backup file name starts with a uniquifier of its SSTable, so a backup file with the same
+ * name always has the same content, in whichever backup (and for whichever restore target) it shows up.
+ * The cache is keyed by that name:
+ *   &lt;sstable_cache_dir&gt;/&lt;uniquifier&gt;/&lt;sstable_name&gt;     e.g. 3a6979cf.../mc-1-big-Data.db
+ *
+ * A planned file found in the cache is put in place by a hard link to the cache entry, or by a local
+ * copy when the cache is on another filesystem than the target; only cache misses are copied from NFS.
+ * A file copied from NFS is added to the cache the same way (a hard link costs no space and no I/O)
+ * once it is verified.
+ *
+ * The cache is capped at "sstable_cache_max_mb": the least recently used entries are evicted first.
+ * Evicting an entry only removes the cache's link to it; a restored file linked to it stays intact.
+ * The LRU order is kept across runs in an index file:
+ *   &lt;sstable_cache_dir&gt;/.cache.index       one key per line, least recently used first
+ */
+class NFSObjSstableCache {
+
+    static final String INDEX_FILE = ".cache.index";
+
+    // Suffix of a file that is being put in place (in the cache or in a target directory)
+    static final String TMP_FILE_SUFFIX = ".cache.tmp";
+
+    private final Path cacheDir;
+    private final long maxBytes;
+
+    // Key (<uniquifier>/<sstable_name>) -> size, in access order: the least recently used entry first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    // Target directory -> whether files can be hard linked between it and the cache (same filesystem)
+    private final ConcurrentHashMap<Path, Boolean> linkableDirs = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitFiles = new AtomicLong();
+    private final AtomicLong hitBytes = new AtomicLong();
+    private final AtomicLong linkedFiles = new AtomicLong();
+    private final AtomicLong missedFiles = new AtomicLong();
+    private final AtomicLong addedFiles = new AtomicLong();
+    private final AtomicLong addedBytes = new AtomicLong();
+    private long evictedFiles = 0;
+    private long evictedBytes = 0;
+
+    private NFSObjSstableCache(Path cache_dir, long max_bytes) {
+        this.cacheDir = cache_dir;
+        this.maxBytes = max_bytes;
+    }
+
+    /**
+     * Open the configured cache
+     *
+     * @param configProps
+     * @return null if no cache is configured
+     * @throws IOException
+     */
+    static NFSObjSstableCache open(Properties configProps) throws IOException {
+        String cacheDirStr = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_SSTABLE_CACHE_DIR);
+        if ( (cacheDirStr == null) || cacheDirStr.isEmpty() ) {
+            return null;
+        }
+
+        long maxMb = DseOpscNFSRestoreUtils.getConfigNumber(configProps,
+            DseOpscNFSRestoreUtils.CFG_KEY_SSTABLE_CACHE_MAX_MB, DseOpscNFSRestoreUtils.DEFAULT_SSTABLE_CACHE_MAX_MB);
+
+        NFSObjSstableCache sstableCache =
+            new NFSObjSstableCache(Paths.get(cacheDirStr).toAbsolutePath().normalize(), maxMb * 1024 * 1024);
+        sstableCache.load();
+
+        return sstableCache;
+    }
+
+    /**
+     * Read the cache directory, in the LRU order of the index file. Entries that are not in the index
+     * (e.g. added by a run that didn't complete) are the least recently used ones, oldest file first.
+     *
+     * @throws IOException
+     */
+    private void load() throws IOException {
+        Files.createDirectories(cacheDir);
+
+        final Map<String, Long> cachedFiles = new LinkedHashMap<>();
+        final Map<String, Long> cachedMtimes = new LinkedHashMap<>();
+
+        try ( DirectoryStream<Path> uniquifierDirs = Files.newDirectoryStream(cacheDir) ) {
+            for ( Path uniquifierDir : uniquifierDirs ) {
+                if ( !Files.isDirectory(uniquifierDir) ) {
+                    continue;
+                }
+
+                try ( DirectoryStream<Path> entryFiles = Files.newDirectoryStream(uniquifierDir) ) {
+                    for ( Path entryFile : entryFiles ) {
+                        String fileName = entryFile.getFileName().toString();
+
+                        // Left behind by an interrupted run
+                        if ( fileName.endsWith(TMP_FILE_SUFFIX) ) {
+                            Files.deleteIfExists(entryFile);
+                            continue;
+                        }
+
+                        String key = uniquifierDir.getFileName() + "/" + fileName;
+                        cachedFiles.put(key, Files.size(entryFile));
+                        cachedMtimes.put(key, Files.getLastModifiedTime(entryFile).toMillis());
+                    }
+                }
+            }
+        }
+
+        List<String> indexedKeys = new ArrayList<>();
+        Path indexPath = cacheDir.resolve(INDEX_FILE);
+
+        if ( Files.exists(indexPath) ) {
+            try ( BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8) ) {
+                String line;
+                while ( (line = reader.readLine()) != null ) {
+                    if ( cachedFiles.containsKey(line) ) {
+                        indexedKeys.add(line);
+                    }
+                }
+            }
+        }
+
+        List<String> unindexedKeys = new ArrayList<>(cachedFiles.keySet());
+        unindexedKeys.removeAll(indexedKeys);
+        Collections.sort(unindexedKeys, new Comparator<String>() {
+            @Override
+            public int compare(String key1, String key2) {
+                return Long.compare(cachedMtimes.get(key1), cachedMtimes.get(key2));
+            }
+        });
+
+        synchronized (this) {
+            for ( String key : unindexedKeys ) {
+                putEntry(key, cachedFiles.get(key));
+            }
+            for ( String key : indexedKeys ) {
+                putEntry(key, cachedFiles.get(key));
+            }
+
+            // E.g. after "sstable_cache_max_mb" was lowered
+            evict();
+        }
+    }
+
+    private void putEntry(String key, long size) {
+        Long oldSize = entries.put(key, size);
+        totalBytes += size - ( (oldSize == null) ? 0 : oldSize );
+    }
+
+    /**
+     * @param item
+     * @return null if the backup file can't be cached (no uniquifier)
+     */
+    private static String getKey(NFSObjRestoreItem item) {
+        String uniquifier = item.getUniquifier();
+        return (uniquifier == null) ? null : (uniquifier + "/" + item.getSstableName());
+    }
+
+    /**
+     * Put a planned file in place from the cache, if it is cached
+     *
+     * @param item
+     * @param srcSize       size of the NFS backup file
+     * @param srcMtime      last modified time of the NFS backup file (kept by the restored file)
+     * @return true if the file was restored from the cache; false on a cache miss
+     * @throws IOException
+     */
+    boolean restore(NFSObjRestoreItem item, long srcSize, long srcMtime) throws IOException {
+        String key = getKey(item);
+        if (key == null) {
+            return false;
+        }
+
+        synchronized (this) {
+            Long cachedSize = entries.get(key);
+
+            if ( (cachedSize == null) || (cachedSize != srcSize) ) {
+                // Can't be the same file; replaced by the NFS copy
+                if (cachedSize != null) {
+                    removeEntry(key);
+                }
+
+                missedFiles.incrementAndGet();
+                return false;
+            }
+        }
+
+        Path localPath = item.getLocalFile().toPath();
+
+        try {
+            if ( place(cacheDir.resolve(key), localPath, localPath.getParent()) ) {
+                linkedFiles.incrementAndGet();
+            }
+        }
+        catch (NoSuchFileException nsfe) {
+            // Evicted by another download thread in the meantime
+            missedFiles.incrementAndGet();
+            return false;
+        }
+
+        // A hard link shares the last modified time of the cache entry, which is that of the same backup file
+        if ( Files.getLastModifiedTime(localPath).toMillis() != srcMtime ) {
+            Files.setLastModifiedTime(localPath, FileTime.fromMillis(srcMtime));
+        }
+
+        hitFiles.incrementAndGet();
+        hitBytes.addAndGet(srcSize);
+
+        return true;
+    }
+
+    /**
+     * Add a file that was copied from NFS (and verified) to the cache. A failure only means the
+     * file is not cached; it is reported and doesn't fail the restore.
+     *
+     * @param item
+     * @param srcSize
+     */
+    void add(NFSObjRestoreItem item, long srcSize) {
+        String key = getKey(item);
+        if ( (key == null) || (srcSize > maxBytes) ) {
+            return;
+        }
+
+        synchronized (this) {
+            if ( entries.containsKey(key) ) {
+                return;
+            }
+        }
+
+        Path localPath = item.getLocalFile().toPath();
+
+        try {
+            place(localPath, cacheDir.resolve(key), localPath.getParent());
+        }
+        catch (IOException ioe) {
+            System.out.format("WARN: Failed to add \"%s\" to the local SSTable cache (%s).\n", localPath, ioe.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            putEntry(key, srcSize);
+            evict();
+        }
+
+        addedFiles.incrementAndGet();
+        addedBytes.addAndGet(srcSize);
+    }
+
+    /**
+     * Put a file in place under a temporary name, then rename it to the target: a hard link when
+     * possible, a copy otherwise. An existing target file is replaced (not overwritten).
+     *
+     * @param srcPath
+     * @param dstPath
+     * @param targetDir     the restore target directory (the cache is on one side, this is on the other)
+     * @return true if hard linked; false if copied
+     * @throws IOException
+     */
+    private boolean place(Path srcPath, Path dstPath, Path targetDir) throws IOException {
+        Path tmpPath = dstPath.resolveSibling(dstPath.getFileName() + TMP_FILE_SUFFIX);
+
+        Files.createDirectories(dstPath.getParent());
+        Files.deleteIfExists(tmpPath);
+
+        boolean linked = false;
+
+        if ( linkableDirs.getOrDefault(targetDir, Boolean.TRUE) ) {
+            try {
+                Files.createLink(tmpPath, srcPath);
+                linked = true;
+            }
+            catch (NoSuchFileException nsfe) {
+                throw nsfe;
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                // Typically on another filesystem than the cache; always copied from now on
+                linkableDirs.put(targetDir, Boolean.FALSE);
+            }
+        }
+
+        if (!linked) {
+            Files.copy(srcPath, tmpPath, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+
+        Files.move(tmpPath, dstPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return linked;
+    }
+
+    /**
+     * Evict the least recently used entries until the cache is within its size cap (caller holds the lock)
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> entryIterator = entries.entrySet().iterator();
+
+        while ( (totalBytes > maxBytes) && entryIterator.hasNext() ) {
+            Map.Entry<String, Long> entry = entryIterator.next();
+            entryIterator.remove();
+
+            totalBytes -= entry.getValue();
+            deleteEntryFile(entry.getKey());
+
+            evictedFiles++;
+            evictedBytes += entry.getValue();
+        }
+    }
+
+    private void removeEntry(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            deleteEntryFile(key);
+        }
+    }
+
+    private void deleteEntryFile(String key) {
+        Path entryPath = cacheDir.resolve(key);
+
+        try {
+            Files.deleteIfExists(entryPath);
+
+            // The last component of an SSTable removes its uniquifier directory
+            try {
+                Files.deleteIfExists(entryPath.getParent());
+            }
+            catch (DirectoryNotEmptyException dne) {
+            }
+        }
+        catch (IOException ioe) {
+            System.out.format("WARN: Failed to remove \"%s\" from the local SSTable cache (%s).\n", entryPath, ioe.getMessage());
+        }
+    }
+
+    /**
+     * Write the LRU order to the index file
+     *
+     * @throws IOException
+     */
+    synchronized void close() throws IOException {
+        Path indexPath = cacheDir.resolve(INDEX_FILE);
+        Path tmpIndexPath = Paths.get(indexPath + ".tmp");
+
+        try ( BufferedWriter writer = Files.newBufferedWriter(tmpIndexPath, StandardCharsets.UTF_8) ) {
+            for ( String key : entries.keySet() ) {
+                writer.write(key);
+                writer.newLine();
+            }
+        }
+
+        Files.move(tmpIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    synchronized void printStats() {
+        System.out.format("  Local SSTable cache \"%s\": %d hits (%d bytes, %d hard linked, %d copied), %d misses, " +
+                "%d files (%d bytes) added, %d files (%d bytes) evicted; %d files (%d of %d MB) cached.\n",
+            cacheDir,
+            hitFiles.get(),
+            hitBytes.get(),
+            linkedFiles.get(),
+            hitFiles.get() - linkedFiles.get(),
+            missedFiles.get(),
+            addedFiles.get(),
+            addedBytes.get(),
+            evictedFiles,
+            evictedBytes,
+            entries.size(),
+            totalBytes / (1024 * 1024),
+            maxBytes / (1024 * 1024));
+    }
+}
@@ -0,0 +1,465 @@
+package com.dsetools;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Per-table completion ("table_complete_hook"): as soon as all SSTable sets of a table are restored,
+ * the table can be brought online while the other tables are still being restored, e.g.:
+ *  - a shell command, with "{keyspace}", "{table}", "{host}" and "{dir}" (the local directories the
+ *    table is restored into, separated by spaces) replaced by shell-quoted values, e.g.
+ *    "nodetool refresh {keyspace} {table}";
+ *  - "jmx", "jmx:&lt;host&gt;:&lt;port&gt;" or "jmx:local": a StorageService.loadNewSSTables(keyspace, table)
+ *    call on the DSE node (localhost:7199 by default), or on the MBean server of this JVM with
+ *    "jmx:local" (e.g. a stand-in StorageService MBean).
+ *
+ * The hooks run one at a time on a thread of their own, so that they never hold up the download
+ * threads. The tables that complete while a hook runs are handled as one batch afterwards, over the
+ * same JMX connection, and a table is refreshed once even if it completed for several hosts.
+ *
+ * A hook command that runs longer than "table_complete_hook_timeout_sec" is killed, and the hooks that
+ * haven't finished that long after the download is over are given up; both count as failed hooks.
+ *
+ * A table that has a failed SSTable set doesn't complete, so its hook doesn't run.
+ */
+class NFSObjTableCompletion {
+
+    static final String HOOK_JMX = "jmx";
+    static final String HOOK_JMX_LOCAL = "local";
+
+    private static final String DEFAULT_JMX_HOST = "localhost";
+    private static final int DEFAULT_JMX_PORT = 7199;
+
+    private static final String STORAGE_SERVICE_MBEAN = "org.apache.cassandra.db:type=StorageService";
+    private static final String LOAD_NEW_SSTABLES_OP = "loadNewSSTables";
+
+    private final String hook;
+    private final boolean jmxHook;
+    private final String jmxHost;
+    private final int jmxPort;
+    private final String jmxUser;
+    private final String jmxPassword;
+    private final long hookTimeoutSec;
+
+    // Table ("<host>:<keyspace>:<table>") -> SSTable sets not restored yet, and the tables with a failed set
+    private final Map<String, Integer> remainingSets = new HashMap<>();
+    private final Set<String> failedTables = new LinkedHashSet<>();
+    private final Map<String, Set<File>> tableDirs = new HashMap<>();
+
+    private final LinkedBlockingQueue<NFSObjRestoreUnit> completedTables = new LinkedBlockingQueue<>();
+    private final ExecutorService hookExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        // A hook that never returns (e.g. a hung JMX call) doesn't keep the utility from exiting
+        Thread hookThread = new Thread(runnable, "table-complete-hook");
+        hookThread.setDaemon(true);
+        return hookThread;
+    });
+
+    // Tables whose hook is queued or running, and whether close() gave up on them
+    private final Set<String> pendingTables = new LinkedHashSet<>();
+    private boolean closed = false;
+
+    // Only used by the hook thread
+    private JMXConnector jmxConnector;
+    private MBeanServerConnection jmxConnection;
+
+    private int completedTableNum = 0;
+    private int succeededHookNum = 0;
+    private int failedHookNum = 0;
+    private int batchNum = 0;
+
+    private NFSObjTableCompletion(String table_complete_hook, Properties configProps) {
+        this.hook = table_complete_hook;
+        this.jmxHook = isJmxHook(hook);
+        this.jmxUser = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_JMX_USER);
+        this.jmxPassword = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_JMX_PASSWORD);
+        this.hookTimeoutSec = DseOpscNFSRestoreUtils.getConfigNumber(configProps,
+            DseOpscNFSRestoreUtils.CFG_KEY_TABLE_COMPLETE_HOOK_TIMEOUT_SEC,
+            DseOpscNFSRestoreUtils.DEFAULT_TABLE_COMPLETE_HOOK_TIMEOUT_SEC);
+
+        String[] jmxTarget = hook.split(":");
+        if ( jmxHook && (jmxTarget.length == 3) ) {
+            this.jmxHost = jmxTarget[1];
+            this.jmxPort = Integer.parseInt(jmxTarget[2]);
+        }
+        else {
+            this.jmxHost = (jmxHook && (jmxTarget.length == 2)) ? jmxTarget[1] : DEFAULT_JMX_HOST;
+            this.jmxPort = DEFAULT_JMX_PORT;
+        }
+    }
+
+    /**
+     * @param configProps
+     * @return null if no table completion hook is configured
+     */
+    static NFSObjTableCompletion create(Properties configProps) {
+        String hook = configProps.getProperty(DseOpscNFSRestoreUtils.CFG_KEY_TABLE_COMPLETE_HOOK);
+
+        if ( (hook == null) || hook.trim().isEmpty() ) {
+            return null;
+        }
+
+        return new NFSObjTableCompletion(hook.trim(), configProps);
+    }
+
+    private static boolean isJmxHook(String hook) {
+        return HOOK_JMX.equalsIgnoreCase(hook) || hook.toLowerCase().startsWith(HOOK_JMX + ":");
+    }
+
+    /**
+     * Whether a "table_complete_hook" value is valid: any shell command, or "jmx", "jmx:local" or
+     * "jmx:&lt;host&gt;:&lt;port&gt;"
+     *
+     * @param hook
+     * @return
+     */
+    static boolean isValidHook(String hook) {
+        String trimmedHook = hook.trim();
+
+        if ( !isJmxHook(trimmedHook) ) {
+            return true;
+        }
+
+        String[] jmxTarget = trimmedHook.split(":");
+        if (jmxTarget.length == 1) {
+            return true;
+        }
+        else if (jmxTarget.length == 2) {
+            return HOOK_JMX_LOCAL.equalsIgnoreCase(jmxTarget[1]);
+        }
+        else if (jmxTarget.length == 3) {
+            try {
+                return !jmxTarget[1].isEmpty() && (Integer.parseInt(jmxTarget[2]) > 0);
+            }
+            catch (NumberFormatException nfe) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    boolean isJmx() {
+        return jmxHook;
+    }
+
+    private static String getTableKey(NFSObjRestoreUnit unit) {
+        return unit.getHostId() + ":" + unit.getKeyspaceName() + ":" + unit.getTableName();
+    }
+
+    /**
+     * Count the SSTable sets of every table of the plan; to be called before the download starts
+     *
+     * @param restoreUnits
+     */
+    synchronized void addUnits(List<NFSObjRestoreUnit> restoreUnits) {
+        for ( NFSObjRestoreUnit restoreUnit : restoreUnits ) {
+            remainingSets.merge(getTableKey(restoreUnit), 1, Integer::sum);
+            // With disk striping, the SSTable sets of a table are spread over several directories
+            tableDirs.computeIfAbsent(getTableKey(restoreUnit), tableKey -> new LinkedHashSet<>())
+                .add(restoreUnit.getItems().get(0).getLocalFile().getAbsoluteFile().getParentFile());
+        }
+    }
+
+    /**
+     * An SSTable set is done; the hook of its table is queued when this was the last set of the table
+     *
+     * @param restoreUnit
+     * @param restored      whether all files of the set are restored (and in place)
+     */
+    void unitDone(NFSObjRestoreUnit restoreUnit, boolean restored) {
+        String tableKey = getTableKey(restoreUnit);
+        boolean tableCompleted;
+
+        synchronized (this) {
+            if (!restored) {
+                failedTables.add(tableKey);
+            }
+
+            int remaining = remainingSets.merge(tableKey, -1, Integer::sum);
+            tableCompleted = (remaining == 0) && !failedTables.contains(tableKey);
+
+            if (tableCompleted) {
+                completedTableNum++;
+                pendingTables.add(tableKey);
+            }
+        }
+
+        if (tableCompleted) {
+            completedTables.add(restoreUnit);
+            hookExecutor.submit(this::runHooks);
+        }
+    }
+
+    /**
+     * Run the hooks of all tables completed so far, as one batch
+     */
+    private void runHooks() {
+        List<NFSObjRestoreUnit> batch = new ArrayList<>();
+        completedTables.drainTo(batch);
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        batchNum++;
+
+        if (jmxHook) {
+            // loadNewSSTables() picks up the new SSTables of all hosts restored into the table at once
+            Map<String, NFSObjRestoreUnit> tables = new LinkedHashMap<>();
+            for ( NFSObjRestoreUnit restoreUnit : batch ) {
+                tables.putIfAbsent(restoreUnit.getKeyspaceName() + "." + restoreUnit.getTableName(), restoreUnit);
+            }
+
+            for ( NFSObjRestoreUnit restoreUnit : tables.values() ) {
+                runJmxHook(restoreUnit.getKeyspaceName(), restoreUnit.getTableName());
+            }
+        }
+        else {
+            for ( NFSObjRestoreUnit restoreUnit : batch ) {
+                runCommandHook(restoreUnit);
+            }
+        }
+    }
+
+    /**
+     * A hook is over; its result doesn't count once close() gave up on it
+     *
+     * @param tableKeys     the tables the hook ran for
+     * @param succeeded
+     * @return false if close() gave up on the hook
+     */
+    private synchronized boolean hookDone(Set<String> tableKeys, boolean succeeded) {
+        if (closed) {
+            return false;
+        }
+
+        pendingTables.removeAll(tableKeys);
+
+        if (succeeded) {
+            succeededHookNum++;
+        }
+        else {
+            failedHookNum++;
+        }
+
+        return true;
+    }
+
+    private void runJmxHook(String ksName, String tblName) {
+        // Also completes the table for the other hosts restored into it
+        Set<String> tableKeys = new LinkedHashSet<>();
+        synchronized (this) {
+            for ( String tableKey : pendingTables ) {
+                if ( tableKey.endsWith(":" + ksName + ":" + tblName) ) {
+                    tableKeys.add(tableKey);
+                }
+            }
+        }
+
+        try {
+            if (jmxConnection == null) {
+                connectJmx();
+            }
+
+            jmxConnection.invoke(new ObjectName(STORAGE_SERVICE_MBEAN), LOAD_NEW_SSTABLES_OP,
+                new Object[] { ksName, tblName },
+                new String[] { String.class.getName(), String.class.getName() });
+
+            if ( hookDone(tableKeys, true) ) {
+                System.out.format("   - Table %s.%s restored, new SSTables loaded (JMX %s).\n",
+                    ksName, tblName, LOAD_NEW_SSTABLES_OP);
+            }
+        }
+        catch (Exception e) {
+            if ( hookDone(tableKeys, false) ) {
+                System.out.format("WARN: Failed to load the new SSTables of the restored table %s.%s through JMX (%s).\n",
+                    ksName, tblName, e.getMessage());
+            }
+
+            // Reconnected for the next table
+            closeJmx();
+        }
+    }
+
+    private void connectJmx() throws IOException {
+        if ( HOOK_JMX_LOCAL.equalsIgnoreCase(jmxHost) ) {
+            jmxConnection = ManagementFactory.getPlatformMBeanServer();
+            return;
+        }
+
+        JMXServiceURL jmxUrl =
+            new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + jmxHost + ":" + jmxPort + "/jmxrmi");
+
+        Map<String, Object> jmxEnv = new HashMap<>();
+        if ( (jmxUser != null) && !jmxUser.isEmpty() ) {
+            jmxEnv.put(JMXConnector.CREDENTIALS, new String[] { jmxUser, jmxPassword });
+        }
+
+        jmxConnector = JMXConnectorFactory.connect(jmxUrl, jmxEnv);
+        jmxConnection = jmxConnector.getMBeanServerConnection();
+    }
+
+    private void closeJmx() {
+        if (jmxConnector != null) {
+            try {
+                jmxConnector.close();
+            }
+            catch (IOException ioe) {
+            }
+        }
+
+        jmxConnector = null;
+        jmxConnection = null;
+    }
+
+    /**
+     * Quote a value for "sh -c", so that it is passed as one word whatever characters it has
+     *
+     * @param value
+     * @return
+     */
+    static String shellQuote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * @param restoreUnit
+     * @return the hook command of a completed table, with its placeholders replaced
+     */
+    String getHookCommand(NFSObjRestoreUnit restoreUnit) {
+        List<String> quotedDirs = new ArrayList<>();
+        for ( File tableDir : tableDirs.get(getTableKey(restoreUnit)) ) {
+            quotedDirs.add(shellQuote(tableDir.getPath()));
+        }
+
+        return hook
+            .replace("{keyspace}", shellQuote(restoreUnit.getKeyspaceName()))
+            .replace("{table}", shellQuote(restoreUnit.getTableName()))
+            .replace("{host}", shellQuote(restoreUnit.getHostId()))
+            .replace("{dir}", String.join(" ", quotedDirs));
+    }
+
+    private void runCommandHook(NFSObjRestoreUnit restoreUnit) {
+        String tableName = restoreUnit.getKeyspaceName() + "." + restoreUnit.getTableName();
+        Set<String> tableKeys = Collections.singleton(getTableKey(restoreUnit));
+        String command = getHookCommand(restoreUnit);
+
+        Process process = null;
+        try {
+            process = new ProcessBuilder("sh", "-c", command).inheritIO().start();
+
+            boolean finished;
+            if (hookTimeoutSec > 0) {
+                finished = process.waitFor(hookTimeoutSec, TimeUnit.SECONDS);
+            }
+            else {
+                process.waitFor();
+                finished = true;
+            }
+
+            if (!finished) {
+                process.destroyForcibly();
+
+                if ( hookDone(tableKeys, false) ) {
+                    System.out.format("WARN: Completion hook of the restored table %s didn't finish within %d seconds, killed (%s).\n",
+                        tableName, hookTimeoutSec, command);
+                }
+            }
+            else if (process.exitValue() == 0) {
+                if ( hookDone(tableKeys, true) ) {
+                    System.out.format("   - Table %s restored, completion hook done (%s).\n", tableName, command);
+                }
+            }
+            else {
+                if ( hookDone(tableKeys, false) ) {
+                    System.out.format("WARN: Completion hook of the restored table %s exited with %d (%s).\n",
+                        tableName, process.exitValue(), command);
+                }
+            }
+        }
+        catch (IOException ioe) {
+            if ( hookDone(tableKeys, false) ) {
+                System.out.format("WARN: Failed to run the completion hook of the restored table %s (%s).\n",
+                    tableName, ioe.getMessage());
+            }
+        }
+        catch (InterruptedException ie) {
+            process.destroyForcibly();
+            hookDone(tableKeys, false);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for the queued hooks to finish, for up to "table_complete_hook_timeout_sec"; the hooks that
+     * are not finished by then are given up and count as failed
+     *
+     * @throws InterruptedException
+     */
+    void close() throws InterruptedException {
+        hookExecutor.shutdown();
+
+        try {
+            boolean terminated;
+            if (hookTimeoutSec > 0) {
+                terminated = hookExecutor.awaitTermination(hookTimeoutSec, TimeUnit.SECONDS);
+            }
+            else {
+                terminated = hookExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+
+            if (!terminated) {
+                List<String> unfinishedTables;
+                synchronized (this) {
+                    closed = true;
+                    unfinishedTables = new ArrayList<>(pendingTables);
+                    failedHookNum += unfinishedTables.size();
+                }
+
+                for ( String tableKey : unfinishedTables ) {
+                    System.out.format("WARN: Completion hook of the restored table %s didn't finish within %d seconds " +
+                        "after the download, given up.\n", tableKey, hookTimeoutSec);
+                }
+
+                hookExecutor.shutdownNow();
+            }
+        }
+        finally {
+            closeJmx();
+        }
+    }
+
+    synchronized void printStats() {
+        System.out.format("  Table completion hooks (%s): %d of %d tables completed, %d hooks succeeded, %d failed (%d batches).\n",
+            jmxHook ? (HOOK_JMX + " " + LOAD_NEW_SSTABLES_OP) : "command",
+            completedTableNum,
+            remainingSets.size(),
+            succeededHookNum,
+            failedHookNum,
+            batchNum);
+
+        for ( String tableKey : failedTables ) {
+            System.out.format("    %s: not completely restored, its completion hook didn't run.\n", tableKey);
+        }
+    }
+}
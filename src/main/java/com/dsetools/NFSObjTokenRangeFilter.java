@@ -0,0 +1,486 @@
+package com.dsetools;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Token range filter ("-tr" option) for partial restores, e.g. only the token ranges that a
+ * replacement node owns.
+ *
+ * Before any Data.db file is copied, the small metadata components of every planned SSTable set
+ * are read from NFS:
+ *  - Summary.db ends with the first and the last partition key of the SSTable;
+ *  - Statistics.db (validation metadata) has the partitioner, which turns the keys into tokens.
+ * An SSTable set whose [first token, last token] doesn't overlap any of the token ranges is not
+ * restored. A few KB of metadata are read per SSTable set, instead of copying all of its files.
+ *
+ * Token ranges are "&lt;start&gt;:&lt;end&gt;" pairs with the Cassandra semantics (start, end]: a range
+ * whose end is not above its start wraps around the ring (and start = end is the whole ring).
+ * Murmur3Partitioner and RandomPartitioner tokens are supported. An SSTable set whose metadata can't
+ * be read (e.g. no Summary.db in newer SSTable formats, or another partitioner) is always restored.
+ */
+class NFSObjTokenRangeFilter {
+
+    static final String PARTITIONER_MURMUR3 = "org.apache.cassandra.dht.Murmur3Partitioner";
+    static final String PARTITIONER_RANDOM = "org.apache.cassandra.dht.RandomPartitioner";
+
+    private static final String SUMMARY_COMPONENT = "Summary.db";
+    private static final String STATISTICS_COMPONENT = "Statistics.db";
+
+    // Metadata type of the validation metadata (partitioner, bloom filter FP chance) in Statistics.db
+    private static final int VALIDATION_METADATA_TYPE = 0;
+    private static final int MAX_METADATA_TYPES = 16;
+
+    // SSTable format versions that have the sampling level in Summary.db ("ka" = Cassandra 2.1 and later),
+    // and the oldest version this filter reads ("ja" = Cassandra 2.0)
+    private static final String SAMPLING_LEVEL_VERSION = "ka";
+    private static final String MIN_SUPPORTED_VERSION = "ja";
+
+    /**
+     * One token range (start, end]
+     */
+    static class TokenRange {
+        final BigInteger start;
+        final BigInteger end;
+
+        TokenRange(BigInteger start, BigInteger end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Whether any token in [firstToken, lastToken] is in the range
+         *
+         * @param firstToken
+         * @param lastToken
+         * @return
+         */
+        boolean overlaps(BigInteger firstToken, BigInteger lastToken) {
+            int startEndCmp = start.compareTo(end);
+
+            if (startEndCmp == 0) {
+                return true;
+            }
+            else if (startEndCmp < 0) {
+                return (firstToken.compareTo(end) <= 0) && (lastToken.compareTo(start) > 0);
+            }
+            else {
+                // Wraps around: (start, max token] and [min token, end]
+                return (lastToken.compareTo(start) > 0) || (firstToken.compareTo(end) <= 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(" + start + ", " + end + "]";
+        }
+    }
+
+    private final List<TokenRange> tokenRanges;
+
+    private final AtomicLong keptSets = new AtomicLong();
+    private final AtomicLong prunedSets = new AtomicLong();
+    private final AtomicLong prunedFiles = new AtomicLong();
+    private final AtomicLong prunedBytes = new AtomicLong();
+    private final AtomicLong unknownSets = new AtomicLong();
+
+    NFSObjTokenRangeFilter(List<TokenRange> token_ranges) {
+        this.tokenRanges = token_ranges;
+    }
+
+    /**
+     * Parse the "-tr" option value: comma-separated "&lt;start&gt;:&lt;end&gt;" token ranges
+     *
+     * @param tokenRangesStr
+     * @return
+     * @throws IllegalArgumentException     if the value is not a valid list of token ranges
+     */
+    static NFSObjTokenRangeFilter parse(String tokenRangesStr) {
+        List<TokenRange> tokenRanges = new ArrayList<>();
+
+        for ( String tokenRangeStr : tokenRangesStr.split(",") ) {
+            if ( tokenRangeStr.trim().isEmpty() ) {
+                continue;
+            }
+
+            String[] bounds = tokenRangeStr.trim().split(":");
+            if (bounds.length != 2) {
+                throw new IllegalArgumentException("\"" + tokenRangeStr.trim() + "\" is not a <start>:<end> token range");
+            }
+
+            try {
+                tokenRanges.add(new TokenRange(new BigInteger(bounds[0].trim()), new BigInteger(bounds[1].trim())));
+            }
+            catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("\"" + tokenRangeStr.trim() + "\" has a token that is not an integer");
+            }
+        }
+
+        if ( tokenRanges.isEmpty() ) {
+            throw new IllegalArgumentException("no token range");
+        }
+
+        return new NFSObjTokenRangeFilter(tokenRanges);
+    }
+
+    List<TokenRange> getTokenRanges() {
+        return tokenRanges;
+    }
+
+    /**
+     * Drop the planned SSTable sets that don't overlap the token ranges
+     *
+     * @param restorePlanner
+     * @param threadNum         number of SSTable sets whose metadata is read from NFS in parallel
+     * @return the plan to download
+     */
+    NFSObjRestorePlanner filter(NFSObjRestorePlanner restorePlanner, int threadNum) {
+        List<NFSObjRestoreUnit> restoreUnits = restorePlanner.getUnitsLargestFirst();
+
+        // The metadata reads are small, so they are bound by the NFS latency rather than the bandwidth
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadNum));
+        List<Future<Boolean>> overlapFutures = new ArrayList<>();
+
+        try {
+            for ( NFSObjRestoreUnit restoreUnit : restoreUnits ) {
+                overlapFutures.add(executor.submit(() -> overlaps(restoreUnit)));
+            }
+
+            NFSObjRestorePlanner filteredPlanner = new NFSObjRestorePlanner();
+
+            for (int i = 0; i < restoreUnits.size(); i++) {
+                NFSObjRestoreUnit restoreUnit = restoreUnits.get(i);
+
+                boolean overlapping;
+                try {
+                    overlapping = overlapFutures.get(i).get();
+                }
+                catch (ExecutionException | InterruptedException e) {
+                    overlapping = true;
+                    unknownSets.incrementAndGet();
+                }
+
+                if (!overlapping) {
+                    prunedSets.incrementAndGet();
+                    prunedFiles.addAndGet(restoreUnit.getItems().size());
+                    prunedBytes.addAndGet(restoreUnit.getTotalBytes());
+                    continue;
+                }
+
+                keptSets.incrementAndGet();
+
+                for ( NFSObjRestoreItem item : restoreUnit.getItems() ) {
+                    filteredPlanner.addItem(restoreUnit.getHostId(), Paths.get(item.getNfsObjName()).getFileName().toString(), item);
+                }
+            }
+
+            return filteredPlanner;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Whether an SSTable set overlaps any of the token ranges
+     *
+     * @param restoreUnit
+     * @return true if it does, or if its metadata can't be read
+     */
+    private boolean overlaps(NFSObjRestoreUnit restoreUnit) {
+        NFSObjRestoreItem summaryItem = null;
+        NFSObjRestoreItem statisticsItem = null;
+
+        for ( NFSObjRestoreItem item : restoreUnit.getItems() ) {
+            if ( SUMMARY_COMPONENT.equals(item.getComponentName()) ) {
+                summaryItem = item;
+            }
+            else if ( STATISTICS_COMPONENT.equals(item.getComponentName()) ) {
+                statisticsItem = item;
+            }
+        }
+
+        String version = (summaryItem == null) ? null : summaryItem.getSstableVersion();
+
+        if ( (summaryItem == null) || (statisticsItem == null) || (version == null) ||
+             (version.compareTo(MIN_SUPPORTED_VERSION) < 0) ) {
+            unknownSets.incrementAndGet();
+            return true;
+        }
+
+        try {
+            String partitioner = readPartitioner(Paths.get(statisticsItem.getNfsObjName()));
+            ByteBuffer[] firstLastKeys = readFirstLastKeys(Paths.get(summaryItem.getNfsObjName()),
+                version.compareTo(SAMPLING_LEVEL_VERSION) >= 0);
+
+            BigInteger firstToken = getToken(partitioner, firstLastKeys[0]);
+            BigInteger lastToken = getToken(partitioner, firstLastKeys[1]);
+
+            if ( (firstToken == null) || (lastToken == null) ) {
+                unknownSets.incrementAndGet();
+                return true;
+            }
+
+            for ( TokenRange tokenRange : tokenRanges ) {
+                if ( tokenRange.overlaps(firstToken, lastToken) ) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+        catch (IOException ioe) {
+            unknownSets.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Read the partitioner class name from the validation metadata of a Statistics.db file, which
+     * starts with a table of contents: &lt;count&gt;, then &lt;type&gt; &lt;offset&gt; per metadata type
+     *
+     * @param statisticsPath
+     * @return
+     * @throws IOException  if the file doesn't have the expected layout
+     */
+    static String readPartitioner(Path statisticsPath) throws IOException {
+        try ( FileChannel channel = FileChannel.open(statisticsPath, StandardOpenOption.READ) ) {
+            DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+
+            int metadataTypeNum = input.readInt();
+            if ( (metadataTypeNum <= 0) || (metadataTypeNum > MAX_METADATA_TYPES) ) {
+                throw new IOException("unexpected metadata count " + metadataTypeNum + " in \"" + statisticsPath + "\"");
+            }
+
+            long validationOffset = -1;
+            for (int i = 0; i < metadataTypeNum; i++) {
+                int metadataType = input.readInt();
+                int metadataOffset = input.readInt();
+
+                if (metadataType == VALIDATION_METADATA_TYPE) {
+                    validationOffset = metadataOffset;
+                }
+            }
+
+            if ( (validationOffset < 0) || (validationOffset >= channel.size()) ) {
+                throw new IOException("no validation metadata in \"" + statisticsPath + "\"");
+            }
+
+            channel.position(validationOffset);
+
+            return new DataInputStream(Channels.newInputStream(channel)).readUTF();
+        }
+    }
+
+    /**
+     * Read the first and the last partition key of an SSTable from its Summary.db file:
+     *   &lt;min_index_interval&gt; &lt;offset_count&gt; &lt;summary_size&gt; [&lt;sampling_level&gt; &lt;size_at_full_sampling&gt;]
+     *   &lt;offsets and entries (summary_size bytes)&gt;
+     *   &lt;first_key_length&gt; &lt;first_key&gt; &lt;last_key_length&gt; &lt;last_key&gt;
+     * Only the header and the keys are read.
+     *
+     * @param summaryPath
+     * @param hasSamplingLevel
+     * @return first and last key
+     * @throws IOException  if the file doesn't have the expected layout
+     */
+    static ByteBuffer[] readFirstLastKeys(Path summaryPath, boolean hasSamplingLevel) throws IOException {
+        try ( FileChannel channel = FileChannel.open(summaryPath, StandardOpenOption.READ) ) {
+            long fileSize = channel.size();
+
+            DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+            input.readInt();
+            input.readInt();
+            long summarySize = input.readLong();
+
+            long keysOffset = (hasSamplingLevel ? 24 : 16) + summarySize;
+            if ( (summarySize < 0) || (keysOffset + 8 > fileSize) ) {
+                throw new IOException("unexpected summary size " + summarySize + " in \"" + summaryPath + "\"");
+            }
+
+            channel.position(keysOffset);
+            input = new DataInputStream(Channels.newInputStream(channel));
+
+            ByteBuffer[] keys = new ByteBuffer[2];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = readKey(input, fileSize, summaryPath);
+            }
+
+            return keys;
+        }
+    }
+
+    private static ByteBuffer readKey(DataInputStream input, long fileSize, Path summaryPath) throws IOException {
+        int keyLength = input.readInt();
+        if ( (keyLength < 0) || (keyLength > fileSize) ) {
+            throw new IOException("unexpected key length " + keyLength + " in \"" + summaryPath + "\"");
+        }
+
+        byte[] key = new byte[keyLength];
+        input.readFully(key);
+
+        return ByteBuffer.wrap(key);
+    }
+
+    /**
+     * Token of a partition key
+     *
+     * @param partitioner   partitioner class name
+     * @param key
+     * @return null for an unsupported partitioner
+     */
+    static BigInteger getToken(String partitioner, ByteBuffer key) {
+        if ( PARTITIONER_MURMUR3.equals(partitioner) ) {
+            // As in Cassandra, the empty key gets the minimum token
+            if ( !key.hasRemaining() ) {
+                return BigInteger.valueOf(Long.MIN_VALUE);
+            }
+
+            return BigInteger.valueOf(normalizeMurmur3Token(murmur3Hash(key)));
+        }
+        else if ( PARTITIONER_RANDOM.equals(partitioner) ) {
+            try {
+                MessageDigest md5 = MessageDigest.getInstance("MD5");
+                md5.update(key.duplicate());
+
+                return new BigInteger(md5.digest()).abs();
+            }
+            catch (NoSuchAlgorithmException nsae) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Long.MIN_VALUE is the minimum token, which no key gets: a key that hashes to it gets Long.MAX_VALUE
+     *
+     * @param hash
+     * @return
+     */
+    static long normalizeMurmur3Token(long hash) {
+        return (hash == Long.MIN_VALUE) ? Long.MAX_VALUE : hash;
+    }
+
+    /**
+     * The first 64 bits of the 128-bit x64 MurmurHash3 of a key, as Cassandra computes it for
+     * Murmur3Partitioner tokens (seed 0). Like Cassandra, the tail bytes are sign-extended before
+     * they are shifted, which differs from the reference MurmurHash3 for keys whose tail has bytes
+     * of 0x80 and above; the tokens must be those of Cassandra.
+     *
+     * The tail switch falls through on purpose, as in the reference implementation.
+     *
+     * @param key
+     * @return
+     */
+    @SuppressWarnings("fallthrough")
+    static long murmur3Hash(ByteBuffer key) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+
+        int offset = key.position();
+        int length = key.remaining();
+        int blockNum = length >> 4;
+
+        long h1 = 0;
+        long h2 = 0;
+
+        for (int i = 0; i < blockNum; i++) {
+            long k1 = getBlock(key, offset, i * 2);
+            long k2 = getBlock(key, offset, i * 2 + 1);
+
+            k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = offset + blockNum * 16;
+        long k1 = 0;
+        long k2 = 0;
+
+        switch (length & 15) {
+            case 15: k2 ^= ((long) key.get(tail + 14)) << 48;
+            case 14: k2 ^= ((long) key.get(tail + 13)) << 40;
+            case 13: k2 ^= ((long) key.get(tail + 12)) << 32;
+            case 12: k2 ^= ((long) key.get(tail + 11)) << 24;
+            case 11: k2 ^= ((long) key.get(tail + 10)) << 16;
+            case 10: k2 ^= ((long) key.get(tail + 9)) << 8;
+            case 9:  k2 ^= ((long) key.get(tail + 8));
+                     k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+            case 8:  k1 ^= ((long) key.get(tail + 7)) << 56;
+            case 7:  k1 ^= ((long) key.get(tail + 6)) << 48;
+            case 6:  k1 ^= ((long) key.get(tail + 5)) << 40;
+            case 5:  k1 ^= ((long) key.get(tail + 4)) << 32;
+            case 4:  k1 ^= ((long) key.get(tail + 3)) << 24;
+            case 3:  k1 ^= ((long) key.get(tail + 2)) << 16;
+            case 2:  k1 ^= ((long) key.get(tail + 1)) << 8;
+            case 1:  k1 ^= ((long) key.get(tail));
+                     k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+
+        h1 += h2;
+
+        return h1;
+    }
+
+    private static long getBlock(ByteBuffer key, int offset, int index) {
+        int blockOffset = offset + (index << 3);
+
+        long block = 0;
+        for (int i = 7; i >= 0; i--) {
+            block = (block << 8) | (key.get(blockOffset + i) & 0xffL);
+        }
+
+        return block;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+
+        return k;
+    }
+
+    void printStats() {
+        System.out.format("  Token range filter (%d token ranges): %d SSTable sets to restore (%d of them without readable token metadata), " +
+                "%d sets (%d files, %d bytes) outside of the token ranges skipped.\n",
+            tokenRanges.size(),
+            keptSets.get(),
+            unknownSets.get(),
+            prunedSets.get(),
+            prunedFiles.get(),
+            prunedBytes.get());
+    }
+}
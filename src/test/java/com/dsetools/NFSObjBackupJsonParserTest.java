@@ -0,0 +1,130 @@
+package com.dsetools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+
+public class NFSObjBackupJsonParserTest {
+
+    private static final String BACKUP_JSON = "{\n" +
+        "  \"keyspaces\": {\"testks\": {\"sstables\": [{\"name\": \"not-an-entry\", \"keyspace\": \"testks\", \"cf\": \"songs\"}]}},\n" +
+        "  \"sstables\": [\n" +
+        "    {\"uniquifier\": \"a2d0\", \"keyspace\": \"testks\", \"cf\": \"songs\", \"name\": \"a2d0-mc-1-big-Data.db\",\n" +
+        "     \"version\": \"mc\", \"size\": 6000000},\n" +
+        "    {\"uniquifier\": \"a2d0\", \"keyspace\": \"TestKS\", \"cf\": \"songs\", \"name\": \"a2d0-mc-1-big-Index.db\",\n" +
+        "     \"version\": \"mc\", \"size\": \"1200\", \"extra\": {\"name\": \"nested\", \"size\": 1}, \"tags\": [\"x\", 2]},\n" +
+        "    {\"uniquifier\": \"e629\", \"keyspace\": \"testks\", \"cf\": \"testbl\", \"name\": \"e629-mc-1-big-Data.db\",\n" +
+        "     \"version\": \"mc\"},\n" +
+        "    {\"uniquifier\": \"e629\", \"keyspace\": \"testks\", \"cf\": \"testbl\", \"name\": \"e629-mc-1-big-TOC.txt\",\n" +
+        "     \"version\": \"mc\", \"size\": \"unknown\"},\n" +
+        "    {\"uniquifier\": \"f001\", \"keyspace\": \"otherks\", \"cf\": \"songs\", \"name\": \"f001-mc-1-big-Data.db\", \"size\": 10},\n" +
+        "    {\"uniquifier\": \"f002\", \"keyspace\": \"testks\", \"cf\": \"songs\", \"size\": 10}\n" +
+        "  ],\n" +
+        "  \"cluster\": \"Test Cluster\"\n" +
+        "}\n";
+
+    private Path backupJsonPath;
+
+    @Before
+    public void writeBackupJson() throws IOException {
+        backupJsonPath = Files.createTempFile("backup", ".json");
+        Files.write(backupJsonPath, BACKUP_JSON.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void deleteBackupJson() throws IOException {
+        Files.delete(backupJsonPath);
+    }
+
+    private List<NFSObjBackupRecord> parse(String keyspace, String table, long expectedEntryNum) throws IOException {
+        List<NFSObjBackupRecord> records = new ArrayList<>();
+
+        long entryNum = new NFSObjBackupJsonParser(keyspace, table).parse(backupJsonPath, records::add);
+        assertEquals(expectedEntryNum, entryNum);
+
+        return records;
+    }
+
+    @Test
+    public void allEntriesWithoutFilter() throws IOException {
+        List<NFSObjBackupRecord> records = parse(null, null, 6);
+
+        // The entry without a name is counted, but not passed on
+        assertEquals(5, records.size());
+        assertEquals("a2d0-mc-1-big-Data.db", records.get(0).getObjName());
+        assertEquals("f001-mc-1-big-Data.db", records.get(4).getObjName());
+    }
+
+    @Test
+    public void keyspaceFilterIgnoresCase() throws IOException {
+        List<NFSObjBackupRecord> records = parse("testks", null, 6);
+
+        assertEquals(4, records.size());
+        assertEquals("TestKS", records.get(1).getKeyspaceName());
+    }
+
+    @Test
+    public void tableFilter() throws IOException {
+        List<NFSObjBackupRecord> records = parse("testks", "testbl", 6);
+
+        assertEquals(2, records.size());
+        assertEquals("e629-mc-1-big-Data.db", records.get(0).getObjName());
+        assertEquals("e629-mc-1-big-TOC.txt", records.get(1).getObjName());
+
+        assertEquals(0, parse("testks", "missing", 6).size());
+        assertEquals(4, parse("testks", "", 6).size());
+    }
+
+    @Test
+    public void entryFields() throws IOException {
+        List<NFSObjBackupRecord> records = parse("testks", null, 6);
+
+        NFSObjBackupRecord dataRecord = records.get(0);
+        assertEquals("a2d0", dataRecord.getUniquifier());
+        assertEquals("testks", dataRecord.getKeyspaceName());
+        assertEquals("songs", dataRecord.getTableName());
+        assertEquals("mc", dataRecord.getSstableVersion());
+        assertEquals(6000000L, dataRecord.getSize());
+
+        // Size as a string; nested values of the same keys are ignored
+        assertEquals("a2d0-mc-1-big-Index.db", records.get(1).getObjName());
+        assertEquals(1200L, records.get(1).getSize());
+
+        // No size, or not a number
+        assertEquals(-1L, records.get(2).getSize());
+        assertEquals(-1L, records.get(3).getSize());
+    }
+
+    @Test
+    public void repeatedNamesAreShared() throws IOException {
+        List<NFSObjBackupRecord> records = parse("testks", null, 6);
+
+        assertSame(records.get(0).getTableName(), records.get(1).getTableName());
+        assertSame(records.get(0).getSstableVersion(), records.get(3).getSstableVersion());
+    }
+
+    @Test
+    public void noSstablesArray() throws IOException {
+        Files.write(backupJsonPath, "{\"cluster\": \"Test Cluster\", \"keyspaces\": []}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, parse(null, null, 0).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidJson() throws IOException {
+        Files.write(backupJsonPath, "{\"sstables\": [{\"name\": ".getBytes(StandardCharsets.UTF_8));
+
+        parse(null, null, 0);
+    }
+}
@@ -0,0 +1,138 @@
+package com.dsetools;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class NFSObjBackupTimeIndexTest {
+
+    private static final String SCHEDULED_0958 = "opscenter_4a7c6f1e-0b3a-4bd1-8c3b-6a2b1f0e9d77_2018-07-17-21-58-10-UTC";
+    private static final String SCHEDULED_2202_A = "opscenter_4a7c6f1e-0b3a-4bd1-8c3b-6a2b1f0e9d77_2018-07-17-22-02-05-UTC";
+    private static final String ADHOC_2202_B = "opscenter_adhoc_2018-07-17-22-02-40-UTC";
+    private static final String ADHOC_2210 = "opscenter_adhoc_2018-07-17-22-10-00-UTC";
+    private static final String RUNNING_2215 = "opscenter_adhoc_2018-07-17-22-15-00-UTC";
+    private static final String NOT_A_BACKUP = "opscenter_adhoc_latest";
+
+    private static final List<String> BACKUP_DIR_NAMES = Arrays.asList(
+        ADHOC_2210, SCHEDULED_0958, RUNNING_2215, ADHOC_2202_B, NOT_A_BACKUP, SCHEDULED_2202_A);
+
+    private static ZonedDateTime utc(int hour, int minute, int second) {
+        return ZonedDateTime.of(2018, 7, 17, hour, minute, second, 0, ZoneId.of("UTC"));
+    }
+
+    /**
+     * The backup at 22:15 is still running (no backup.json yet)
+     */
+    private static NFSObjBackupTimeIndex createIndex(List<String> completenessChecks) {
+        Set<String> completeBackups = new HashSet<>(BACKUP_DIR_NAMES);
+        completeBackups.remove(RUNNING_2215);
+
+        return new NFSObjBackupTimeIndex(BACKUP_DIR_NAMES, dirName -> {
+            completenessChecks.add(dirName);
+            return completeBackups.contains(dirName);
+        });
+    }
+
+    private static NFSObjBackupTimeIndex createIndex() {
+        return createIndex(new ArrayList<>());
+    }
+
+    @Test
+    public void parseBackupTimeFromDirectoryName() {
+        assertEquals(utc(22, 2, 5), NFSObjBackupTimeIndex.parseBackupTime(SCHEDULED_2202_A));
+        assertEquals(utc(22, 2, 40), NFSObjBackupTimeIndex.parseBackupTime(ADHOC_2202_B));
+        assertNull(NFSObjBackupTimeIndex.parseBackupTime(NOT_A_BACKUP));
+        assertNull(NFSObjBackupTimeIndex.parseBackupTime("opscenter"));
+
+        assertEquals(5, createIndex().getBackupNum());
+    }
+
+    @Test
+    public void exactMinuteFindsTheLatestBackupOfThatMinute() {
+        NFSObjBackupTimeIndex index = createIndex();
+
+        assertEquals(ADHOC_2202_B, index.findExactMinute(utc(22, 2, 0)));
+        assertEquals(ADHOC_2202_B, index.findExactMinute(utc(22, 2, 59)));
+        assertEquals(SCHEDULED_0958, index.findExactMinute(utc(21, 58, 0)));
+        assertNull(index.findExactMinute(utc(22, 3, 0)));
+        assertNull(index.findExactMinute(utc(22, 1, 0)));
+    }
+
+    @Test
+    public void exactMinuteSkipsARunningBackup() {
+        assertNull(createIndex().findExactMinute(utc(22, 15, 0)));
+    }
+
+    @Test
+    public void nearestBeforeIncludesTheWholeMinute() {
+        NFSObjBackupTimeIndex index = createIndex();
+
+        assertEquals(ADHOC_2202_B, index.findNearestBefore(utc(22, 2, 0)));
+        assertEquals(ADHOC_2202_B, index.findNearestBefore(utc(22, 9, 0)));
+        assertEquals(ADHOC_2210, index.findNearestBefore(utc(22, 10, 0)));
+        assertEquals(SCHEDULED_0958, index.findNearestBefore(utc(22, 1, 0)));
+        assertNull(index.findNearestBefore(utc(21, 57, 0)));
+    }
+
+    @Test
+    public void nearestBeforeFallsBackPastARunningBackup() {
+        List<String> completenessChecks = new ArrayList<>();
+        NFSObjBackupTimeIndex index = createIndex(completenessChecks);
+
+        assertEquals(ADHOC_2210, index.findNearestBefore(utc(23, 0, 0)));
+
+        // Only the candidates are checked, latest first
+        assertEquals(Arrays.asList(RUNNING_2215, ADHOC_2210), completenessChecks);
+    }
+
+    @Test
+    public void rangeIsInclusiveAndInTimeOrder() {
+        NFSObjBackupTimeIndex index = createIndex();
+
+        assertEquals(Arrays.asList(SCHEDULED_0958, SCHEDULED_2202_A, ADHOC_2202_B, ADHOC_2210),
+            new ArrayList<>(index.findRange(utc(21, 58, 30), utc(22, 10, 0)).values()));
+        assertEquals(Arrays.asList(SCHEDULED_2202_A, ADHOC_2202_B),
+            new ArrayList<>(index.findRange(utc(22, 2, 0), utc(22, 2, 0)).values()));
+
+        // Without the running backup
+        assertEquals(Arrays.asList(ADHOC_2210),
+            new ArrayList<>(index.findRange(utc(22, 5, 0), utc(23, 0, 0)).values()));
+
+        assertTrue(index.findRange(utc(22, 10, 0), utc(22, 2, 0)).isEmpty());
+        assertTrue(index.findRange(utc(20, 0, 0), utc(21, 0, 0)).isEmpty());
+    }
+
+    @Test
+    public void timeSpecSelectsTheLookup() {
+        NFSObjBackupTimeIndex index = createIndex();
+
+        NFSObjBackupTimeSpec exact = NFSObjBackupTimeSpec.parse("7/17/2018 10:02 PM");
+        assertEquals(NFSObjBackupTimeSpec.Mode.EXACT, exact.getMode());
+        assertEquals(ADHOC_2202_B, exact.resolve(index));
+
+        NFSObjBackupTimeSpec before = NFSObjBackupTimeSpec.parse("Before:7/17/2018 10:09 PM");
+        assertEquals(NFSObjBackupTimeSpec.Mode.BEFORE, before.getMode());
+        assertEquals(ADHOC_2202_B, before.resolve(index));
+
+        NFSObjBackupTimeSpec range = NFSObjBackupTimeSpec.parse("7/17/2018 9:58 PM, 7/17/2018 10:02 PM");
+        assertTrue(range.isRange());
+        assertEquals(3, range.resolveRange(index).size());
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void timeSpecRejectsOtherFormats() {
+        NFSObjBackupTimeSpec.parse("2018-07-17 22:02");
+    }
+}
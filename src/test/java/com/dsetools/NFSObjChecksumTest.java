@@ -0,0 +1,161 @@
+package com.dsetools;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class NFSObjChecksumTest {
+
+    private static final byte[] DATA = new byte[300000];
+    static {
+        new Random(42).nextBytes(DATA);
+    }
+
+    // Resume offsets and range boundaries, including the edges of the copy buffer
+    private static final int[] OFFSETS = { 0, 1, 7, 65535, 65536, 100001, DATA.length - 1, DATA.length };
+
+    /**
+     * The algorithms supported by this JVM (crc32c needs Java 9 or above)
+     */
+    private static List<String> getAlgorithms() {
+        List<String> algorithms = new ArrayList<>();
+        algorithms.add(NFSObjChecksum.ALGO_CRC32);
+        algorithms.add(NFSObjChecksum.ALGO_ADLER32);
+
+        try {
+            NFSObjChecksum.create(NFSObjChecksum.ALGO_CRC32C);
+            algorithms.add(NFSObjChecksum.ALGO_CRC32C);
+        }
+        catch (IllegalArgumentException iae) {
+            // Java 8
+        }
+
+        return algorithms;
+    }
+
+    private static long wholeValue(String algorithm) {
+        NFSObjChecksum checksum = NFSObjChecksum.create(algorithm);
+        checksum.update(DATA, 0, DATA.length);
+        return checksum.getValue();
+    }
+
+    private static long blockValue(String algorithm, int start, int end) {
+        NFSObjChecksum checksum = NFSObjChecksum.create(algorithm);
+        checksum.update(DATA, start, end - start);
+        return checksum.getValue();
+    }
+
+    @Test
+    public void matchesJavaUtilZip() {
+        Checksum crc32 = new CRC32();
+        crc32.update(DATA, 0, DATA.length);
+        assertEquals(crc32.getValue(), wholeValue(NFSObjChecksum.ALGO_CRC32));
+
+        Checksum adler32 = new Adler32();
+        adler32.update(DATA, 0, DATA.length);
+        assertEquals(adler32.getValue(), wholeValue(NFSObjChecksum.ALGO_ADLER32));
+    }
+
+    @Test
+    public void resumedCopyReadsBackTheLocalBytes() throws IOException {
+        Path localFile = Files.createTempFile("checksumtest", ".db");
+
+        try {
+            Files.write(localFile, DATA);
+
+            for (String algorithm : getAlgorithms()) {
+                for (int offset : OFFSETS) {
+                    // The bytes restored by an earlier run are read locally, the rest is copied
+                    NFSObjChecksum checksum = NFSObjChecksum.create(algorithm);
+                    NFSObjCopyEngine.updateChecksum(localFile, 0, offset, checksum);
+                    checksum.update(DATA, offset, DATA.length - offset);
+
+                    assertEquals(algorithm + " resumed at " + offset, wholeValue(algorithm), checksum.getValue());
+                }
+            }
+        }
+        finally {
+            Files.delete(localFile);
+        }
+    }
+
+    @Test
+    public void appendedRangeValuesCombine() {
+        for (String algorithm : getAlgorithms()) {
+            for (int split : OFFSETS) {
+                NFSObjChecksum checksum = NFSObjChecksum.create(algorithm);
+                checksum.appendValue(blockValue(algorithm, 0, split), split);
+                checksum.appendValue(blockValue(algorithm, split, DATA.length), DATA.length - split);
+
+                assertEquals(algorithm + " split at " + split, wholeValue(algorithm), checksum.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void rangesFromTheJournalMixWithCopiedBytes() {
+        for (String algorithm : getAlgorithms()) {
+            // Range 1 copied by this run, range 2 journaled by an earlier run, range 3 copied again
+            NFSObjChecksum checksum = NFSObjChecksum.create(algorithm);
+            checksum.update(DATA, 0, 65536);
+
+            NFSObjChecksum rangeChecksum = NFSObjChecksum.create(algorithm);
+            rangeChecksum.update(DATA, 65536, 65536);
+            String journaledRange = rangeChecksum.toString();
+
+            checksum.appendValue(NFSObjChecksum.parseValue(journaledRange, algorithm), 65536);
+            checksum.update(DATA, 131072, DATA.length - 131072);
+
+            assertEquals(algorithm, wholeValue(algorithm), checksum.getValue());
+        }
+    }
+
+    @Test
+    public void emptyChecksumHasTheInitialValue() {
+        assertEquals(0L, NFSObjChecksum.create(NFSObjChecksum.ALGO_CRC32).getValue());
+        assertEquals(1L, NFSObjChecksum.create(NFSObjChecksum.ALGO_ADLER32).getValue());
+
+        NFSObjChecksum checksum = NFSObjChecksum.create(NFSObjChecksum.ALGO_ADLER32);
+        checksum.appendValue(1L, 0);
+        checksum.update(DATA, 0, DATA.length);
+        assertEquals(wholeValue(NFSObjChecksum.ALGO_ADLER32), checksum.getValue());
+    }
+
+    @Test
+    public void directBufferUpdateKeepsThePosition() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DATA.length);
+        buffer.put(DATA);
+        buffer.flip();
+        buffer.position(1);
+
+        NFSObjChecksum checksum = NFSObjChecksum.create(NFSObjChecksum.ALGO_CRC32);
+        checksum.updateRemaining(buffer);
+
+        assertEquals(1, buffer.position());
+        assertEquals(blockValue(NFSObjChecksum.ALGO_CRC32, 1, DATA.length), checksum.getValue());
+    }
+
+    @Test
+    public void checksumStringRoundTrip() {
+        NFSObjChecksum checksum = NFSObjChecksum.create(NFSObjChecksum.ALGO_CRC32);
+        checksum.update(DATA, 0, DATA.length);
+
+        assertEquals(Long.valueOf(checksum.getValue()), NFSObjChecksum.parseValue(checksum.toString(), NFSObjChecksum.ALGO_CRC32));
+        assertNull(NFSObjChecksum.parseValue(checksum.toString(), NFSObjChecksum.ALGO_ADLER32));
+        assertNull(NFSObjChecksum.parseValue(NFSObjRestoreJournal.NO_CHECKSUM, NFSObjChecksum.ALGO_CRC32));
+        assertNull(NFSObjChecksum.parseValue("crc32:abc", NFSObjChecksum.ALGO_CRC32));
+    }
+}
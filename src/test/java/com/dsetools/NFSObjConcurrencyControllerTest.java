@@ -0,0 +1,148 @@
+package com.dsetools;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class NFSObjConcurrencyControllerTest {
+
+    private static final int RANGE_SIZE = 1024 * 1024;
+
+    /**
+     * Counts the threads that read at the same time (every read takes a little while)
+     */
+    private static class ReadCountingThrottle extends NFSObjIoThrottle {
+        final AtomicInteger activeReads = new AtomicInteger();
+        final AtomicInteger maxActiveReads = new AtomicInteger();
+
+        @Override
+        void acquireRead(long bytes) throws InterruptedIOException {
+            int active = activeReads.incrementAndGet();
+            maxActiveReads.accumulateAndGet(active, Math::max);
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            finally {
+                activeReads.decrementAndGet();
+            }
+        }
+    }
+
+    private Path testDir;
+
+    @Before
+    public void createTestDir() throws IOException {
+        testDir = Files.createTempDirectory("concurrencytest");
+    }
+
+    @After
+    public void deleteTestDir() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    public void tryAcquireNeverWaits() throws Exception {
+        NFSObjConcurrencyController concurrencyController = new NFSObjConcurrencyController(1, 1, 1);
+        concurrencyController.acquire();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // The only permit is held by this thread
+            assertFalse(executor.submit(concurrencyController::tryAcquire).get(1, TimeUnit.SECONDS));
+
+            // A thread that holds a permit doesn't need a second one
+            assertTrue(concurrencyController.tryAcquire());
+            concurrencyController.release();
+            concurrencyController.release();
+
+            assertTrue(executor.submit(() -> {
+                boolean acquired = concurrencyController.tryAcquire();
+                concurrencyController.release();
+                return acquired;
+            }).get(1, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Copy a file of 8 ranges from a download thread of a 4 thread work-stealing pool
+     *
+     * @return the highest number of threads that copied ranges at the same time
+     */
+    private int copyInPool(NFSObjConcurrencyController concurrencyController) throws Exception {
+        byte[] data = new byte[8 * RANGE_SIZE];
+        new Random(42).nextBytes(data);
+
+        File srcFile = Files.write(testDir.resolve("src-Data.db"), data).toFile();
+        File dstFile = testDir.resolve("dst-Data.db").toFile();
+
+        ReadCountingThrottle ioThrottle = new ReadCountingThrottle();
+        NFSObjDurabilityPolicy durabilityPolicy = NFSObjDurabilityPolicy.create(new Properties(), testDir);
+        NFSObjRangeCopier rangeCopier = new NFSObjRangeCopier(RANGE_SIZE, RANGE_SIZE, ioThrottle,
+            NFSObjCacheBypass.create(new Properties(), durabilityPolicy), durabilityPolicy, concurrencyController);
+
+        ExecutorService pool = Executors.newWorkStealingPool(4);
+        try {
+            Future<Long> copyFuture = pool.submit(() -> {
+                if (concurrencyController != null) {
+                    concurrencyController.acquire();
+                }
+                try {
+                    return rangeCopier.copy(srcFile, dstFile, null, srcFile.lastModified(), null);
+                }
+                finally {
+                    if (concurrencyController != null) {
+                        concurrencyController.release();
+                    }
+                }
+            });
+
+            assertEquals(data.length, (long) copyFuture.get(30, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(Arrays.equals(data, Files.readAllBytes(dstFile.toPath())));
+
+        return ioThrottle.maxActiveReads.get();
+    }
+
+    @Test
+    public void stolenRangesCountAgainstTheLimit() throws Exception {
+        // The download thread holds the only permit: it copies every range itself
+        assertEquals(1, copyInPool(new NFSObjConcurrencyController(1, 1, 1)));
+    }
+
+    @Test
+    public void stolenRangesRunWithFreePermits() throws Exception {
+        assertTrue(copyInPool(new NFSObjConcurrencyController(1, 4, 4)) > 1);
+    }
+}
@@ -0,0 +1,173 @@
+package com.dsetools;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class NFSObjDifferentialRestoreTest {
+
+    private static final String HOST_ID = "74c08172-9870-4dcc-9a7e-48bddfcc8572";
+    private static final String UNIQUIFIER = "a2d0b957a3e915d9f891268f691a7e36";
+    private static final long SRC_MTIME = 1531879200000L;
+
+    private static final byte[] DATA = new byte[5000];
+    private static final byte[] INDEX = new byte[300];
+    static {
+        Random random = new Random(42);
+        random.nextBytes(DATA);
+        random.nextBytes(INDEX);
+    }
+
+    private Path testDir;
+    private Path nfsDir;
+    private Path targetDir;
+    private NFSObjRestoreJournal restoreJournal;
+
+    @Before
+    public void createTestDirs() throws IOException {
+        testDir = Files.createTempDirectory("differentialtest");
+        nfsDir = Files.createDirectories(testDir.resolve("nfs"));
+        targetDir = Files.createDirectories(testDir.resolve("target").resolve("ks1").resolve("tbl1"));
+
+        restoreJournal = NFSObjRestoreJournal.open(testDir.resolve("target").toString());
+    }
+
+    @After
+    public void deleteTestDirs() throws IOException {
+        restoreJournal.close();
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    /**
+     * Add a backup file to the NFS directory and to the plan
+     */
+    private NFSObjRestoreItem addBackupFile(NFSObjRestorePlanner planner, String sstableName, byte[] content) throws IOException {
+        String objName = UNIQUIFIER + "-" + sstableName;
+        Path nfsPath = nfsDir.resolve(objName);
+
+        Files.write(nfsPath, content);
+        Files.setLastModifiedTime(nfsPath, FileTime.fromMillis(SRC_MTIME));
+
+        NFSObjRestoreItem item = new NFSObjRestoreItem(nfsPath.toString(), "ks1", "tbl1", "mc", sstableName,
+            content.length, targetDir.resolve(sstableName).toFile());
+        planner.addItem(HOST_ID, objName, item);
+
+        return item;
+    }
+
+    private static File writeLocal(NFSObjRestoreItem item, byte[] content, long mtime) throws IOException {
+        File localFile = item.getLocalFile();
+        Files.write(localFile.toPath(), content);
+        Files.setLastModifiedTime(localFile.toPath(), FileTime.fromMillis(mtime));
+        return localFile;
+    }
+
+    private static boolean checkUnchanged(NFSObjDifferentialRestore differentialRestore,
+                                          NFSObjRestorePlanner planner,
+                                          NFSObjRestoreItem item,
+                                          NFSObjRestoreJournal restoreJournal) throws IOException {
+        NFSObjRestoreUnit unit = planner.getUnitsLargestFirst().get(0);
+        return differentialRestore.checkUnchanged(item, unit, item.getSize(), SRC_MTIME, restoreJournal);
+    }
+
+    @Test
+    public void dataFileIsComparedAgainstItsDigest() throws IOException {
+        CRC32 crc32 = new CRC32();
+        crc32.update(DATA, 0, DATA.length);
+
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        NFSObjRestoreItem dataItem = addBackupFile(planner, "mc-1-big-Data.db", DATA);
+        addBackupFile(planner, "mc-1-big-Digest.crc32", String.valueOf(crc32.getValue()).getBytes(StandardCharsets.US_ASCII));
+
+        NFSObjDifferentialRestore differentialRestore = new NFSObjDifferentialRestore(false);
+
+        // Same content with another date: still unchanged, journaled with its checksum
+        File localFile = writeLocal(dataItem, DATA, SRC_MTIME + 1000);
+        assertTrue(checkUnchanged(differentialRestore, planner, dataItem, restoreJournal));
+        assertTrue(restoreJournal.isCompleted(localFile, DATA.length, SRC_MTIME));
+        assertEquals("crc32:" + crc32.getValue(), restoreJournal.getChecksum(localFile));
+
+        // Same size and date, other content
+        byte[] changed = DATA.clone();
+        changed[DATA.length / 2]++;
+        writeLocal(dataItem, changed, SRC_MTIME);
+        assertFalse(checkUnchanged(differentialRestore, planner, dataItem, restoreJournal));
+
+        assertEquals(1, differentialRestore.getUnchangedFiles());
+    }
+
+    @Test
+    public void fileWithoutReferenceChecksumIsComparedByDate() throws IOException {
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        NFSObjRestoreItem indexItem = addBackupFile(planner, "mc-1-big-Index.db", INDEX);
+
+        NFSObjDifferentialRestore differentialRestore = new NFSObjDifferentialRestore(false);
+
+        writeLocal(indexItem, INDEX, SRC_MTIME + 1000);
+        assertFalse(checkUnchanged(differentialRestore, planner, indexItem, restoreJournal));
+
+        File localFile = writeLocal(indexItem, INDEX, SRC_MTIME);
+        assertTrue(checkUnchanged(differentialRestore, planner, indexItem, restoreJournal));
+        assertTrue(restoreJournal.isCompleted(localFile, INDEX.length, SRC_MTIME));
+        assertNull(restoreJournal.getChecksum(localFile));
+    }
+
+    @Test
+    public void missingOrResizedFileIsCopied() throws IOException {
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        NFSObjRestoreItem indexItem = addBackupFile(planner, "mc-1-big-Index.db", INDEX);
+
+        NFSObjDifferentialRestore differentialRestore = new NFSObjDifferentialRestore(false);
+        assertFalse(checkUnchanged(differentialRestore, planner, indexItem, restoreJournal));
+
+        File localFile = writeLocal(indexItem, new byte[INDEX.length + 1], SRC_MTIME);
+        assertFalse(checkUnchanged(differentialRestore, planner, indexItem, restoreJournal));
+        assertFalse(restoreJournal.isJournaled(localFile));
+
+        assertEquals(0, differentialRestore.getUnchangedFiles());
+    }
+
+    @Test
+    public void pruneRemovesOnlyUnplannedSSTableFiles() throws IOException {
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        NFSObjRestoreItem dataItem = addBackupFile(planner, "mc-2-big-Data.db", DATA);
+        writeLocal(dataItem, DATA, SRC_MTIME);
+
+        // Compacted away before the backup
+        Path compactedData = Files.write(targetDir.resolve("mc-1-big-Data.db"), DATA);
+        Path compactedToc = Files.write(targetDir.resolve("mc-1-big-TOC.txt"), INDEX);
+
+        // Not SSTable files, or not in a target directory of the plan
+        Path otherFile = Files.write(targetDir.resolve("notes.txt"), INDEX);
+        Path snapshotDir = Files.createDirectories(targetDir.resolve("snapshots"));
+        Path otherTable = Files.createDirectories(testDir.resolve("target").resolve("ks1").resolve("tbl2"));
+        Path otherTableData = Files.write(otherTable.resolve("mc-1-big-Data.db"), DATA);
+
+        NFSObjDifferentialRestore differentialRestore = new NFSObjDifferentialRestore(true);
+        assertTrue(differentialRestore.isPrune());
+        differentialRestore.prune(planner, false);
+
+        assertTrue(dataItem.getLocalFile().exists());
+        assertFalse(Files.exists(compactedData));
+        assertFalse(Files.exists(compactedToc));
+        assertTrue(Files.exists(otherFile));
+        assertTrue(Files.isDirectory(snapshotDir));
+        assertTrue(Files.exists(otherTableData));
+    }
+}
@@ -0,0 +1,179 @@
+package com.dsetools;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class NFSObjRestoreJournalTest {
+
+    private static final long SRC_SIZE = 100;
+    private static final long SRC_MTIME = 1531879200000L;
+
+    private Path downloadHome;
+    private Path journalPath;
+
+    @Before
+    public void createDownloadHome() throws IOException {
+        downloadHome = Files.createTempDirectory("journaltest");
+        journalPath = downloadHome.resolve(DseOpscNFSRestoreUtils.RESTORE_JOURNAL_FILE);
+    }
+
+    @After
+    public void deleteDownloadHome() throws IOException {
+        FileUtils.deleteDirectory(downloadHome.toFile());
+    }
+
+    private NFSObjRestoreJournal open() throws IOException {
+        return NFSObjRestoreJournal.open(downloadHome.toString());
+    }
+
+    private File localFile(String name, long length) throws IOException {
+        File file = downloadHome.resolve(name).toFile();
+        Files.write(file.toPath(), new byte[(int) length]);
+        return file;
+    }
+
+    @Test
+    public void completedFileIsSkippedOnlyForTheSameBackupFile() throws IOException {
+        File dataFile = localFile("mc-1-big-Data.db", SRC_SIZE);
+
+        NFSObjRestoreJournal journal = open();
+        journal.recordStarted(dataFile, SRC_SIZE, SRC_MTIME);
+        journal.recordCompleted(dataFile, SRC_SIZE, SRC_MTIME, "crc32:1a2b3c4d");
+        journal.close();
+
+        journal = open();
+        assertTrue(journal.isCompleted(dataFile, SRC_SIZE, SRC_MTIME));
+        assertFalse(journal.isCompleted(dataFile, SRC_SIZE, SRC_MTIME + 1));
+        assertFalse(journal.isCompleted(dataFile, SRC_SIZE + 1, SRC_MTIME));
+        assertEquals("crc32:1a2b3c4d", journal.getChecksum(dataFile));
+
+        // The local file was changed since
+        Files.write(dataFile.toPath(), new byte[10]);
+        assertFalse(journal.isCompleted(dataFile, SRC_SIZE, SRC_MTIME));
+        journal.close();
+    }
+
+    @Test
+    public void interruptedCopyResumesFromTheLocalLength() throws IOException {
+        File dataFile = localFile("mc-1-big-Data.db", 40);
+
+        NFSObjRestoreJournal journal = open();
+        journal.recordStarted(dataFile, SRC_SIZE, SRC_MTIME);
+        journal.close();
+
+        journal = open();
+        assertFalse(journal.isCompleted(dataFile, SRC_SIZE, SRC_MTIME));
+        assertEquals(40, journal.getResumeOffset(dataFile, SRC_SIZE, SRC_MTIME));
+        assertEquals(0, journal.getResumeOffset(dataFile, SRC_SIZE, SRC_MTIME + 1));
+        assertNull(journal.getChecksum(dataFile));
+        journal.close();
+    }
+
+    @Test
+    public void doneRangesAreReplayed() throws IOException {
+        File partFile = localFile("mc-1-big-Data.db.part", SRC_SIZE);
+
+        NFSObjRestoreJournal journal = open();
+        journal.recordStarted(partFile, SRC_SIZE, SRC_MTIME);
+        journal.recordRangeDone(partFile, 0, SRC_MTIME, "crc32:11111111");
+        journal.recordRangeDone(partFile, 64, SRC_MTIME, null);
+        journal.close();
+
+        journal = open();
+        Map<Long, String> doneRanges = journal.getDoneRanges(partFile, SRC_SIZE, SRC_MTIME);
+        assertEquals(2, doneRanges.size());
+        assertEquals("crc32:11111111", doneRanges.get(0L));
+        assertEquals(NFSObjRestoreJournal.NO_CHECKSUM, doneRanges.get(64L));
+
+        assertTrue(journal.getDoneRanges(partFile, SRC_SIZE, SRC_MTIME + 1).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void truncatedLastRecordIsIgnored() throws IOException {
+        File doneFile = localFile("mc-1-big-Data.db", SRC_SIZE);
+        File cutFile = localFile("mc-2-big-Data.db", SRC_SIZE);
+        File nextFile = localFile("mc-3-big-Data.db", 30);
+
+        // A JVM killed halfway through the last record
+        String cutRecord = "C\t" + SRC_SIZE + "\t" + SRC_MTIME + "\tcrc32:2b3c4d5e\t" + cutFile.getAbsolutePath();
+        Files.write(journalPath, (
+            "C\t" + SRC_SIZE + "\t" + SRC_MTIME + "\tcrc32:1a2b3c4d\t" + doneFile.getAbsolutePath() + "\n" +
+            cutRecord.substring(0, cutRecord.length() - 3)).getBytes(StandardCharsets.UTF_8));
+
+        NFSObjRestoreJournal journal = open();
+        assertTrue(journal.isCompleted(doneFile, SRC_SIZE, SRC_MTIME));
+        assertFalse(journal.isCompleted(cutFile, SRC_SIZE, SRC_MTIME));
+
+        // The records of this run don't end up on the truncated line
+        journal.recordStarted(nextFile, SRC_SIZE, SRC_MTIME);
+        journal.close();
+
+        journal = open();
+        assertTrue(journal.isCompleted(doneFile, SRC_SIZE, SRC_MTIME));
+        assertEquals(30, journal.getResumeOffset(nextFile, SRC_SIZE, SRC_MTIME));
+        journal.close();
+
+        // A record cut before its last field is dropped too
+        Files.write(journalPath, ("S\t" + SRC_SIZE + "\t" + SRC_MTIME + "\t" + nextFile.getAbsolutePath() + "\n" +
+            "C\t" + SRC_SIZE + "\t15318").getBytes(StandardCharsets.UTF_8));
+
+        journal = open();
+        assertEquals(30, journal.getResumeOffset(nextFile, SRC_SIZE, SRC_MTIME));
+        journal.close();
+    }
+
+    @Test
+    public void journalIsCompactedOnOpen() throws IOException {
+        File dataFile = localFile("mc-1-big-Data.db", SRC_SIZE);
+        File indexFile = localFile("mc-1-big-Index.db", 10);
+
+        NFSObjRestoreJournal journal = open();
+        journal.recordStarted(dataFile, SRC_SIZE, SRC_MTIME);
+        journal.recordStarted(dataFile, SRC_SIZE, SRC_MTIME);
+        journal.recordCompleted(dataFile, SRC_SIZE, SRC_MTIME, null);
+        journal.recordStarted(indexFile, SRC_SIZE, SRC_MTIME);
+        journal.close();
+
+        open().close();
+
+        List<String> records = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+        assertEquals(2, records.size());
+        assertTrue(records.contains("C\t" + SRC_SIZE + "\t" + SRC_MTIME + "\t-\t" + dataFile.getAbsolutePath()));
+        assertTrue(records.contains("S\t" + SRC_SIZE + "\t" + SRC_MTIME + "\t" + indexFile.getAbsolutePath()));
+    }
+
+    @Test
+    public void publishedFileTakesOverTheCompletion() throws IOException {
+        File tempFile = localFile(".mc-1-big-Data.db.tmp", SRC_SIZE);
+        File finalFile = localFile("mc-1-big-Data.db", SRC_SIZE);
+
+        NFSObjRestoreJournal journal = open();
+        journal.recordStarted(tempFile, SRC_SIZE, SRC_MTIME);
+        journal.recordCompleted(tempFile, SRC_SIZE, SRC_MTIME, "crc32:1a2b3c4d");
+        journal.recordPublished(tempFile, finalFile);
+        journal.close();
+
+        journal = open();
+        assertFalse(journal.isJournaled(tempFile));
+        assertTrue(journal.isCompleted(finalFile, SRC_SIZE, SRC_MTIME));
+        assertEquals("crc32:1a2b3c4d", journal.getChecksum(finalFile));
+        journal.close();
+    }
+}
@@ -0,0 +1,176 @@
+package com.dsetools;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class NFSObjSstableCacheTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long SRC_MTIME = 1531879200000L;
+
+    private Path testDir;
+    private Path cacheDir;
+
+    @Before
+    public void createTestDir() throws IOException {
+        testDir = Files.createTempDirectory("sstablecachetest");
+        cacheDir = testDir.resolve("cache");
+    }
+
+    @After
+    public void deleteTestDir() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    private NFSObjSstableCache open(long maxMb) throws IOException {
+        Properties configProps = new Properties();
+        configProps.setProperty(DseOpscNFSRestoreUtils.CFG_KEY_SSTABLE_CACHE_DIR, cacheDir.toString());
+        configProps.setProperty(DseOpscNFSRestoreUtils.CFG_KEY_SSTABLE_CACHE_MAX_MB, String.valueOf(maxMb));
+
+        return NFSObjSstableCache.open(configProps);
+    }
+
+    private NFSObjRestoreItem item(String uniquifier, String target) {
+        String sstableName = "mc-1-big-Data.db";
+
+        return new NFSObjRestoreItem("/nfs/sstables/" + uniquifier + "-" + sstableName, "ks1", "tbl1", "mc",
+            sstableName, MB, testDir.resolve(target).resolve(sstableName).toFile());
+    }
+
+    /**
+     * A file copied from NFS (1 MB), added to the cache
+     */
+    private NFSObjRestoreItem addCopied(NFSObjSstableCache sstableCache, String uniquifier) throws IOException {
+        NFSObjRestoreItem restoreItem = item(uniquifier, "copied-" + uniquifier);
+
+        File localFile = restoreItem.getLocalFile();
+        Files.createDirectories(localFile.getParentFile().toPath());
+        Files.write(localFile.toPath(), new byte[(int) MB]);
+        Files.setLastModifiedTime(localFile.toPath(), FileTime.fromMillis(SRC_MTIME));
+
+        sstableCache.add(restoreItem, MB);
+
+        return restoreItem;
+    }
+
+    private boolean isCached(String uniquifier) {
+        return Files.exists(cacheDir.resolve(uniquifier).resolve("mc-1-big-Data.db"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        NFSObjSstableCache sstableCache = open(2);
+        addCopied(sstableCache, "aaaa");
+        addCopied(sstableCache, "bbbb");
+
+        // "aaaa" becomes the most recently used one
+        assertTrue(sstableCache.restore(item("aaaa", "target1"), MB, SRC_MTIME));
+
+        addCopied(sstableCache, "cccc");
+
+        assertTrue(isCached("aaaa"));
+        assertFalse(isCached("bbbb"));
+        assertTrue(isCached("cccc"));
+
+        assertFalse(sstableCache.restore(item("bbbb", "target2"), MB, SRC_MTIME));
+        sstableCache.close();
+    }
+
+    @Test
+    public void evictionKeepsTheRestoredFiles() throws IOException {
+        NFSObjSstableCache sstableCache = open(1);
+        NFSObjRestoreItem restoredItem = addCopied(sstableCache, "aaaa");
+        addCopied(sstableCache, "bbbb");
+
+        assertFalse(isCached("aaaa"));
+        assertEquals(MB, restoredItem.getLocalFile().length());
+        sstableCache.close();
+    }
+
+    @Test
+    public void hitKeepsTheBackupFileTime() throws IOException {
+        NFSObjSstableCache sstableCache = open(2);
+        addCopied(sstableCache, "aaaa");
+
+        NFSObjRestoreItem restoreItem = item("aaaa", "target1");
+        assertTrue(sstableCache.restore(restoreItem, MB, SRC_MTIME));
+        assertEquals(SRC_MTIME, restoreItem.getLocalFile().lastModified());
+
+        // Another size can't be the same backup file: the stale entry is dropped
+        assertFalse(sstableCache.restore(item("aaaa", "target2"), MB + 1, SRC_MTIME));
+        assertFalse(isCached("aaaa"));
+        sstableCache.close();
+    }
+
+    @Test
+    public void fileWithoutUniquifierIsNotCached() throws IOException {
+        NFSObjSstableCache sstableCache = open(2);
+
+        NFSObjRestoreItem restoreItem = new NFSObjRestoreItem("/nfs/sstables/mc-1-big-Data.db", "ks1", "tbl1", "mc",
+            "mc-1-big-Data.db", MB, testDir.resolve("target1").resolve("mc-1-big-Data.db").toFile());
+        sstableCache.add(restoreItem, MB);
+
+        assertFalse(sstableCache.restore(restoreItem, MB, SRC_MTIME));
+        sstableCache.close();
+    }
+
+    @Test
+    public void indexKeepsTheOrderAcrossRuns() throws IOException {
+        NFSObjSstableCache sstableCache = open(3);
+        addCopied(sstableCache, "aaaa");
+        addCopied(sstableCache, "bbbb");
+        addCopied(sstableCache, "cccc");
+        assertTrue(sstableCache.restore(item("aaaa", "target1"), MB, SRC_MTIME));
+        sstableCache.close();
+
+        assertEquals(Arrays.asList("bbbb/mc-1-big-Data.db", "cccc/mc-1-big-Data.db", "aaaa/mc-1-big-Data.db"),
+            Files.readAllLines(cacheDir.resolve(NFSObjSstableCache.INDEX_FILE), StandardCharsets.UTF_8));
+
+        // A lower cap evicts on open, in the order of the index
+        sstableCache = open(2);
+        assertFalse(isCached("bbbb"));
+        assertTrue(isCached("cccc"));
+        assertTrue(sstableCache.restore(item("aaaa", "target2"), MB, SRC_MTIME));
+        sstableCache.close();
+    }
+
+    @Test
+    public void unindexedEntriesAreTheOldest() throws IOException {
+        NFSObjSstableCache sstableCache = open(3);
+        addCopied(sstableCache, "aaaa");
+        sstableCache.close();
+
+        // Added by a run that didn't complete, plus a file it was putting in place
+        Path unindexedPath = cacheDir.resolve("bbbb").resolve("mc-1-big-Data.db");
+        Files.createDirectories(unindexedPath.getParent());
+        Files.write(unindexedPath, new byte[(int) MB]);
+        Path tmpPath = cacheDir.resolve("bbbb").resolve("mc-2-big-Data.db" + NFSObjSstableCache.TMP_FILE_SUFFIX);
+        Files.write(tmpPath, new byte[10]);
+
+        sstableCache = open(1);
+        assertTrue(isCached("aaaa"));
+        assertFalse(isCached("bbbb"));
+        assertFalse(Files.exists(tmpPath));
+        sstableCache.close();
+
+        assertEquals(Collections.singletonList("aaaa/mc-1-big-Data.db"),
+            Files.readAllLines(cacheDir.resolve(NFSObjSstableCache.INDEX_FILE), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,158 @@
+package com.dsetools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class NFSObjTableCompletionTest {
+
+    private static final String HOST_ID = "74c08172-9870-4dcc-9a7e-48bddfcc8572";
+
+    /**
+     * The StorageService operation called by the JMX hook
+     */
+    public interface StorageServiceStubMBean {
+        void loadNewSSTables(String ksName, String cfName);
+    }
+
+    public static class StorageServiceStub implements StorageServiceStubMBean {
+        final List<String> loadedTables = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void loadNewSSTables(String ksName, String cfName) {
+            loadedTables.add(ksName + "." + cfName);
+        }
+    }
+
+    private MBeanServer mbeanServer;
+    private ObjectName storageServiceName;
+    private StorageServiceStub storageService;
+
+    @Before
+    public void registerStorageService() throws Exception {
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        storageServiceName = new ObjectName("org.apache.cassandra.db:type=StorageService");
+        storageService = new StorageServiceStub();
+
+        mbeanServer.registerMBean(new StandardMBean(storageService, StorageServiceStubMBean.class), storageServiceName);
+    }
+
+    @After
+    public void unregisterStorageService() throws Exception {
+        mbeanServer.unregisterMBean(storageServiceName);
+    }
+
+    private static void addSet(NFSObjRestorePlanner planner, String ksName, String tblName, int generation, long size) {
+        String sstableName = "mc-" + generation + "-big-Data.db";
+        String objName = "a2d0b957a3e915d9f891268f691a7e36-" + sstableName;
+
+        planner.addItem(HOST_ID, objName, new NFSObjRestoreItem(
+            "/nfs/snapshots/" + HOST_ID + "/sstables/" + objName, ksName, tblName, "mc", sstableName, size,
+            new File("/tmp/restore/" + ksName + "/" + tblName + "/" + sstableName)));
+    }
+
+    private static NFSObjTableCompletion createJmxLocal() {
+        Properties configProps = new Properties();
+        configProps.setProperty(DseOpscNFSRestoreUtils.CFG_KEY_TABLE_COMPLETE_HOOK, "jmx:local");
+
+        NFSObjTableCompletion tableCompletion = NFSObjTableCompletion.create(configProps);
+        assertTrue(tableCompletion.isJmx());
+
+        return tableCompletion;
+    }
+
+    @Test
+    public void loadsNewSSTablesOncePerTableInPriorityOrder() throws Exception {
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        addSet(planner, "ks1", "big", 1, 9000);
+        addSet(planner, "ks1", "big", 2, 8000);
+        addSet(planner, "ks2", "small", 1, 200);
+        addSet(planner, "ks1", "critical", 1, 100);
+        addSet(planner, "ks1", "critical", 2, 50);
+        addSet(planner, "ks2", "medium", 1, 500);
+
+        List<NFSObjRestoreUnit> restoreUnits = planner.getUnitsByPriority(Arrays.asList("ks1.critical", "ks2.*"));
+
+        NFSObjTableCompletion tableCompletion = createJmxLocal();
+        tableCompletion.addUnits(restoreUnits);
+
+        // One download thread: the SSTable sets are done in the scheduling order
+        for ( NFSObjRestoreUnit restoreUnit : restoreUnits ) {
+            tableCompletion.unitDone(restoreUnit, true);
+        }
+
+        tableCompletion.close();
+
+        assertEquals(Arrays.asList("ks1.critical", "ks2.medium", "ks2.small", "ks1.big"), storageService.loadedTables);
+    }
+
+    @Test
+    public void skipsTablesWithAFailedSet() throws Exception {
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        addSet(planner, "ks1", "critical", 1, 100);
+        addSet(planner, "ks1", "critical", 2, 50);
+        addSet(planner, "ks1", "other", 1, 10);
+
+        List<NFSObjRestoreUnit> restoreUnits = planner.getUnitsByPriority(Collections.singletonList("ks1.critical"));
+
+        NFSObjTableCompletion tableCompletion = createJmxLocal();
+        tableCompletion.addUnits(restoreUnits);
+
+        tableCompletion.unitDone(restoreUnits.get(0), true);
+        tableCompletion.unitDone(restoreUnits.get(1), false);
+        tableCompletion.unitDone(restoreUnits.get(2), true);
+
+        tableCompletion.close();
+
+        assertEquals(Collections.singletonList("ks1.other"), storageService.loadedTables);
+    }
+
+    @Test
+    public void noHookBeforeTheLastSetOfATable() throws Exception {
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        addSet(planner, "ks1", "critical", 1, 100);
+        addSet(planner, "ks1", "critical", 2, 50);
+
+        List<NFSObjRestoreUnit> restoreUnits = planner.getUnitsLargestFirst();
+
+        NFSObjTableCompletion tableCompletion = createJmxLocal();
+        tableCompletion.addUnits(restoreUnits);
+
+        tableCompletion.unitDone(restoreUnits.get(0), true);
+        tableCompletion.close();
+
+        assertFalse(storageService.loadedTables.contains("ks1.critical"));
+    }
+
+    @Test
+    public void quotesCommandPlaceholders() {
+        NFSObjRestorePlanner planner = new NFSObjRestorePlanner();
+        addSet(planner, "ks1", "critical", 1, 100);
+
+        Properties configProps = new Properties();
+        configProps.setProperty(DseOpscNFSRestoreUtils.CFG_KEY_TABLE_COMPLETE_HOOK, "nodetool refresh {keyspace} {table}; ls {dir}");
+
+        NFSObjTableCompletion tableCompletion = NFSObjTableCompletion.create(configProps);
+        tableCompletion.addUnits(planner.getUnitsLargestFirst());
+
+        assertEquals("nodetool refresh 'ks1' 'critical'; ls '/tmp/restore/ks1/critical'",
+            tableCompletion.getHookCommand(planner.getUnitsLargestFirst().get(0)));
+        assertEquals("'it'\\''s; rm -rf $HOME'", NFSObjTableCompletion.shellQuote("it's; rm -rf $HOME"));
+    }
+}
@@ -0,0 +1,154 @@
+package com.dsetools;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class NFSObjTokenRangeFilterTest {
+
+    private static ByteBuffer intKey(int value) {
+        ByteBuffer key = ByteBuffer.allocate(4);
+        key.putInt(0, value);
+        return key;
+    }
+
+    private static ByteBuffer textKey(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer bytesKey(int... values) {
+        byte[] key = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            key[i] = (byte) values[i];
+        }
+        return ByteBuffer.wrap(key);
+    }
+
+    private static BigInteger murmur3Token(ByteBuffer key) {
+        return NFSObjTokenRangeFilter.getToken(NFSObjTokenRangeFilter.PARTITIONER_MURMUR3, key);
+    }
+
+    private static BigInteger token(long value) {
+        return BigInteger.valueOf(value);
+    }
+
+    @Test
+    public void murmur3TokensOfIntKeys() {
+        // "SELECT token(id)" of an int partition key
+        assertEquals(token(-4069959284402364209L), murmur3Token(intKey(1)));
+        assertEquals(token(-3248873570005575792L), murmur3Token(intKey(2)));
+        assertEquals(token(9010454139840013625L), murmur3Token(intKey(3)));
+        assertEquals(token(-2729420104000364805L), murmur3Token(intKey(4)));
+        assertEquals(token(-7509452495886106294L), murmur3Token(intKey(5)));
+    }
+
+    @Test
+    public void murmur3TokenOfEmptyKey() {
+        assertEquals(0L, NFSObjTokenRangeFilter.murmur3Hash(ByteBuffer.allocate(0)));
+        assertEquals(token(Long.MIN_VALUE), murmur3Token(ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    public void murmur3TokensOfTailLengths() {
+        // 1 byte: tail only
+        assertEquals(token(-8839064797231613815L), murmur3Token(textKey("a")));
+        // 8 bytes: first half of the tail only
+        assertEquals(token(-3708139591217214462L), murmur3Token(textKey("abcdefgh")));
+        // 15 bytes: longest tail
+        assertEquals(token(-8449275918290243589L), murmur3Token(textKey("abcdefghijklmno")));
+        // 16 bytes: one block, no tail
+        assertEquals(token(-4266531025627334877L), murmur3Token(textKey("abcdefghijklmnop")));
+        // 17 bytes: one block and a tail
+        assertEquals(token(8459014091212432983L), murmur3Token(textKey("abcdefghijklmnopq")));
+        // 43 bytes: two blocks and an 11-byte tail
+        assertEquals(token(-2068352364225029268L), murmur3Token(textKey("The quick brown fox jumps over the lazy dog")));
+    }
+
+    @Test
+    public void murmur3TokensSignExtendTailBytes() {
+        // Tail bytes of 0x80 and above are sign-extended, as in Cassandra (not as in the reference MurmurHash3)
+        assertEquals(token(7131537435510534118L), murmur3Token(bytesKey(0xff, 0x80, 0x01, 0xfe, 0x7f, 0x90, 0xaa, 0xbb, 0xcc)));
+        assertEquals(token(-2423943213507514119L), murmur3Token(bytesKey(
+            0xe0, 0xe1, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xeb, 0xec, 0xed, 0xee, 0xef, 0x81, 0x82, 0x83)));
+    }
+
+    @Test
+    public void murmur3HashIgnoresBufferPosition() {
+        ByteBuffer key = ByteBuffer.wrap("xxabcdefghijklmnopq".getBytes(StandardCharsets.UTF_8));
+        key.position(2);
+
+        assertEquals(token(8459014091212432983L), murmur3Token(key));
+        assertEquals(2, key.position());
+    }
+
+    @Test
+    public void murmur3MinimumTokenIsNormalized() {
+        assertEquals(Long.MAX_VALUE, NFSObjTokenRangeFilter.normalizeMurmur3Token(Long.MIN_VALUE));
+        assertEquals(Long.MIN_VALUE + 1, NFSObjTokenRangeFilter.normalizeMurmur3Token(Long.MIN_VALUE + 1));
+        assertEquals(-4069959284402364209L, NFSObjTokenRangeFilter.normalizeMurmur3Token(-4069959284402364209L));
+    }
+
+    @Test
+    public void rangeExcludesStartIncludesEnd() {
+        NFSObjTokenRangeFilter.TokenRange range = new NFSObjTokenRangeFilter.TokenRange(token(-100), token(100));
+
+        assertTrue(range.overlaps(token(100), token(200)));
+        assertFalse(range.overlaps(token(101), token(200)));
+        assertTrue(range.overlaps(token(-200), token(-99)));
+        assertFalse(range.overlaps(token(-200), token(-100)));
+        assertTrue(range.overlaps(token(-500), token(500)));
+    }
+
+    @Test
+    public void wrapAroundRange() {
+        // (1000, max token] and [min token, -1000]
+        NFSObjTokenRangeFilter.TokenRange range = new NFSObjTokenRangeFilter.TokenRange(token(1000), token(-1000));
+
+        assertTrue(range.overlaps(token(Long.MIN_VALUE), token(-5000)));
+        assertTrue(range.overlaps(token(-1000), token(0)));
+        assertFalse(range.overlaps(token(-999), token(1000)));
+        assertTrue(range.overlaps(token(1001), token(Long.MAX_VALUE)));
+        assertTrue(range.overlaps(token(0), token(2000)));
+    }
+
+    @Test
+    public void equalBoundsCoverTheWholeRing() {
+        NFSObjTokenRangeFilter.TokenRange range = new NFSObjTokenRangeFilter.TokenRange(token(42), token(42));
+
+        assertTrue(range.overlaps(token(43), token(43)));
+        assertTrue(range.overlaps(token(Long.MIN_VALUE), token(Long.MIN_VALUE)));
+    }
+
+    @Test
+    public void parseTokenRanges() {
+        NFSObjTokenRangeFilter filter = NFSObjTokenRangeFilter.parse(" -9223372036854775808:0 , 100:-100,");
+
+        assertEquals(2, filter.getTokenRanges().size());
+        assertEquals(token(Long.MIN_VALUE), filter.getTokenRanges().get(0).start);
+        assertEquals(token(0), filter.getTokenRanges().get(0).end);
+        assertEquals(token(100), filter.getTokenRanges().get(1).start);
+        assertEquals(token(-100), filter.getTokenRanges().get(1).end);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsRangeWithoutEnd() {
+        NFSObjTokenRangeFilter.parse("100");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsNonIntegerToken() {
+        NFSObjTokenRangeFilter.parse("a:100");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsEmptyList() {
+        NFSObjTokenRangeFilter.parse(" , ");
+    }
+}